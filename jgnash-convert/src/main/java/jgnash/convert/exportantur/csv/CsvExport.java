@@ -20,6 +20,7 @@ package jgnash.convert.exportantur.csv;
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.math.BigDecimal;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
@@ -29,6 +30,7 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.List;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -36,6 +38,7 @@ import jgnash.engine.Account;
 import jgnash.engine.Comparators;
 import jgnash.engine.CurrencyNode;
 import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
 import jgnash.engine.ReconciledState;
 import jgnash.engine.Transaction;
 import jgnash.resource.util.ResourceUtils;
@@ -126,14 +129,15 @@ public class CsvExport {
                     ResourceUtils.getString("Column.Timestamp"), ResourceUtils.getString("Column.Memo"),
                     ResourceUtils.getString("Column.Payee"), ResourceUtils.getString("Column.Clr"));
 
-            // write the transactions
-            final List<Transaction> transactions = account.getTransactions(startDate, endDate);
-
             final DateTimeFormatter dateTimeFormatter = DateUtils.getExcelDateFormatter();
 
             final DateTimeFormatter timestampFormatter = DateUtils.getExcelTimestampFormatter();
 
-            for (final Transaction transaction : transactions) {
+            // the balance is carried forward so the transactions may be streamed
+            final BigDecimal[] runningBalance = new BigDecimal[1];
+
+            // write the transactions
+            forEachTransaction(account, startDate, endDate, transaction -> {
                 final String date = dateTimeFormatter.format(transaction.getLocalDate());
 
                 final String timeStamp = timestampFormatter.format(transaction.getTimestamp());
@@ -144,16 +148,40 @@ public class CsvExport {
                 final String debit = transaction.getAmount(account).compareTo(BigDecimal.ZERO) > 0 ? ""
                                              : transaction.getAmount(account).abs().toPlainString();
 
-                final String balance = account.getBalanceAt(transaction).toPlainString();
+                if (runningBalance[0] == null) {
+                    runningBalance[0] = account.getBalanceAt(transaction);
+                } else {
+                    runningBalance[0] = runningBalance[0].add(transaction.getAmount(account));
+                }
+
+                final String balance = runningBalance[0].toPlainString();
 
                 final String reconciled = transaction.getReconciled(account) == ReconciledState.NOT_RECONCILED
                                                   ? Boolean.FALSE.toString() : Boolean.TRUE.toString();
 
-                writer.printRecord(account.getName(), transaction.getNumber(), debit, credit, balance, date, timeStamp,
-                        transaction.getMemo(), transaction.getPayee(), reconciled);
-            }
-        } catch (final IOException e) {
+                try {
+                    writer.printRecord(account.getName(), transaction.getNumber(), debit, credit, balance, date,
+                            timeStamp, transaction.getMemo(), transaction.getPayee(), reconciled);
+                } catch (final IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (final IOException | UncheckedIOException e) {
             Logger.getLogger(CsvExport.class.getName()).log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
     }
+
+    /**
+     * Streams the transactions of an account from the data store when an engine is available.
+     */
+    private static void forEachTransaction(final Account account, final LocalDate startDate, final LocalDate endDate,
+                                           final Consumer<Transaction> consumer) {
+        final Engine engine = EngineFactory.getEngine(EngineFactory.DEFAULT);
+
+        if (engine != null) {
+            engine.forEachTransaction(account, startDate, endDate, consumer);
+        } else {
+            account.getTransactions(startDate, endDate).forEach(consumer);
+        }
+    }
 }
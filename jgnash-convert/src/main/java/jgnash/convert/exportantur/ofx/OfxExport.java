@@ -28,12 +28,15 @@ import java.nio.file.Paths;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.util.Objects;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.convert.common.OfxTags;
 import jgnash.engine.Account;
 import jgnash.engine.AccountType;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
 import jgnash.engine.InvestmentTransaction;
 import jgnash.engine.SecurityNode;
 import jgnash.engine.Transaction;
@@ -199,14 +202,14 @@ public class OfxExport implements OfxTags {
      * Writes all bank account transactions within the date range
      */
     private void writeBankTransactions() {
-        account.getTransactions(startDate, endDate).forEach(this::writeBankTransaction);
+        forEachTransaction(this::writeBankTransaction);
     }
 
     /**
      * Writes all investment account transactions within the date range
      */
     private void writeInvestmentTransactions() {
-        for (final Transaction transaction : account.getTransactions(startDate, endDate)) {
+        forEachTransaction(transaction -> {
             if (transaction instanceof InvestmentTransaction) {
                 final InvestmentTransaction invTransaction = (InvestmentTransaction) transaction;
 
@@ -233,6 +236,21 @@ public class OfxExport implements OfxTags {
                 writeBankTransaction(transaction);
                 indentedWriter.println(wrapClose(INVBANKTRAN), --indentLevel);
             }
+        });
+    }
+
+    /**
+     * Streams the transactions to export from the data store when an engine is available.
+     *
+     * @param consumer consumer of each transaction
+     */
+    private void forEachTransaction(final Consumer<Transaction> consumer) {
+        final Engine engine = EngineFactory.getEngine(EngineFactory.DEFAULT);
+
+        if (engine != null) {
+            engine.forEachTransaction(account, startDate, endDate, consumer);
+        } else {
+            account.getTransactions(startDate, endDate).forEach(consumer);
         }
     }
 
@@ -18,6 +18,7 @@
 package jgnash.convert.importat;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.logging.Level;
@@ -54,6 +55,8 @@ public class GenericImport {
         final Engine engine = EngineFactory.getEngine(EngineFactory.DEFAULT);
         Objects.requireNonNull(engine);
 
+        final List<Transaction> newTransactions = new ArrayList<>();
+
         for (final ImportTransaction tran : transactions) {
             Objects.requireNonNull(tran.getAccount());
 
@@ -86,9 +89,11 @@ public class GenericImport {
                 }
 
                 transaction.setFitid(tran.getFITID());
-                engine.addTransaction(transaction);
+                newTransactions.add(transaction);
             }
         }
+
+        engine.addTransactions(newTransactions);    // added as a single unit of work
     }
 
     /**
@@ -59,6 +59,8 @@ public class OfxImport {
         final Engine engine = EngineFactory.getEngine(EngineFactory.DEFAULT);
         Objects.requireNonNull(engine);
 
+        final List<Transaction> newTransactions = new ArrayList<>();
+
         for (final ImportTransaction tran : ofxBank.getTransactions()) {
 
             // do not import matched transactions
@@ -101,10 +103,12 @@ public class OfxImport {
                 // add the new transaction
                 if (transaction != null) {
                     transaction.setFitid(tran.getFITID());
-                    engine.addTransaction(transaction);
+                    newTransactions.add(transaction);
                 }
             }
         }
+
+        engine.addTransactions(newTransactions);    // added as a single unit of work
     }
 
     private static InvestmentTransaction importInvestmentTransaction(final OfxBank ofxBank, final ImportTransaction ofxTransaction,
@@ -19,6 +19,7 @@ package jgnash.convert.importat.qif;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -220,6 +221,7 @@ public class QifImport {
             return;
         }
         List<QifTransaction> list = qAcc.getTransactions();
+        List<Transaction> newTransactions = new ArrayList<>(list.size());
         for (QifTransaction aList : list) {
             Transaction tran;
 
@@ -236,11 +238,12 @@ public class QifImport {
                 if (partialImport) {
                     tran.setFitid(FITID);   // importing a bank statement, flag as imported
                 }
-                engine.addTransaction(tran);
+                newTransactions.add(tran);
             } else {
                 logger.warning("Null Transaction!");
             }
         }
+        engine.addTransactions(newTransactions);
     }
 
     private void addCategories() {
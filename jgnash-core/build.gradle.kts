@@ -10,6 +10,7 @@ val commonsMathVersion: String by project
 val slf4jVersion: String by project
 val hibernateVersion: String by project
 val hikariVersion: String by project
+val caffeineVersion: String by project
 val h2Version: String by project
 val hsqldbVersion: String by project
 val xstreamVersion: String by project
@@ -30,6 +31,10 @@ dependencies {
     implementation("org.hibernate:hibernate-hikaricp:$hibernateVersion")
     implementation("com.zaxxer:HikariCP:$hikariVersion")
 
+    // second level cache
+    implementation("org.hibernate:hibernate-jcache:$hibernateVersion")
+    implementation("com.github.ben-manes.caffeine:jcache:$caffeineVersion")
+
     implementation("com.h2database:h2:$h2Version")
     implementation("org.hsqldb:hsqldb:$hsqldbVersion")
 
@@ -44,6 +49,10 @@ dependencies {
     }
 
     implementation("io.netty:netty-codec:$nettyVersion")
+    implementation("io.netty:netty-handler:$nettyVersion")
+
+    // native transport for the network servers on Linux, NIO is used when it is not available
+    implementation("io.netty:netty-transport-native-epoll:$nettyVersion:linux-x86_64")
 
     implementation("org.apache.commons:commons-collections4:$commonsCollectionsVersion")
     implementation("org.apache.commons:commons-csv:$commonsCsvVersion")
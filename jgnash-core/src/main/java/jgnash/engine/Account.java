@@ -37,6 +37,7 @@ import java.util.logging.Logger;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.ElementCollection;
@@ -44,6 +45,7 @@ import javax.persistence.Entity;
 import javax.persistence.EnumType;
 import javax.persistence.Enumerated;
 import javax.persistence.FetchType;
+import javax.persistence.Index;
 import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.ManyToMany;
@@ -66,6 +68,7 @@ import jgnash.util.Nullable;
  * @author Jeff Prickett prickett@users.sourceforge.net
  */
 @Entity
+@Cacheable
 public class Account extends StoredObject implements Comparable<Account> {
 
     static final int MAX_ATTRIBUTE_LENGTH = 8192;
@@ -108,11 +111,16 @@ public class Account extends StoredObject implements Comparable<Account> {
     Account parentAccount;
 
     /**
-     * List of transactions for this account.
+     * List of transactions for this account.  The primary key of the join table indexes the account, the transaction
+     * side is indexed for reverse lookups.
+     * <p>
+     * Refresh is not cascaded.  Transactions are immutable, so refreshing an account only needs to reload which
+     * transactions it holds.
      */
-    @JoinTable
+    @JoinTable(indexes = @Index(name = "ACCOUNT_TRANSACT_IDX", columnList = "transactions_uuid"))
     @OrderBy("date, number, timestamp")
-    @ManyToMany(cascade = {CascadeType.ALL}, fetch = FetchType.EAGER)
+    @ManyToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REMOVE, CascadeType.DETACH},
+            fetch = FetchType.EAGER)
     final Set<Transaction> transactions = new HashSet<>();
 
     /**
@@ -148,10 +156,11 @@ public class Account extends StoredObject implements Comparable<Account> {
     private CurrencyNode currencyNode;
 
     /**
-     * Sorted list of child accounts.
+     * Sorted list of child accounts.  Refresh is not cascaded, refreshing a parent only reloads which children it has.
      */
     @OrderBy("name")
-    @OneToMany(cascade = {CascadeType.ALL}, fetch = FetchType.EAGER)
+    @OneToMany(cascade = {CascadeType.PERSIST, CascadeType.MERGE, CascadeType.REMOVE, CascadeType.DETACH},
+            fetch = FetchType.EAGER)
     private final Set<Account> children = new HashSet<>();
 
     /**
@@ -1472,6 +1481,21 @@ public class Account extends StoredObject implements Comparable<Account> {
         return cachedSortedTransactionList;
     }
 
+    /**
+     * Builds the cached and sorted list of transactions if it has not been initialized yet.
+     * <p>
+     * Safe to call concurrently for different accounts to build the transaction indexes in parallel.
+     */
+    void buildSortedTransactionCache() {
+        transactionLock.writeLock().lock();
+
+        try {
+            getCachedSortedTransactionList();
+        } finally {
+            transactionLock.writeLock().unlock();
+        }
+    }
+
     /**
      * Required by XStream for proper initialization.
      *
@@ -1491,6 +1515,10 @@ public class Account extends StoredObject implements Comparable<Account> {
 
         cachedSortedChildren = new ArrayList<>(children);
         Collections.sort(cachedSortedChildren); // JPA will be naturally sorted, but XML files will not
+
+        // also called after a refresh, discard anything derived from the previous transactions
+        cachedSortedTransactionList = null;
+        clearCachedBalances();
     }
 
     /**
@@ -17,6 +17,7 @@
  */
 package jgnash.engine;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import java.math.BigDecimal;
 
@@ -28,6 +29,7 @@ import jgnash.util.NotNull;
  * @author Craig Cavanaugh
  */
 @Entity
+@Cacheable
 public abstract class CommodityNode extends StoredObject implements Comparable<CommodityNode> {
 
     private String symbol;
@@ -51,6 +51,8 @@ public class Config extends StoredObject {
 
     private static final String REMOVE_BACKUPS = "RemoveBackups";
 
+    private static final String INCREMENTAL_BACKUPS = "IncrementalBackups";
+
     private static final String LAST_SECURITIES_UPDATE_TIMESTAMP = "LastSecuritiesUpdateTimestamp";
 
     private static final int MAX_BACKUPS_DEFAULT = 5;
@@ -210,6 +212,14 @@ public class Config extends StoredObject {
         setPreference(REMOVE_BACKUPS, Boolean.toString(removeOldBackups));
     }
 
+    boolean incrementalBackups() {
+        return Boolean.parseBoolean(getPreference(INCREMENTAL_BACKUPS));
+    }
+
+    void setIncrementalBackups(final boolean incrementalBackups) {
+        setPreference(INCREMENTAL_BACKUPS, Boolean.toString(incrementalBackups));
+    }
+
     void setLastSecuritiesUpdateTimestamp(@NotNull final LocalDateTime localDateTime) {
         setPreference(LAST_SECURITIES_UPDATE_TIMESTAMP, localDateTime.toString());
     }
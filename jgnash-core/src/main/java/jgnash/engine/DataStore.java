@@ -44,10 +44,12 @@ public interface DataStore {
      * @param host host name or IP address
      * @param port connection port
      * @param password user password
+     * @param dataBasePath path of the database on the server
      * @param engineName unique name to give the engine instance
      * @return Engine instance if a successful connection is made
      */
-    Engine getClientEngine(final String host, final int port, final char[] password, final String engineName);
+    Engine getClientEngine(final String host, final int port, final char[] password, final String dataBasePath,
+                           final String engineName);
 
     /**
      * Create an engine instance that uses a file.
@@ -59,6 +61,26 @@ public interface DataStore {
      */
     Engine getLocalEngine(final String fileName, final String engineName, final char[] password);
 
+    /**
+     * Create an engine instance that uses a file and report the load progress.
+     * <p>
+     * The default implementation does not report intermediate progress.
+     *
+     * @param fileName full path to the file
+     * @param engineName unique name to give the engine instance
+     * @param password user password
+     * @param percentComplete callback to report the percent complete
+     * @return Engine instance.  A new file will be created if it does not exist
+     */
+    default Engine getLocalEngine(final String fileName, final String engineName, final char[] password,
+                                  final DoubleConsumer percentComplete) {
+        final Engine engine = getLocalEngine(fileName, engineName, password);
+
+        percentComplete.accept(1);
+
+        return engine;
+    }
+
     /**
      * Returns the default file extension for this DataStore.
      * 
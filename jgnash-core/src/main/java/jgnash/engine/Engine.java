@@ -21,6 +21,7 @@ import java.io.IOException;
 import java.math.BigDecimal;
 import java.nio.file.Path;
 import java.time.DayOfWeek;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
@@ -45,6 +46,7 @@ import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.logging.Handler;
 import java.util.logging.Level;
@@ -98,7 +100,7 @@ public class Engine {
      */
     public static final int CURRENT_MAJOR_VERSION = 3;
 
-    public static final int CURRENT_MINOR_VERSION = 6;
+    public static final int CURRENT_MINOR_VERSION = 7;
 
     // Lock name
     private static final String BIG_LOCK = "bigLock";
@@ -180,6 +182,21 @@ public class Engine {
     private String accountSeparator = null;
 
     public Engine(final EngineDAO eDAO, final LockManager lockManager, final AttachmentManager attachmentManager, final String name) {
+        this(eDAO, lockManager, attachmentManager, name, true);
+    }
+
+    /**
+     * Creates an engine.
+     *
+     * @param eDAO                    engine DAO
+     * @param lockManager             lock manager
+     * @param attachmentManager       attachment manager
+     * @param name                    engine name
+     * @param buildTransactionIndexes {@code false} to leave each account to build its transaction index on first
+     *                                access, intended for file stores opened with lazy loading
+     */
+    public Engine(final EngineDAO eDAO, final LockManager lockManager, final AttachmentManager attachmentManager,
+                  final String name, final boolean buildTransactionIndexes) {
         Objects.requireNonNull(name, "The engine name may not be null");
         Objects.requireNonNull(eDAO, "The engineDAO may not be null");
 
@@ -203,6 +220,11 @@ public class Engine {
         backgroundExecutorService.setRemoveOnCancelPolicy(true);
         backgroundExecutorService.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
 
+        // build the transaction indexes in the background so the account views are usable right away
+        if (buildTransactionIndexes) {
+            backgroundExecutorService.execute(this::buildTransactionIndexes);
+        }
+
         // run trash cleanup every 5 minutes 45 seconds after startup
         backgroundExecutorService.scheduleWithFixedDelay(() -> {
             if (!Thread.currentThread().isInterrupted()) {
@@ -257,11 +279,8 @@ public class Engine {
     public static BigDecimal getMarketPrice(final Collection<Transaction> transactions, final SecurityNode node,
                                             final CurrencyNode baseCurrency, final LocalDate localDate) {
 
-        // Search for the exact history node record
-        Optional<SecurityHistoryNode> optional = node.getHistoryNode(localDate);
-
-        // not null, must be an exact match, return the value because it has precedence
-        if (optional.isPresent()) {
+        // Search for the exact history node record, an exact match has precedence
+        if (node.contains(localDate)) {
             return node.getMarketPrice(localDate, baseCurrency);
         }
 
@@ -269,7 +288,7 @@ public class Engine {
         LocalDate priceDate = LocalDate.ofEpochDay(0);
         BigDecimal price = BigDecimal.ZERO;
 
-        optional = node.getClosestHistoryNode(localDate);
+        final Optional<SecurityHistoryNode> optional = node.getClosestHistoryNode(localDate);
 
         if (optional.isPresent()) {    // Closest option so far
             price = optional.get().getPrice();
@@ -455,6 +474,23 @@ public class Engine {
         logInfo("Engine initialization is complete");
     }
 
+    /**
+     * Builds the sorted transaction index of every account using all available cores.
+     * <p>
+     * The engine and account tree are usable before this completes.  An account accessed before its index has been
+     * built will build it on demand.
+     */
+    private void buildTransactionIndexes() {
+        final Instant start = Instant.now();
+
+        final List<Account> accounts = getAccountList();
+
+        accounts.parallelStream().forEach(Account::buildSortedTransactionCache);
+
+        logger.log(Level.INFO, "Built transaction indexes for {0} accounts in {1} milliseconds",
+                new Object[]{accounts.size(), ChronoUnit.MILLIS.between(start, Instant.now())});
+    }
+
     /**
      * Corrects minor issues with a database that may occur because of prior bugs or file format upgrades.
      */
@@ -2518,22 +2554,7 @@ public class Engine {
 
                 /* If successful, extract and enter a default exchange rate for the transaction date if a rate has not been set */
                 if (result) {
-                    // no rate for the date has been set
-                    transaction.getTransactionEntries().stream()
-                            .filter(TransactionEntry::isMultiCurrency)
-                            .forEach(entry -> {
-                                final ExchangeRate rate = getExchangeRate(entry.getDebitAccount().getCurrencyNode(),
-                                        entry.getCreditAccount().getCurrencyNode());
-
-                                if (rate.getRate(transaction.getLocalDate()).compareTo(BigDecimal.ZERO) == 0) { // no rate for the date has been set
-                                    final BigDecimal exchangeRate = entry.getDebitAmount().abs()
-                                                                            .divide(entry.getCreditAmount().abs(),
-                                                                                    MathConstants.mathContext);
-
-                                    setExchangeRate(entry.getCreditAccount().getCurrencyNode(),
-                                            entry.getDebitAccount().getCurrencyNode(), exchangeRate, transaction.getLocalDate());
-                                }
-                            });
+                    addDefaultExchangeRates(transaction);
                 }
             }
 
@@ -2545,6 +2566,81 @@ public class Engine {
         }
     }
 
+    /**
+     * Adds a collection of transactions, such as an import, as a single unit of work.  The relational stores write
+     * the entire collection in one database transaction instead of one per {@code Transaction}.
+     *
+     * @param transactions transactions to add
+     * @return {@code true} if all valid transactions were added
+     */
+    public boolean addTransactions(final Collection<Transaction> transactions) {
+
+        dataLock.writeLock().lock();
+
+        try {
+            final List<Transaction> validTransactions = new ArrayList<>(transactions.size());
+            final List<Message> messages = new ArrayList<>();
+
+            for (final Transaction transaction : transactions) {
+                if (isTransactionValid(transaction)) {
+                    validTransactions.add(transaction);
+                } else {
+                    messages.addAll(createTransactionMessages(transaction, ChannelEvent.TRANSACTION_ADD_FAILED));
+                }
+            }
+
+            /* Add the transactions to each account */
+            for (final Transaction transaction : validTransactions) {
+                transaction.getAccounts().stream()
+                        .filter(account -> !account.addTransaction(transaction))
+                        .forEach(account -> logSevere("Failed to add the Transaction"));
+            }
+
+            final boolean result = getTransactionDAO().addTransactions(validTransactions);
+
+            logInfo(rb.getString("Message.TransactionAdd"));
+
+            for (final Transaction transaction : validTransactions) {
+                if (result) {
+                    addDefaultExchangeRates(transaction);
+                }
+
+                messages.addAll(createTransactionMessages(transaction,
+                        result ? ChannelEvent.TRANSACTION_ADD : ChannelEvent.TRANSACTION_ADD_FAILED));
+            }
+
+            // post as one batch so listeners refresh once for the entire collection
+            messageBus.fireEvents(messages);
+
+            return result;
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Extracts and enters a default exchange rate for the transaction date if a rate has not been set.
+     *
+     * @param transaction {@code Transaction} that has been added
+     */
+    private void addDefaultExchangeRates(final Transaction transaction) {
+        transaction.getTransactionEntries().stream()
+                .filter(TransactionEntry::isMultiCurrency)
+                .forEach(entry -> {
+                    final ExchangeRate rate = getExchangeRate(entry.getDebitAccount().getCurrencyNode(),
+                            entry.getCreditAccount().getCurrencyNode());
+
+                    if (rate.getRate(transaction.getLocalDate()).compareTo(BigDecimal.ZERO) == 0) { // no rate for the date has been set
+                        final BigDecimal exchangeRate = entry.getDebitAmount().abs()
+                                                                .divide(entry.getCreditAmount().abs(),
+                                                                        MathConstants.mathContext);
+
+                        setExchangeRate(entry.getCreditAccount().getCurrencyNode(),
+                                entry.getDebitAccount().getCurrencyNode(), exchangeRate, transaction.getLocalDate());
+                    }
+                });
+    }
+
     public boolean removeTransaction(final Transaction transaction) {
 
         dataLock.writeLock().lock();
@@ -2641,6 +2737,34 @@ public class Engine {
         return getTransactionDAO().getTransactions();
     }
 
+    /**
+     * Returns a sorted list of the transactions of an account that occur within the specified dates.  The dates are
+     * inclusive.  Relational data stores perform the filtering within the database.
+     *
+     * @param account   {@code Account} to query
+     * @param startDate starting date
+     * @param endDate   ending date
+     * @return List of transactions that may be altered without concern of side effects
+     */
+    public List<Transaction> getTransactions(final Account account, final LocalDate startDate,
+                                             final LocalDate endDate) {
+        return getTransactionDAO().getTransactions(account, startDate, endDate);
+    }
+
+    /**
+     * Streams the transactions of an account that occur within the specified dates in date order.  The dates are
+     * inclusive.  Intended for exports of very large accounts where the complete list should not be held in memory.
+     *
+     * @param account   {@code Account} to query
+     * @param startDate starting date
+     * @param endDate   ending date
+     * @param consumer  consumer of each transaction
+     */
+    public void forEachTransaction(final Account account, final LocalDate startDate, final LocalDate endDate,
+                                   final Consumer<Transaction> consumer) {
+        getTransactionDAO().forEachTransaction(account, startDate, endDate, consumer);
+    }
+
     /**
      * Returns a list of transactions with external links.
      *
@@ -2655,37 +2779,35 @@ public class Engine {
     }
 
     private void postTransactionAdd(final Transaction transaction, final boolean result) {
-
-        for (Account a : transaction.getAccounts()) {
-            Message message;
-
-            if (result) {
-                message = new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_ADD, this);
-            } else {
-                message = new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_ADD_FAILED, this);
-            }
-            message.setObject(MessageProperty.ACCOUNT, a);
-            message.setObject(MessageProperty.TRANSACTION, transaction);
-
-            messageBus.fireEvent(message);
-        }
+        messageBus.fireEvents(createTransactionMessages(transaction,
+                result ? ChannelEvent.TRANSACTION_ADD : ChannelEvent.TRANSACTION_ADD_FAILED));
     }
 
     private void postTransactionRemove(final Transaction transaction, final boolean result) {
+        messageBus.fireEvents(createTransactionMessages(transaction,
+                result ? ChannelEvent.TRANSACTION_REMOVE : ChannelEvent.TRANSACTION_REMOVE_FAILED));
+    }
 
-        for (Account a : transaction.getAccounts()) {
-            Message message;
+    /**
+     * Creates a message for each account of a transaction.  The messages are posted together as a batch.
+     *
+     * @param transaction {@code Transaction} that changed
+     * @param event       event to post
+     * @return list of messages
+     */
+    private List<Message> createTransactionMessages(final Transaction transaction, final ChannelEvent event) {
+        final List<Message> messages = new ArrayList<>();
+
+        for (final Account a : transaction.getAccounts()) {
+            final Message message = new Message(MessageChannel.TRANSACTION, event, this);
 
-            if (result) {
-                message = new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_REMOVE, this);
-            } else {
-                message = new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_REMOVE_FAILED, this);
-            }
             message.setObject(MessageProperty.ACCOUNT, a);
             message.setObject(MessageProperty.TRANSACTION, transaction);
 
-            messageBus.fireEvent(message);
+            messages.add(message);
         }
+
+        return messages;
     }
 
     /**
@@ -2926,6 +3048,35 @@ public class Engine {
         }
     }
 
+    /**
+     * Determines if backups are stored incrementally instead of as full compressed files.
+     *
+     * @return {@code true} if incremental backups are enabled
+     * @see jgnash.util.IncrementalBackup
+     */
+    public boolean incrementalBackups() {
+        return getConfig().incrementalBackups();
+    }
+
+    public void setIncrementalBackups(final boolean incrementalBackups) {
+        dataLock.writeLock().lock();
+
+        try {
+            final Config backupConfig = getConfig();
+
+            backupConfig.setIncrementalBackups(incrementalBackups);
+            getConfigDAO().update(backupConfig);
+
+            config = null;  // clear stale cached reference
+
+            Message message = new Message(MessageChannel.CONFIG, ChannelEvent.CONFIG_MODIFY, this);
+            message.setObject(MessageProperty.CONFIG, backupConfig);
+            messageBus.fireEvent(message);
+        } finally {
+            dataLock.writeLock().unlock();
+        }
+    }
+
     /**
      * Handles Background removal of {@code SecurityNode} history.  This can an expensive operation that block normal
      * operations, so the removal is partitioned into small events to prevent stalling.
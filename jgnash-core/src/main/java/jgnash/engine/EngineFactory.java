@@ -38,6 +38,7 @@ import java.util.logging.Logger;
 import java.util.prefs.Preferences;
 
 import jgnash.engine.jpa.JpaNetworkServer;
+import jgnash.engine.jpa.PersistenceMetrics;
 import jgnash.engine.jpa.SqlUtils;
 import jgnash.engine.message.ChannelEvent;
 import jgnash.engine.message.Message;
@@ -50,6 +51,7 @@ import jgnash.resource.util.ResourceUtils;
 import jgnash.util.FileMagic;
 import jgnash.util.FileMagic.FileType;
 import jgnash.util.FileUtils;
+import jgnash.util.IncrementalBackup;
 import jgnash.util.Nullable;
 
 /**
@@ -79,6 +81,12 @@ public class EngineFactory {
 
     private static final String LAST_REMOTE = "LastRemote";
 
+    private static final String LAZY_LOADING = "LazyLoading";
+
+    private static final String PERSISTENCE_METRICS = "PersistenceMetrics";
+
+    private static final String INCREMENTAL_BACKUP_SUFFIX = "-backups";
+
     /**
      * Default directory for jGnash data. To be located in the default user
      * directory
@@ -136,34 +144,91 @@ public class EngineFactory {
         final Engine oldEngine = engineMap.get(engineName);
         final DataStore oldDataStore = dataStoreMap.get(engineName);
 
-        exportCompressedXML(oldDataStore.getFileName(), oldEngine.getStoredObjects());
+        if (oldEngine.incrementalBackups()) {
+            exportIncrementalXML(oldDataStore.getFileName(), oldEngine.getStoredObjects());
+        } else {
+            exportCompressedXML(oldDataStore.getFileName(), oldEngine.getStoredObjects());
+        }
     }
 
+    /**
+     * Exports a time stamped and gzip compressed XML file next to the supplied file.
+     * <p>
+     * The XML is compressed as it is written using all available cores.  The result may be read by any standard gzip
+     * decompressor or opened directly.
+     *
+     * @param fileName base file name
+     * @param objects  Collection of StoredObjects to export
+     */
     public static void exportCompressedXML(final String fileName, final Collection<StoredObject> objects) {
         final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
 
-        final DataStore xmlDataStore = new XMLDataStore();
+        final Instant start = Instant.now();
 
-        Path xmlFile = Paths.get(FileUtils.stripFileExtension(fileName) + "-" + dateTimeFormatter.format(LocalDateTime.now())
-                + xmlDataStore.getFileExt());
+        final Path gzipFile = Paths.get(FileUtils.stripFileExtension(fileName) + "-"
+                + dateTimeFormatter.format(LocalDateTime.now()) + XMLDataStore.COMPRESSED_FILE_EXT);
 
-        // push the intermediary file to the temporary directory
-        xmlFile = Paths.get(System.getProperty("java.io.tmpdir") + xmlFile.getFileSystem().getSeparator()
-                + xmlFile.getFileName().toString());
+        new XMLDataStore().saveAs(gzipFile, objects, ignored -> { });
 
-        xmlDataStore.saveAs(xmlFile, objects, ignored -> { });
+        logger.log(Level.INFO, "Compressed XML export took {0} milliseconds",
+                ChronoUnit.MILLIS.between(start, Instant.now()));
+    }
 
-        Path zipFile = Paths.get(FileUtils.stripFileExtension(fileName) + "-" + dateTimeFormatter.format(LocalDateTime.now())
-                + ".zip");
+    /**
+     * Exports a time stamped XML backup to the incremental backup store next to the supplied file.
+     * <p>
+     * The XML is chunked as it is written.  Objects are written in a stable order with ids derived from their uuid,
+     * so only the chunks around changes since prior backups are stored.
+     *
+     * @param fileName base file name
+     * @param objects  Collection of StoredObjects to export
+     * @see IncrementalBackup
+     */
+    public static void exportIncrementalXML(final String fileName, final Collection<StoredObject> objects) {
+        final DateTimeFormatter dateTimeFormatter = DateTimeFormatter.ofPattern("yyyyMMdd-HHmm");
+
+        final Instant start = Instant.now();
 
-        FileUtils.compressFile(xmlFile, zipFile);
+        final String backupName = Paths.get(FileUtils.stripFileExtension(fileName)).getFileName() + "-"
+                + dateTimeFormatter.format(LocalDateTime.now());
 
         try {
-            Files.delete(xmlFile);
+            IncrementalBackup.backup(out -> new XMLDataStore().saveAs(out, objects),
+                    backupName + XMLDataStore.FILE_EXT, getIncrementalBackupDirectory(fileName), backupName);
         } catch (final IOException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-            logger.log(Level.WARNING, "Was not able to delete the temporary file: {0}", xmlFile);
         }
+
+        logger.log(Level.INFO, "Incremental XML backup took {0} milliseconds",
+                ChronoUnit.MILLIS.between(start, Instant.now()));
+    }
+
+    /**
+     * Returns the incremental backup store directory for a file.
+     *
+     * @param fileName base file name
+     * @return backup store directory
+     */
+    public static Path getIncrementalBackupDirectory(final String fileName) {
+        return Paths.get(FileUtils.stripFileExtension(fileName) + INCREMENTAL_BACKUP_SUFFIX);
+    }
+
+    /**
+     * Restores an incremental backup as an XML file next to the backup store.
+     *
+     * @param manifest manifest of the backup to restore
+     * @return path to the restored XML file
+     * @throws IOException if an I/O error occurs or the backup fails verification
+     */
+    public static Path restoreIncrementalBackup(final Path manifest) throws IOException {
+        final Path storeDirectory = manifest.toAbsolutePath().getParent();
+
+        final Path xmlFile = storeDirectory.resolveSibling(FileUtils.stripFileExtension(manifest.getFileName().toString())
+                + XMLDataStore.FILE_EXT);
+
+        IncrementalBackup.restore(manifest, xmlFile);
+
+        return xmlFile;
     }
 
     public static void removeOldCompressedXML(final String fileName, final int limit) {
@@ -177,7 +242,9 @@ public class EngineFactory {
         }
 
         // old files use the base file name plus a '-' and a 8 digit date plus a '-' and a 4 digit time stamp
-        final List<Path> fileList = FileUtils.getDirectoryListing(path.getParent(), baseFile + "-\\d{8}-\\d{4}.zip");
+        // older releases used a zip file instead of gzip
+        final List<Path> fileList = FileUtils.getDirectoryListing(path.getParent(),
+                baseFile + "-\\d{8}-\\d{4}(\\.zip|\\.xml\\.gz)");
 
         if (fileList.size() > limit) {
             for (int i = 0; i < fileList.size() - limit; i++) {
@@ -188,6 +255,12 @@ public class EngineFactory {
                 }
             }
         }
+
+        final Path incrementalBackupDirectory = getIncrementalBackupDirectory(fileName);
+
+        if (Files.isDirectory(incrementalBackupDirectory)) {
+            IncrementalBackup.removeOldBackups(incrementalBackupDirectory, limit);
+        }
     }
 
     public static synchronized void closeEngine(final String engineName) {
@@ -243,12 +316,30 @@ public class EngineFactory {
      */
     public static synchronized Engine bootLocalEngine(final String fileName, final String engineName,
                                                       final char[] password) {
+        return bootLocalEngine(fileName, engineName, password, ignored -> { });
+    }
+
+    /**
+     * Boots a local Engine for a preexisting file and reports the load progress. The API determines the
+     * correct file type and uses the correct DataStoreType for engine initialization. If successful, a new
+     * {@code Engine} instance will be returned.
+     *
+     * @param fileName                filename to load
+     * @param engineName              engine identifier
+     * @param password                connection password
+     * @param percentCompleteConsumer progress consumer
+     * @return new {@code Engine} instance if successful, null otherwise
+     * @see Engine
+     */
+    public static synchronized Engine bootLocalEngine(final String fileName, final String engineName,
+                                                      final char[] password,
+                                                      final DoubleConsumer percentCompleteConsumer) {
         final DataStoreType type = getDataStoreByType(fileName);
 
         Engine engine = null;
 
         if (type != null) {
-            engine = bootLocalEngine(fileName, engineName, password, type);
+            engine = bootLocalEngine(fileName, engineName, password, type, percentCompleteConsumer);
         }
 
         return engine;
@@ -268,6 +359,25 @@ public class EngineFactory {
      */
     public static synchronized Engine bootLocalEngine(final String fileName, final String engineName,
                                                       final char[] password, final DataStoreType type) {
+        return bootLocalEngine(fileName, engineName, password, type, ignored -> { });
+    }
+
+    /**
+     * Boots a local Engine for a file and reports the load progress. If the file does not exist, it will be created.
+     * Otherwise it will be loaded. If successful, a new {@code Engine} instance will be returned.
+     *
+     * @param fileName                filename to load or create
+     * @param engineName              engine identifier
+     * @param password                password for the file
+     * @param type                    {@code DataStoreType} type to use for storage
+     * @param percentCompleteConsumer progress consumer
+     * @return new {@code Engine} instance if successful
+     * @see Engine
+     * @see DataStoreType
+     */
+    public static synchronized Engine bootLocalEngine(final String fileName, final String engineName,
+                                                      final char[] password, final DataStoreType type,
+                                                      final DoubleConsumer percentCompleteConsumer) {
 
         Instant start = Instant.now();
 
@@ -275,7 +385,7 @@ public class EngineFactory {
 
         final DataStore dataStore = type.getDataStore();
 
-        final Engine engine = dataStore.getLocalEngine(fileName, engineName, password);
+        final Engine engine = dataStore.getLocalEngine(fileName, engineName, password, percentCompleteConsumer);
 
         if (engine != null) {
             logger.info(ResourceUtils.getString("Message.EngineStart"));
@@ -335,7 +445,7 @@ public class EngineFactory {
             DataStore dataStore = dataStoreType.getDataStore();
 
             // connect to the remote server
-            engine = dataStore.getClientEngine(host, port, password, remoteDataBasePath);
+            engine = dataStore.getClientEngine(host, port, password, remoteDataBasePath, engineName);
 
             if (engine != null) {
                 logger.info(ResourceUtils.getString("Message.EngineStart"));
@@ -474,6 +584,46 @@ public class EngineFactory {
         return pref.getBoolean(LAST_REMOTE, false);
     }
 
+    /**
+     * Determines if lazy loading is enabled for file based data stores.
+     * <p>
+     * When enabled, the sorted transaction index of an account is only built the first time the account is accessed
+     * instead of for every account in the background at boot.  Transactions and balances are still loaded and
+     * calculated from the file as usual.
+     *
+     * @return {@code true} if lazy loading is enabled
+     */
+    public static boolean isLazyLoading() {
+        final Preferences pref = Preferences.userNodeForPackage(EngineFactory.class);
+
+        return pref.getBoolean(LAZY_LOADING, false);
+    }
+
+    public static void setLazyLoading(final boolean lazyLoading) {
+        final Preferences pref = Preferences.userNodeForPackage(EngineFactory.class);
+
+        pref.putBoolean(LAZY_LOADING, lazyLoading);
+    }
+
+    /**
+     * Determines if persistence metrics are collected for relational data stores.
+     *
+     * @return {@code true} if metrics are enabled
+     */
+    public static boolean isPersistenceMetrics() {
+        final Preferences pref = Preferences.userNodeForPackage(EngineFactory.class);
+
+        return pref.getBoolean(PERSISTENCE_METRICS, false);
+    }
+
+    public static void setPersistenceMetrics(final boolean enabled) {
+        final Preferences pref = Preferences.userNodeForPackage(EngineFactory.class);
+
+        pref.putBoolean(PERSISTENCE_METRICS, enabled);
+
+        PersistenceMetrics.getInstance().setEnabled(enabled);
+    }
+
     public static synchronized boolean usedPassword() {
         final Preferences pref = Preferences.userNodeForPackage(EngineFactory.class);
 
@@ -29,6 +29,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Entity;
 import javax.persistence.JoinTable;
@@ -44,6 +45,7 @@ import jgnash.util.Nullable;
  * @author Craig Cavanaugh
  */
 @Entity
+@Cacheable
 public class ExchangeRate extends StoredObject {
 
     @JoinTable
@@ -0,0 +1,574 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import jgnash.util.NotNull;
+
+/**
+ * Columnar storage for the price history of a {@code SecurityNode}.
+ * <p>
+ * Each column is a primitive array sorted by date.  Dates are stored as epoch days and each price as its unscaled
+ * long value and scale, so a day of history costs a few dozen bytes instead of a {@code SecurityHistoryNode} with its
+ * {@code LocalDate} and {@code BigDecimal} objects.  Prices are stored exactly; a row with a price that does not fit,
+ * one with more than 18 significant digits, keeps a reference to its node instead.  {@code SecurityHistoryNode}s are
+ * otherwise only created on request.
+ * <p>
+ * A series may instead be created to retain the added nodes.  This is used when the nodes must be held anyway, e.g.
+ * as entities of a relational store, so the series is only an index of the nodes by date and does not copy them.
+ * <p>
+ * For file based storage the series is written as a single compressed block.  Dates are delta encoded and each
+ * price column is encoded as the difference from the previous row, which keeps most values to a byte or two before
+ * compression.  Prices that do not fit follow the columns as text.
+ * <p>
+ * The series is not thread safe; the owning {@code SecurityNode} is responsible for locking.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class SecurityHistorySeries implements Serializable {
+
+    private static final int BLOCK_VERSION = 1;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Upper bound for the text of a price that does not fit the columns.
+     */
+    private static final int MAX_TEXT_LENGTH = 1024;
+
+    private final boolean retainNodes;
+
+    private int size;
+
+    private int[] epochDays = new int[0];
+
+    private long[] prices = new long[0];
+
+    private long[] highs = new long[0];
+
+    private long[] lows = new long[0];
+
+    private byte[] priceScales = new byte[0];
+
+    private byte[] highScales = new byte[0];
+
+    private byte[] lowScales = new byte[0];
+
+    private long[] volumes = new long[0];
+
+    /**
+     * Nodes of the rows that are not packed into the columns.  {@code null} until a row needs it.
+     */
+    private SecurityHistoryNode[] nodes;
+
+    /**
+     * Creates a series that packs the added nodes into columns.
+     */
+    public SecurityHistorySeries() {
+        this(false);
+    }
+
+    /**
+     * Creates a series.
+     *
+     * @param retainNodes {@code true} to keep references to the added nodes instead of packing them
+     */
+    SecurityHistorySeries(final boolean retainNodes) {
+        this.retainNodes = retainNodes;
+
+        if (retainNodes) {
+            nodes = new SecurityHistoryNode[0];
+        }
+    }
+
+    /**
+     * Returns the number of days of history.
+     *
+     * @return number of entries
+     */
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the index of the entry for a date.
+     *
+     * @param date date to search for
+     * @return index of the entry, otherwise {@code (-(insertion point) - 1)}
+     */
+    int indexOf(@NotNull final LocalDate date) {
+        return Arrays.binarySearch(epochDays, 0, size, Math.toIntExact(date.toEpochDay()));
+    }
+
+    /**
+     * Returns the index of the entry with the closest date that does not exceed the requested date.
+     *
+     * @param date date to search for
+     * @return index of the entry or -1 if all entries are newer
+     */
+    int floorIndexOf(@NotNull final LocalDate date) {
+        final int index = indexOf(date);
+
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /**
+     * Adds a {@code SecurityHistoryNode} to the series.
+     *
+     * @param node node to add
+     * @return {@code false} if the series already contains an entry for the date
+     */
+    boolean add(@NotNull final SecurityHistoryNode node) {
+        int index = indexOf(node.getLocalDate());
+
+        if (index >= 0) {
+            return false;
+        }
+
+        index = -index - 1;
+
+        final BigDecimal price = retainNodes ? null : toStorable(node.getPrice());
+        final BigDecimal high = retainNodes ? null : toStorable(node.getHigh());
+        final BigDecimal low = retainNodes ? null : toStorable(node.getLow());
+
+        final boolean packed = price != null && high != null && low != null;
+
+        if (!packed && nodes == null) {
+            nodes = new SecurityHistoryNode[epochDays.length];
+        }
+
+        ensureCapacity(size + 1);
+        move(index, index + 1, size - index);
+
+        epochDays[index] = Math.toIntExact(node.getLocalDate().toEpochDay());
+
+        if (packed) {
+            prices[index] = price.unscaledValue().longValue();
+            highs[index] = high.unscaledValue().longValue();
+            lows[index] = low.unscaledValue().longValue();
+            priceScales[index] = (byte) price.scale();
+            highScales[index] = (byte) high.scale();
+            lowScales[index] = (byte) low.scale();
+            volumes[index] = node.getVolume();
+
+            if (nodes != null) {
+                nodes[index] = null;
+            }
+        } else {
+            nodes[index] = node;
+        }
+
+        size++;
+
+        return true;
+    }
+
+    /**
+     * Removes the entry for a date.
+     *
+     * @param date date of the entry to remove
+     * @return {@code true} if an entry was removed
+     */
+    boolean remove(@NotNull final LocalDate date) {
+        final int index = indexOf(date);
+
+        if (index < 0) {
+            return false;
+        }
+
+        move(index + 1, index, size - index - 1);
+
+        size--;
+
+        if (nodes != null) {
+            nodes[size] = null;
+        }
+
+        return true;
+    }
+
+    LocalDate getLocalDate(final int index) {
+        return LocalDate.ofEpochDay(epochDays[index]);
+    }
+
+    BigDecimal getPrice(final int index) {
+        if (!isPacked(index)) {
+            return nodes[index].getPrice();
+        }
+
+        return BigDecimal.valueOf(prices[index], priceScales[index]);
+    }
+
+    /**
+     * Returns the {@code SecurityHistoryNode} for an entry.  A new node is created unless the row holds a node.
+     *
+     * @param index index of the entry
+     * @return a {@code SecurityHistoryNode}
+     */
+    SecurityHistoryNode getNode(final int index) {
+        if (!isPacked(index)) {
+            return nodes[index];
+        }
+
+        return new SecurityHistoryNode(getLocalDate(index), getPrice(index), volumes[index],
+                BigDecimal.valueOf(highs[index], highScales[index]), BigDecimal.valueOf(lows[index], lowScales[index]));
+    }
+
+    /**
+     * Returns {@code SecurityHistoryNode}s for the entire series.
+     *
+     * @return a new list of nodes sorted by date
+     */
+    List<SecurityHistoryNode> getNodes() {
+        final List<SecurityHistoryNode> list = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            list.add(getNode(i));
+        }
+
+        return list;
+    }
+
+    private boolean isPacked(final int index) {
+        return nodes == null || nodes[index] == null;
+    }
+
+    /**
+     * Encodes the series as a compressed block.
+     *
+     * @return compressed block
+     */
+    public byte[] toCompressedBlock() {
+        // rows holding a node are packed into a copy of the columns where possible
+        final SecurityHistorySeries packed = nodes == null ? this : new SecurityHistorySeries();
+
+        if (packed != this) {
+            for (int i = 0; i < size; i++) {
+                packed.add(getNode(i));
+            }
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(size * 8 + 16);
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+
+        try (final OutputStream out = new DeflaterOutputStream(bytes, deflater)) {
+            packed.writeBlock(out);
+        } catch (final IOException e) {
+            throw new IllegalStateException(e);     // not possible with a byte array
+        } finally {
+            deflater.end();
+        }
+
+        return bytes.toByteArray();
+    }
+
+    private void writeBlock(final OutputStream out) throws IOException {
+        writeVarLong(out, BLOCK_VERSION);
+        writeVarLong(out, size);
+
+        long previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            writeVarLong(out, zigZag(epochDays[i] - previous));
+            previous = epochDays[i];
+        }
+
+        writeDeltaColumn(out, prices, size);
+        writeDeltaColumn(out, highs, size);
+        writeDeltaColumn(out, lows, size);
+        writeScaleColumn(out, priceScales, size);
+        writeScaleColumn(out, highScales, size);
+        writeScaleColumn(out, lowScales, size);
+        writeDeltaColumn(out, volumes, size);
+
+        // rows that did not fit the columns
+        final List<Integer> unpacked = new ArrayList<>();
+
+        for (int i = 0; i < size; i++) {
+            if (!isPacked(i)) {
+                unpacked.add(i);
+            }
+        }
+
+        writeVarLong(out, unpacked.size());
+
+        for (final int index : unpacked) {
+            writeVarLong(out, index);
+            writeVarLong(out, nodes[index].getVolume());
+            writeString(out, nodes[index].getPrice().toString());
+            writeString(out, nodes[index].getHigh().toString());
+            writeString(out, nodes[index].getLow().toString());
+        }
+    }
+
+    /**
+     * Decodes a series from a compressed block.
+     *
+     * @param block compressed block
+     * @return decoded series
+     * @throws IOException if the block is corrupt or of an unknown version
+     */
+    public static SecurityHistorySeries fromCompressedBlock(@NotNull final byte[] block) throws IOException {
+        try (final InputStream in = new InflaterInputStream(new ByteArrayInputStream(block))) {
+            if (readVarLong(in) != BLOCK_VERSION) {
+                throw new IOException("Unknown security history block version");
+            }
+
+            final SecurityHistorySeries series = new SecurityHistorySeries();
+
+            final int size = Math.toIntExact(readVarLong(in));
+
+            series.ensureCapacity(size);
+
+            long previous = 0;
+
+            for (int i = 0; i < size; i++) {
+                previous += unZigZag(readVarLong(in));
+                series.epochDays[i] = Math.toIntExact(previous);
+            }
+
+            readDeltaColumn(in, series.prices, size);
+            readDeltaColumn(in, series.highs, size);
+            readDeltaColumn(in, series.lows, size);
+            readScaleColumn(in, series.priceScales, size);
+            readScaleColumn(in, series.highScales, size);
+            readScaleColumn(in, series.lowScales, size);
+            readDeltaColumn(in, series.volumes, size);
+
+            final int unpacked = Math.toIntExact(readVarLong(in));
+
+            if (unpacked > 0) {
+                series.nodes = new SecurityHistoryNode[series.epochDays.length];
+            }
+
+            for (int i = 0; i < unpacked; i++) {
+                final int index = Math.toIntExact(readVarLong(in));
+
+                if (index < 0 || index >= size) {
+                    throw new IOException("Security history block is corrupt");
+                }
+
+                final long volume = readVarLong(in);
+
+                series.nodes[index] = new SecurityHistoryNode(LocalDate.ofEpochDay(series.epochDays[index]),
+                        new BigDecimal(readString(in)), volume, new BigDecimal(readString(in)),
+                        new BigDecimal(readString(in)));
+            }
+
+            series.size = size;
+
+            return series;
+        } catch (final ArithmeticException | NumberFormatException e) {
+            throw new IOException("Security history block is corrupt", e);
+        }
+    }
+
+    /**
+     * Returns a value that fits the columns.  Trailing zeros are only removed if the value would not fit otherwise.
+     *
+     * @param value value to store
+     * @return the value or an equal value with fewer trailing zeros, {@code null} if the value does not fit
+     */
+    private static BigDecimal toStorable(final BigDecimal value) {
+        if (isStorable(value)) {
+            return value;
+        }
+
+        final BigDecimal stripped = value.stripTrailingZeros();
+
+        return isStorable(stripped) ? stripped : null;
+    }
+
+    private static boolean isStorable(final BigDecimal value) {
+        return value.unscaledValue().bitLength() < Long.SIZE && value.scale() >= Byte.MIN_VALUE
+                && value.scale() <= Byte.MAX_VALUE;
+    }
+
+    private void ensureCapacity(final int capacity) {
+        if (capacity > epochDays.length) {
+            final int newCapacity = Math.max(capacity, Math.max(INITIAL_CAPACITY, epochDays.length * 3 / 2));
+
+            epochDays = Arrays.copyOf(epochDays, newCapacity);
+
+            if (nodes != null) {
+                nodes = Arrays.copyOf(nodes, newCapacity);
+            }
+
+            if (!retainNodes) {     // the columns are never used when the nodes are retained
+                prices = Arrays.copyOf(prices, newCapacity);
+                highs = Arrays.copyOf(highs, newCapacity);
+                lows = Arrays.copyOf(lows, newCapacity);
+                priceScales = Arrays.copyOf(priceScales, newCapacity);
+                highScales = Arrays.copyOf(highScales, newCapacity);
+                lowScales = Arrays.copyOf(lowScales, newCapacity);
+                volumes = Arrays.copyOf(volumes, newCapacity);
+            }
+        }
+    }
+
+    /**
+     * Moves a range of rows within the allocated capacity.
+     */
+    private void move(final int from, final int to, final int count) {
+        System.arraycopy(epochDays, from, epochDays, to, count);
+
+        if (nodes != null) {
+            System.arraycopy(nodes, from, nodes, to, count);
+        }
+
+        if (!retainNodes) {
+            System.arraycopy(prices, from, prices, to, count);
+            System.arraycopy(highs, from, highs, to, count);
+            System.arraycopy(lows, from, lows, to, count);
+            System.arraycopy(priceScales, from, priceScales, to, count);
+            System.arraycopy(highScales, from, highScales, to, count);
+            System.arraycopy(lowScales, from, lowScales, to, count);
+            System.arraycopy(volumes, from, volumes, to, count);
+        }
+    }
+
+    private static void writeDeltaColumn(final OutputStream out, final long[] column, final int size)
+            throws IOException {
+        long previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            writeVarLong(out, zigZag(column[i] - previous));
+            previous = column[i];
+        }
+    }
+
+    private static void readDeltaColumn(final InputStream in, final long[] column, final int size) throws IOException {
+        long previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            previous += unZigZag(readVarLong(in));
+            column[i] = previous;
+        }
+    }
+
+    private static void writeScaleColumn(final OutputStream out, final byte[] column, final int size)
+            throws IOException {
+        int previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            writeVarLong(out, zigZag(column[i] - previous));
+            previous = column[i];
+        }
+    }
+
+    private static void readScaleColumn(final InputStream in, final byte[] column, final int size) throws IOException {
+        long previous = 0;
+
+        for (int i = 0; i < size; i++) {
+            previous += unZigZag(readVarLong(in));
+
+            if (previous < Byte.MIN_VALUE || previous > Byte.MAX_VALUE) {
+                throw new IOException("Security history block is corrupt");
+            }
+
+            column[i] = (byte) previous;
+        }
+    }
+
+    private static void writeString(final OutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final InputStream in) throws IOException {
+        final long length = readVarLong(in);
+
+        if (length < 0 || length > MAX_TEXT_LENGTH) {
+            throw new IOException("Security history block is corrupt");
+        }
+
+        final byte[] bytes = new byte[(int) length];
+
+        for (int i = 0; i < bytes.length; i++) {
+            final int b = in.read();
+
+            if (b == -1) {
+                throw new IOException("Unexpected end of security history block");
+            }
+
+            bytes[i] = (byte) b;
+        }
+
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long zigZag(final long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(final long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(final OutputStream out, final long value) throws IOException {
+        long v = value;
+
+        while ((v & ~0x7fL) != 0) {
+            out.write((int) ((v & 0x7f) | 0x80));
+            v >>>= 7;
+        }
+
+        out.write((int) v);
+    }
+
+    private static long readVarLong(final InputStream in) throws IOException {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = in.read();
+
+            if (b == -1) {
+                throw new IOException("Unexpected end of security history block");
+            }
+
+            value |= (long) (b & 0x7f) << shift;
+
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+
+        throw new IOException("Security history block is corrupt");
+    }
+}
@@ -39,6 +39,8 @@ import javax.persistence.JoinTable;
 import javax.persistence.ManyToOne;
 import javax.persistence.OneToMany;
 import javax.persistence.PostLoad;
+import javax.persistence.PrePersist;
+import javax.persistence.Transient;
 
 import jgnash.time.DateUtils;
 import jgnash.util.NotNull;
@@ -73,9 +75,16 @@ public class SecurityNode extends CommodityNode {
     @OneToMany(cascade = {CascadeType.ALL}, fetch = FetchType.EAGER)
     private final Set<SecurityHistoryEvent> securityHistoryEvents = new HashSet<>();
 
-    private transient ReadWriteLock lock;
+    /**
+     * History used for all queries.  The relational stores persist {@code historyNodes} and the series only indexes
+     * the loaded nodes.  The file based stores persist this series in place of {@code historyNodes} and the series is
+     * packed into columns when read.  Nodes for the complete series are created before a node loaded from a file is
+     * persisted by a relational store.
+     */
+    @Transient
+    private SecurityHistorySeries historySeries = new SecurityHistorySeries(true);
 
-    private transient List<SecurityHistoryNode> sortedHistoryNodeCache = new ArrayList<>();
+    private transient ReadWriteLock lock;
 
     public SecurityNode() {
         lock = new ReentrantReadWriteLock(true);
@@ -166,10 +175,12 @@ public class SecurityNode extends CommodityNode {
         lock.writeLock().lock();
 
         try {
-            sortedHistoryNodeCache.add(node);
-            Collections.sort(sortedHistoryNodeCache);
+            if (historySeries.add(node)) {
+                historyNodes.add(node);
+                return true;
+            }
 
-            return historyNodes.add(node);
+            return false;
         } finally {
             lock.writeLock().unlock();
         }
@@ -179,10 +190,10 @@ public class SecurityNode extends CommodityNode {
         lock.writeLock().lock();
 
         try {
-            final boolean result = historyNodes.removeIf(node -> node.getLocalDate().compareTo(date) == 0);
+            final boolean result = historySeries.remove(date);
 
             if (result) {
-                sortedHistoryNodeCache.removeIf(node -> node.getLocalDate().compareTo(date) == 0);
+                historyNodes.removeIf(node -> node.getLocalDate().compareTo(date) == 0);
             }
 
             return result;
@@ -229,29 +240,20 @@ public class SecurityNode extends CommodityNode {
      * @return <tt>true</tt> if this SecurityNode contains a SecurityHistoryNode with the specified date
      */
     public boolean contains(final LocalDate date) {
-        boolean result = false;
-
         lock.readLock().lock();
 
         try {
-            for (final SecurityHistoryNode node : historyNodes) {
-                if (node.getLocalDate().compareTo(date) == 0) {
-                    result = true;
-                    break;
-                }
-            }
+            return historySeries.indexOf(date) >= 0;
         } finally {
             lock.readLock().unlock();
         }
-
-        return result;
     }
 
     /**
      * Gets the SecurityHistoryNodes for this security.  At time of retrieval the adjusted price of the
      * SecurityHistoryNodes will be updated to reflect any spits or reverse splits
      *
-     * @return Returns a shallow copy of the history nodes to protect against modification
+     * @return Returns nodes created from the price history, modification does not alter the history
      * @see SecurityHistoryNode#getAdjustedPrice()
      */
     public List<SecurityHistoryNode> getHistoryNodes() {
@@ -259,6 +261,8 @@ public class SecurityNode extends CommodityNode {
         lock.readLock().lock();
 
         try {
+            final List<SecurityHistoryNode> nodes = historySeries.getNodes();
+
             final List<SecurityHistoryEvent> splits = getSplitEvents();
 
             if (!splits.isEmpty()) {
@@ -270,19 +274,19 @@ public class SecurityNode extends CommodityNode {
                 historyEventIterator.next();    // reset back to the tail
 
                 // work backwards
-                for (int i = sortedHistoryNodeCache.size() - 1; i >= 0; i--) {
-                    if (DateUtils.after(eventDate, sortedHistoryNodeCache.get(i).getLocalDate())
+                for (int i = nodes.size() - 1; i >= 0; i--) {
+                    if (DateUtils.after(eventDate, nodes.get(i).getLocalDate())
                             && historyEventIterator.hasPrevious()) {
                         final SecurityHistoryEvent historyEvent = historyEventIterator.previous();
                         eventDate = historyEvent.getDate();
                         scalar = scalar.divide(historyEvent.getValue(), MathConstants.mathContext);
                     }
 
-                    sortedHistoryNodeCache.get(i).setAdjustmentMultiplier(scalar);
+                    nodes.get(i).setAdjustmentMultiplier(scalar);
                 }
             }
 
-            return Collections.unmodifiableList(sortedHistoryNodeCache);
+            return Collections.unmodifiableList(nodes);
         } finally {
             lock.readLock().unlock();
         }
@@ -297,10 +301,10 @@ public class SecurityNode extends CommodityNode {
         lock.readLock().lock();
 
         try {
-            if (sortedHistoryNodeCache.size() > 1) {
+            if (historySeries.size() > 1) {
                 return Optional.of(new LocalDate[]{
-                        sortedHistoryNodeCache.get(0).getLocalDate(),
-                        sortedHistoryNodeCache.get(sortedHistoryNodeCache.size() - 1).getLocalDate()
+                        historySeries.getLocalDate(0),
+                        historySeries.getLocalDate(historySeries.size() - 1)
                 });
             }
             return Optional.empty();
@@ -380,7 +384,8 @@ public class SecurityNode extends CommodityNode {
     }
 
     /**
-     * Returns the {@code SecurityHistoryNode} with the matching date.
+     * Returns the {@code SecurityHistoryNode} with the matching date.  The persisted instance is returned if one is
+     * held, otherwise a node is created from the price history.
      *
      * @param date Date to match
      * @return {@code Optional} contain a matching node
@@ -389,19 +394,9 @@ public class SecurityNode extends CommodityNode {
         lock.readLock().lock();
 
         try {
-            SecurityHistoryNode hNode = null;
+            final int index = historySeries.indexOf(date);
 
-            // Work backwards through the list as the newest date is requested the most
-            for (int i = sortedHistoryNodeCache.size() - 1; i >= 0; i--) {
-                final SecurityHistoryNode node = sortedHistoryNodeCache.get(i);
-
-                if (date.compareTo(node.getLocalDate()) == 0) {
-                    hNode = node;
-                    break;
-                }
-            }
-
-            return Optional.ofNullable(hNode);
+            return index >= 0 ? Optional.of(historySeries.getNode(index)) : Optional.empty();
         } finally {
             lock.readLock().unlock();
         }
@@ -414,39 +409,27 @@ public class SecurityNode extends CommodityNode {
      * @return {@code Optional} containing a {@code SecurityHistoryNode} if a match is found
      */
     public Optional<SecurityHistoryNode> getClosestHistoryNode(final LocalDate date) {
-        final long epochDay = date.toEpochDay();
-
         lock.readLock().lock();
 
         try {
-            SecurityHistoryNode hNode = null;
-
-            // Work backwards through the list as the newest date is requested the most
-            for (int i = sortedHistoryNodeCache.size() - 1; i >= 0; i--) {
-                final SecurityHistoryNode node = sortedHistoryNodeCache.get(i);
+            final int index = historySeries.floorIndexOf(date);
 
-                if (node.getLocalDate().toEpochDay() <= epochDay) {
-                    hNode = node;
-                    break;
-                }
-            }
-
-            return Optional.ofNullable(hNode);
+            return index >= 0 ? Optional.of(historySeries.getNode(index)) : Optional.empty();
         } finally {
             lock.readLock().unlock();
         }
     }
 
     private BigDecimal getMarketPrice(final LocalDate date) {
-        BigDecimal marketPrice = BigDecimal.ZERO;
+        lock.readLock().lock();
 
-        final Optional<SecurityHistoryNode> optional = getClosestHistoryNode(date);
+        try {   // read the price column directly to avoid creating a node
+            final int index = historySeries.floorIndexOf(date);
 
-        if (optional.isPresent()) {
-            marketPrice = optional.get().getPrice();
+            return index >= 0 ? historySeries.getPrice(index) : BigDecimal.ZERO;
+        } finally {
+            lock.readLock().unlock();
         }
-
-        return marketPrice;
     }
 
     /**
@@ -473,7 +456,8 @@ public class SecurityNode extends CommodityNode {
         try {
             SecurityNode node = (SecurityNode) super.clone();
             node.historyNodes = new HashSet<>();
-            node.postLoad();
+            node.historySeries = new SecurityHistorySeries(true);
+            node.lock = new ReentrantReadWriteLock(true);
 
             return node;
         } finally {
@@ -488,16 +472,52 @@ public class SecurityNode extends CommodityNode {
      * @return Properly initialized SecurityNode
      */
     protected Object readResolve() {
-        postLoad();
+        lock = new ReentrantReadWriteLock(true);
+
+        if (historySeries == null) {
+            historySeries = new SecurityHistorySeries();
+        }
+
+        // files written before the columnar series hold the history as nodes, they are no longer needed
+        if (historyNodes != null) {
+            historyNodes.forEach(historySeries::add);
+        }
+
+        historyNodes = new HashSet<>();
+
         return this;
     }
 
+    /**
+     * Creates the nodes missing from {@code historyNodes} so a node loaded from a file based store, e.g. by Save As,
+     * is persisted with its complete history.
+     */
+    @PrePersist
+    private void prePersist() {
+        lock.writeLock().lock();
+
+        try {
+            if (historyNodes.size() != historySeries.size()) {
+                final Set<LocalDate> dates = historyNodes.stream().map(SecurityHistoryNode::getLocalDate)
+                        .collect(Collectors.toSet());
+
+                for (final SecurityHistoryNode node : historySeries.getNodes()) {
+                    if (!dates.contains(node.getLocalDate())) {
+                        historyNodes.add(node);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
     @PostLoad
     private void postLoad() {
         lock = new ReentrantReadWriteLock(true);
 
-        // load the cache list
-        sortedHistoryNodeCache = new ArrayList<>(historyNodes);
-        Collections.sort(sortedHistoryNodeCache);   // JPA will be naturally sorted, but XML files will not
+        // index the persisted nodes, they are held by historyNodes anyway
+        historySeries = new SecurityHistorySeries(true);
+        historyNodes.forEach(historySeries::add);
     }
 }
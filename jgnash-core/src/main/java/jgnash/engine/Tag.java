@@ -17,6 +17,7 @@
  */
 package jgnash.engine;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 
@@ -26,6 +27,7 @@ import javax.persistence.Entity;
  * @author Craig Cavanaugh
  */
 @Entity
+@Cacheable
 public class Tag extends StoredObject implements Comparable<Tag> {
 
     /**
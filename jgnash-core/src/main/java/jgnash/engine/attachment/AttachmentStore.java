@@ -0,0 +1,523 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.attachment;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jgnash.util.NotNull;
+import jgnash.util.Nullable;
+
+/**
+ * A directory of attachments indexed by the SHA-256 hash of their content.
+ * <p>
+ * Files keep their attachment names so the directory remains usable by a local database.  Content that is already
+ * stored under another name is hard linked instead of being transferred or copied again.  The index is kept in the
+ * directory, and a file is only hashed again when its size or modification time changes.  Reading a file only
+ * changes the access order, which is written with the next change to the store or by {@link #flush()}.
+ * <p>
+ * A store may be bounded, in which case the least recently used files are removed once the total size is exceeded.
+ * Linked files are counted once for each name, so the bound is conservative.
+ *
+ * @author Craig Cavanaugh
+ */
+final class AttachmentStore {
+
+    static final String INDEX_FILE = ".attachments.index";
+
+    static final int HASH_LENGTH = 32;
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final String PART_EXTENSION = ".part";
+
+    private static final String FIELD_SEPARATOR = "\t";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Logger logger = Logger.getLogger(AttachmentStore.class.getName());
+
+    private final Path directory;
+
+    private final long maxSize;
+
+    /**
+     * Index entries by attachment name in least recently used order.
+     */
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long totalSize;
+
+    private boolean loaded;
+
+    /**
+     * {@code true} if the access order has changed since the index was written.
+     */
+    private boolean orderChanged;
+
+    /**
+     * Creates an unbounded store.
+     *
+     * @param directory attachment directory, created when first needed
+     */
+    AttachmentStore(@NotNull final Path directory) {
+        this(directory, Long.MAX_VALUE);
+    }
+
+    /**
+     * Creates a store.
+     *
+     * @param directory attachment directory, created when first needed
+     * @param maxSize   maximum total size of the stored files in bytes
+     */
+    AttachmentStore(@NotNull final Path directory, final long maxSize) {
+        Objects.requireNonNull(directory);
+
+        this.directory = directory;
+        this.maxSize = maxSize;
+    }
+
+    Path getDirectory() {
+        return directory;
+    }
+
+    Path resolve(@NotNull final String name) {
+        return directory.resolve(name);
+    }
+
+    /**
+     * Returns the hash of a stored file.  The file is indexed if it was added outside of the store or has changed.
+     *
+     * @param name attachment name
+     * @return hex encoded hash, {@code null} if the file does not exist
+     * @throws IOException if an I/O error occurs
+     */
+    @Nullable
+    synchronized String getHash(@NotNull final String name) throws IOException {
+        load();
+
+        final Path path = directory.resolve(name);
+
+        if (!Files.isRegularFile(path)) {
+            if (remove(name)) {
+                save();
+            }
+            return null;
+        }
+
+        final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        final Entry entry = entries.get(name);
+
+        if (entry != null && entry.matches(attributes)) {
+            return entry.hash;
+        }
+
+        put(name, hash(path), attributes, true);
+        save();
+
+        return entries.get(name).hash;
+    }
+
+    /**
+     * Returns a stored file if its content still matches the hash it was stored with.  The content is verified once
+     * per session and a file that no longer matches is removed.  The file becomes the most recently used.
+     *
+     * @param name attachment name
+     * @return path to the file, {@code null} if the file is not stored or is not valid
+     */
+    @Nullable
+    synchronized Path getValidPath(@NotNull final String name) {
+        load();
+
+        final Entry entry = entries.get(name);
+
+        if (entry == null) {
+            return null;
+        }
+
+        final Path path = directory.resolve(name);
+
+        try {
+            if (!Files.isRegularFile(path) || !entry.matches(Files.readAttributes(path, BasicFileAttributes.class))
+                    || !entry.verified && !entry.hash.equals(hash(path))) {
+                logger.log(Level.INFO, "Discarding invalid attachment: {0}", name);
+                delete(name);
+                return null;
+            }
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            return null;
+        }
+
+        entry.verified = true;
+
+        orderChanged = true;    // written with the next change or flush, a hit must not rewrite the index
+
+        return path;
+    }
+
+    /**
+     * Writes the access order if it has changed since the index was last written.
+     */
+    synchronized void flush() {
+        if (orderChanged) {
+            save();
+        }
+    }
+
+    /**
+     * Finds a stored file with the given content.
+     *
+     * @param hash hex encoded hash
+     * @return path to the file, {@code null} if the content is not stored
+     */
+    @Nullable
+    synchronized Path find(@NotNull final String hash) {
+        load();
+
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entry.getValue().hash.equals(hash)) {
+                final Path path = directory.resolve(entry.getKey());
+
+                try {
+                    if (Files.isRegularFile(path)
+                            && entry.getValue().matches(Files.readAttributes(path, BasicFileAttributes.class))) {
+                        return path;
+                    }
+                } catch (final IOException e) {
+                    logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+                }
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Records a file that has been written to the store directory with content of a known hash.
+     *
+     * @param name attachment name
+     * @param hash hex encoded hash of the content
+     * @throws IOException if an I/O error occurs
+     */
+    synchronized void add(@NotNull final String name, @NotNull final String hash) throws IOException {
+        load();
+
+        put(name, hash, Files.readAttributes(directory.resolve(name), BasicFileAttributes.class), true);
+        evict(name);
+        save();
+    }
+
+    /**
+     * Copies a file into the store.
+     *
+     * @param source file to copy, the file name becomes the attachment name
+     * @param hash   hex encoded hash of the content
+     * @return path to the stored file
+     * @throws IOException if an I/O error occurs
+     */
+    Path copy(@NotNull final Path source, @NotNull final String hash) throws IOException {
+        final String name = source.getFileName().toString();
+        final Path existing = find(hash);
+
+        if (existing != null) {
+            return link(name, existing, hash);
+        }
+
+        Files.createDirectories(directory);
+
+        final Path path = directory.resolve(name);
+
+        Files.copy(source, path, StandardCopyOption.REPLACE_EXISTING);
+        add(name, hash);
+
+        return path;
+    }
+
+    /**
+     * Stores content that is already held under another name.  A hard link is used if the file system supports it.
+     *
+     * @param name     attachment name
+     * @param existing stored file with the same content
+     * @param hash     hex encoded hash of the content
+     * @return path to the stored file
+     * @throws IOException if an I/O error occurs
+     */
+    Path link(@NotNull final String name, @NotNull final Path existing, @NotNull final String hash)
+            throws IOException {
+
+        final Path path = directory.resolve(name);
+
+        if (!path.equals(existing)) {
+            Files.deleteIfExists(path);
+
+            try {
+                Files.createLink(path, existing);
+            } catch (final IOException | UnsupportedOperationException e) {
+                logger.log(Level.FINE, "Unable to link, copying instead", e);
+                Files.copy(existing, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+
+        add(name, hash);
+
+        return path;
+    }
+
+    /**
+     * Removes a file from the store.
+     *
+     * @param name attachment name
+     * @throws IOException if an I/O error occurs
+     */
+    synchronized void delete(@NotNull final String name) throws IOException {
+        load();
+
+        Files.deleteIfExists(directory.resolve(name));
+
+        if (remove(name)) {
+            save();
+        }
+    }
+
+    private void put(final String name, final String hash, final BasicFileAttributes attributes,
+                     final boolean verified) {
+        remove(name);
+
+        final Entry entry = new Entry(hash, attributes.size(), attributes.lastModifiedTime().toMillis());
+        entry.verified = verified;
+
+        entries.put(name, entry);
+        totalSize += entry.size;
+    }
+
+    private boolean remove(final String name) {
+        final Entry entry = entries.remove(name);
+
+        if (entry != null) {
+            totalSize -= entry.size;
+        }
+
+        return entry != null;
+    }
+
+    /**
+     * Removes the least recently used files until the store is within its bound.
+     *
+     * @param keep name of a file that must not be removed
+     */
+    private void evict(final String keep) {
+        final Iterator<Map.Entry<String, Entry>> iterator = entries.entrySet().iterator();
+
+        while (totalSize > maxSize && iterator.hasNext()) {
+            final Map.Entry<String, Entry> entry = iterator.next();
+
+            if (!entry.getKey().equals(keep)) {
+                try {
+                    Files.deleteIfExists(directory.resolve(entry.getKey()));
+
+                    totalSize -= entry.getValue().size;
+                    iterator.remove();
+                } catch (final IOException e) {
+                    logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the index and indexes any files that were added or changed while the store was not in use.
+     */
+    private void load() {
+        if (loaded || !Files.isDirectory(directory)) {
+            return;
+        }
+
+        loaded = true;
+
+        final Path index = directory.resolve(INDEX_FILE);
+
+        try {
+            if (Files.isRegularFile(index)) {
+                for (final String line : Files.readAllLines(index, StandardCharsets.UTF_8)) {
+                    final String[] fields = line.split(FIELD_SEPARATOR, 4);
+
+                    if (fields.length == 4) {
+                        final Entry entry = new Entry(fields[0], Long.parseLong(fields[1]),
+                                Long.parseLong(fields[2]));
+
+                        entries.put(fields[3], entry);
+                        totalSize += entry.size;
+                    }
+                }
+            }
+        } catch (final IOException | NumberFormatException e) {
+            logger.log(Level.WARNING, "Rebuilding the attachment index", e);
+
+            entries.clear();
+            totalSize = 0;
+        }
+
+        final List<String> stale = new ArrayList<>(entries.keySet());
+
+        try (final DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (final Path path : stream) {
+                final String name = path.getFileName().toString();
+
+                // hidden files hold the index and other bookkeeping
+                if (name.startsWith(".") || name.endsWith(PART_EXTENSION) || !Files.isRegularFile(path)) {
+                    continue;
+                }
+
+                final BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+                final Entry entry = entries.get(name);
+
+                if (entry == null || !entry.matches(attributes)) {
+                    put(name, hash(path), attributes, true);
+                }
+
+                stale.remove(name);
+            }
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+
+        stale.forEach(this::remove);
+
+        evict(null);
+        save();
+    }
+
+    /**
+     * Writes the index in least recently used order.
+     */
+    private void save() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        final Path index = directory.resolve(INDEX_FILE);
+        final Path temp = directory.resolve(INDEX_FILE + ".tmp");
+
+        try {
+            try (final BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                    writer.write(entry.getValue().hash + FIELD_SEPARATOR + entry.getValue().size + FIELD_SEPARATOR
+                            + entry.getValue().modified + FIELD_SEPARATOR + entry.getKey());
+                    writer.newLine();
+                }
+            }
+
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING);
+
+            orderChanged = false;
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+    }
+
+    /**
+     * Computes the hash of a file.
+     *
+     * @param path file to hash
+     * @return hex encoded hash
+     * @throws IOException if an I/O error occurs
+     */
+    static String hash(@NotNull final Path path) throws IOException {
+        final MessageDigest digest = newDigest();
+        final byte[] buffer = new byte[BUFFER_SIZE];
+
+        try (final InputStream in = Files.newInputStream(path)) {
+            int length;
+
+            while ((length = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, length);
+            }
+        }
+
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // SHA-256 is required of every Java platform
+        }
+    }
+
+    static String toHex(@NotNull final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return builder.toString();
+    }
+
+    static byte[] fromHex(@NotNull final String hex) {
+        final byte[] bytes = new byte[hex.length() / 2];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+
+        return bytes;
+    }
+
+    private static class Entry {
+        final String hash;
+
+        final long size;
+
+        final long modified;
+
+        /**
+         * {@code true} once the content has been checked against the hash during this session.
+         */
+        boolean verified;
+
+        Entry(final String hash, final long size, final long modified) {
+            this.hash = hash;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean matches(final BasicFileAttributes attributes) {
+            return size == attributes.size() && modified == attributes.lastModifiedTime().toMillis();
+        }
+    }
+}
@@ -21,16 +21,9 @@ import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.base64.Base64Decoder;
-import io.netty.handler.codec.base64.Base64Encoder;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.stream.ChunkedWriteHandler;
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -39,10 +32,10 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.net.ConnectionFactory;
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
 import jgnash.util.EncryptionManager;
 
-import static jgnash.engine.attachment.NettyTransferHandler.*;
-
 /**
  * Client for sending and receiving files.
  *
@@ -51,9 +44,9 @@ import static jgnash.engine.attachment.NettyTransferHandler.*;
 class AttachmentTransferClient {
     private static final Logger logger = Logger.getLogger(AttachmentTransferClient.class.getName());
 
-    private final Path tempDirectory;
+    private final AttachmentStore store;
 
-    private NioEventLoopGroup eventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
 
     private Channel channel;
 
@@ -61,8 +54,8 @@ class AttachmentTransferClient {
 
     private EncryptionManager encryptionManager = null;
 
-    AttachmentTransferClient(final Path tempPath) {
-        tempDirectory = tempPath;
+    AttachmentTransferClient(final AttachmentStore store) {
+        this.store = store;
     }
 
     /**
@@ -83,12 +76,12 @@ class AttachmentTransferClient {
 
         final Bootstrap bootstrap = new Bootstrap();
 
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newClientGroup("file-client");
 
-        transferHandler = new NettyTransferHandler(tempDirectory, encryptionManager);
+        transferHandler = new NettyTransferHandler(store, encryptionManager != null);
 
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.getChannelClass())
                 .handler(new Initializer())
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, ConnectionFactory.getConnectionTimeout() * 1000)
                 .option(ChannelOption.SO_KEEPALIVE, true);
@@ -108,34 +101,37 @@ class AttachmentTransferClient {
         return result;
     }
 
-    private String encrypt(final String message) {
-        if (encryptionManager != null) {
-            return encryptionManager.encrypt(message);
-        }
-        return message;
-    }
-
-    void requestFile(final Path file) {
-        try {
-            channel.writeAndFlush(encrypt(FILE_REQUEST + file) + EOL_DELIMITER).sync();
-        } catch (final InterruptedException e) {
-            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-            Thread.currentThread().interrupt();
-        }
+    /**
+     * Requests a file from the server.  The file is only transferred if the store does not already hold the content.
+     * An interrupted request is resumed.
+     *
+     * @param file the file
+     * @return the future completes with the path of the stored file
+     */
+    Future<Path> requestFile(final Path file) {
+        return transferHandler.requestFile(channel, file.getFileName().toString());
     }
 
     void deleteFile(final String attachment) {
         try {
-            channel.writeAndFlush(encrypt(DELETE + Paths.get(attachment).getFileName()) + EOL_DELIMITER).sync();
+            transferHandler.writeFrame(channel, TransferCodec.encodeName(TransferCodec.DELETE,
+                    Paths.get(attachment).getFileName().toString())).sync();
         } catch (final InterruptedException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
             Thread.currentThread().interrupt();
         }
     }
 
-    Future<Void> sendFile(final Path file) {
+    /**
+     * Sends a file to the server.  The content is not transferred if the server already holds it.
+     *
+     * @param file the file
+     * @param hash hex encoded hash of the file content
+     * @return the future completes once the server has received the file, {@code null} if the path is not valid
+     */
+    Future<Void> sendFile(final Path file, final String hash) {
         if (transferHandler != null) {
-            return transferHandler.sendFile(channel, file.toString());
+            return transferHandler.offerFile(channel, file, hash);
         }
 
         return null;
@@ -166,17 +162,12 @@ class AttachmentTransferClient {
         @Override
         public void initChannel(final SocketChannel ch) {
 
-            ch.pipeline().addLast(
-                    new DelimiterBasedFrameDecoder(((TRANSFER_BUFFER_SIZE + 2) / 3) * 4 + PATH_MAX,
-                            true, Delimiters.lineDelimiter()),
-
-                    new StringEncoder(CharsetUtil.UTF_8),
-                    new StringDecoder(CharsetUtil.UTF_8),
-
-                    new Base64Encoder(),
-                    new Base64Decoder(),
+            // Encryption applies to the whole stream, so it must be first
+            if (encryptionManager != null) {
+                ch.pipeline().addLast(new EncryptionHandler(encryptionManager, true));
+            }
 
-                    transferHandler);
+            ch.pipeline().addLast(new TransferDecoder(), new ChunkedWriteHandler(), transferHandler);
         }
     }
 }
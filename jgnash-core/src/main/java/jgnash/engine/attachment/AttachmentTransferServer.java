@@ -25,27 +25,19 @@ import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.base64.Base64Decoder;
-import io.netty.handler.codec.base64.Base64Encoder;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.nio.file.Path;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
+import jgnash.net.ServerMetrics;
 import jgnash.util.EncryptionManager;
 
-import static jgnash.engine.attachment.NettyTransferHandler.PATH_MAX;
-import static jgnash.engine.attachment.NettyTransferHandler.TRANSFER_BUFFER_SIZE;
-
 /**
  * File server for attachments.
  *
@@ -57,17 +49,22 @@ public class AttachmentTransferServer {
 
     private final int port;
 
-    private final EventLoopGroup eventLoopGroup = new NioEventLoopGroup();
+    private final EventLoopGroup eventLoopGroup = NettyTransport.newEventLoopGroup("file-server");
+
+    private final EventLoopGroup workerGroup = NettyTransport.newWorkerGroup("file-server");
 
     private final ChannelGroup channelGroup = new DefaultChannelGroup("file-server", GlobalEventExecutor.INSTANCE);
 
-    private final Path attachmentPath;
+    /**
+     * Attachments shared by all connections.  Uploaded content that is already stored is linked, not transferred.
+     */
+    private final AttachmentStore store;
 
     private EncryptionManager encryptionManager = null;
 
     public AttachmentTransferServer(final int port, final Path attachmentPath) {
         this.port = port;
-        this.attachmentPath = attachmentPath;
+        this.store = new AttachmentStore(attachmentPath);
     }
 
     public boolean startServer(final char[] password) {
@@ -80,25 +77,21 @@ public class AttachmentTransferServer {
 
         try {
             ServerBootstrap b = new ServerBootstrap();
-            b.group(eventLoopGroup)
-                    .channel(NioServerSocketChannel.class)
-                    .option(ChannelOption.SO_KEEPALIVE, true)
+            b.group(eventLoopGroup, workerGroup)
+                    .channel(NettyTransport.getServerChannelClass())
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
                     //.handler(new LoggingHandler(LogLevel.INFO))   // for debugging purposes
                     .childHandler(new ChannelInitializer<SocketChannel>() {
 
                         @Override
                         public void initChannel(final SocketChannel ch) {
 
-                            ch.pipeline().addLast(
-                                    new DelimiterBasedFrameDecoder(((TRANSFER_BUFFER_SIZE + 2) / 3) * 4 + PATH_MAX,
-                                            true, Delimiters.lineDelimiter()),
-
-                                    new StringEncoder(CharsetUtil.UTF_8),
-                                    new StringDecoder(CharsetUtil.UTF_8),
-
-                                    new Base64Encoder(),
-                                    new Base64Decoder(),
+                            // Encryption applies to the whole stream, so it must be first
+                            if (encryptionManager != null) {
+                                ch.pipeline().addLast(new EncryptionHandler(encryptionManager, false));
+                            }
 
+                            ch.pipeline().addLast(new TransferDecoder(), new ChunkedWriteHandler(),
                                     new ServerTransferHandler());
                         }
                     });
@@ -109,6 +102,8 @@ public class AttachmentTransferServer {
             if (future.isDone() && future.isSuccess()) {
                 result = true;
                 logger.info("File Transfer Server started successfully");
+
+                ServerMetrics.getInstance().registerServer("file-server", channelGroup::size, null);
             } else {
                 logger.info("Failed to start the File Transfer Server");
             }
@@ -125,6 +120,9 @@ public class AttachmentTransferServer {
             channelGroup.close().sync();
 
             eventLoopGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+
+            ServerMetrics.getInstance().unregisterServer("file-server");
 
             logger.info("File Transfer Server stopped");
         } catch (final InterruptedException e) {
@@ -135,7 +133,7 @@ public class AttachmentTransferServer {
     private final class ServerTransferHandler extends NettyTransferHandler {
 
         ServerTransferHandler() {
-            super(attachmentPath, encryptionManager);
+            super(store, encryptionManager != null);
         }
 
         @Override
@@ -144,5 +142,19 @@ public class AttachmentTransferServer {
 
             logger.log(Level.INFO, "Remote connection from: {0}", ctx.channel().remoteAddress());
         }
+
+        @Override
+        void contentReceived(final long bytes) {
+            if (ServerMetrics.getInstance().isEnabled()) {
+                ServerMetrics.getInstance().recordAttachmentBytesIn(bytes);
+            }
+        }
+
+        @Override
+        void contentSent(final long bytes) {
+            if (ServerMetrics.getInstance().isEnabled()) {
+                ServerMetrics.getInstance().recordAttachmentBytesOut(bytes);
+            }
+        }
     }
 }
@@ -18,30 +18,40 @@
 package jgnash.engine.attachment;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
+import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
-import java.time.Duration;
-import java.time.LocalDateTime;
+import java.nio.file.attribute.UserPrincipal;
+import java.nio.file.attribute.UserPrincipalNotFoundException;
 import java.util.EnumSet;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import jgnash.util.FileUtils;
 import jgnash.resource.util.OS;
 
 /**
  * Attachment handler for a remote database.
+ * <p>
+ * Attachments are cached on disk by the SHA-256 hash of their content.  The cache is kept between sessions for each
+ * server in the jGnash directory of the user and is bounded, the least recently used attachments are removed first.
+ * The cache directory must be owned by the user and is only accessible by the user.  A cached attachment is validated
+ * against its hash instead of being requested again, and content the server already holds is not sent again.
  *
  * @author Craig Cavanaugh
  */
@@ -49,7 +59,21 @@ public class DistributedAttachmentManager implements AttachmentManager {
 
     private static final String TEMP_ATTACHMENT_PATH = "jGnashTemp-";
 
-    private static final int TRANSFER_TIMEOUT = 5000;
+    private static final String CACHE_ATTACHMENT_PATH = "attachments";
+
+    /**
+     * Maximum size of the attachment cache in bytes.
+     */
+    private static final long CACHE_SIZE = 256L * 1024 * 1024;
+
+    private static final String LOCK_FILE = ".lock";
+
+    private static final int TRANSFER_TIMEOUT_SECONDS = 60;
+
+    private static final Set<PosixFilePermission> OWNER_PERMISSIONS = EnumSet.of(PosixFilePermission.OWNER_READ,
+            PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE);
+
+    private static final Logger logger = Logger.getLogger(DistributedAttachmentManager.class.getName());
 
     private final ExecutorService executorService = Executors.newCachedThreadPool();
 
@@ -58,9 +82,20 @@ public class DistributedAttachmentManager implements AttachmentManager {
     private final int port;
 
     /**
-     * Path to temporary attachment cache location.
+     * Path to the attachment cache location.
      */
-    private Path tempAttachmentPath;
+    private Path cachePath;
+
+    /**
+     * {@code true} if the cache is a temporary location that is removed at disconnect.
+     */
+    private boolean temporaryCache;
+
+    private FileChannel lockChannel;
+
+    private FileLock cacheLock;
+
+    private AttachmentStore store;
 
     private AttachmentTransferClient fileClient;
 
@@ -69,24 +104,138 @@ public class DistributedAttachmentManager implements AttachmentManager {
         this.port = port;
 
         try {
-            if (!OS.isSystemWindows()) {
-                final EnumSet<PosixFilePermission> permissions = EnumSet.of(PosixFilePermission.OWNER_READ,
-                        PosixFilePermission.OWNER_WRITE, PosixFilePermission.OWNER_EXECUTE,
-                        PosixFilePermission.GROUP_READ, PosixFilePermission.GROUP_WRITE);
+            cachePath = createDirectory(getCacheDirectory(host, port));
+
+            // the cache may only be used by the user and by one connection at a time
+            if (!isOwnedByUser(cachePath)) {
+                logger.log(Level.WARNING, "The attachment cache is not owned by the user, using a temporary "
+                        + "location: {0}", cachePath);
 
-                final FileAttribute<Set<PosixFilePermission>> attr = PosixFilePermissions.asFileAttribute(permissions);
+                cachePath = createDirectory(null);
+                temporaryCache = true;
+            } else if (!lockCache()) {
+                logger.info("The attachment cache is in use, using a temporary location");
 
-                tempAttachmentPath = Files.createTempDirectory(TEMP_ATTACHMENT_PATH, attr);
-            } else {    // windows cannot handle posix permissions
-                tempAttachmentPath = Files.createTempDirectory(TEMP_ATTACHMENT_PATH);
+                cachePath = createDirectory(null);
+                temporaryCache = true;
             }
 
-            fileClient = new AttachmentTransferClient(tempAttachmentPath);
+            store = new AttachmentStore(cachePath, CACHE_SIZE);
+            fileClient = new AttachmentTransferClient(store);
         } catch (final IOException e) {
-            Logger.getLogger(DistributedAttachmentManager.class.getName()).log(Level.SEVERE, e.getLocalizedMessage(), e);
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
     }
 
+    /**
+     * Returns the attachment cache directory for a server in the jGnash directory of the user.
+     *
+     * @param host server host
+     * @param port server port
+     * @return cache directory
+     */
+    private static Path getCacheDirectory(final String host, final int port) {
+        final Path base;
+
+        if (OS.isSystemWindows()) {
+            base = Paths.get(System.getProperty("user.home"), "AppData", "Local", "jgnash");
+        } else { // unix, osx
+            base = Paths.get(System.getProperty("user.home"), ".jgnash");
+        }
+
+        return base.resolve(CACHE_ATTACHMENT_PATH).resolve((host + "-" + port).replaceAll("[^\\w.-]", "_"));
+    }
+
+    /**
+     * Determines if a directory is owned by the user and only accessible by the user.  Permissions of a directory
+     * owned by the user are corrected.
+     *
+     * @param directory directory to check
+     * @return {@code true} if the directory is owned by the user and is not a link
+     * @throws IOException if an I/O error occurs
+     */
+    private static boolean isOwnedByUser(final Path directory) throws IOException {
+        if (!Files.isDirectory(directory, LinkOption.NOFOLLOW_LINKS)) {
+            return false;
+        }
+
+        if (OS.isSystemWindows()) { // the profile directory is already restricted to the user
+            return true;
+        }
+
+        final UserPrincipal user;
+
+        try {
+            user = directory.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+        } catch (final UserPrincipalNotFoundException e) {
+            logger.log(Level.FINE, e.getLocalizedMessage(), e);
+            return false;
+        }
+
+        if (!user.equals(Files.getOwner(directory, LinkOption.NOFOLLOW_LINKS))) {
+            return false;
+        }
+
+        if (!OWNER_PERMISSIONS.equals(Files.getPosixFilePermissions(directory, LinkOption.NOFOLLOW_LINKS))) {
+            Files.setPosixFilePermissions(directory, OWNER_PERMISSIONS);
+        }
+
+        return true;
+    }
+
+    /**
+     * Creates a directory only accessible by the user.
+     *
+     * @param path directory to create, a new temporary directory is created if {@code null}
+     * @return the directory
+     * @throws IOException if an I/O error occurs
+     */
+    private static Path createDirectory(final Path path) throws IOException {
+        if (!OS.isSystemWindows()) {
+            final FileAttribute<Set<PosixFilePermission>> attr = PosixFilePermissions.asFileAttribute(OWNER_PERMISSIONS);
+
+            return path == null ? Files.createTempDirectory(TEMP_ATTACHMENT_PATH, attr)
+                    : Files.createDirectories(path, attr);
+        }
+
+        // windows cannot handle posix permissions
+        return path == null ? Files.createTempDirectory(TEMP_ATTACHMENT_PATH) : Files.createDirectories(path);
+    }
+
+    private boolean lockCache() {
+        try {
+            lockChannel = FileChannel.open(cachePath.resolve(LOCK_FILE), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+            cacheLock = lockChannel.tryLock();
+        } catch (final IOException | OverlappingFileLockException e) {
+            logger.log(Level.FINE, e.getLocalizedMessage(), e);
+        }
+
+        if (cacheLock == null) {
+            unlockCache();
+        }
+
+        return cacheLock != null;
+    }
+
+    private void unlockCache() {
+        try {
+            if (cacheLock != null) {
+                cacheLock.release();
+            }
+
+            if (lockChannel != null) {
+                lockChannel.close();
+            }
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+
+        cacheLock = null;
+        lockChannel = null;
+    }
+
     /**
      * Add a file attachment.
      * When moving a file, it must be copied and then deleted.  Moves can not be done atomically across file systems
@@ -100,38 +249,50 @@ public class DistributedAttachmentManager implements AttachmentManager {
     @Override
     public boolean addAttachment(final Path path, final boolean copy) throws IOException {
 
-        boolean result = false;
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+
+        final String hash = AttachmentStore.hash(path);
 
         // Transfer the file to the remote location
-        final Future<Void> future = fileClient.sendFile(path);
+        final Future<Void> future = fileClient.sendFile(path, hash);
 
-        // Determine the cache location the file needs to go to so it does not have to be requested
-        final Path newPath = Paths.get(tempAttachmentPath + FileUtils.SEPARATOR + path.getFileName());
+        if (future == null) {   // if null, path was not valid
+            return false;
+        }
 
-        if (future != null) {   // if null, path was not valid
-            try {
-                future.get();  // wait for the transfer to complete
-            } catch (final InterruptedException | ExecutionException e) {
-                Logger.getLogger(DistributedAttachmentManager.class.getName()).log(Level.SEVERE, e.getLocalizedMessage(), e);
-            }
+        try {
+            future.get();  // wait for the transfer to complete
+        } catch (final ExecutionException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return false;
+        } catch (final InterruptedException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
 
-            // Copy or move the file
-            if (copy) {
-                Files.copy(path, newPath, StandardCopyOption.REPLACE_EXISTING);
-            } else {
-                Files.copy(path, newPath, StandardCopyOption.REPLACE_EXISTING);
-                Files.delete(path);
-            }
+        // Place the file in the cache so it does not have to be requested
+        store.copy(path, hash);
 
-            result = true;
+        if (!copy) {
+            Files.delete(path);
         }
 
-        return result;
+        return true;
     }
 
     @Override
     public boolean removeAttachment(final String attachment) {
         fileClient.deleteFile(attachment);
+
+        try {
+            store.delete(Paths.get(attachment).getFileName().toString());
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+
         return true;
     }
 
@@ -139,25 +300,21 @@ public class DistributedAttachmentManager implements AttachmentManager {
     public Future<Path> getAttachment(final String attachment) {
 
         return executorService.submit(() -> {
-            Path path = Paths.get(tempAttachmentPath + FileUtils.SEPARATOR + Paths.get(attachment).getFileName());
 
-            if (Files.notExists(path)) {
-                fileClient.requestFile(Paths.get(attachment));  // Request the file and place in a a temp location
+            // a cached attachment that still matches its hash is used without contacting the server
+            final Path path = store.getValidPath(Paths.get(attachment).getFileName().toString());
 
-                final LocalDateTime start = LocalDateTime.now();
-
-                while (Duration.between(start, LocalDateTime.now()).toMillis() < TRANSFER_TIMEOUT) {
-                    if (Files.exists(path)) {
-                        break;
-                    }
-                }
+            if (path != null) {
+                return path;
             }
 
-            if (Files.notExists(path)) {
-                path = null;
+            // Request the file, it is only transferred if the content is not already cached under another name
+            try {
+                return fileClient.requestFile(Paths.get(attachment)).get(TRANSFER_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            } catch (final ExecutionException | TimeoutException e) {
+                logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+                return null;
             }
-
-            return path;
         });
     }
 
@@ -168,15 +325,23 @@ public class DistributedAttachmentManager implements AttachmentManager {
     public void disconnectFromServer() {
         fileClient.disconnectFromServer();
 
+        store.flush();
+
+        unlockCache();
+
+        if (!temporaryCache) {  // the cache is kept for the next session
+            return;
+        }
+
         // Cleanup before exit
-        try (final DirectoryStream<Path> ds = Files.newDirectoryStream(tempAttachmentPath)) {
+        try (final DirectoryStream<Path> ds = Files.newDirectoryStream(cachePath)) {
             for (final Path p : ds) {
                 Files.delete(p);
             }
 
-            Files.delete(tempAttachmentPath);
+            Files.delete(cachePath);
         } catch (final IOException e) {
-            Logger.getLogger(DistributedAttachmentManager.class.getName()).log(Level.SEVERE, e.getLocalizedMessage(), e);
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
     }
 }
@@ -18,123 +18,180 @@
 package jgnash.engine.attachment;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Base64;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Future;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import jgnash.engine.AttachmentUtils;
-import jgnash.util.EncryptionManager;
-import jgnash.util.FileUtils;
-import jgnash.util.Nullable;
-
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.util.ReferenceCountUtil;
 
 /**
  * Handles the details of bi-directional transfer of files between a client and server.
+ * <p>
+ * The receiving side always drives a transfer by requesting a file from an offset, which is the length of a partial
+ * file left behind by an interrupted transfer.  A file is offered to the remote side, with the hash of its content,
+ * to send it, and a file is queried to have the remote side offer it.  Content already held by the receiving store is
+ * not transferred at all.  File content is written to the channel as a file region when not encrypted, which the
+ * transport may send without copying it through user space, and in chunks for the encryption handler otherwise.
+ * Content is received into a partial file that is checked against the offered hash and renamed once complete.
  *
  * @author Craig Cavanaugh
  */
-@ChannelHandler.Sharable
-class NettyTransferHandler extends SimpleChannelInboundHandler<String> {
+class NettyTransferHandler extends ChannelInboundHandlerAdapter {
 
-    static final String FILE_REQUEST = "<FILE_REQUEST>";
+    static final int LENGTH_FIELD_LENGTH = 4;
 
-    static final String DELETE = "<DELETE>";
+    static final int PATH_MAX = 4096;
 
-    static final String EOL_DELIMITER = "\r\n";
+    static final int MAX_FRAME_LENGTH = PATH_MAX + 1024;
 
-    private static final String FILE_STARTS = "<FILE_STARTS>";
+    private static final int CHUNK_SIZE = 64 * 1024;
 
-    private static final String FILE_ENDS = "<FILE_ENDS>";
+    private static final String PART_EXTENSION = ".part";
 
-    private static final String FILE_CHUNK = "<FILE_CHUNK>";
+    private static final Logger logger = Logger.getLogger(NettyTransferHandler.class.getName());
 
-    private static final String ERROR = "<ERROR>";
+    /**
+     * Files offered to the remote side, keyed by file name.
+     */
+    private final Map<String, Path> offers = new ConcurrentHashMap<>();
 
-    private static final Logger logger = Logger.getLogger(NettyTransferHandler.class.getName());
+    private final Map<String, CompletableFuture<Void>> sendFutures = new ConcurrentHashMap<>();
 
-    static final int TRANSFER_BUFFER_SIZE = 1024; // too large can break netty... bug?
+    private final Map<String, CompletableFuture<Path>> requestFutures = new ConcurrentHashMap<>();
 
-    static final int PATH_MAX = 4096;
+    /**
+     * Keeps the content of a file directly behind its starts frame.
+     */
+    private final Lock sendLock = new ReentrantLock();
+
+    /**
+     * Hash of the content offered by the remote side, keyed by file name, only accessed from the event loop.
+     */
+    private final Map<String, String> offeredHashes = new HashMap<>();
 
-    private final Map<String, Attachment> fileMap = new ConcurrentHashMap<>();
+    private final AttachmentStore store;
 
     private final Path attachmentPath;
 
-    private final EncryptionManager encryptionManager;
+    /**
+     * {@code true} if the connection is encrypted, file regions cannot be used.
+     */
+    private final boolean encrypted;
+
+    /**
+     * File being received, only accessed from the event loop.
+     */
+    private Attachment receiving;
 
     /**
-     * Netty Handler.  The specified path may be a temporary location for clients or a persistent location for servers.
+     * Netty Handler.  The specified store may be a cache for clients or a persistent location for servers.
      *
-     * @param attachmentPath Path for attachments.
-     * @param encryptionManager encryption manager instance
+     * @param store store for attachments.
+     * @param encrypted {@code true} if the connection is encrypted
      */
-    NettyTransferHandler(final Path attachmentPath, @Nullable final EncryptionManager encryptionManager) {
-        Objects.requireNonNull(attachmentPath);
+    NettyTransferHandler(final AttachmentStore store, final boolean encrypted) {
+        Objects.requireNonNull(store);
 
-        this.attachmentPath = attachmentPath;
-        this.encryptionManager = encryptionManager;
+        this.store = store;
+        this.attachmentPath = store.getDirectory();
+        this.encrypted = encrypted;
     }
 
     @Override
-    public void channelRead0(final ChannelHandlerContext ctx, final String msg) {
+    public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
+        if (msg instanceof ByteBuf) {
+            try {
+                writeContent(ctx.channel(), (ByteBuf) msg);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        } else if (msg instanceof byte[]) {
+            processFrame(ctx.channel(), (byte[]) msg);
+        }
+    }
 
-        final String plainMessage;
+    private void processFrame(final Channel channel, final byte[] frame) {
+        final Path fileName = Paths.get(TransferCodec.getName(frame)).getFileName();
 
-        if (encryptionManager != null) {
-            plainMessage = encryptionManager.decrypt(msg);
-        } else {
-            plainMessage = msg;
+        if (fileName == null) {
+            return;
         }
 
-        if (plainMessage.startsWith(FILE_REQUEST)) {
-            sendFile(ctx, attachmentPath + FileUtils.SEPARATOR + plainMessage.substring(FILE_REQUEST.length()));
-        } else if (plainMessage.startsWith(FILE_STARTS)) {
-            openOutputStream(plainMessage.substring(FILE_STARTS.length()));
-        } else if (plainMessage.startsWith(FILE_CHUNK)) {
-            writeOutputStream(plainMessage.substring(FILE_CHUNK.length()));
-        } else if (plainMessage.startsWith(FILE_ENDS)) {
-            closeOutputStream(plainMessage.substring(FILE_ENDS.length()));
-        } else if (plainMessage.startsWith(DELETE)) {
-            deleteFile(plainMessage.substring(FILE_ENDS.length()));
+        final String name = fileName.toString();
+
+        switch (frame[0]) {
+            case TransferCodec.FILE_REQUEST:
+                sendFile(channel, name, TransferCodec.getLong(frame));
+                break;
+            case TransferCodec.FILE_OFFER:
+                receiveOffer(channel, name, TransferCodec.getLong(frame), TransferCodec.getHash(frame));
+                break;
+            case TransferCodec.FILE_QUERY:
+                answerQuery(channel, name);
+                break;
+            case TransferCodec.FILE_STARTS:
+                openFile(channel, name, frame);
+                break;
+            case TransferCodec.FILE_COMPLETE:
+                offers.remove(name);
+                complete(sendFutures.remove(name), null);
+                break;
+            case TransferCodec.DELETE:
+                deleteFile(name);
+                break;
+            case TransferCodec.ERROR:
+                logger.log(Level.WARNING, "Remote transfer failed for: {0}", name);
+                offers.remove(name);
+                offeredHashes.remove(name);
+                fail(sendFutures.remove(name), name);
+                fail(requestFutures.remove(name), name);
+                break;
+            default:
+                break;
         }
     }
 
     private void deleteFile(final String fileName) {
-        Path path = Paths.get(attachmentPath + FileUtils.SEPARATOR + fileName);
-
-        if (Files.exists(path)) {
-            try {
-                Files.delete(path);
-            } catch (final IOException e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-            }
+        try {
+            store.delete(fileName);
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
     }
 
     @Override
     public void channelInactive(final ChannelHandlerContext ctx) {
-        for (Attachment object : fileMap.values()) {
-            try {
-                object.outputStream.close();
-            } catch (IOException e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-            }
+        if (receiving != null) {    // the partial file is kept so the transfer may be resumed
+            receiving.close();
+            receiving = null;
         }
 
+        sendFutures.keySet().forEach(name -> fail(sendFutures.remove(name), name));
+        requestFutures.keySet().forEach(name -> fail(requestFutures.remove(name), name));
+        offers.clear();
+        offeredHashes.clear();
+
         ctx.fireChannelInactive();    // forward to the next handler in the pipeline
     }
 
@@ -145,130 +202,373 @@ class NettyTransferHandler extends SimpleChannelInboundHandler<String> {
         ctx.close();
     }
 
-    private String encrypt(final String message) {
-        if (encryptionManager != null) {
-            return encryptionManager.encrypt(message);
+    ChannelFuture writeFrame(final Channel channel, final byte[] frame) {
+        final ByteBuf buffer = channel.alloc().buffer(LENGTH_FIELD_LENGTH + frame.length);
+
+        buffer.writeInt(frame.length).writeBytes(frame);
+
+        sendLock.lock();
+
+        try {
+            return channel.writeAndFlush(buffer);
+        } finally {
+            sendLock.unlock();
         }
-        return message;
     }
 
     /**
-     * Sends a file across the channel. The Fu
-     * @param channel  Channel to send file through
-     * @param fileName the file name
-     * @return the future of the potentially asynchronous send is returned. A null value is returned if fileName is a path.
+     * Offers a file to the remote side, which then requests it unless it already holds the same content.
+     *
+     * @param channel Channel to send file through
+     * @param path    the file
+     * @param hash    hex encoded hash of the file content
+     * @return the future completes once the remote side has received the file. A null value is returned if the path
+     * is not a file.
      */
-    Future<Void> sendFile(final Channel channel, final String fileName) {
-        Future<Void> future = null;
+    Future<Void> offerFile(final Channel channel, final Path path, final String hash) {
+        if (!Files.isRegularFile(path)) {
+            logger.log(Level.WARNING, "Not a file: {0}", path);
+            return null;
+        }
 
-        Path path = Paths.get(fileName);
+        final String name = path.getFileName().toString();
+        final CompletableFuture<Void> future = new CompletableFuture<>();
 
-        if (Files.exists(path)) {
+        try {
+            final long size = Files.size(path);
 
-            if (Files.isDirectory(path)) {
-                channel.writeAndFlush(encrypt(ERROR + "Not a file: " + path) + EOL_DELIMITER);
-                return null;
+            offers.put(name, path);
+            sendFutures.put(name, future);
+
+            writeFrame(channel, TransferCodec.encodeOffer(name, size, hash));
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return null;
+        }
+
+        return future;
+    }
+
+    /**
+     * Requests a file from the remote side.  The remote side offers the file and the content is only transferred if
+     * the store does not already hold it.  An interrupted transfer is resumed.
+     *
+     * @param channel Channel to request the file through
+     * @param name    the file name
+     * @return the future completes with the stored file
+     */
+    Future<Path> requestFile(final Channel channel, final String name) {
+        return requestFutures.computeIfAbsent(name, k -> {
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.FILE_QUERY, name));
+            return new CompletableFuture<>();
+        });
+    }
+
+    /**
+     * Answers a query by offering the file.
+     *
+     * @param channel Channel to offer the file through
+     * @param name    the file name
+     */
+    private void answerQuery(final Channel channel, final String name) {
+        try {
+            final String hash = store.getHash(name);
+
+            if (hash != null && offerFile(channel, store.resolve(name), hash) != null) {
+                return;
             }
 
-            try (final InputStream inputStream = Files.newInputStream(path)) {
-                channel.writeAndFlush(encrypt(FILE_STARTS + path.getFileName() + ":" + Files.size(path)) + EOL_DELIMITER);
+            logger.log(Level.WARNING, "File not found: {0}", name);
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        }
+
+        writeFrame(channel, TransferCodec.encodeName(TransferCodec.ERROR, name));
+    }
 
-                byte[] bytes = new byte[TRANSFER_BUFFER_SIZE];  // leave room for base 64 expansion
+    /**
+     * Accepts an offered file.  Content already held by the store is linked to the offered name instead of being
+     * transferred, otherwise the file is requested.
+     *
+     * @param channel Channel the file was offered through
+     * @param name    the file name
+     * @param size    size of the file
+     * @param hash    hex encoded hash of the file content
+     */
+    private void receiveOffer(final Channel channel, final String name, final long size, final String hash) {
+        try {
+            Path path = hash.equals(store.getHash(name)) ? store.resolve(name) : null;
 
-                int bytesRead;
+            if (path == null) {
+                final Path existing = store.find(hash);
 
-                while ((bytesRead = inputStream.read(bytes)) != -1) {
-                    if (bytesRead > 0) {
-                        channel.write(encrypt(FILE_CHUNK + path.getFileName() + ':' +
-                                Base64.getEncoder().encodeToString(Arrays.copyOfRange(bytes, 0, bytesRead)))
-                                + EOL_DELIMITER);
-                    }
+                if (existing != null) {
+                    path = store.link(name, existing, hash);
                 }
-                future = channel.writeAndFlush(encrypt(FILE_ENDS + path.getFileName()) + EOL_DELIMITER).sync();
+            }
 
-            } catch (IOException | InterruptedException e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-                Thread.currentThread().interrupt();
+            if (path != null) {
+                writeFrame(channel, TransferCodec.encodeName(TransferCodec.FILE_COMPLETE, name));
+                complete(requestFutures.remove(name), path);
+                return;
             }
-        } else {
-            try {
-                future = channel.writeAndFlush(encrypt(ERROR + "File not found: " + path) + EOL_DELIMITER).sync();
-            } catch (final InterruptedException e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-                Thread.currentThread().interrupt();
+
+            if (!createAttachmentDirectory()) {
+                throw new IOException("Unable to find or create the attachment directory");
             }
+
+            offeredHashes.put(name, hash);
+            writeFrame(channel, TransferCodec.encodeRequest(name, getResumeOffset(name, size)));
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.ERROR, name));
+            fail(requestFutures.remove(name), name);
+        }
+    }
+
+    private void sendFile(final Channel channel, final String name, final long offset) {
+        final Path path = offers.getOrDefault(name, attachmentPath.resolve(name));
+
+        if (!Files.isRegularFile(path)) {
             logger.log(Level.WARNING, "File not found: {0}", path);
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.ERROR, name));
+            return;
         }
 
-        return future;
+        FileChannel fileChannel = null;
+
+        try {
+            fileChannel = FileChannel.open(path, StandardOpenOption.READ);
+
+            final long size = fileChannel.size();
+            final long start = offset <= size ? offset : 0;
+
+            final Object content = encrypted ? new ChunkedNioFile(fileChannel, start, size - start, CHUNK_SIZE)
+                    : new DefaultFileRegion(fileChannel, start, size - start);
+
+            sendLock.lock();
+
+            try {
+                writeFrame(channel, TransferCodec.encodeStarts(name, size, start));
+                channel.writeAndFlush(content);
+            } finally {
+                sendLock.unlock();
+            }
+
+            contentSent(size - start);
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+
+            closeQuietly(fileChannel);
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.ERROR, name));
+        }
     }
 
-    private void sendFile(final ChannelHandlerContext ctx, final String msg) {
-        sendFile(ctx.channel(), msg);
+    /**
+     * Lazy creation of the attachment path if needed.
+     *
+     * @return {@code true} if the directory exists
+     */
+    private boolean createAttachmentDirectory() {
+        try {
+            Files.createDirectories(attachmentPath);
+            return true;
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return false;
+        }
+    }
+
+    /**
+     * Returns the length of a partial file that may be resumed.
+     *
+     * @param name file name
+     * @param size size of the complete file if known
+     * @return offset to resume from
+     */
+    private long getResumeOffset(final String name, final long size) {
+        final Path part = attachmentPath.resolve(name + PART_EXTENSION);
+
+        try {
+            if (Files.isRegularFile(part) && Files.size(part) <= size) {
+                return Files.size(part);
+            }
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+
+        return 0;
     }
 
-    private void closeOutputStream(final String msg) {
-        Attachment attachment = fileMap.get(msg);
+    private void openFile(final Channel channel, final String name, final byte[] frame) {
+        final long size = TransferCodec.getLong(frame);
+        final long offset = TransferCodec.getOffset(frame);
+
+        final Path part = attachmentPath.resolve(name + PART_EXTENSION);
+
+        FileChannel fileChannel = null;
 
         try {
-            attachment.outputStream.close();
-            fileMap.remove(msg);
+            if (!createAttachmentDirectory()) {
+                throw new IOException("Unable to find or create the attachment directory");
+            }
+
+            if (offset > 0 && (Files.notExists(part) || Files.size(part) < offset)) {
+                throw new IOException("Unable to resume the transfer of " + name);
+            }
+
+            fileChannel = FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            fileChannel.truncate(offset);
         } catch (final IOException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+
+            closeQuietly(fileChannel);
+            fileChannel = null;     // the content is discarded
         }
 
-        if (attachment.path.toFile().length() != attachment.fileSize) {
-            logger.severe("Invalid file length");
+        receiving = new Attachment(name, part, fileChannel, size, offset);
+
+        if (offset == size) {
+            finishFile(channel);
         }
     }
 
-    private void writeOutputStream(final String msg) {
-        String[] msgParts = msg.split(":");
+    private void writeContent(final Channel channel, final ByteBuf content) {
+        final Attachment attachment = receiving;
 
-        Attachment attachment = fileMap.get(msgParts[0]);
+        if (attachment == null) {
+            return;
+        }
+
+        final int length = content.readableBytes();
 
-        if (attachment != null) {
+        contentReceived(length);
+
+        if (attachment.fileChannel != null) {
             try {
-                attachment.outputStream.write(Base64.getDecoder().decode(msgParts[1]));
+                final ByteBuffer buffer = content.nioBuffer();
+
+                long position = attachment.position;
+
+                while (buffer.hasRemaining()) {
+                    position += attachment.fileChannel.write(buffer, position);
+                }
             } catch (final IOException e) {
                 logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+                attachment.close();
             }
         }
+
+        attachment.position += length;
+
+        if (attachment.position == attachment.size) {
+            finishFile(channel);
+        }
     }
 
-    private void openOutputStream(final String msg) {
-        String[] msgParts = msg.split(":");
+    /**
+     * Called as file content is received.
+     *
+     * @param bytes number of bytes received
+     */
+    void contentReceived(final long bytes) {
+        // nothing to do by default
+    }
 
-        final String fileName = msgParts[0];
-        final long fileLength = Long.parseLong(msgParts[1]);
+    /**
+     * Called when file content has been handed to the channel for sending.
+     *
+     * @param bytes number of bytes to be sent
+     */
+    void contentSent(final long bytes) {
+        // nothing to do by default
+    }
 
-        final Path filePath = Paths.get(attachmentPath + FileUtils.SEPARATOR + fileName);
+    private void finishFile(final Channel channel) {
+        final Attachment attachment = receiving;
+        receiving = null;
 
-        // Lazy creation of the attachment path if needed
-        if (!AttachmentUtils.createAttachmentDirectory(attachmentPath)) {
-            logger.severe("Unable to find or create the attachment directory");
-            return;
-        }
+        final String offeredHash = offeredHashes.remove(attachment.name);
 
         try {
-            fileMap.put(fileName, new Attachment(filePath, fileLength));
-        } catch (IOException e) {
+            if (attachment.fileChannel == null) {
+                throw new IOException("Failed to receive " + attachment.name);
+            }
+
+            attachment.fileChannel.close();
+
+            final Path path = attachmentPath.resolve(attachment.name);
+
+            if (Files.size(attachment.part) != attachment.size) {
+                throw new IOException("Invalid file length");
+            }
+
+            final String hash = AttachmentStore.hash(attachment.part);
+
+            if (!hash.equals(offeredHash)) {
+                Files.delete(attachment.part);     // a corrupt partial file must not be resumed
+                throw new IOException("Content does not match the offered hash: " + attachment.name);
+            }
+
+            Files.move(attachment.part, path, StandardCopyOption.REPLACE_EXISTING);
+            store.add(attachment.name, hash);
+
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.FILE_COMPLETE, attachment.name));
+            complete(requestFutures.remove(attachment.name), path);
+        } catch (final IOException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+
+            writeFrame(channel, TransferCodec.encodeName(TransferCodec.ERROR, attachment.name));
+            fail(requestFutures.remove(attachment.name), attachment.name);
+        }
+    }
+
+    private static <T> void complete(final CompletableFuture<T> future, final T value) {
+        if (future != null) {
+            future.complete(value);
+        }
+    }
+
+    private static void fail(final CompletableFuture<?> future, final String name) {
+        if (future != null) {
+            future.completeExceptionally(new IOException("Transfer failed for: " + name));
+        }
+    }
+
+    private static void closeQuietly(final FileChannel fileChannel) {
+        if (fileChannel != null) {
+            try {
+                fileChannel.close();
+            } catch (final IOException e) {
+                logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            }
         }
     }
 
     private static class Attachment {
-        final Path path;
+        final String name;
+
+        final Path part;
 
-        final OutputStream outputStream;
+        final long size;
 
-        final long fileSize;
+        FileChannel fileChannel;
 
-        private Attachment(final Path path, long fileSize) throws IOException {
-            this.path = path;
-            outputStream = Files.newOutputStream(path);
+        long position;
+
+        private Attachment(final String name, final Path part, final FileChannel fileChannel, final long size,
+                           final long position) {
+            this.name = name;
+            this.part = part;
+            this.fileChannel = fileChannel;
+            this.size = size;
+            this.position = position;
+        }
 
-            this.fileSize = fileSize;
+        void close() {
+            closeQuietly(fileChannel);
+            fileChannel = null;
         }
     }
 }
@@ -0,0 +1,180 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.attachment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import jgnash.util.NotNull;
+
+/**
+ * Binary encoding of the attachment transfer control frames.
+ * <p>
+ * Every frame starts with a type byte and ends with the UTF-8 file name:
+ * <pre>
+ *     request     long offset to start from, name
+ *     offer       long file size, SHA-256 hash of the content, name
+ *     starts      long file size, long offset, name
+ *     complete    name
+ *     delete      name
+ *     error       name
+ *     query       name
+ * </pre>
+ * A starts frame is followed by the raw file content from the offset to the end of the file.
+ * A query is answered with an offer, or an error if the file does not exist.
+ *
+ * @author Craig Cavanaugh
+ */
+final class TransferCodec {
+
+    static final byte FILE_REQUEST = 1;
+
+    static final byte FILE_OFFER = 2;
+
+    static final byte FILE_STARTS = 3;
+
+    static final byte FILE_COMPLETE = 4;
+
+    static final byte DELETE = 5;
+
+    static final byte ERROR = 6;
+
+    static final byte FILE_QUERY = 7;
+
+    private static final int LONG_HEADER = 1 + Long.BYTES;
+
+    private static final int OFFER_HEADER = LONG_HEADER + AttachmentStore.HASH_LENGTH;
+
+    private static final int STARTS_HEADER = 1 + Long.BYTES * 2;
+
+    private TransferCodec() {
+        // utility class
+    }
+
+    static byte[] encodeRequest(@NotNull final String name, final long offset) {
+        return encodeLong(FILE_REQUEST, offset, name);
+    }
+
+    static byte[] encodeOffer(@NotNull final String name, final long size, @NotNull final String hash) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(OFFER_HEADER + bytes.length).put(FILE_OFFER).putLong(size)
+                .put(AttachmentStore.fromHex(hash)).put(bytes).array();
+    }
+
+    static byte[] encodeStarts(@NotNull final String name, final long size, final long offset) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(STARTS_HEADER + bytes.length).put(FILE_STARTS).putLong(size).putLong(offset)
+                .put(bytes).array();
+    }
+
+    static byte[] encodeName(final byte type, @NotNull final String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(1 + bytes.length).put(type).put(bytes).array();
+    }
+
+    private static byte[] encodeLong(final byte type, final long value, final String name) {
+        final byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(LONG_HEADER + bytes.length).put(type).putLong(value).put(bytes).array();
+    }
+
+    /**
+     * Returns the offset of a request frame or the size of an offer or starts frame.
+     *
+     * @param frame decoded frame
+     * @return offset or size
+     */
+    static long getLong(@NotNull final byte[] frame) {
+        return ByteBuffer.wrap(frame).getLong(1);
+    }
+
+    static long getOffset(@NotNull final byte[] frame) {
+        return ByteBuffer.wrap(frame).getLong(1 + Long.BYTES);
+    }
+
+    /**
+     * Returns the content hash of an offer frame.
+     *
+     * @param frame decoded offer frame
+     * @return hex encoded hash
+     */
+    static String getHash(@NotNull final byte[] frame) {
+        return AttachmentStore.toHex(Arrays.copyOfRange(frame, LONG_HEADER, OFFER_HEADER));
+    }
+
+    /**
+     * Returns the number of file bytes that follow a starts frame.
+     *
+     * @param frame decoded starts frame
+     * @return byte count
+     */
+    static long getRemaining(@NotNull final byte[] frame) {
+        return getLong(frame) - getOffset(frame);
+    }
+
+    static String getName(@NotNull final byte[] frame) {
+        final int start = getHeaderLength(frame);
+
+        return new String(frame, start, frame.length - start, StandardCharsets.UTF_8);
+    }
+
+    private static int getHeaderLength(final byte[] frame) {
+        switch (frame[0]) {
+            case FILE_REQUEST:
+                return LONG_HEADER;
+            case FILE_OFFER:
+                return OFFER_HEADER;
+            case FILE_STARTS:
+                return STARTS_HEADER;
+            default:
+                return 1;
+        }
+    }
+
+    /**
+     * Checks a frame is complete for its type.
+     *
+     * @param frame decoded frame
+     * @return {@code true} if the frame may be decoded
+     */
+    static boolean isValid(final byte[] frame) {
+        if (frame == null || frame.length == 0) {
+            return false;
+        }
+
+        switch (frame[0]) {
+            case FILE_REQUEST:
+                return frame.length > LONG_HEADER && getLong(frame) >= 0;
+            case FILE_OFFER:
+                return frame.length > OFFER_HEADER && getLong(frame) >= 0;
+            case FILE_STARTS:
+                return frame.length > STARTS_HEADER && getOffset(frame) >= 0 && getRemaining(frame) >= 0;
+            case FILE_COMPLETE:
+            case DELETE:
+            case ERROR:
+            case FILE_QUERY:
+                return frame.length > 1;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.attachment;
+
+import java.util.List;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+
+/**
+ * Splits the inbound stream into control frames and file content.
+ * <p>
+ * Control frames are length prefixed and are passed on as {@code byte[]}.  The file content following a
+ * starts frame is not framed and is passed on as {@code ByteBuf} slices, as it arrives, until the length announced
+ * by the starts frame has been read.
+ *
+ * @author Craig Cavanaugh
+ */
+class TransferDecoder extends ByteToMessageDecoder {
+
+    /**
+     * Bytes of file content still expected.
+     */
+    private long remaining;
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out) {
+        if (remaining > 0) {
+            final int length = (int) Math.min(remaining, in.readableBytes());
+
+            if (length > 0) {
+                out.add(in.readRetainedSlice(length));
+                remaining -= length;
+            }
+            return;
+        }
+
+        if (in.readableBytes() < NettyTransferHandler.LENGTH_FIELD_LENGTH) {
+            return;
+        }
+
+        final int length = in.getInt(in.readerIndex());
+
+        if (length <= 0 || length > NettyTransferHandler.MAX_FRAME_LENGTH) {
+            throw new CorruptedFrameException("Invalid frame length: " + length);
+        }
+
+        if (in.readableBytes() < NettyTransferHandler.LENGTH_FIELD_LENGTH + length) {
+            return;
+        }
+
+        in.skipBytes(NettyTransferHandler.LENGTH_FIELD_LENGTH);
+
+        final byte[] frame = new byte[length];
+        in.readBytes(frame);
+
+        if (!TransferCodec.isValid(frame)) {
+            throw new CorruptedFrameException("Invalid frame");
+        }
+
+        if (frame[0] == TransferCodec.FILE_STARTS) {
+            remaining = TransferCodec.getRemaining(frame);
+        }
+
+        out.add(frame);
+    }
+}
@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Objects;
 
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.Column;
 import javax.persistence.Entity;
@@ -45,6 +46,7 @@ import jgnash.util.NotNull;
  */
 @SuppressWarnings("JpaDataSourceORMInspection")
 @Entity
+@Cacheable
 public class Budget extends StoredObject implements Comparable<Budget>, Cloneable {
 
     /**
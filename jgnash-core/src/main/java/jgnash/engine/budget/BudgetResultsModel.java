@@ -682,6 +682,21 @@ public class BudgetResultsModel implements MessageListener {
 
     @Override
     public void messagePosted(final Message message) {
+        processMessage(message);
+
+        proxy.forwardMessage(message);
+    }
+
+    @Override
+    public void messagesPosted(final List<Message> messages) {
+        for (final Message message : messages) {
+            processMessage(message);
+        }
+
+        proxy.forwardMessages(messages);
+    }
+
+    private void processMessage(final Message message) {
         switch (message.getEvent()) {
             case ACCOUNT_ADD:
             case ACCOUNT_MODIFY:
@@ -703,7 +718,5 @@ public class BudgetResultsModel implements MessageListener {
                 break;
             default:
         }
-
-        proxy.forwardMessage(message);
     }
 }
@@ -18,6 +18,9 @@
 package jgnash.engine.concurrent;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -25,39 +28,50 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.util.ReferenceCountUtil;
 
-import java.text.MessageFormat;
-import java.util.HashMap;
+import java.io.IOException;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.net.ConnectionFactory;
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
 import jgnash.util.EncryptionManager;
 import jgnash.util.NotNull;
 
 /**
  * Lock manager for distributed engine instances.
+ * <p>
+ * Shared locks are leased: the first local reader acquires a read lock on the server on behalf of the whole manager
+ * and the lease is kept after the local readers are done, so further reads only use the local lock.  When a writer
+ * from another client is waiting, the server revokes the lease and it is released as soon as the local readers are
+ * done.  Only readers holding the local lock count against the lease; a reader queued behind a local writer must not
+ * delay a revoke, as that writer may itself be waiting on the server for another client's lease.  Exclusive locks are
+ * held remotely for the manager as well, the local lock keeps the threads of this instance in order.
+ * <p>
+ * A request for a lock is waited for as long as the connection to the server is open; proceeding without the lock
+ * would break exclusion.
+ * <p>
+ * Requests to the server are pipelined: each request is tagged with an id and the calling thread only waits for the
+ * matching response, so requests from many threads may be in flight together.
  *
  * @author Craig Cavanaugh
  */
@@ -67,18 +81,14 @@ public class DistributedLockManager implements LockManager {
 
     private final Map<String, DistributedReadWriteLock> lockMap = new ConcurrentHashMap<>();
 
-    private final Map<String, CountDownLatch> latchMap = new HashMap<>();
-
-    private final Lock latchLock = new ReentrantLock();
-
     /**
-     * lock_action, lock_id, thread_id, lock_type.
+     * Requests waiting for a response from the server, keyed by request id.
      */
-    private static final String PATTERN = "{0},{1},{2},{3}";
+    private final Map<Integer, CompletableFuture<Byte>> pendingRequests = new ConcurrentHashMap<>();
 
-    static final String UUID_PREFIX = "UUID:";
+    private final AtomicInteger requestCounter = new AtomicInteger();
 
-    private NioEventLoopGroup eventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
 
     private final int port;
 
@@ -86,16 +96,14 @@ public class DistributedLockManager implements LockManager {
 
     private Channel channel;
 
-    private static final String EOL_DELIMITER = "\r\n";
-
     private final ExecutorService executorService = Executors.newCachedThreadPool(new LockManagerThreadFactory());
 
     private EncryptionManager encryptionManager = null;
 
     /**
-     * Unique id to differentiate remote threads.
+     * Unique id to identify this lock manager with the server.
      */
-    private static final String uuid = UUID.randomUUID().toString();
+    private final String uuid = UUID.randomUUID().toString();
 
     static {
         logger.setLevel(Level.INFO);
@@ -106,13 +114,6 @@ public class DistributedLockManager implements LockManager {
         this.port = port;
     }
 
-    private String encrypt(final String message) {
-        if (encryptionManager != null) {
-            return encryptionManager.encrypt(message);
-        }
-        return message;
-    }
-
     /**
      * Starts the connection with the lock server.
      *
@@ -129,10 +130,10 @@ public class DistributedLockManager implements LockManager {
 
         final Bootstrap bootstrap = new Bootstrap();
 
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newClientGroup("lock-client");
 
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.getChannelClass())
                 .handler(new Initializer())
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, ConnectionFactory.getConnectionTimeout() * 1000)
                 .option(ChannelOption.SO_KEEPALIVE, true);
@@ -141,7 +142,8 @@ public class DistributedLockManager implements LockManager {
             // Start the connection attempt.
             channel = bootstrap.connect(host, port).sync().channel();
 
-            channel.writeAndFlush(encrypt(UUID_PREFIX + uuid) + EOL_DELIMITER).sync();   // send this channels uuid
+            // send this channels uuid
+            channel.writeAndFlush(Unpooled.wrappedBuffer(LockCodec.encodeHello(uuid))).sync();
 
             result = true;
             logger.info("Connection made with Distributed Lock Server");
@@ -178,93 +180,73 @@ public class DistributedLockManager implements LockManager {
         return lockMap.computeIfAbsent(lockId, k -> new DistributedReadWriteLock(lockId));
     }
 
-    private CountDownLatch getLatch(final String lockMessage) {
-        latchLock.lock();
-
-        try {
-            return latchMap.computeIfAbsent(lockMessage, k -> new CountDownLatch(1));
-        } finally {
-            latchLock.unlock();
-        }
+    private void lock(final String lockId, final byte type) {
+        changeLockState(lockId, type, LockCodec.LOCK);
     }
 
-    private void lock(final String lockId, final String type) {
-        changeLockState(lockId, type, DistributedLockServer.LOCK);
+    private void unlock(final String lockId, final byte type) {
+        changeLockState(lockId, type, LockCodec.UNLOCK);
     }
 
-    private void unlock(final String lockId, final String type) {
-        changeLockState(lockId, type, DistributedLockServer.UNLOCK);
-    }
-
-    private void changeLockState(final String lockId, final String type, final String lockState) {
-        final String threadId = uuid + '-' + Thread.currentThread().getId();
-        final String lockMessage = MessageFormat.format(PATTERN, lockState, lockId, threadId, type);
-
-        final CountDownLatch responseLatch = getLatch(lockMessage);
+    private void changeLockState(final String lockId, final byte type, final byte action) {
+        final int requestId = requestCounter.incrementAndGet();
+        final CompletableFuture<Byte> response = new CompletableFuture<>();
 
-        //noinspection SynchronizationOnLocalVariableOrMethodParameter
-        synchronized (responseLatch) {   // synchronize on the lock to prevent concurrency errors
+        pendingRequests.put(requestId, response);
 
-            boolean result = false;
-
-            try {
-
-                // send the message to the server and wait until it if flushed
-                channel.writeAndFlush(encrypt(lockMessage) + EOL_DELIMITER).sync();
-
-                for (int i = 0; i < 2; i++) {
-                    result = responseLatch.await(45L, TimeUnit.SECONDS);
-
-                    if (!result) {
-                        logger.log(Level.WARNING, "Excessive wait for release of the lock latch for: {0}", lockId);
-                    } else {
-                        break;
-                    }
-                }
-
-                if (!result) {  // check for a failed release or deadlock
-                    logger.log(Level.SEVERE, "Failed to release the lock latch for: {0}", lockId);
-
-                    latchLock.lock();
-
-                    try {
-                        responseLatch.countDown();  // force a countdown to occur
-                        latchMap.remove(lockId);    // force removal
-                    } finally {
-                        latchLock.unlock();
+        try {
+            // requests are pipelined, only the response is waited for
+            channel.writeAndFlush(Unpooled.wrappedBuffer(LockCodec.encodeRequest(requestId, action, type, lockId)))
+                    .addListener(future -> {
+                        if (!future.isSuccess()) {
+                            response.completeExceptionally(future.cause());
+                        }
+                    });
+
+            while (true) {
+                try {
+                    if (response.get(45L, TimeUnit.SECONDS) != LockCodec.STATUS_OK) {
+                        logger.log(Level.WARNING, "The lock server failed a request for: {0}", lockId);
                     }
+                    return;
+                } catch (final TimeoutException e) {
+                    logger.log(Level.WARNING, "Excessive wait for a response from the lock server for: {0}", lockId);
                 }
-            } catch (InterruptedException e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
             }
+        } catch (final InterruptedException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        } finally {
+            pendingRequests.remove(requestId);
         }
     }
 
-    private void processMessage(final String lockMessage) {
-
-        final String plainMessage;
-
-        if (encryptionManager != null) {
-            plainMessage = encryptionManager.decrypt(lockMessage);
-        } else {
-            plainMessage = lockMessage;
+    private void processFrame(final byte[] frame) {
+        if (!LockCodec.isValid(frame)) {
+            logger.warning("Discarded an invalid frame from the lock server");
+            return;
         }
 
-        //logger.info(plainMessage);
-
-        /* lock_action, lock_id, thread_id, lock_type */
-        // unlock,account,3456384756384563,read
-        // lock,account,3456384756384563,write
+        switch (frame[0]) {
+            case LockCodec.RESPONSE_FRAME:
+                final CompletableFuture<Byte> response = pendingRequests.get(LockCodec.getRequestId(frame));
 
-        latchLock.lock();
-
-        try {
-            final CountDownLatch responseLatch = getLatch(plainMessage);
+                if (response != null) {
+                    response.complete(LockCodec.getStatus(frame));
+                }
+                break;
+            case LockCodec.REVOKE_FRAME:
+                // a writer on another client is waiting for a lease to be given up, this may block
+                final DistributedReadWriteLock lock = lockMap.get(LockCodec.decodeRevoke(frame));
 
-            responseLatch.countDown();  // this should release the responseLatch allowing a blocked thread to continue
-            latchMap.remove(plainMessage);    // remove the used up latch
-        } finally {
-            latchLock.unlock();
+                if (lock != null) {
+                    executorService.submit(lock::revokeLease);
+                }
+                break;
+            default:
+                break;
         }
     }
 
@@ -283,10 +265,15 @@ public class DistributedLockManager implements LockManager {
         public void initChannel(final SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
 
-            // Add the text line codec combination first,
-            pipeline.addLast("framer", new DelimiterBasedFrameDecoder(8192, true, Delimiters.lineDelimiter()));
-            pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
-            pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
+            // Encryption applies to the whole stream, so it must be first
+            if (encryptionManager != null) {
+                pipeline.addLast("encryption", new EncryptionHandler(encryptionManager, true));
+            }
+
+            // Add the length prefixed framing next,
+            pipeline.addLast("framer", new LengthFieldBasedFrameDecoder(DistributedLockServer.MAX_FRAME_LENGTH, 0,
+                    DistributedLockServer.LENGTH_FIELD_LENGTH, 0, DistributedLockServer.LENGTH_FIELD_LENGTH));
+            pipeline.addLast("encoder", new LengthFieldPrepender(DistributedLockServer.LENGTH_FIELD_LENGTH));
 
             // and then business logic.
             pipeline.addLast("handler", new ClientHandler());
@@ -301,11 +288,23 @@ public class DistributedLockManager implements LockManager {
 
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-            executorService.submit(() -> {
-                processMessage(msg.toString());
+            final ByteBuf buffer = (ByteBuf) msg;
+
+            try {
+                processFrame(ByteBufUtil.getBytes(buffer));
+            } finally {
+                ReferenceCountUtil.release(buffer);
+            }
+        }
+
+        @Override
+        public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
+            final IOException closed = new IOException("The connection to the lock server was closed");
+
+            // no response will arrive, release the waiting threads
+            pendingRequests.values().forEach(response -> response.completeExceptionally(closed));
 
-                ReferenceCountUtil.release(msg);
-            });
+            super.channelInactive(ctx);
         }
 
         @Override
@@ -324,6 +323,21 @@ public class DistributedLockManager implements LockManager {
 
         private final DistributedReadWriteLock.WriteLock writeLock;
 
+        /**
+         * Number of local read holds using the lease.
+         */
+        private int leaseHolds;
+
+        /**
+         * {@code true} while the server has granted a read lock to this manager.
+         */
+        private boolean leased;
+
+        /**
+         * {@code true} if the server has asked for the lease to be released.
+         */
+        private boolean revoked;
+
         DistributedReadWriteLock(final String lockId) {
             super();
 
@@ -333,6 +347,68 @@ public class DistributedLockManager implements LockManager {
             writeLock = new DistributedReadWriteLock.WriteLock(this);
         }
 
+        /**
+         * Acquires the lease for a local reader holding the local read lock, requesting it from the server if not
+         * already held.
+         */
+        synchronized void acquireLease() {
+
+            // new readers wait for a revoked lease to be given up, reentrant holds must not
+            if (getReadHoldCount() == 1 && !isWriteLockedByCurrentThread()) {
+                while (revoked) {
+                    try {
+                        wait();
+                    } catch (final InterruptedException e) {
+                        logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+                        Thread.currentThread().interrupt();
+                        break;
+                    }
+                }
+            }
+
+            leaseHolds++;
+
+            if (!leased) {
+                DistributedLockManager.this.lock(lockId, LockCodec.LOCK_TYPE_READ);
+                leased = true;
+            }
+        }
+
+        /**
+         * Releases a local reader from the lease.  The lease is kept unless it has been revoked.
+         */
+        synchronized void releaseLease() {
+            leaseHolds--;
+
+            if (leaseHolds == 0 && revoked) {
+                giveUpLease();
+            }
+        }
+
+        /**
+         * Called when the server has requested the lease be released.
+         */
+        synchronized void revokeLease() {
+            if (leased) {
+                if (leaseHolds == 0) {
+                    giveUpLease();
+                } else {
+                    revoked = true;
+                }
+            }
+        }
+
+        private void giveUpLease() {
+            DistributedLockManager.this.unlock(lockId, LockCodec.LOCK_TYPE_READ);
+
+            leased = false;
+            revoked = false;
+
+            notifyAll();
+
+            logger.log(Level.FINE, "Released the read lease for: {0}", lockId);
+        }
+
         @Override
         @NotNull
         public ReentrantReadWriteLock.ReadLock readLock() {
@@ -353,14 +429,14 @@ public class DistributedLockManager implements LockManager {
 
             @Override
             public void lock() {
-                DistributedLockManager.this.lock(lockId, DistributedLockServer.LOCK_TYPE_READ);
-                super.lock();
+                super.lock();   // a reader waiting for the local lock must not hold up a revoke
+                acquireLease();
             }
 
             @Override
             public void unlock() {
-                DistributedLockManager.this.unlock(lockId, DistributedLockServer.LOCK_TYPE_READ);
                 super.unlock();
+                releaseLease();
             }
         }
 
@@ -372,13 +448,13 @@ public class DistributedLockManager implements LockManager {
 
             @Override
             public void lock() {
-                DistributedLockManager.this.lock(lockId, DistributedLockServer.LOCK_TYPE_WRITE);
-                super.lock();
+                super.lock();   // local threads must take turns as the remote lock is held for the manager
+                DistributedLockManager.this.lock(lockId, LockCodec.LOCK_TYPE_WRITE);
             }
 
             @Override
             public void unlock() {
-                DistributedLockManager.this.unlock(lockId, DistributedLockServer.LOCK_TYPE_WRITE);
+                DistributedLockManager.this.unlock(lockId, LockCodec.LOCK_TYPE_WRITE);
                 super.unlock();
             }
         }
@@ -18,21 +18,29 @@
 package jgnash.engine.concurrent;
 
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.net.ConnectionFactory;
-import jgnash.util.EncodeDecode;
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
+import jgnash.net.ServerMetrics;
 import jgnash.util.EncryptionManager;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -40,16 +48,12 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
-import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
-import io.netty.util.CharsetUtil;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.GlobalEventExecutor;
 
@@ -57,6 +61,10 @@ import static jgnash.net.ConnectionFactory.MILLIS_PER_SECOND;
 
 /**
  * Distributed Lock Server.
+ * <p>
+ * Clients exchange length prefixed binary frames encoded by {@link LockCodec}.  Each request carries an id that is
+ * returned with the response, so a client may have many requests in flight on the same connection.  Unlock requests
+ * never block and are answered from the event loop, lock requests are handed to the executor.
  *
  * @author Craig Cavanaugh
  */
@@ -64,28 +72,24 @@ public class DistributedLockServer {
 
     private static final Logger logger = Logger.getLogger(DistributedLockServer.class.getName());
 
-    // there needs to be to 2 threads to ensure order of operations and allow for unlocking without blocking
-    private final ExecutorService executorService = Executors.newFixedThreadPool(2, new LockServerThreadFactory());
+    // lock requests may block until a lease is given up, so unlocking must never wait for a free thread
+    private final ExecutorService executorService = Executors.newCachedThreadPool(new LockServerThreadFactory());
 
     private final ChannelGroup channelGroup = new DefaultChannelGroup("lock-server", GlobalEventExecutor.INSTANCE);
 
-    private NioEventLoopGroup eventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
 
-    private final int port;
-
-    private final Map<String, ReadWriteLock> lockMap = new HashMap<>();
+    private EventLoopGroup workerGroup;
 
-    private final Map<ChannelHandlerContext, String> handlerContextMap = new HashMap<>();
-
-    static final String LOCK = "lock";
+    private final int port;
 
-    static final String UNLOCK = "unlock";
+    private final Map<String, ReadWriteLock> lockMap = new ConcurrentHashMap<>();
 
-    static final String LOCK_TYPE_READ = "READ";
+    private final Map<ChannelHandlerContext, String> handlerContextMap = new ConcurrentHashMap<>();
 
-    static final String LOCK_TYPE_WRITE = "WRITE";
+    static final int MAX_FRAME_LENGTH = 8192;
 
-    private static final String EOL_DELIMITER = "\r\n";
+    static final int LENGTH_FIELD_LENGTH = 4;
 
     private EncryptionManager encryptionManager = null;
 
@@ -93,82 +97,98 @@ public class DistributedLockServer {
         this.port = port;
     }
 
-    private String encrypt(final String message) {
-        if (encryptionManager != null) {
-            return encryptionManager.encrypt(message);
-        }
-        return message;
-    }
-
-    private void processMessage(final ChannelHandlerContext ctx, final String msg) {
-
-        final String message;
-
-        if (encryptionManager != null) {
-            message = encryptionManager.decrypt(msg);
-        } else {
-            message = msg;
-        }
-
-        // Look for a uuid announcement for a channel
-        if (message.startsWith(DistributedLockManager.UUID_PREFIX)) {
-            handlerContextMap.put(ctx, message.substring(DistributedLockManager.UUID_PREFIX.length()));
+    /**
+     * Decodes a frame on the event loop.  Lock requests may block and are handed to the executor, all else is
+     * processed immediately.
+     */
+    private void processFrame(final ChannelHandlerContext ctx, final byte[] frame) {
+        if (!LockCodec.isValid(frame)) {
+            logger.log(Level.WARNING, "Discarded an invalid frame from: {0}", ctx.channel().remoteAddress());
             return;
         }
 
-        /* lock_action, lock_id, thread_id, lock_type */
-        // unlock,account,1194917570,read
-        // lock,account,1194917570,write
-
-        // decode the message into it's parts
-        final String[] strings = EncodeDecode.decodeStringCollection(message).toArray(new String[4]);
+        switch (frame[0]) {
+            case LockCodec.HELLO_FRAME:     // uuid announcement for a channel
+                handlerContextMap.put(ctx, LockCodec.decodeHello(frame));
+                break;
+            case LockCodec.REQUEST_FRAME:
+                if (LockCodec.getAction(frame) == LockCodec.LOCK) {
+                    executorService.submit(() -> processRequest(ctx, frame));
+                } else {
+                    processRequest(ctx, frame);
+                }
+                break;
+            default:
+                break;
+        }
+    }
 
-        final String action = strings[0];
-        final String lockId = strings[1];
-        final String remoteThread = strings[2];
-        final String lockType = strings[3];
+    private void processRequest(final ChannelHandlerContext ctx, final byte[] frame) {
+        final int requestId = LockCodec.getRequestId(frame);
+        final String lockId = LockCodec.getLockId(frame);
+        final String owner = handlerContextMap.get(ctx);
 
-        final ReadWriteLock lock = getLock(lockId);
+        byte status = LockCodec.STATUS_OK;
 
         try {
+            if (owner == null) {
+                throw new IllegalStateException("A lock was requested before the uuid was announced");
+            }
+
+            final ReadWriteLock lock = getLock(lockId);
+            final boolean read = LockCodec.getLockType(frame) == LockCodec.LOCK_TYPE_READ;
 
             // request a lock or unlock.  This may block
-            switch (action) {
-                case LOCK:
-                    switch (lockType) {
-                        case LOCK_TYPE_READ:
-                            lock.lockForRead(remoteThread);
-                            break;
-                        case LOCK_TYPE_WRITE:
-                            lock.lockForWrite(remoteThread);
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
-                case UNLOCK:
-                    switch (lockType) {
-                        case LOCK_TYPE_READ:
-                            lock.unlockRead(remoteThread);
-                            break;
-                        case LOCK_TYPE_WRITE:
-                            lock.unlockWrite(remoteThread);
-                            break;
-                        default:
-                            break;
-                    }
-                    break;
-            }
+            if (LockCodec.getAction(frame) == LockCodec.LOCK) {
+                final long start = System.nanoTime();
+
+                if (read) {
+                    lock.lockForRead(owner);
+                } else {
+                    lock.lockForWrite(owner, reader -> revokeLease(lockId, reader));
+                }
 
-            // return the message as an acknowledgment lock state has changed
-            if (ctx.channel().isOpen()) {
-                ctx.writeAndFlush(encrypt(message) + EOL_DELIMITER).sync();
+                if (ServerMetrics.getInstance().isEnabled()) {
+                    ServerMetrics.getInstance().recordLockWait(lockId, System.nanoTime() - start);
+                }
+            } else {
+                if (read) {
+                    lock.unlockRead(owner);
+                } else {
+                    lock.unlockWrite(owner);
+                }
             }
-        } catch (final Exception e) {
+        } catch (final InterruptedException e) {
+            status = LockCodec.STATUS_FAILED;
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            Thread.currentThread().interrupt();
+        } catch (final RuntimeException e) {
+            status = LockCodec.STATUS_FAILED;
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        }
+
+        // respond to the request as an acknowledgment lock state has changed
+        if (ctx.channel().isOpen()) {
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(LockCodec.encodeResponse(requestId, status)));
         }
     }
 
+    /**
+     * Requests a lock manager give up its read lease so a waiting writer may proceed.
+     *
+     * @param lockId lock id
+     * @param reader uuid of the lock manager holding the lease
+     */
+    private void revokeLease(final String lockId, final String reader) {
+        final byte[] frame = LockCodec.encodeRevoke(lockId);
+
+        handlerContextMap.forEach((ctx, uuid) -> {
+            if (uuid.equals(reader) && ctx.channel().isOpen()) {
+                ctx.writeAndFlush(Unpooled.wrappedBuffer(frame));
+            }
+        });
+    }
+
     private ReadWriteLock getLock(final String lockId) {
         return lockMap.computeIfAbsent(lockId, k -> new ReadWriteLock(lockId));
     }
@@ -181,13 +201,14 @@ public class DistributedLockServer {
             encryptionManager = new EncryptionManager(password);
         }
 
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newEventLoopGroup("lock-server");
+        workerGroup = NettyTransport.newWorkerGroup("lock-server");
 
         final ServerBootstrap bootstrap = new ServerBootstrap();
 
         try {
-            bootstrap.group(eventLoopGroup)
-                    .channel(NioServerSocketChannel.class)
+            bootstrap.group(eventLoopGroup, workerGroup)
+                    .channel(NettyTransport.getServerChannelClass())
                     .childHandler(new Initializer())
                     .childOption(ChannelOption.SO_KEEPALIVE, true);
 
@@ -197,6 +218,8 @@ public class DistributedLockServer {
             if (future.isDone() && future.isSuccess()) {
                 logger.info("Distributed Lock Server started successfully");
                 result = true;
+
+                ServerMetrics.getInstance().registerServer("lock-server", channelGroup::size, null);
             } else {
                 logger.info("Failed to start the Distributed Lock Server");
             }
@@ -213,8 +236,12 @@ public class DistributedLockServer {
             channelGroup.close().sync();
             executorService.shutdown();
             eventLoopGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
 
             eventLoopGroup = null;
+            workerGroup = null;
+
+            ServerMetrics.getInstance().unregisterServer("lock-server");
 
             logger.info("Distributed Lock Server Stopped");
         } catch (final InterruptedException e) {
@@ -270,10 +297,13 @@ public class DistributedLockServer {
 
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-            executorService.submit(() -> {
-                processMessage(ctx, msg.toString());
-                ReferenceCountUtil.release(msg);
-            });
+            final ByteBuf buffer = (ByteBuf) msg;
+
+            try {
+                processFrame(ctx, ByteBufUtil.getBytes(buffer));
+            } finally {
+                ReferenceCountUtil.release(buffer);
+            }
         }
 
         @Override
@@ -289,12 +319,15 @@ public class DistributedLockServer {
         public void initChannel(final SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
 
-            // Add the text line codec combination first,
-            pipeline.addLast("framer", new DelimiterBasedFrameDecoder(8192, true, Delimiters.lineDelimiter()));
+            // Encryption applies to the whole stream, so it must be first
+            if (encryptionManager != null) {
+                pipeline.addLast("encryption", new EncryptionHandler(encryptionManager, false));
+            }
 
-            // the encoder and decoder are static as these are sharable
-            pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
-            pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
+            // Add the length prefixed framing next,
+            pipeline.addLast("framer", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0, LENGTH_FIELD_LENGTH, 0,
+                    LENGTH_FIELD_LENGTH));
+            pipeline.addLast("encoder", new LengthFieldPrepender(LENGTH_FIELD_LENGTH));
 
             // and then business logic.
             pipeline.addLast("handler", new ServerHandler());
@@ -317,9 +350,15 @@ public class DistributedLockServer {
          */
         private final Map<String, Integer> readingThreads = new ConcurrentHashMap<>();
 
+        /**
+         * Time each remote thread was first given its read lock, only maintained while metrics are enabled.
+         */
+        private final Map<String, Long> readStarts = new HashMap<>();
+
         private int writeAccesses = 0;
         private int writeRequests = 0;
         private String writingThread = null;
+        private long writeStart;
 
         private ReadWriteLock(final String id) {
             this.id = id;
@@ -366,13 +405,31 @@ public class DistributedLockServer {
                 wait(ConnectionFactory.getConnectionTimeout() * MILLIS_PER_SECOND * 2);
             }
 
-            readingThreads.put(remoteThread, (getReadHoldCount(remoteThread) + 1));
+            final int holdCount = getReadHoldCount(remoteThread);
+
+            if (holdCount == 0 && ServerMetrics.getInstance().isEnabled()) {
+                readStarts.put(remoteThread, System.nanoTime());
+            }
+
+            readingThreads.put(remoteThread, holdCount + 1);
         }
 
-        synchronized void lockForWrite(final String remoteThread) throws InterruptedException {
+        synchronized void lockForWrite(final String remoteThread, final Consumer<String> revoker)
+                throws InterruptedException {
             writeRequests++;
 
+            final Set<String> revoked = new HashSet<>();
+
             while (!canGrantWriteAccess(remoteThread)) {
+
+                // new readers are blocked by the write request, ask the current readers to give up their leases
+                for (final String reader : readingThreads.keySet()) {
+                    if (!reader.equals(remoteThread) && revoked.add(reader)) {
+                        revoker.accept(reader);
+                    }
+                }
+
+
                 // wait for a maximum of 2X the network timout
                 wait(ConnectionFactory.getConnectionTimeout() * MILLIS_PER_SECOND * 2);
             }
@@ -380,6 +437,10 @@ public class DistributedLockServer {
             writeRequests--;
             writeAccesses++;   // bump, if greater than 1, then the lock is reentrant
             writingThread = remoteThread;
+
+            if (writeAccesses == 1) {
+                writeStart = System.nanoTime();
+            }
         }
 
         synchronized void unlockRead(final String remoteThread) {
@@ -392,6 +453,12 @@ public class DistributedLockServer {
 
             if (holdCount == 1) {
                 readingThreads.remove(remoteThread);
+
+                final Long start = readStarts.remove(remoteThread);
+
+                if (start != null && ServerMetrics.getInstance().isEnabled()) {
+                    ServerMetrics.getInstance().recordLockHold(id, System.nanoTime() - start);
+                }
             } else {
                 readingThreads.put(remoteThread, (holdCount - 1));
             }
@@ -409,6 +476,10 @@ public class DistributedLockServer {
 
             if (writeAccesses == 0) {
                 writingThread = null;
+
+                if (ServerMetrics.getInstance().isEnabled()) {
+                    ServerMetrics.getInstance().recordLockHold(id, System.nanoTime() - writeStart);
+                }
             }
 
             notifyAll();
@@ -432,8 +503,11 @@ public class DistributedLockServer {
 
         private synchronized boolean canGrantWriteAccess(final String remoteThread) {
 
-            if (!readingThreads.isEmpty()) {
-                return false;
+            // a lock manager may upgrade its own lease, the local lock already excludes its readers
+            for (final String reader : readingThreads.keySet()) {
+                if (!reader.equals(remoteThread)) {
+                    return false;
+                }
             }
             if (writingThread == null) {
                 return true;
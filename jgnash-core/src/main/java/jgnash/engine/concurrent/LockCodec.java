@@ -0,0 +1,153 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+import jgnash.util.NotNull;
+
+/**
+ * Binary encoding of the distributed lock protocol.
+ * <p>
+ * Every frame starts with a type byte:
+ * <pre>
+ *     hello       16 bytes, uuid of the lock manager
+ *     request     int request id, byte action, byte lock type, UTF-8 lock id
+ *     response    int request id, byte status
+ *     revoke      UTF-8 lock id
+ * </pre>
+ * Requests are matched to responses by id, so any number of requests may be in flight on a connection.  The owner
+ * of a lock is the lock manager identified by the hello frame of the connection.
+ *
+ * @author Craig Cavanaugh
+ */
+final class LockCodec {
+
+    static final byte HELLO_FRAME = 1;
+
+    static final byte REQUEST_FRAME = 2;
+
+    static final byte RESPONSE_FRAME = 3;
+
+    static final byte REVOKE_FRAME = 4;
+
+    static final byte LOCK = 0;
+
+    static final byte UNLOCK = 1;
+
+    static final byte LOCK_TYPE_READ = 0;
+
+    static final byte LOCK_TYPE_WRITE = 1;
+
+    static final byte STATUS_OK = 0;
+
+    static final byte STATUS_FAILED = 1;
+
+    private static final int REQUEST_HEADER = 1 + Integer.BYTES + 2;
+
+    private LockCodec() {
+        // utility class
+    }
+
+    static byte[] encodeHello(@NotNull final String uuid) {
+        final UUID id = UUID.fromString(uuid);
+
+        return ByteBuffer.allocate(1 + 16).put(HELLO_FRAME).putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits()).array();
+    }
+
+    static String decodeHello(@NotNull final byte[] frame) {
+        final ByteBuffer buffer = ByteBuffer.wrap(frame, 1, frame.length - 1);
+
+        return new UUID(buffer.getLong(), buffer.getLong()).toString();
+    }
+
+    static byte[] encodeRequest(final int requestId, final byte action, final byte lockType,
+                                @NotNull final String lockId) {
+        final byte[] id = lockId.getBytes(StandardCharsets.UTF_8);
+
+        return ByteBuffer.allocate(REQUEST_HEADER + id.length).put(REQUEST_FRAME).putInt(requestId).put(action)
+                .put(lockType).put(id).array();
+    }
+
+    static int getRequestId(@NotNull final byte[] frame) {
+        return ByteBuffer.wrap(frame).getInt(1);
+    }
+
+    static byte getAction(@NotNull final byte[] frame) {
+        return frame[1 + Integer.BYTES];
+    }
+
+    static byte getLockType(@NotNull final byte[] frame) {
+        return frame[2 + Integer.BYTES];
+    }
+
+    static String getLockId(@NotNull final byte[] frame) {
+        return new String(frame, REQUEST_HEADER, frame.length - REQUEST_HEADER, StandardCharsets.UTF_8);
+    }
+
+    static byte[] encodeResponse(final int requestId, final byte status) {
+        return ByteBuffer.allocate(1 + Integer.BYTES + 1).put(RESPONSE_FRAME).putInt(requestId).put(status).array();
+    }
+
+    static byte getStatus(@NotNull final byte[] frame) {
+        return frame[1 + Integer.BYTES];
+    }
+
+    static byte[] encodeRevoke(@NotNull final String lockId) {
+        final byte[] id = lockId.getBytes(StandardCharsets.UTF_8);
+        final byte[] frame = new byte[id.length + 1];
+
+        frame[0] = REVOKE_FRAME;
+        System.arraycopy(id, 0, frame, 1, id.length);
+
+        return frame;
+    }
+
+    static String decodeRevoke(@NotNull final byte[] frame) {
+        return new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Checks a frame is long enough for its type.
+     *
+     * @param frame decoded frame
+     * @return {@code true} if the frame may be decoded
+     */
+    static boolean isValid(final byte[] frame) {
+        if (frame == null || frame.length == 0) {
+            return false;
+        }
+
+        switch (frame[0]) {
+            case HELLO_FRAME:
+                return frame.length == 1 + 16;
+            case REQUEST_FRAME:
+                return frame.length >= REQUEST_HEADER && (getAction(frame) == LOCK || getAction(frame) == UNLOCK)
+                        && (getLockType(frame) == LOCK_TYPE_READ || getLockType(frame) == LOCK_TYPE_WRITE);
+            case RESPONSE_FRAME:
+                return frame.length == 1 + Integer.BYTES + 1;
+            case REVOKE_FRAME:
+                return true;
+            default:
+                return false;
+        }
+    }
+}
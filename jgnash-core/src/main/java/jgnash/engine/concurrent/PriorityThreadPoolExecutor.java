@@ -81,6 +81,15 @@ public class PriorityThreadPoolExecutor {
         return submit(callable, Priority.SYSTEM);
     }
 
+    /**
+     * Returns the number of tasks waiting to be executed.
+     *
+     * @return number of queued tasks
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
     public void shutdown() {
 
         /* Remove any non-critical system tasks from the executor first */
@@ -17,9 +17,13 @@
  */
 package jgnash.engine.dao;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 
+import jgnash.engine.Account;
 import jgnash.engine.Transaction;
 
 /**
@@ -36,8 +40,39 @@ public interface TransactionDAO extends DAO {
      */
     List<Transaction> getTransactions();
 
+    /**
+     * Returns a sorted list of the transactions of an account that occur within the specified dates.  The dates are
+     * inclusive.
+     *
+     * @param account   account to query
+     * @param startDate starting date
+     * @param endDate   ending date
+     * @return List of transactions
+     */
+    List<Transaction> getTransactions(Account account, LocalDate startDate, LocalDate endDate);
+
+    /**
+     * Streams the transactions of an account that occur within the specified dates in their natural order.  The
+     * dates are inclusive.  Unlike {@link #getTransactions(Account, LocalDate, LocalDate)}, the complete result is never held
+     * in memory at once.
+     *
+     * @param account   account to query
+     * @param startDate starting date
+     * @param endDate   ending date
+     * @param consumer  consumer of each transaction
+     */
+    void forEachTransaction(Account account, LocalDate startDate, LocalDate endDate, Consumer<Transaction> consumer);
+
     boolean addTransaction(Transaction transaction);
 
+    /**
+     * Adds a collection of transactions as a single unit of work.
+     *
+     * @param transactions transactions to add
+     * @return {@code true} if successful
+     */
+    boolean addTransactions(Collection<Transaction> transactions);
+
     Transaction getTransactionByUuid(final UUID uuid);
 
     boolean removeTransaction(Transaction transaction);
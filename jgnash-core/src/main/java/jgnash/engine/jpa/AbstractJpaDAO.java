@@ -17,24 +17,35 @@
  */
 package jgnash.engine.jpa;
 
-import java.util.ConcurrentModificationException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
+import javax.persistence.Cacheable;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
+import javax.persistence.criteria.Root;
+
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.Query;
 
 import jgnash.engine.StoredObject;
 import jgnash.engine.concurrent.PriorityThreadPoolExecutor;
@@ -47,6 +58,10 @@ import static jgnash.util.LogUtil.logSevere;
 
 /**
  * Abstract JPA DAO.  Provides basic framework to work with the {@link EntityManager} in a thread safe manner.
+ * <p>
+ * Writes are serialized through the shared {@link EntityManager}.  Reads select the uuids of the matching objects
+ * with a short lived {@link EntityManager} of their own so the SQL may execute concurrently, and the uuids are then
+ * resolved against the shared {@link EntityManager} so the engine always works with the same managed instances.
  *
  * @author Craig Cavanaugh
  */
@@ -55,7 +70,12 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
     /**
      * The {@link EntityManager} is not thread safe.  All interaction should be wrapped with this lock
      */
-    static final ReentrantLock emLock = new ReentrantLock();
+    static final ReentrantLock emLock = new MeteredLock();
+
+    /**
+     * Number of rows fetched and resolved at a time when streaming results
+     */
+    static final int FETCH_SIZE = 500;
 
     /**
      * This ExecutorService is to be used whenever the entity manager is
@@ -64,6 +84,8 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
     static PriorityThreadPoolExecutor executorService =
             new PriorityThreadPoolExecutor(new DefaultDaemonThreadFactory("JPA Priority Executor"));
 
+    private static final StackWalker stackWalker = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
     /**
      * Entity manager reference.
      */
@@ -81,6 +103,63 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
         em = entityManager;
     }
 
+    static int getExecutorQueueSize() {
+        return executorService.getQueueSize();
+    }
+
+    /**
+     * Submits work to the shared executor.  When metrics are enabled the wait within the executor and the latency
+     * of the calling DAO method are recorded.
+     *
+     * @param callable work to perform
+     * @param <T>      the type of the result
+     * @return {@code Future} for the result
+     */
+    static <T> Future<T> submit(final Callable<T> callable) {
+        final PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+
+        if (!metrics.isEnabled()) {
+            return executorService.submit(callable);
+        }
+
+        final String method = getCallingMethod();
+        final long submitted = System.nanoTime();
+
+        metrics.recordQueueDepth(executorService.getQueueSize());
+
+        return executorService.submit(() -> {
+            metrics.recordExecutorWait(System.nanoTime() - submitted);
+
+            try {
+                return callable.call();
+            } finally {
+                metrics.recordLatency(method, System.nanoTime() - submitted);
+            }
+        });
+    }
+
+    /**
+     * Returns the name of the DAO method that called into this class.
+     *
+     * @return class and method name
+     */
+    private static String getCallingMethod() {
+        return stackWalker.walk(frames -> frames
+                .filter(frame -> frame.getDeclaringClass() != AbstractJpaDAO.class
+                        && AbstractJpaDAO.class.isAssignableFrom(frame.getDeclaringClass()))
+                .findFirst()
+                .map(frame -> {
+                    String method = frame.getMethodName();
+
+                    if (method.startsWith("lambda$")) {    // report the method enclosing the lambda
+                        method = method.substring(7, method.indexOf('$', 7));
+                    }
+
+                    return frame.getDeclaringClass().getSimpleName() + "." + method;
+                })
+                .orElse(AbstractJpaDAO.class.getSimpleName()));
+    }
+
     static void shutDownExecutor() {
         // Stop the shared executor server, wait for all tasks to complete
 
@@ -113,38 +192,157 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
      */
     @NotNull
     public <T extends StoredObject> List<T> query(final Class<T> clazz) {
-
         try {
-            final Future<List<T>> future = executorService.submit(() -> {
-                emLock.lock();
+            final List<UUID> uuids = read(readEntityManager -> {
+                final CriteriaBuilder cb = readEntityManager.getCriteriaBuilder();
+                final CriteriaQuery<UUID> cq = cb.createQuery(UUID.class);
+                final Root<T> root = cq.from(clazz);
 
-                try {
-                    final CriteriaBuilder cb = em.getCriteriaBuilder();
-                    final CriteriaQuery<T> cq = cb.createQuery(clazz);
-                    cq.from(clazz);
+                cq.select(root.<UUID>get("uuid")).where(cb.isFalse(root.<Boolean>get("markedForRemoval")));
 
-                    final TypedQuery<T> query = em.createQuery(cq);
+                return readEntityManager.createQuery(cq)
+                        .setHint(QueryHints.HINT_CACHEABLE, isCacheable(clazz))
+                        .getResultList();
+            });
 
-                    // filtering though the stream is not has fast as performing the filter within the query, but it
-                    // ensures a ConcurrentModificationException is not thrown in rare circumstances by iterating.
-                    return query.getResultStream().filter(t -> !t.isMarkedForRemoval()).collect(Collectors.toList());
+            return resolve(clazz, uuids);
+        } catch (final PersistenceException | IllegalStateException e) {
+            logSevere(AbstractJpaDAO.class, e);
+            return null;
+        }
+    }
 
-                } catch (final ConcurrentModificationException | PersistenceException | IllegalStateException e1) {
-                    logSevere(AbstractJpaDAO.class, e1);
-                    return null;
-                } finally {
-                    emLock.unlock();
+    /**
+     * Determines if a class is held in the second level cache.  Subclasses inherit the setting of the entity class
+     * that declares it.
+     *
+     * @param clazz the Class to check
+     * @return {@code true} if cacheable
+     */
+    private static boolean isCacheable(final Class<?> clazz) {
+        for (Class<?> c = clazz; c != null; c = c.getSuperclass()) {
+            if (c.isAnnotationPresent(Cacheable.class)) {
+                return c.getAnnotation(Cacheable.class).value();
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Executes a read only JPQL query that selects uuids.
+     *
+     * @param jpql       JPQL query selecting a single uuid column
+     * @param parameters named parameters and values in pairs
+     * @return the selected uuids
+     */
+    List<UUID> queryUuids(final String jpql, final Object... parameters) {
+        return read(readEntityManager -> {
+            final TypedQuery<UUID> query = readEntityManager.createQuery(jpql, UUID.class);
+
+            for (int i = 0; i < parameters.length; i += 2) {
+                query.setParameter((String) parameters[i], parameters[i + 1]);
+            }
+
+            return query.getResultList();
+        });
+    }
+
+    /**
+     * Streams the results of a read only JPQL query that selects uuids.  The uuids are read forward only with a
+     * bounded fetch size and resolved in batches, so memory use does not grow with the size of the result.
+     *
+     * @param clazz      the Class of the objects
+     * @param jpql       JPQL query selecting a single uuid column
+     * @param consumer   consumer of the managed objects in query order
+     * @param parameters named parameters and values in pairs
+     * @param <T>        the type of class to stream
+     */
+    <T> void scroll(final Class<T> clazz, final String jpql, final Consumer<? super T> consumer,
+                    final Object... parameters) {
+        read(readEntityManager -> {
+            final Query<UUID> query = readEntityManager.unwrap(Session.class).createQuery(jpql, UUID.class);
+
+            for (int i = 0; i < parameters.length; i += 2) {
+                query.setParameter((String) parameters[i], parameters[i + 1]);
+            }
+
+            query.setFetchSize(FETCH_SIZE);
+            query.setReadOnly(true);
+
+            final List<UUID> batch = new ArrayList<>(FETCH_SIZE);
+
+            try (final ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+                while (results.next()) {
+                    batch.add((UUID) results.get(0));
+
+                    if (batch.size() == FETCH_SIZE) {
+                        resolve(clazz, batch).forEach(consumer);
+                        batch.clear();
+                    }
                 }
-            });
+            }
+
+            resolve(clazz, batch).forEach(consumer);
 
-            return future.get();    // block and return
-        } catch (final InterruptedException | ExecutionException e) {
-            logSevere(AbstractJpaDAO.class, e);
-            Thread.currentThread().interrupt();
             return null;
+        });
+    }
+
+    /**
+     * Applies a function to a short lived {@link EntityManager}.  The function may run concurrently with other reads
+     * and with writes, but any entities it loads are not the instances managed by the engine.
+     *
+     * @param function function to apply
+     * @param <R>      the type of the result
+     * @return result of the function
+     */
+    <R> R read(final Function<EntityManager, R> function) {
+        final PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+        final long start = metrics.isEnabled() ? System.nanoTime() : 0;
+
+        final EntityManager readEntityManager = em.getEntityManagerFactory().createEntityManager();
+
+        try {
+            return function.apply(readEntityManager);
+        } finally {
+            readEntityManager.close();
+
+            if (start != 0) {
+                metrics.recordLatency(getCallingMethod(), System.nanoTime() - start);
+            }
         }
     }
 
+    /**
+     * Resolves uuids to the instances managed by the shared {@link EntityManager}.  Every object is normally already
+     * held by the persistence context, so this is a fast lookup and the lock is only held briefly.
+     *
+     * @param clazz the Class of the objects
+     * @param uuids uuids to resolve
+     * @param <T>   the type of class to resolve
+     * @return the managed objects in the order of the uuids
+     */
+    <T> List<T> resolve(final Class<T> clazz, final Collection<UUID> uuids) {
+        final List<T> list = new ArrayList<>(uuids.size());
+
+        emLock.lock();
+
+        try {
+            for (final UUID uuid : uuids) {
+                final T object = em.find(clazz, uuid);
+
+                if (object != null) {
+                    list.add(object);
+                }
+            }
+        } finally {
+            emLock.unlock();
+        }
+
+        return list;
+    }
+
     /**
      * Merge / Update the object in place.
      *
@@ -154,7 +352,7 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
      */
     <T extends StoredObject> T merge(final T object) {
         try {
-            final Future<T> future = executorService.submit(() -> {
+            final Future<T> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -191,7 +389,7 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
         boolean result = false;
 
         try {
-            final Future<Boolean> future = executorService.submit(() -> {
+            final Future<Boolean> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -229,28 +427,25 @@ abstract class AbstractJpaDAO extends AbstractDAO implements DAO {
         return result;
     }
 
+    /**
+     * Finds an object by uuid.  The lookup is normally satisfied by the persistence context without any SQL, so it
+     * is performed on the calling thread rather than being queued behind writes.
+     */
     @Override
     public <T> T getObjectByUuid(final Class<T> tClass, final UUID uuid) {
         T object = null;
 
-        try {
-            final Future<T> future = executorService.submit(() -> {
-                emLock.lock();
-
-                try {
-                    return em.find(tClass, uuid);
-                } finally {
-                    emLock.unlock();
-                }
-            });
+        emLock.lock();
 
-            object = future.get();  // block and return
+        try {
+            object = em.find(tClass, uuid);
         } catch (final NoResultException e) {
             Logger.getLogger(AbstractJpaDAO.class.getName()).log(Level.INFO, "Did not find {0} for uuid: {1}",
                     new Object[]{tClass.getName(), uuid});
-        } catch (ExecutionException | InterruptedException e) {
+        } catch (final PersistenceException | IllegalStateException e) {
             logSevere(AbstractJpaDAO.class, e);
-            Thread.currentThread().interrupt();
+        } finally {
+            emLock.unlock();
         }
 
         return object;
@@ -35,7 +35,6 @@ import java.util.logging.Logger;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 
 import jgnash.engine.DataStore;
 import jgnash.engine.Engine;
@@ -69,6 +68,10 @@ abstract class AbstractJpaDataStore implements DataStore {
 
     private DistributedAttachmentManager distributedAttachmentManager;
 
+    private JpaCacheInvalidator cacheInvalidator;
+
+    private DatabaseMaintenance databaseMaintenance;
+
     private boolean local = true;
 
     private String fileName;
@@ -89,9 +92,21 @@ abstract class AbstractJpaDataStore implements DataStore {
     public void closeEngine() {
         logger.info("Closing");
 
+        if (cacheInvalidator != null) {
+            cacheInvalidator.unregister();
+            cacheInvalidator = null;
+        }
+
+        if (databaseMaintenance != null) {
+            databaseMaintenance.stop();
+            databaseMaintenance = null;
+        }
+
+        PersistenceMetrics.getInstance().setEntityManagerFactory(null);
+
         if (em != null && factory != null) {
             em.close();
-            factory.close();
+            JpaConfiguration.closeEntityManagerFactory(factory);
         } else {
             logger.severe("The EntityManger was already null!");
         }
@@ -105,7 +120,8 @@ abstract class AbstractJpaDataStore implements DataStore {
     }
 
     @Override
-    public Engine getClientEngine(final String host, final int port, final char[] password, final String dataBasePath) {
+    public Engine getClientEngine(final String host, final int port, final char[] password, final String dataBasePath,
+                                  final String engineName) {
         final Properties properties
                 = JpaConfiguration.getClientProperties(getType(), dataBasePath, host, port, password);
 
@@ -113,7 +129,7 @@ abstract class AbstractJpaDataStore implements DataStore {
 
         try {
             if (SqlUtils.isConnectionValid(properties.getProperty(JpaConfiguration.JAVAX_PERSISTENCE_JDBC_URL))) {
-                factory = Persistence.createEntityManagerFactory(JpaConfiguration.UNIT_NAME, properties);
+                factory = JpaConfiguration.createEntityManagerFactory(properties);
 
                 em = factory.createEntityManager();
 
@@ -130,7 +146,12 @@ abstract class AbstractJpaDataStore implements DataStore {
 
                     if (attachmentManagerResult && lockManagerResult) {
                         engine = new Engine(new JpaEngineDAO(em, true), distributedLockManager,
-                                distributedAttachmentManager, EngineFactory.DEFAULT);
+                                distributedAttachmentManager, engineName);
+
+                        cacheInvalidator = new JpaCacheInvalidator(factory, engineName);
+                        cacheInvalidator.register();
+
+                        startMetrics(factory);
 
                         logger.info("Created local JPA container and engine");
                         fileName = null;
@@ -140,7 +161,7 @@ abstract class AbstractJpaDataStore implements DataStore {
                         distributedAttachmentManager.disconnectFromServer();
 
                         em.close();
-                        factory.close();
+                        JpaConfiguration.closeEntityManagerFactory(factory);
                         em = null;
                         factory = null;
                     }
@@ -179,13 +200,21 @@ abstract class AbstractJpaDataStore implements DataStore {
 
                     /* specifies the unit name and properties.  Unit name can be used to specify a different persistence
                        unit defined in persistence.xml */
-                    factory = Persistence.createEntityManagerFactory(JpaConfiguration.UNIT_NAME, properties);
+                    factory = JpaConfiguration.createEntityManagerFactory(properties);
                     em = factory.createEntityManager();
 
                     logger.info("Created local JPA container and engine");
                     engine = new Engine(new JpaEngineDAO(em, false), new LocalLockManager(),
                             new LocalAttachmentManager(), engineName);
 
+                    cacheInvalidator = new JpaCacheInvalidator(factory, engineName);
+                    cacheInvalidator.register();
+
+                    startMetrics(factory);
+
+                    databaseMaintenance = new DatabaseMaintenance(getType(),
+                            properties.getProperty(JpaConfiguration.JAVAX_PERSISTENCE_JDBC_URL), Paths.get(fileName));
+
                     this.fileName = fileName;
                     this.password = password.clone();   // clone to protect against side effects
 
@@ -202,6 +231,19 @@ abstract class AbstractJpaDataStore implements DataStore {
     }
 
 
+    /**
+     * Connects the persistence metrics to the factory and enables them if requested by the user.
+     *
+     * @param factory {@code EntityManagerFactory} in use
+     */
+    static void startMetrics(final EntityManagerFactory factory) {
+        PersistenceMetrics.getInstance().setEntityManagerFactory(factory);
+
+        if (EngineFactory.isPersistenceMetrics()) {
+            PersistenceMetrics.getInstance().setEnabled(true);
+        }
+    }
+
     @Override
     public String getFileName() {
         return fileName;
@@ -232,7 +274,7 @@ abstract class AbstractJpaDataStore implements DataStore {
             EntityManager entityManager = null;
 
             try {
-                emFactory = Persistence.createEntityManagerFactory(JpaConfiguration.UNIT_NAME, properties);
+                emFactory = JpaConfiguration.createEntityManagerFactory(properties);
                 entityManager = emFactory.createEntityManager();
 
                 final List<List<StoredObject>> partitions = ListUtils.partition(new ArrayList<>(objects), PARTITION_SIZE);
@@ -259,7 +301,7 @@ abstract class AbstractJpaDataStore implements DataStore {
                 }
 
                 if (emFactory != null) {
-                    emFactory.close();
+                    JpaConfiguration.closeEntityManagerFactory(emFactory);
                 }
             }
 
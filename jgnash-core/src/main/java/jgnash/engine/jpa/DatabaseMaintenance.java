@@ -0,0 +1,274 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import jgnash.engine.DataStoreType;
+import jgnash.util.DefaultDaemonThreadFactory;
+import jgnash.util.FileUtils;
+
+import org.h2.engine.Session;
+import org.h2.engine.SessionInterface;
+import org.h2.jdbc.JdbcConnection;
+import org.h2.mvstore.MVStore;
+import org.h2.mvstore.db.MVTableEngine;
+
+/**
+ * Online maintenance of H2 and HSQLDB databases.
+ * <p>
+ * The database is periodically checkpointed and compacted in the background while the engine and any clients remain
+ * connected.  Compaction is throttled by an I/O budget: each period earns a fixed number of bytes that may be
+ * rewritten, unused budget accumulates up to a limit, and each compaction is charged with the bytes it wrote.
+ * <ul>
+ *     <li>H2 MVStore: the least filled chunks are rewritten, limited to the available budget.  Other connections
+ *     continue to read and write while chunks are moved.</li>
+ *     <li>HSQLDB: {@code CHECKPOINT DEFRAG} rewrites the whole data file and blocks all other connections until it
+ *     completes, so it is only performed between {@value #DEFRAG_START_HOUR}:00 and {@value #DEFRAG_END_HOUR}:00
+ *     local time when the budget covers the size of the file.  A plain {@code CHECKPOINT} is performed otherwise.</li>
+ * </ul>
+ * The space reclaimed by each run is reported in the log.
+ *
+ * @author Craig Cavanaugh
+ */
+final class DatabaseMaintenance {
+
+    private static final long PERIOD_MINUTES = 30;
+
+    /**
+     * Bytes that may be rewritten per period.
+     */
+    private static final long BUDGET_PER_PERIOD = 32L * 1024 * 1024;
+
+    /**
+     * Limit for accumulated budget.
+     */
+    private static final long MAX_BUDGET = 512L * 1024 * 1024;
+
+    /**
+     * Chunks filled below this percentage are rewritten by an H2 compaction.
+     */
+    private static final int TARGET_FILL_RATE = 80;
+
+    /**
+     * Start of the quiet hours in which an HSQLDB defragmentation may block clients.
+     */
+    private static final int DEFRAG_START_HOUR = 1;
+
+    /**
+     * End of the quiet hours, exclusive.
+     */
+    private static final int DEFRAG_END_HOUR = 5;
+
+    private static final Logger logger = Logger.getLogger(DatabaseMaintenance.class.getName());
+
+    private final DataStoreType dataStoreType;
+
+    private final String url;
+
+    private final Path file;
+
+    private final ScheduledExecutorService executorService;
+
+    private final Budget budget = new Budget(BUDGET_PER_PERIOD, MAX_BUDGET);
+
+    /**
+     * Creates and starts the maintenance job.
+     *
+     * @param dataStoreType type of database
+     * @param url           JDBC url to connect with
+     * @param file          database file
+     */
+    DatabaseMaintenance(final DataStoreType dataStoreType, final String url, final Path file) {
+        this.dataStoreType = dataStoreType;
+        this.url = url;
+        this.file = file;
+
+        executorService = Executors.newSingleThreadScheduledExecutor(
+                new DefaultDaemonThreadFactory("Database Maintenance Executor"));
+
+        executorService.scheduleWithFixedDelay(this::run, PERIOD_MINUTES, PERIOD_MINUTES, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Stops the maintenance job.  A run in progress is allowed to complete.
+     */
+    void stop() {
+        executorService.shutdown();
+
+        try {
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (final InterruptedException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        final long startTime = System.currentTimeMillis();
+        final long startSize = getStoreSize();
+
+        try (final Connection connection = DriverManager.getConnection(url)) {
+            switch (dataStoreType) {
+                case H2_DATABASE:
+                case H2MV_DATABASE:
+                    compactH2(connection);
+                    break;
+                case HSQL_DATABASE:
+                    compactHsql(connection, startSize);
+                    break;
+                default:
+                    break;
+            }
+        } catch (final SQLException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            return;
+        }
+
+        final long endSize = getStoreSize();
+
+        logger.log(Level.INFO, "Database maintenance reclaimed {0} bytes ({1} to {2}) in {3} ms",
+                new Object[]{startSize - endSize, startSize, endSize, System.currentTimeMillis() - startTime});
+    }
+
+    private void compactH2(final Connection connection) throws SQLException {
+        try (final Statement statement = connection.createStatement()) {
+            statement.execute("CHECKPOINT SYNC");
+        }
+
+        // compaction is only possible from within the process that has the database open
+        final SessionInterface session = connection.unwrap(JdbcConnection.class).getSession();
+
+        if (session instanceof Session) {
+            final MVTableEngine.Store store = ((Session) session).getDatabase().getStore();
+
+            if (store != null) {     // null for the older page store format
+                final MVStore mvStore = store.getMvStore();
+                final long available = budget.earn();
+                final long writeBytes = mvStore.getFileStore().getWriteBytes();
+
+                if (mvStore.compact(TARGET_FILL_RATE, (int) Math.min(Integer.MAX_VALUE, available))) {
+                    mvStore.commit();
+                }
+
+                budget.spend(mvStore.getFileStore().getWriteBytes() - writeBytes);
+            }
+        }
+    }
+
+    private void compactHsql(final Connection connection, final long size) throws SQLException {
+        budget.earn();
+
+        try (final Statement statement = connection.createStatement()) {
+            if (isDefragTime(LocalTime.now()) && budget.covers(size)) {
+                statement.execute("CHECKPOINT DEFRAG");
+                budget.spend(size);
+            } else {
+                statement.execute("CHECKPOINT");
+            }
+        }
+    }
+
+    /**
+     * Determines if a defragmentation that blocks clients may be performed.
+     *
+     * @param time local time
+     * @return {@code true} if within the quiet hours
+     */
+    static boolean isDefragTime(final LocalTime time) {
+        return time.getHour() >= DEFRAG_START_HOUR && time.getHour() < DEFRAG_END_HOUR;
+    }
+
+    /**
+     * Returns the combined size of the database files.
+     *
+     * @return size in bytes
+     */
+    private long getStoreSize() {
+        final Path directory = file.toAbsolutePath().getParent();
+        final String base = FileUtils.stripFileExtension(file.getFileName().toString()) + ".";
+
+        try (final Stream<Path> stream = Files.list(directory)) {
+            return stream.filter(path -> path.getFileName().toString().startsWith(base))
+                    .filter(Files::isRegularFile)
+                    .mapToLong(path -> path.toFile().length())
+                    .sum();
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            return 0;
+        }
+    }
+
+    /**
+     * I/O budget in bytes.  Only used from the maintenance thread.
+     */
+    static final class Budget {
+
+        private final long perPeriod;
+
+        private final long limit;
+
+        private long available;
+
+        Budget(final long perPeriod, final long limit) {
+            this.perPeriod = perPeriod;
+            this.limit = limit;
+        }
+
+        /**
+         * Adds the budget of a period.
+         *
+         * @return available budget
+         */
+        long earn() {
+            available = Math.min(limit, available + perPeriod);
+
+            return available;
+        }
+
+        boolean covers(final long bytes) {
+            return bytes <= available;
+        }
+
+        /**
+         * Charges written bytes against the budget.
+         *
+         * @param bytes bytes written
+         */
+        void spend(final long bytes) {
+            available = Math.max(0, available - Math.max(0, bytes));
+        }
+
+        long getAvailable() {
+            return available;
+        }
+    }
+}
@@ -17,7 +17,6 @@
  */
 package jgnash.engine.jpa;
 
-import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
@@ -28,6 +27,7 @@ import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
 import javax.persistence.TypedQuery;
 
 import jgnash.engine.Account;
@@ -59,7 +59,7 @@ class JpaAccountDAO extends AbstractJpaDAO implements AccountDAO {
         RootAccount root = null;
 
         try {
-            final Future<RootAccount> future = executorService.submit(() -> {
+            final Future<RootAccount> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -110,7 +110,7 @@ class JpaAccountDAO extends AbstractJpaDAO implements AccountDAO {
         boolean result = false;
 
         try {
-            final Future<Boolean> future = executorService.submit(() -> {
+            final Future<Boolean> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -154,30 +154,13 @@ class JpaAccountDAO extends AbstractJpaDAO implements AccountDAO {
     }
 
     private List<Account> getAccountList(final AccountType type) {
-        List<Account> accountList = Collections.emptyList();
-
         try {
-            final Future<List<Account>> future = executorService.submit(() -> {
-                emLock.lock();
-
-                try {
-                    final String queryString
-                            = "SELECT a FROM Account a WHERE a.accountType = :type AND a.markedForRemoval = false";
-                    final TypedQuery<Account> query = em.createQuery(queryString, Account.class);
-                    query.setParameter("type", type);
-
-                    return new ArrayList<>(query.getResultList());
-                } finally {
-                    emLock.unlock();
-                }
-            });
-
-            accountList = future.get();
-        } catch (final InterruptedException | ExecutionException e) {
+            return resolve(Account.class, queryUuids("SELECT a.uuid FROM Account a "
+                    + "WHERE a.accountType = :type AND a.markedForRemoval = false", "type", type));
+        } catch (final PersistenceException | IllegalStateException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return Collections.emptyList();
         }
-
-        return accountList;
     }
 
     /*
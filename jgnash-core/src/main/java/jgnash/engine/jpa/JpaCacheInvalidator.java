@@ -0,0 +1,114 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.Cache;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.PersistenceException;
+
+import jgnash.engine.Account;
+import jgnash.engine.CommodityNode;
+import jgnash.engine.ExchangeRate;
+import jgnash.engine.Tag;
+import jgnash.engine.budget.Budget;
+import jgnash.engine.message.Message;
+import jgnash.engine.message.MessageBus;
+import jgnash.engine.message.MessageChannel;
+import jgnash.engine.message.MessageListener;
+
+/**
+ * Invalidates the second level and query caches when another client changes reference data.
+ * <p>
+ * Hibernate invalidates its caches for changes made through the local {@code EntityManagerFactory}, but is not
+ * aware of changes made by other clients of a shared database.  Those changes are announced by remote
+ * {@code MessageBus} events, which are used to evict the affected entities and all cached query results.
+ *
+ * @author Craig Cavanaugh
+ */
+class JpaCacheInvalidator implements MessageListener {
+
+    private static final MessageChannel[] CHANNELS = {MessageChannel.ACCOUNT, MessageChannel.BUDGET,
+            MessageChannel.COMMODITY, MessageChannel.TAG, MessageChannel.TRANSACTION};
+
+    private static final Logger logger = Logger.getLogger(JpaCacheInvalidator.class.getName());
+
+    private final EntityManagerFactory factory;
+
+    private final String busName;
+
+    JpaCacheInvalidator(final EntityManagerFactory factory, final String busName) {
+        this.factory = factory;
+        this.busName = busName;
+    }
+
+    void register() {
+        MessageBus.getInstance(busName).registerListener(this, CHANNELS);
+    }
+
+    void unregister() {
+        MessageBus.getInstance(busName).unregisterListener(this, CHANNELS);
+    }
+
+    @Override
+    public void messagePosted(final Message message) {
+        if (message.isRemote()) {
+            evict(message.getChannel());
+        }
+    }
+
+    /**
+     * Evicts the cached entities of a channel and all cached query results.
+     *
+     * @param channel channel of the remote change
+     */
+    void evict(final MessageChannel channel) {
+        if (!factory.isOpen()) {
+            return;
+        }
+
+        try {
+            final Cache cache = factory.getCache();
+
+            switch (channel) {
+                case ACCOUNT:
+                    cache.evict(Account.class);
+                    break;
+                case BUDGET:
+                    cache.evict(Budget.class);
+                    break;
+                case COMMODITY:
+                    cache.evict(CommodityNode.class);
+                    cache.evict(ExchangeRate.class);
+                    break;
+                case TAG:
+                    cache.evict(Tag.class);
+                    break;
+                default:
+                    break;
+            }
+
+            // cached query results may include or omit objects changed by the other client
+            cache.unwrap(org.hibernate.Cache.class).evictQueryRegions();
+        } catch (final PersistenceException | IllegalStateException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+    }
+}
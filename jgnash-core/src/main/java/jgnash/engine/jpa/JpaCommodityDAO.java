@@ -22,16 +22,12 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
 
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
+import javax.persistence.PersistenceException;
 
-import jgnash.engine.Account;
 import jgnash.engine.CommodityNode;
 import jgnash.engine.CurrencyNode;
 import jgnash.engine.ExchangeRate;
@@ -168,37 +164,17 @@ class JpaCommodityDAO extends AbstractJpaDAO implements CommodityDAO {
      */
     @Override
     public Set<CurrencyNode> getActiveCurrencies() {
-        Set<CurrencyNode> currencyNodeSet = Collections.emptySet();
-
         try {
-            Future<Set<CurrencyNode>> future = executorService.submit(() -> {
-                emLock.lock();
-
-                try {
-                    final TypedQuery<Account> q = em.createQuery("SELECT a FROM Account a WHERE a.markedForRemoval = false",
-                            Account.class);
-
-                    final List<Account> accountList = q.getResultList();
-                    final Set<CurrencyNode> currencies = new HashSet<>();
+            final Set<UUID> uuids = new HashSet<>(queryUuids("SELECT DISTINCT a.currencyNode.uuid FROM Account a "
+                    + "WHERE a.markedForRemoval = false"));
 
-                    for (final Account account : accountList) {
-                        currencies.add(account.getCurrencyNode());
+            uuids.addAll(queryUuids("SELECT DISTINCT s.reportedCurrency.uuid FROM Account a JOIN a.securities s "
+                    + "WHERE a.markedForRemoval = false"));
 
-                        currencies.addAll(account.getSecurities().parallelStream()
-                                                  .map(SecurityNode::getReportedCurrencyNode).collect(Collectors.toList()));
-                    }
-
-                    return currencies;
-                } finally {
-                    emLock.unlock();
-                }
-            });
-
-            currencyNodeSet = future.get();
-        } catch (final InterruptedException | ExecutionException e) {
+            return new HashSet<>(resolve(CurrencyNode.class, uuids));
+        } catch (final PersistenceException | IllegalStateException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return Collections.emptySet();
         }
-
-        return currencyNodeSet;
     }
 }
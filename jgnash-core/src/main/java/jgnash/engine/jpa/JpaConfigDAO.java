@@ -52,7 +52,7 @@ class JpaConfigDAO extends AbstractJpaDAO implements ConfigDAO {
         Config defaultConfig = null;
 
         try {
-            Future<Config> future = executorService.submit(() -> {
+            Future<Config> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -17,10 +17,21 @@
  */
 package jgnash.engine.jpa;
 
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.spi.CachingProvider;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
 import jgnash.engine.DataStoreType;
 import jgnash.util.FileUtils;
 
@@ -45,14 +56,93 @@ class JpaConfiguration {
     private static final String JAVAX_PERSISTENCE_JDBC_PASSWORD = "javax.persistence.jdbc.password";
     private static final String HIBERNATE_DIALECT = "hibernate.dialect";
     private static final String HIBERNATE_HBM2DDL_AUTO = "hibernate.hbm2ddl.auto";
+    private static final String HIBERNATE_BATCH_SIZE = "hibernate.jdbc.batch_size";
+    private static final String HIBERNATE_BATCH_VERSIONED_DATA = "hibernate.jdbc.batch_versioned_data";
+    private static final String HIBERNATE_ORDER_INSERTS = "hibernate.order_inserts";
+    private static final String HIBERNATE_ORDER_UPDATES = "hibernate.order_updates";
+    private static final String HIBERNATE_CACHE_MANAGER = "hibernate.javax.cache.cache_manager";
+
+    /**
+     * JCache provider, must match {@code hibernate.javax.cache.provider} in persistence.xml.
+     */
+    private static final String CACHING_PROVIDER = "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider";
+
+    /**
+     * The second level cache of each open {@code EntityManagerFactory}.
+     */
+    private static final Map<EntityManagerFactory, CacheManager> cacheManagers = new ConcurrentHashMap<>();
+
+    /**
+     * Number of statements grouped into a JDBC batch.
+     */
+    private static final int BATCH_SIZE = 50;
 
     private static final String UNKNOWN_DATABASE_TYPE = "Unknown database type";
 
+    /**
+     * Creates an {@code EntityManagerFactory} with a second level cache of its own.
+     * <p>
+     * Hibernate closes the JCache {@code CacheManager} when a factory is closed, and the caching provider returns the
+     * same {@code CacheManager} for the same URI, so factories open at the same time, e.g. a server and its local
+     * clients or the temporary factory of Save As, must not use the default URI.
+     *
+     * @param properties JPA properties
+     * @return a new {@code EntityManagerFactory}
+     * @see #closeEntityManagerFactory(EntityManagerFactory)
+     */
+    static EntityManagerFactory createEntityManagerFactory(final Properties properties) {
+        final Map<String, Object> map = new HashMap<>();
+
+        for (final String name : properties.stringPropertyNames()) {
+            map.put(name, properties.getProperty(name));
+        }
+
+        final CachingProvider cachingProvider = Caching.getCachingProvider(CACHING_PROVIDER);
+        final CacheManager cacheManager = cachingProvider.getCacheManager(
+                URI.create("jgnash:cache-" + UUID.randomUUID()), cachingProvider.getDefaultClassLoader());
+
+        map.put(HIBERNATE_CACHE_MANAGER, cacheManager);
+
+        try {
+            final EntityManagerFactory factory = Persistence.createEntityManagerFactory(UNIT_NAME, map);
+
+            cacheManagers.put(factory, cacheManager);
+
+            return factory;
+        } catch (final RuntimeException e) {
+            cacheManager.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes an {@code EntityManagerFactory} and its second level cache.
+     *
+     * @param factory {@code EntityManagerFactory} to close
+     */
+    static void closeEntityManagerFactory(final EntityManagerFactory factory) {
+        try {
+            factory.close();
+        } finally {
+            final CacheManager cacheManager = cacheManagers.remove(factory);
+
+            if (cacheManager != null) {
+                cacheManager.close();   // no effect if already closed by Hibernate
+            }
+        }
+    }
+
     private static Properties getBaseProperties(final DataStoreType database) {
         Properties properties = System.getProperties();
 
         properties.setProperty(HIBERNATE_HBM2DDL_AUTO, "update");
 
+        // group inserts and updates by entity so bulk operations are sent as JDBC batches
+        properties.setProperty(HIBERNATE_BATCH_SIZE, Integer.toString(BATCH_SIZE));
+        properties.setProperty(HIBERNATE_BATCH_VERSIONED_DATA, Boolean.TRUE.toString());
+        properties.setProperty(HIBERNATE_ORDER_INSERTS, Boolean.TRUE.toString());
+        properties.setProperty(HIBERNATE_ORDER_UPDATES, Boolean.TRUE.toString());
+
         switch (database) {
             case H2_DATABASE:
             case H2MV_DATABASE:
@@ -161,10 +161,12 @@ class JpaEngineDAO extends AbstractJpaDAO implements EngineDAO {
     @Override
     public void refresh(final StoredObject object) {
         try {
-            Future<Void> future = executorService.submit(() -> {
+            Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
+                    // the second level cache may hold the state from before another client's change
+                    em.getEntityManagerFactory().getCache().evict(object.getClass(), object.getUuid());
                     em.refresh(object);
                     return null;
                 } finally {
@@ -181,7 +183,7 @@ class JpaEngineDAO extends AbstractJpaDAO implements EngineDAO {
     @Override
     public void bulkUpdate(final List<? extends StoredObject> objectList) {
         try {
-            final Future<Void> future = executorService.submit(() -> {
+            final Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -34,7 +34,6 @@ import java.util.logging.Logger;
 
 import javax.persistence.EntityManager;
 import javax.persistence.EntityManagerFactory;
-import javax.persistence.Persistence;
 
 import jgnash.engine.AttachmentUtils;
 import jgnash.engine.DataStoreType;
@@ -48,6 +47,7 @@ import jgnash.engine.concurrent.DistributedLockManager;
 import jgnash.engine.concurrent.DistributedLockServer;
 import jgnash.engine.message.LocalServerListener;
 import jgnash.engine.message.MessageBusServer;
+import jgnash.net.ServerMetrics;
 import jgnash.util.DefaultDaemonThreadFactory;
 import jgnash.util.FileMagic;
 import jgnash.util.FileUtils;
@@ -155,6 +155,10 @@ public class JpaNetworkServer {
 
             if (engine != null) {
 
+                // compact and checkpoint in the background while clients are connected
+                final DatabaseMaintenance databaseMaintenance = new DatabaseMaintenance(dataStoreType,
+                        getMaintenanceUrl(dataStoreType, fileName, port, password), Paths.get(fileName));
+
                 // Start the message bus and pass the file name so it can be reported to the client
                 final MessageBusServer messageBusServer = new MessageBusServer(port + MESSAGE_SERVER_INCREMENT);
 
@@ -210,6 +214,8 @@ public class JpaNetworkServer {
 
                     messageBusServer.stopServer();
 
+                    databaseMaintenance.stop();
+
                     EngineFactory.closeEngine(SERVER_ENGINE);
 
                     EngineFactory.removeOldCompressedXML(fileName, engine.getRetainedBackupLimit());
@@ -220,10 +226,13 @@ public class JpaNetworkServer {
                     distributedLockServer.stopServer();
                     attachmentTransferServer.stopServer();
 
+                    PersistenceMetrics.getInstance().setEntityManagerFactory(null);
+
                     em.close();
 
-                    factory.close();
+                    JpaConfiguration.closeEntityManagerFactory(factory);
                 } else {
+                    databaseMaintenance.stop();
                     throw new EngineException("Failed to start the Message Bus");
                 }
             } else {
@@ -318,9 +327,11 @@ public class JpaNetworkServer {
 
                 /* specifies the unit name and properties.  Unit name can be used to specify a different persistence
                    unit defined in persistence.xml */
-                factory = Persistence.createEntityManagerFactory(JpaConfiguration.UNIT_NAME, properties);
+                factory = JpaConfiguration.createEntityManagerFactory(properties);
                 em = factory.createEntityManager();
 
+                AbstractJpaDataStore.startMetrics(factory);
+
                 distributedLockManager = new DistributedLockManager(EngineFactory.LOCALHOST, port + LOCK_SERVER_INCREMENT);
                 distributedLockManager.connectToServer(password);
 
@@ -339,9 +350,34 @@ public class JpaNetworkServer {
         return engine;
     }
 
+    /**
+     * Returns the url used for maintenance.  H2 must be reached through an embedded connection to the database
+     * already opened by the TCP server so the store may be compacted.
+     */
+    private static String getMaintenanceUrl(final DataStoreType dataStoreType, final String fileName, final int port,
+                                            final char[] password) {
+        if (dataStoreType == DataStoreType.HSQL_DATABASE) {
+            return JpaConfiguration.getClientProperties(dataStoreType, fileName, EngineFactory.LOCALHOST, port,
+                    password).getProperty(JpaConfiguration.JAVAX_PERSISTENCE_JDBC_URL);
+        }
+
+        return "jdbc:h2:" + FileUtils.stripFileExtension(fileName) + ";USER=" + JpaConfiguration.DEFAULT_USER
+                + ";PASSWORD=" + new String(password);
+    }
+
     private static void exportXML(final Engine engine, final String fileName) {
+        final long start = System.nanoTime();
+
         ArrayList<StoredObject> list = new ArrayList<>(engine.getStoredObjects());
 
-        EngineFactory.exportCompressedXML(fileName, list);
+        if (engine.incrementalBackups()) {
+            EngineFactory.exportIncrementalXML(fileName, list);
+        } else {
+            EngineFactory.exportCompressedXML(fileName, list);
+        }
+
+        if (ServerMetrics.getInstance().isEnabled()) {
+            ServerMetrics.getInstance().recordBackupDuration(System.nanoTime() - start);
+        }
     }
 }
@@ -17,18 +17,24 @@
  */
 package jgnash.engine.jpa;
 
+import java.time.LocalDate;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.persistence.EntityManager;
-import javax.persistence.TypedQuery;
+import javax.persistence.PersistenceException;
 
+import jgnash.engine.Account;
 import jgnash.engine.Transaction;
 import jgnash.engine.dao.TransactionDAO;
 
@@ -54,6 +60,60 @@ class JpaTransactionDAO extends AbstractJpaDAO implements TransactionDAO {
         return query(Transaction.class);
     }
 
+    /**
+     * The date and account filters are performed by the database.
+     */
+    @Override
+    public List<Transaction> getTransactions(final Account account, final LocalDate startDate,
+                                             final LocalDate endDate) {
+        try {
+            final List<Transaction> transactions = resolve(Transaction.class,
+                    queryUuids("SELECT t.uuid FROM Account a JOIN a.transactions t WHERE a.uuid = :account "
+                                    + "AND t.markedForRemoval = false AND t.date BETWEEN :startDate AND :endDate",
+                            "account", account.getUuid(), "startDate", startDate, "endDate", endDate));
+
+            Collections.sort(transactions);
+
+            return transactions;
+        } catch (final PersistenceException | IllegalStateException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The database only orders by date, the natural order of {@code Transaction} can not be expressed in JPQL.  The
+     * transactions of each date are sorted before they are passed on, so only one date is held in memory at once.
+     */
+    @Override
+    public void forEachTransaction(final Account account, final LocalDate startDate, final LocalDate endDate,
+                                   final Consumer<Transaction> consumer) {
+        final List<Transaction> sameDate = new ArrayList<>();
+
+        try {
+            scroll(Transaction.class, "SELECT t.uuid FROM Account a JOIN a.transactions t WHERE a.uuid = :account "
+                            + "AND t.markedForRemoval = false AND t.date BETWEEN :startDate AND :endDate "
+                            + "ORDER BY t.date", transaction -> {
+                        if (!sameDate.isEmpty() && !sameDate.get(0).getLocalDate().equals(transaction.getLocalDate())) {
+                            acceptSorted(sameDate, consumer);
+                        }
+
+                        sameDate.add(transaction);
+                    },
+                    "account", account.getUuid(), "startDate", startDate, "endDate", endDate);
+
+            acceptSorted(sameDate, consumer);
+        } catch (final PersistenceException | IllegalStateException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        }
+    }
+
+    private static void acceptSorted(final List<Transaction> transactions, final Consumer<Transaction> consumer) {
+        Collections.sort(transactions);
+        transactions.forEach(consumer);
+        transactions.clear();
+    }
+
     /*
      * @see jgnash.engine.TransactionDAO#addTransaction(jgnash.engine.Transaction)
      */
@@ -62,7 +122,7 @@ class JpaTransactionDAO extends AbstractJpaDAO implements TransactionDAO {
         boolean result = false;
 
         try {
-            final Future<Boolean> future = executorService.submit(() -> {
+            final Future<Boolean> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -89,34 +149,42 @@ class JpaTransactionDAO extends AbstractJpaDAO implements TransactionDAO {
         return result;
     }
 
-    @Override
-    public Transaction getTransactionByUuid(final UUID uuid) {
-        return getObjectByUuid(Transaction.class, uuid);
-    }
-
-    /*
-     * @see jgnash.engine.TransactionDAO#removeTransaction(jgnash.engine.Transaction)
+    /**
+     * Persists all transactions within one JPA transaction.  The affected accounts are persisted once at the end
+     * rather than once per {@code Transaction}, and the inserts are grouped into JDBC batches when flushed.
      */
     @Override
-    public synchronized boolean removeTransaction(final Transaction transaction) {
+    public synchronized boolean addTransactions(final Collection<Transaction> transactions) {
         boolean result = false;
 
         try {
-            final Future<Boolean> future = executorService.submit(() -> {
+            final Future<Boolean> future = submit(() -> {
                 emLock.lock();
 
                 try {
+                    final Set<Account> accounts = new HashSet<>();
+
                     em.getTransaction().begin();
 
-                    // look at accounts this transaction impacted and update the accounts
-                    transaction.getAccounts().forEach(em::persist);
+                    for (final Transaction transaction : transactions) {
+                        em.persist(transaction);
+                        accounts.addAll(transaction.getAccounts());
+                    }
+
+                    accounts.forEach(em::persist);
 
-                    em.persist(transaction);    // saved, removed with the trash
                     em.getTransaction().commit();
 
                     dirtyFlag.set(true);
 
                     return true;
+                } catch (final PersistenceException | IllegalStateException e) {
+                    if (em.getTransaction().isActive()) {
+                        em.getTransaction().rollback();
+                    }
+
+                    logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+                    return false;
                 } finally {
                     emLock.unlock();
                 }
@@ -131,29 +199,54 @@ class JpaTransactionDAO extends AbstractJpaDAO implements TransactionDAO {
     }
 
     @Override
-    public List<Transaction> getTransactionsWithAttachments() {
-        List<Transaction> transactionList = Collections.emptyList();
+    public Transaction getTransactionByUuid(final UUID uuid) {
+        return getObjectByUuid(Transaction.class, uuid);
+    }
+
+    /*
+     * @see jgnash.engine.TransactionDAO#removeTransaction(jgnash.engine.Transaction)
+     */
+    @Override
+    public synchronized boolean removeTransaction(final Transaction transaction) {
+        boolean result = false;
 
         try {
-            final Future<List<Transaction>> future = executorService.submit(() -> {
+            final Future<Boolean> future = submit(() -> {
                 emLock.lock();
 
                 try {
-                    final TypedQuery<Transaction> q = em
-                            .createQuery("SELECT t FROM Transaction t WHERE t.markedForRemoval = false AND t.attachment is not null",
-                                    Transaction.class);
+                    em.getTransaction().begin();
+
+                    // look at accounts this transaction impacted and update the accounts
+                    transaction.getAccounts().forEach(em::persist);
 
-                    return new ArrayList<>(q.getResultList());
+                    em.persist(transaction);    // saved, removed with the trash
+                    em.getTransaction().commit();
+
+                    dirtyFlag.set(true);
+
+                    return true;
                 } finally {
                     emLock.unlock();
                 }
             });
 
-            transactionList = future.get(); // block and return
+            result = future.get();  // block and return
         } catch (final InterruptedException | ExecutionException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
 
-        return transactionList;
+        return result;
+    }
+
+    @Override
+    public List<Transaction> getTransactionsWithAttachments() {
+        try {
+            return resolve(Transaction.class, queryUuids("SELECT t.uuid FROM Transaction t "
+                    + "WHERE t.markedForRemoval = false AND t.attachment is not null"));
+        } catch (final PersistenceException | IllegalStateException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            return Collections.emptyList();
+        }
     }
 }
@@ -90,7 +90,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
         List<TrashObject> trashObjectList = Collections.emptyList();
 
         try {
-            final Future<List<TrashObject>> future = executorService.submit(() -> {
+            final Future<List<TrashObject>> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -118,7 +118,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
     @Override
     public void add(final TrashObject trashObject) {
         try {
-            final Future<Void> future = executorService.submit(() -> {
+            final Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -146,7 +146,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
     @Override
     public void remove(final TrashObject trashObject) {
         try {
-            final Future<Void> future = executorService.submit(() -> {
+            final Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -178,7 +178,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
     @Override
     public void addEntityTrash(final Object entity) {
         try {
-            final Future<Void> future = executorService.submit(() -> {
+            final Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -205,7 +205,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
 
     private void cleanupEntityTrash() {
         try {
-            final Future<Void> future = executorService.submit(() -> {
+            final Future<Void> future = submit(() -> {
                 emLock.lock();
 
                 try {
@@ -222,7 +222,7 @@ class JpaTrashDAO extends AbstractJpaDAO implements TrashDAO {
 
                     for (final List<JpaTrashEntity> entityList : listList) {
 
-                        executorService.submit(() -> {
+                        submit(() -> {
                             emLock.lock();
 
                             try {
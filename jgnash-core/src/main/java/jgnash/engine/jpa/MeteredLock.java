@@ -0,0 +1,62 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@code ReentrantLock} that reports wait and hold times to {@link PersistenceMetrics} when enabled.  Only the
+ * outermost acquisition of a reentrant hold is measured.
+ *
+ * @author Craig Cavanaugh
+ */
+final class MeteredLock extends ReentrantLock {
+
+    /**
+     * Time the lock was acquired, zero if not measured.  Only accessed by the thread holding the lock.
+     */
+    private long acquired;
+
+    @Override
+    public void lock() {
+        final PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+
+        if (metrics.isEnabled() && !isHeldByCurrentThread()) {
+            final long start = System.nanoTime();
+
+            super.lock();
+
+            acquired = System.nanoTime();
+            metrics.recordLockWait(acquired - start);
+        } else {
+            super.lock();
+        }
+    }
+
+    @Override
+    public void unlock() {
+        if (acquired != 0 && getHoldCount() == 1) {
+            final long held = System.nanoTime() - acquired;
+
+            acquired = 0;
+            PersistenceMetrics.getInstance().recordLockHold(held);
+        }
+
+        super.unlock();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+
+import javax.persistence.EntityManagerFactory;
+
+import jgnash.util.AbstractMetrics;
+import jgnash.util.LatencyHistogram;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+
+/**
+ * Opt-in metrics for the JPA persistence layer.
+ * <p>
+ * Records the latency of each DAO method, the depth of and wait within the shared executor, the wait for and hold
+ * time of the {@code EntityManager} lock, and Hibernate statistics.  The metrics are published through JMX as
+ * {@value #OBJECT_NAME}, logged periodically, and available as a text report.
+ * <p>
+ * Nothing is recorded while disabled; the instrumented code paths only check a volatile flag.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class PersistenceMetrics extends AbstractMetrics implements PersistenceMetricsMXBean {
+
+    static final String OBJECT_NAME = "jgnash:type=PersistenceMetrics";
+
+    private static final PersistenceMetrics INSTANCE = new PersistenceMetrics();
+
+    private final Map<String, LatencyHistogram> methodLatencies = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram executorWait = new LatencyHistogram();
+
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+
+    private final LatencyHistogram lockHold = new LatencyHistogram();
+
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    private volatile EntityManagerFactory factory;
+
+    private PersistenceMetrics() {
+        super(OBJECT_NAME, "Persistence Metrics Executor");
+    }
+
+    public static PersistenceMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    protected void enabledChanged(final boolean enabled) {
+        updateStatistics();
+    }
+
+    /**
+     * Sets the {@code EntityManagerFactory} Hibernate statistics are collected from.
+     *
+     * @param factory {@code EntityManagerFactory} in use, {@code null} when closed
+     */
+    synchronized void setEntityManagerFactory(final EntityManagerFactory factory) {
+        this.factory = factory;
+
+        updateStatistics();
+    }
+
+    void recordLatency(final String method, final long nanos) {
+        methodLatencies.computeIfAbsent(method, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    void recordExecutorWait(final long nanos) {
+        executorWait.record(nanos);
+    }
+
+    void recordQueueDepth(final int depth) {
+        maxQueueDepth.accumulate(depth);
+    }
+
+    void recordLockWait(final long nanos) {
+        lockWait.record(nanos);
+    }
+
+    void recordLockHold(final long nanos) {
+        lockHold.record(nanos);
+    }
+
+    @Override
+    public int getExecutorQueueDepth() {
+        return AbstractJpaDAO.getExecutorQueueSize();
+    }
+
+    @Override
+    public int getMaxExecutorQueueDepth() {
+        return (int) maxQueueDepth.get();
+    }
+
+    @Override
+    public long getMeanExecutorWait() {
+        return executorWait.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxExecutorWait() {
+        return executorWait.getMaxMicros();
+    }
+
+    @Override
+    public long getMeanLockWait() {
+        return lockWait.getMeanMicros();
+    }
+
+    @Override
+    public long getMeanLockHold() {
+        return lockHold.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxLockHold() {
+        return lockHold.getMaxMicros();
+    }
+
+    @Override
+    public Map<String, Long> getMethodLatencies() {
+        final Map<String, Long> map = new TreeMap<>();
+
+        methodLatencies.forEach((method, histogram) -> map.put(method, histogram.getMeanMicros()));
+
+        return map;
+    }
+
+    @Override
+    public synchronized void reset() {
+        methodLatencies.clear();
+        executorWait.reset();
+        lockWait.reset();
+        lockHold.reset();
+        maxQueueDepth.reset();
+
+        final Statistics statistics = getStatistics();
+
+        if (statistics != null) {
+            statistics.clear();
+        }
+    }
+
+    @Override
+    public String getReport() {
+        final String lineSeparator = System.lineSeparator();
+        final StringBuilder builder = new StringBuilder("Persistence metrics").append(lineSeparator);
+
+        builder.append("  executor queue depth ").append(getExecutorQueueDepth()).append(", max ")
+                .append(getMaxExecutorQueueDepth()).append(lineSeparator);
+        builder.append("  executor wait: ").append(executorWait).append(lineSeparator);
+        builder.append("  lock wait: ").append(lockWait).append(lineSeparator);
+        builder.append("  lock hold: ").append(lockHold).append(lineSeparator);
+
+        new TreeMap<>(methodLatencies).forEach((method, histogram) ->
+                builder.append("  ").append(method).append(": ").append(histogram).append(lineSeparator));
+
+        final Statistics statistics = getStatistics();
+
+        if (statistics != null && statistics.isStatisticsEnabled()) {
+            builder.append("  hibernate: queries ").append(statistics.getQueryExecutionCount())
+                    .append(", slowest ").append(statistics.getQueryExecutionMaxTime()).append(" ms")
+                    .append(", statements ").append(statistics.getPrepareStatementCount())
+                    .append(", transactions ").append(statistics.getTransactionCount())
+                    .append(", flushes ").append(statistics.getFlushCount()).append(lineSeparator);
+            builder.append("  hibernate: entity loads ").append(statistics.getEntityLoadCount())
+                    .append(", fetches ").append(statistics.getEntityFetchCount())
+                    .append(", second level hits ").append(statistics.getSecondLevelCacheHitCount())
+                    .append(", misses ").append(statistics.getSecondLevelCacheMissCount())
+                    .append(", query cache hits ").append(statistics.getQueryCacheHitCount())
+                    .append(", misses ").append(statistics.getQueryCacheMissCount()).append(lineSeparator);
+
+            if (statistics.getQueryExecutionMaxTimeQueryString() != null) {
+                builder.append("  hibernate: slowest query ")
+                        .append(statistics.getQueryExecutionMaxTimeQueryString()).append(lineSeparator);
+            }
+        }
+
+        return builder.toString();
+    }
+
+    private Statistics getStatistics() {
+        final EntityManagerFactory entityManagerFactory = factory;
+
+        if (entityManagerFactory != null && entityManagerFactory.isOpen()) {
+            return entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        }
+
+        return null;
+    }
+
+    private void updateStatistics() {
+        final Statistics statistics = getStatistics();
+
+        if (statistics != null) {
+            statistics.setStatisticsEnabled(isEnabled());
+        }
+    }
+}
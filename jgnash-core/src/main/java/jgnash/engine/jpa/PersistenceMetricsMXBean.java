@@ -0,0 +1,60 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.util.Map;
+
+/**
+ * JMX interface for the persistence metrics.  All times are in microseconds.
+ *
+ * @author Craig Cavanaugh
+ */
+public interface PersistenceMetricsMXBean {
+
+    boolean isEnabled();
+
+    int getExecutorQueueDepth();
+
+    int getMaxExecutorQueueDepth();
+
+    long getMeanExecutorWait();
+
+    long getMaxExecutorWait();
+
+    long getMeanLockWait();
+
+    long getMeanLockHold();
+
+    long getMaxLockHold();
+
+    /**
+     * Returns the mean latency of each instrumented DAO method.
+     *
+     * @return map of method name to mean latency
+     */
+    Map<String, Long> getMethodLatencies();
+
+    /**
+     * Returns the complete report, including Hibernate statistics, as text.
+     *
+     * @return metrics report
+     */
+    String getReport();
+
+    void reset();
+}
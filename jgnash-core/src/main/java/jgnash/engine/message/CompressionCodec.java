@@ -0,0 +1,199 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.message;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+/**
+ * Compresses the frames of the binary message protocol.
+ * <p>
+ * Each frame starts with a type byte.  Frames smaller than the threshold are sent raw, larger frames are deflated
+ * and carry their inflated length.  The deflate stream is flushed after each frame but is not reset, so a frame
+ * that repeats recent content, as the messages of a bulk import do, compresses to a few bytes.  The codec belongs to
+ * a single connection and must be placed behind the frame decoder and encoder.
+ * <p>
+ * The compression ratio and the time spent compressing and decompressing are logged when the connection closes.
+ *
+ * @author Craig Cavanaugh
+ */
+class CompressionCodec extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+
+    private static final Logger logger = Logger.getLogger(CompressionCodec.class.getName());
+
+    /**
+     * Frames smaller than this are not worth compressing.
+     */
+    static final int THRESHOLD = 256;
+
+    private static final byte RAW = 0;
+
+    private static final byte DEFLATED = 1;
+
+    /**
+     * Output buffer growth while deflating.
+     */
+    private static final int DEFLATE_STEP = 4096;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+    private final Inflater inflater = new Inflater(true);
+
+    private long sentFrames;
+
+    private long deflatedFrames;
+
+    private long deflatedBytes;
+
+    private long deflatedLength;
+
+    private long deflateNanos;
+
+    private long receivedFrames;
+
+    private long inflatedBytes;
+
+    private long inflatedLength;
+
+    private long inflateNanos;
+
+    @Override
+    protected void encode(final ChannelHandlerContext ctx, final ByteBuf msg, final List<Object> out) {
+        final int length = msg.readableBytes();
+
+        sentFrames++;
+
+        if (length < THRESHOLD) {
+            out.add(ctx.alloc().heapBuffer(1 + length).writeByte(RAW).writeBytes(msg));
+            return;
+        }
+
+        final long start = System.nanoTime();
+        final ByteBuf frame = ctx.alloc().heapBuffer(1 + Integer.BYTES + length / 2);
+
+        frame.writeByte(DEFLATED).writeInt(length);
+        deflater.setInput(msg.nioBuffer());
+
+        // a full output buffer means the flush is not complete
+        int written;
+
+        do {
+            frame.ensureWritable(DEFLATE_STEP);
+
+            final int writable = frame.writableBytes();
+
+            written = deflater.deflate(frame.nioBuffer(frame.writerIndex(), writable), Deflater.SYNC_FLUSH);
+            frame.writerIndex(frame.writerIndex() + written);
+        } while (written == writable);
+
+        msg.skipBytes(length);
+        out.add(frame);
+
+        deflateNanos += System.nanoTime() - start;
+        deflatedFrames++;
+        deflatedBytes += length;
+        deflatedLength += frame.readableBytes();
+    }
+
+    @Override
+    protected void decode(final ChannelHandlerContext ctx, final ByteBuf msg, final List<Object> out) {
+        receivedFrames++;
+
+        final byte type = msg.readByte();
+
+        if (type == RAW) {
+            out.add(msg.retainedSlice());
+            return;
+        }
+
+        if (type != DEFLATED) {
+            throw new CorruptedFrameException("Invalid frame type: " + type);
+        }
+
+        final long start = System.nanoTime();
+        final int compressedLength = 1 + msg.readableBytes();
+        final int length = msg.readInt();
+
+        if (length < 0 || length > MessageBusServer.MAX_FRAME_LENGTH) {
+            throw new CorruptedFrameException("Invalid frame length: " + length);
+        }
+
+        // the spare byte lets the inflater consume the flush marker that follows the content
+        final ByteBuf frame = ctx.alloc().heapBuffer(length + 1);
+
+        try {
+            inflater.setInput(msg.nioBuffer());
+
+            final ByteBuffer output = frame.nioBuffer(0, length + 1);
+
+            if (inflater.inflate(output) != length || inflater.getRemaining() > 0) {
+                throw new CorruptedFrameException("Invalid compressed frame");
+            }
+        } catch (final DataFormatException e) {
+            frame.release();
+            throw new CorruptedFrameException(e);
+        } catch (final CorruptedFrameException e) {
+            frame.release();
+            throw e;
+        }
+
+        msg.skipBytes(msg.readableBytes());
+        out.add(frame.writerIndex(length));
+
+        inflateNanos += System.nanoTime() - start;
+        inflatedBytes += length;
+        inflatedLength += compressedLength;
+    }
+
+    @Override
+    public void handlerRemoved(final ChannelHandlerContext ctx) throws Exception {
+        logStatistics(ctx.channel().remoteAddress());
+
+        deflater.end();
+        inflater.end();
+
+        super.handlerRemoved(ctx);
+    }
+
+    private void logStatistics(final SocketAddress remoteAddress) {
+        if (logger.isLoggable(Level.INFO) && sentFrames + receivedFrames > 0) {
+            logger.info(String.format("Compression with %s: sent %d frames, %d deflated from %d to %d bytes (%.1f%%) "
+                            + "in %d ms; received %d frames, inflated from %d to %d bytes (%.1f%%) in %d ms",
+                    remoteAddress, sentFrames, deflatedFrames, deflatedBytes, deflatedLength,
+                    ratio(deflatedLength, deflatedBytes), TimeUnit.NANOSECONDS.toMillis(deflateNanos),
+                    receivedFrames, inflatedLength, inflatedBytes, ratio(inflatedLength, inflatedBytes),
+                    TimeUnit.NANOSECONDS.toMillis(inflateNanos)));
+        }
+    }
+
+    private static double ratio(final long compressed, final long plain) {
+        return plain > 0 ? compressed * 100.0 / plain : 0;
+    }
+}
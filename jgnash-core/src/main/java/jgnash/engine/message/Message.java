@@ -64,7 +64,7 @@ public class Message implements Serializable, Cloneable {
         this(channel, event, source.getUuid());
     }
 
-    private Message(final MessageChannel channel, final ChannelEvent event, final String source) {
+    Message(final MessageChannel channel, final ChannelEvent event, final String source) {
         this.source = Objects.requireNonNull(source);
         this.event = Objects.requireNonNull(event);
         this.channel = Objects.requireNonNull(channel);
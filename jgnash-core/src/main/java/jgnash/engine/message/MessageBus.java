@@ -20,21 +20,31 @@ package jgnash.engine.message;
 import java.lang.ref.WeakReference;
 import java.time.LocalDateTime;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.engine.DataStoreType;
 import jgnash.util.DefaultDaemonThreadFactory;
+import jgnash.util.LatencyHistogram;
 
 /**
  * Thread safe Message Bus.
@@ -43,6 +53,18 @@ import jgnash.util.DefaultDaemonThreadFactory;
  * and to ease the burden of synchronizing against multiple threads.  The iterator
  * must be used for access, but removal of weak references must be done through the
  * set, not the iterator.
+ * <p>
+ * Each channel is dispatched independently: messages for one channel are delivered in order, while different
+ * channels are delivered concurrently so a slow listener only delays its own channels.  A listener registered for
+ * several channels is never called concurrently.
+ * <p>
+ * Messages are coalesced: messages fired for a channel within a short window are delivered together and reach a
+ * listener as a single call to {@link MessageListener#messagesPosted(List)}.
+ * <p>
+ * Blocking and {@link MessageChannel#SYSTEM} events are barriers: they are only delivered once every message fired
+ * before them, on any channel, has been delivered.
+ * <p>
+ * The latency of each listener is tracked by class to find slow subscribers.
  *
  * @author Craig Cavanaugh
  */
@@ -55,12 +77,35 @@ public class MessageBus {
 
     private static final Logger logger = Logger.getLogger(MessageBus.class.getName());
 
-    private final ConcurrentMap<MessageChannel, Set<WeakReference<MessageListener>>> map = new ConcurrentHashMap<>();
+    private final ConcurrentMap<MessageChannel, Set<ListenerReference>> map = new ConcurrentHashMap<>();
 
-    private final ExecutorService pool = Executors.newSingleThreadExecutor(new DefaultDaemonThreadFactory("Message Bus Executor"));
+    /**
+     * Messages fired within this window are delivered together.
+     */
+    private static final long COALESCE_WINDOW_MILLIS = 10;
+
+    /**
+     * Listener calls that take longer are logged.
+     */
+    private static final long SLOW_LISTENER_MILLIS = 250;
+
+    /**
+     * One thread per channel, a channel never waits for another.
+     */
+    private final ExecutorService pool = Executors.newFixedThreadPool(MessageChannel.values().length,
+            new DefaultDaemonThreadFactory("Message Bus Executor"));
+
+    private final Map<MessageChannel, ChannelDispatcher> dispatchers = new EnumMap<>(MessageChannel.class);
+
+    private final ConcurrentMap<String, LatencyHistogram> listenerLatencies = new ConcurrentHashMap<>();
 
     private MessageBusClient messageBusClient = null;
 
+    /**
+     * Completes when the last barrier event has been delivered.  Guarded by {@code dispatchers}.
+     */
+    private CompletableFuture<Void> barrierTail = CompletableFuture.completedFuture(null);
+
     private static final Map<String, MessageBus> busMap = new HashMap<>();
 
     private static final String DEFAULT = "default";
@@ -70,6 +115,10 @@ public class MessageBus {
 
     private MessageBus(final String busName) {
         this.busName = busName;
+
+        for (final MessageChannel channel : MessageChannel.values()) {
+            dispatchers.put(channel, new ChannelDispatcher());
+        }
     }
 
     /**
@@ -174,20 +223,39 @@ public class MessageBus {
         return result;
     }
 
-    public void registerListener(final MessageListener listener, final MessageChannel... channels) {
+    public synchronized void registerListener(final MessageListener listener, final MessageChannel... channels) {
+
+        // share one reference across channels so calls to the listener can be serialized
+        ListenerReference reference = findReference(listener);
+
+        if (reference == null) {
+            reference = new ListenerReference(listener);
+        }
+
         for (final MessageChannel channel : channels) {
-            final Set<WeakReference<MessageListener>> set
-                    = map.computeIfAbsent(channel, k -> new CopyOnWriteArraySet<>());
+            final Set<ListenerReference> set = map.computeIfAbsent(channel, k -> new CopyOnWriteArraySet<>());
 
             if (containsListener(listener, channel)) {
                 logger.severe("An attempt was made to install a duplicate listener");
                 logStackTrace();
             } else {
-                set.add(new WeakReference<>(listener));
+                set.add(reference);
             }
         }
     }
 
+    private ListenerReference findReference(final MessageListener listener) {
+        for (final Set<ListenerReference> set : map.values()) {
+            for (final ListenerReference ref : set) {
+                if (ref.get() == listener) {
+                    return ref;
+                }
+            }
+        }
+
+        return null;
+    }
+
     private static void logStackTrace() {
         final StringBuilder trace = new StringBuilder("Stack Trace" + System.lineSeparator());
 
@@ -198,12 +266,12 @@ public class MessageBus {
         logger.log(Level.SEVERE, trace.toString());
     }
 
-    public void unregisterListener(final MessageListener listener, final MessageChannel... channels) {
+    public synchronized void unregisterListener(final MessageListener listener, final MessageChannel... channels) {
         for (MessageChannel channel : channels) {
-            Set<WeakReference<MessageListener>> set = map.get(channel);
+            Set<ListenerReference> set = map.get(channel);
 
             if (set != null) {
-                for (WeakReference<MessageListener> ref : set) {
+                for (ListenerReference ref : set) {
                     MessageListener l = ref.get();
                     if (l == null || l == listener) {
                         set.remove(ref);
@@ -214,10 +282,10 @@ public class MessageBus {
     }
 
     private boolean containsListener(final MessageListener listener, final MessageChannel channel) {
-        Set<WeakReference<MessageListener>> set = map.get(channel);
+        Set<ListenerReference> set = map.get(channel);
 
         if (set != null) {
-            for (WeakReference<MessageListener> ref : set) {
+            for (ListenerReference ref : set) {
                 MessageListener l = ref.get();
                 if (l == listener) {
                     return true;
@@ -228,16 +296,19 @@ public class MessageBus {
     }
 
     /**
-     * Fires an event and blocks until all listeners have processed it.
+     * Fires an event and blocks until all listeners have processed it.  Events fired earlier on any channel are
+     * delivered first.
      *
      * @param message {@code Message} to send
      */
     public void fireBlockingEvent(final Message message) {
-        final Future<Void> future = fireEvent(message);
-
-        // spin until everyone has consumed the event
-        while(!future.isDone()) {
-            Thread.onSpinWait();
+        try {
+            postBarrier(message).get();   // park until everyone has consumed the event
+        } catch (final InterruptedException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         }
     }
 
@@ -248,39 +319,289 @@ public class MessageBus {
      * @return {@code Future} indicating when all listeners have processed the event
      */
     public Future<Void> fireEvent(final Message message) {
+        if (message.getChannel() == MessageChannel.SYSTEM) {
+            return postBarrier(message);
+        }
 
-        return pool.submit(() -> {
-            final Set<WeakReference<MessageListener>> staleListener = new HashSet<>();
+        return dispatchers.get(message.getChannel()).post(Collections.singletonList(message));
+    }
 
-            // Look for and post to local listeners
-            final Set<WeakReference<MessageListener>> set = map.get(message.getChannel());
+    /**
+     * Posts a message once all messages posted before it have been delivered.  Barriers are delivered in the order
+     * they are posted.
+     *
+     * @param message {@code Message} to send
+     * @return {@code Future} indicating when all listeners have processed the event
+     */
+    private CompletableFuture<Void> postBarrier(final Message message) {
+        synchronized (dispatchers) {
+            final List<CompletableFuture<Void>> earlier = new ArrayList<>();
 
-            if (set != null) {
-                for (final WeakReference<MessageListener> ref : set) {
-                    MessageListener l = ref.get();
-                    if (l != null) {
-                        l.messagePosted(message);
-                    } else {
-                        staleListener.add(ref);
-                    }
+            for (final ChannelDispatcher dispatcher : dispatchers.values()) {
+                earlier.add(dispatcher.flushed());
+            }
+
+            earlier.add(barrierTail);
+
+            barrierTail = CompletableFuture.allOf(earlier.toArray(new CompletableFuture<?>[0]))
+                    .thenCompose(ignored -> dispatchers.get(message.getChannel())
+                            .post(Collections.singletonList(message)));
+
+            return barrierTail;
+        }
+    }
+
+    /**
+     * Fires a batch of events to all listeners and return immediately with a {@code Future}.  The messages for each
+     * channel are delivered, and sent to a remote server, as a unit.
+     *
+     * @param messages {@code Messages} to send in order
+     *
+     * @return {@code Future} indicating when all listeners have processed the events
+     */
+    public Future<Void> fireEvents(final List<Message> messages) {
+        final Map<MessageChannel, List<Message>> channelMessages = new EnumMap<>(MessageChannel.class);
+
+        for (final Message message : messages) {
+            channelMessages.computeIfAbsent(message.getChannel(), k -> new ArrayList<>()).add(message);
+        }
+
+        if (channelMessages.size() == 1) {
+            final Map.Entry<MessageChannel, List<Message>> entry = channelMessages.entrySet().iterator().next();
+
+            return dispatchers.get(entry.getKey()).post(entry.getValue());
+        }
+
+        final List<CompletableFuture<Void>> futures = new ArrayList<>();
+
+        channelMessages.forEach((channel, list) -> futures.add(dispatchers.get(channel).post(list)));
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    /**
+     * Returns the latency of each listener class.
+     *
+     * @return map of listener class name to latency summary
+     */
+    public Map<String, String> getListenerLatencies() {
+        final Map<String, String> latencies = new TreeMap<>();
+
+        listenerLatencies.forEach((name, histogram) -> latencies.put(name, histogram.toString()));
+
+        return latencies;
+    }
+
+    /**
+     * Returns the listener latencies as text, slowest mean first.
+     *
+     * @return listener latency report
+     */
+    public String getListenerReport() {
+        final String lineSeparator = System.lineSeparator();
+        final StringBuilder builder = new StringBuilder("Message listener latency").append(lineSeparator);
+
+        listenerLatencies.entrySet().stream()
+                .sorted((o1, o2) -> Long.compare(o2.getValue().getMeanMicros(), o1.getValue().getMeanMicros()))
+                .forEach(entry -> builder.append("  ").append(entry.getKey()).append(": ").append(entry.getValue())
+                        .append(lineSeparator));
+
+        return builder.toString();
+    }
+
+    private void deliver(final MessageChannel channel, final List<Message> batch) {
+        final Set<ListenerReference> staleListener = new HashSet<>();
+
+        // Look for and post to local listeners
+        final Set<ListenerReference> set = map.get(channel);
+
+        if (set != null) {
+            for (final ListenerReference ref : set) {
+                MessageListener l = ref.get();
+                if (l != null) {
+                    ref.post(l, batch);
+                } else {
+                    staleListener.add(ref);
                 }
             }
 
             // purge stale references to prevent a slowdown and wasted memory during a long application session
-            for (final WeakReference<MessageListener> staleReference : staleListener) {
+            for (final ListenerReference staleReference : staleListener) {
                 set.remove(staleReference);
             }
+        }
+
+        /* Post a remote message if configured to do so and filter system events.
+         *
+         * Do not re-post a remote message otherwise it will just loop through the
+         * remote message system
+         * */
+        final MessageBusClient client = messageBusClient;
+
+        if (client != null && channel != MessageChannel.SYSTEM) {
+            final List<Message> localMessages = new ArrayList<>(batch.size());
+
+            for (final Message message : batch) {
+                if (!message.isRemote()) {
+                    localMessages.add(message);
+                }
+            }
+
+            if (localMessages.size() == 1) {
+                client.sendRemoteMessage(localMessages.get(0));
+            } else if (!localMessages.isEmpty()) {
+                client.sendRemoteMessages(localMessages);
+            }
+        }
+    }
+
+    /**
+     * Coalesces and delivers the messages of one channel in order.  At most one delivery task per channel is queued
+     * or running at a time.
+     */
+    private final class ChannelDispatcher {
+
+        /**
+         * Messages waiting for delivery.
+         */
+        private List<Message> pendingMessages = new ArrayList<>();
+
+        /**
+         * Completes when the pending messages have been delivered.
+         */
+        private CompletableFuture<Void> pendingFuture;
+
+        /**
+         * Completes when the messages being delivered have been delivered.
+         */
+        private CompletableFuture<Void> deliveringFuture;
+
+        /**
+         * True while a delivery task is queued or running.
+         */
+        private boolean active;
+
+        /**
+         * Returns a future that completes once every message posted so far has been delivered.
+         *
+         * @return delivery future
+         */
+        synchronized CompletableFuture<Void> flushed() {
+            if (pendingFuture != null) {
+                return pendingFuture;   // delivered after any messages in flight
+            }
+
+            if (deliveringFuture != null) {
+                return deliveringFuture;
+            }
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        synchronized CompletableFuture<Void> post(final List<Message> messages) {
+            if (pendingFuture == null) {
+                pendingFuture = new CompletableFuture<>();
+            }
+
+            pendingMessages.addAll(messages);
+
+            if (!active) {
+                schedule();
+            }
+
+            return pendingFuture;
+        }
+
+        private void schedule() {
+            active = true;
+
+            CompletableFuture.delayedExecutor(COALESCE_WINDOW_MILLIS, TimeUnit.MILLISECONDS, pool)
+                    .execute(this::drain);
+        }
+
+        private void drain() {
+            try {
+                while (true) {
+                    final List<Message> messages;
+                    final CompletableFuture<Void> future;
+
+                    synchronized (this) {
+                        if (pendingMessages.isEmpty()) {
+                            return;
+                        }
+
+                        messages = pendingMessages;
+                        future = pendingFuture;
+
+                        pendingMessages = new ArrayList<>();
+                        pendingFuture = null;
+                        deliveringFuture = future;
+                    }
 
-            /* Post a remote message if configured to do so and filter system events.
-             *
-             * Do not re-post a remote message otherwise it will just loop through the
-             * remote message system
-             * */
-            if (!message.isRemote() && messageBusClient != null && message.getChannel() != MessageChannel.SYSTEM) {
-                messageBusClient.sendRemoteMessage(message);
+                    try {
+                        deliver(messages.get(0).getChannel(), messages);
+                    } catch (final RuntimeException e) {    // e.g. a failure to send to the remote server
+                        logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+                    } finally {
+                        synchronized (this) {
+                            deliveringFuture = null;
+                        }
+                        future.complete(null);
+                    }
+                }
+            } finally {
+                synchronized (this) {
+                    active = false;
+
+                    if (!pendingMessages.isEmpty()) {   // only if the loop was left abnormally
+                        schedule();
+                    }
+                }
             }
+        }
+    }
 
-            return null;
-        });
+    /**
+     * Weak reference to a listener shared by all of its channels.  Calls to the listener are serialized and timed.
+     */
+    private final class ListenerReference extends WeakReference<MessageListener> {
+
+        private final ReentrantLock lock = new ReentrantLock();
+
+        private final LatencyHistogram latency;
+
+        ListenerReference(final MessageListener listener) {
+            super(listener);
+
+            latency = listenerLatencies.computeIfAbsent(listener.getClass().getName(), k -> new LatencyHistogram());
+        }
+
+        void post(final MessageListener listener, final List<Message> batch) {
+            lock.lock();
+
+            try {
+                final long start = System.nanoTime();
+
+                if (batch.size() == 1) {
+                    listener.messagePosted(batch.get(0));
+                } else {
+                    listener.messagesPosted(batch);
+                }
+
+                final long elapsed = System.nanoTime() - start;
+
+                latency.record(elapsed);
+
+                if (elapsed > TimeUnit.MILLISECONDS.toNanos(SLOW_LISTENER_MILLIS)) {
+                    logger.log(Level.INFO, "Slow message listener {0} took {1} ms for {2} message(s)",
+                            new Object[]{listener.getClass().getName(), TimeUnit.NANOSECONDS.toMillis(elapsed),
+                                    batch.size()});
+                }
+            } catch (final RuntimeException e) {    // one failing listener must not starve the others
+                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            } finally {
+                lock.unlock();
+            }
+        }
     }
 }
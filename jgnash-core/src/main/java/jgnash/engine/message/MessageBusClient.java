@@ -18,6 +18,9 @@
 package jgnash.engine.message;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -25,36 +28,39 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
 import io.netty.util.CharsetUtil;
 import io.netty.util.ReferenceCountUtil;
 
 import java.io.CharArrayWriter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.engine.Account;
-import jgnash.engine.CommodityNode;
-import jgnash.engine.Config;
 import jgnash.engine.DataStoreType;
 import jgnash.engine.Engine;
 import jgnash.engine.EngineFactory;
-import jgnash.engine.ExchangeRate;
-import jgnash.engine.Transaction;
-import jgnash.engine.budget.Budget;
+import jgnash.engine.StoredObject;
 import jgnash.engine.jpa.JpaNetworkServer;
-import jgnash.engine.recurring.Reminder;
 import jgnash.net.ConnectionFactory;
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
 import jgnash.util.EncryptionManager;
 
 import com.thoughtworks.xstream.XStream;
@@ -81,7 +87,7 @@ class MessageBusClient {
 
     private EncryptionManager encryptionManager = null;
 
-    private NioEventLoopGroup eventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
 
     private Channel channel;
 
@@ -89,6 +95,11 @@ class MessageBusClient {
 
     private final ReentrantLock channelLock = new ReentrantLock();
 
+    /**
+     * True once outbound messages are sent with the binary protocol.
+     */
+    private volatile boolean binaryProtocol;
+
     static {
         logger.setLevel(Level.INFO);
     }
@@ -121,12 +132,12 @@ class MessageBusClient {
             encryptionManager = new EncryptionManager(password);
         }
 
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newClientGroup("message-bus-client");
 
         final Bootstrap bootstrap = new Bootstrap();
 
         bootstrap.group(eventLoopGroup)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.getChannelClass())
                 .handler(new MessageBusClientInitializer())
                 .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, getConnectionTimeout() * 1000)
                 .option(ChannelOption.SO_KEEPALIVE, true);
@@ -155,7 +166,12 @@ class MessageBusClient {
         public void initChannel(final SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
 
-            // Add the text line codec combination first,
+            // Encryption applies to the whole stream, so it must be first
+            if (encryptionManager != null) {
+                pipeline.addLast("encryption", new EncryptionHandler(encryptionManager, true));
+            }
+
+            // Add the text line codec combination next,
             pipeline.addLast("framer", new DelimiterBasedFrameDecoder(8192, true, Delimiters.lineDelimiter()));
             pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
             pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
@@ -173,23 +189,16 @@ class MessageBusClient {
 
         private final ExecutorService executorService = Executors.newSingleThreadExecutor();
 
-        private String decrypt(final Object object) {
-            String plainMessage;
-
-            if (encryptionManager != null) {
-                plainMessage = encryptionManager.decrypt(object.toString());
-            } else {
-                plainMessage = object.toString();
-            }
-
-            return plainMessage;
-        }
-
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
 
             try {
-                final String plainMessage = decrypt(msg);
+                if (msg instanceof ByteBuf) {
+                    readFrame(ByteBufUtil.getBytes((ByteBuf) msg));
+                    return;
+                }
+
+                final String plainMessage = msg.toString();
 
                 logger.log(Level.FINE, "messageReceived: {0}", plainMessage);
 
@@ -205,25 +214,121 @@ class MessageBusClient {
                             processRemoteMessage(message);
                         }
                     });
-                } else if (plainMessage.startsWith(MessageBusServer.PATH_PREFIX)) {
-                    dataBasePath = plainMessage.substring(MessageBusServer.PATH_PREFIX.length());
-                    logger.log(Level.FINE, "Remote data path is: {0}", dataBasePath);
-                } else if (plainMessage.startsWith(MessageBusServer.DATA_STORE_TYPE_PREFIX)) {
-                    dataBaseType = DataStoreType.valueOf(plainMessage.substring(MessageBusServer.DATA_STORE_TYPE_PREFIX.length()));
-                    logger.log(Level.FINE, "Remote dataBaseType type is: {0}", dataBaseType.name());
-                } else if (plainMessage.startsWith(EncryptionManager.DECRYPTION_ERROR_TAG)) {    // decryption has failed, shut down the engine
-                    logger.log(Level.SEVERE, "Unable to decrypt the remote message");
-                } else if (plainMessage.startsWith(JpaNetworkServer.STOP_SERVER_MESSAGE)) {
-                    logger.info("Server is shutting down");
-                    EngineFactory.closeEngine(name);
+                } else if (plainMessage.startsWith(MessageBusServer.PROTOCOL_PREFIX)) {
+                    negotiateProtocol(ctx, plainMessage);
                 } else {
-                    logger.log(Level.SEVERE, "Unknown message: {0}", plainMessage);
+                    processControlMessage(plainMessage);
                 }
             } finally {
                 ReferenceCountUtil.release(msg);
             }
         }
 
+        private void readFrame(final byte[] plainFrame) {
+            if (plainFrame.length == 0) {
+                logger.log(Level.SEVERE, "Received an empty message");
+                return;
+            }
+
+            if (plainFrame[0] == MessageCodec.CONTROL_FRAME) {
+                processControlMessage(MessageCodec.decodeControl(plainFrame));
+            } else if (plainFrame[0] == MessageCodec.BATCH_FRAME) {
+                executorService.submit(() -> {
+                    final Engine engine = EngineFactory.getEngine(name);
+                    Objects.requireNonNull(engine);
+
+                    final List<Message> messages = new ArrayList<>();
+                    final Set<StoredObject> refreshed = new HashSet<>();
+
+                    for (final byte[] messageFrame : MessageCodec.splitBatch(plainFrame)) {
+
+                        // ignore our own messages
+                        if (!engine.getUuid().equals(MessageCodec.decodeSource(messageFrame))) {
+                            final Message message = MessageCodec.decodeMessage(messageFrame, engine);
+
+                            refreshRemoteMessage(message, refreshed);
+                            messages.add(message);
+                        }
+                    }
+
+                    if (!messages.isEmpty()) {
+                        logger.fine("fire remote messages");
+                        MessageBus.getInstance(name).fireEvents(messages);
+                    }
+                });
+            } else {
+                executorService.submit(() -> {
+                    final Engine engine = EngineFactory.getEngine(name);
+                    Objects.requireNonNull(engine);
+
+                    // ignore our own messages
+                    if (!engine.getUuid().equals(MessageCodec.decodeSource(plainFrame))) {
+                        processRemoteMessage(MessageCodec.decodeMessage(plainFrame, engine));
+                    }
+                });
+            }
+        }
+
+        /**
+         * The server advertises the binary protocol first and acknowledges the request second.  Both arrive on the
+         * event loop, so the pipeline may be changed directly.
+         *
+         * @param ctx          channel context
+         * @param plainMessage protocol message
+         */
+        private void negotiateProtocol(final ChannelHandlerContext ctx, final String plainMessage) {
+            final ChannelPipeline pipeline = ctx.pipeline();
+
+            if (!binaryProtocol) {
+                int protocol;
+
+                try {
+                    protocol = Integer.parseInt(plainMessage.substring(MessageBusServer.PROTOCOL_PREFIX.length()).trim());
+                } catch (final NumberFormatException e) {
+                    protocol = MessageBusServer.TEXT_PROTOCOL;
+                }
+
+                if (protocol >= MessageBusServer.BINARY_PROTOCOL) {
+                    final int request = protocol >= MessageBusServer.COMPRESSED_PROTOCOL
+                            && ConnectionFactory.isCompressionEnabled()
+                            ? MessageBusServer.COMPRESSED_PROTOCOL : MessageBusServer.BINARY_PROTOCOL;
+
+                    ctx.writeAndFlush(MessageBusServer.PROTOCOL_PREFIX + request + MessageBusServer.EOL_DELIMITER);
+
+                    pipeline.replace("encoder", "encoder", new LengthFieldPrepender(MessageBusServer.LENGTH_FIELD_LENGTH));
+
+                    // text received until the acknowledgement passes through the codec untouched
+                    if (request == MessageBusServer.COMPRESSED_PROTOCOL) {
+                        pipeline.addBefore("handler", "compression", new CompressionCodec());
+                    }
+
+                    binaryProtocol = true;
+                }
+            } else {    // acknowledged, everything that follows is binary
+                pipeline.remove("decoder");
+                pipeline.replace("framer", "framer", new LengthFieldBasedFrameDecoder(MessageBusServer.MAX_FRAME_LENGTH,
+                        0, MessageBusServer.LENGTH_FIELD_LENGTH, 0, MessageBusServer.LENGTH_FIELD_LENGTH));
+
+                logger.info(pipeline.get("compression") != null ? "Using the compressed binary message protocol"
+                        : "Using the binary message protocol");
+            }
+        }
+
+        private void processControlMessage(final String plainMessage) {
+            if (plainMessage.startsWith(MessageBusServer.PATH_PREFIX)) {
+                dataBasePath = plainMessage.substring(MessageBusServer.PATH_PREFIX.length());
+                logger.log(Level.FINE, "Remote data path is: {0}", dataBasePath);
+            } else if (plainMessage.startsWith(MessageBusServer.DATA_STORE_TYPE_PREFIX)) {
+                dataBaseType = DataStoreType.valueOf(plainMessage.substring(MessageBusServer.DATA_STORE_TYPE_PREFIX.length()));
+                logger.log(Level.FINE, "Remote dataBaseType type is: {0}", dataBaseType.name());
+            } else if (plainMessage.startsWith(JpaNetworkServer.STOP_SERVER_MESSAGE)) {
+                logger.info("Server is shutting down");
+                EngineFactory.closeEngine(name);
+            } else {
+                logger.log(Level.SEVERE, "Unknown message: {0}", plainMessage);
+            }
+        }
+
         @Override
         public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) throws Exception {
             super.exceptionCaught(ctx, cause);
@@ -253,6 +358,13 @@ class MessageBusClient {
     }
 
     synchronized void sendRemoteMessage(final Message message) {
+        if (binaryProtocol) {
+            sendRemoteFrame(MessageCodec.encodeMessage(message));
+
+            logger.log(Level.FINE, "sent: {0}", message);
+            return;
+        }
+
         CharArrayWriter writer = new CharArrayWriter();
         xstream.marshal(message, new CompactWriter(writer));
 
@@ -261,19 +373,50 @@ class MessageBusClient {
         logger.log(Level.FINE, "sent: {0}", writer);
     }
 
+    /**
+     * Sends a batch of messages as a single frame.  The text protocol sends each message separately.
+     *
+     * @param messages messages to send
+     */
+    synchronized void sendRemoteMessages(final List<Message> messages) {
+        if (binaryProtocol) {
+            sendRemoteFrame(MessageCodec.encodeBatch(messages));
+
+            logger.log(Level.FINE, "sent a batch of {0} messages", messages.size());
+        } else {
+            for (final Message message : messages) {
+                sendRemoteMessage(message);
+            }
+        }
+    }
+
     void sendRemoteShutdownRequest() {
-        sendRemoteMessage(JpaNetworkServer.STOP_SERVER_MESSAGE);
+        if (binaryProtocol) {
+            sendRemoteFrame(MessageCodec.encodeControl(JpaNetworkServer.STOP_SERVER_MESSAGE));
+        } else {
+            sendRemoteMessage(JpaNetworkServer.STOP_SERVER_MESSAGE);
+        }
+    }
+
+    private void sendRemoteFrame(final byte[] frame) {
+        channelLock.lock();
+
+        try {
+            channel.writeAndFlush(Unpooled.wrappedBuffer(frame)).sync();
+        } catch (final InterruptedException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        } catch (final NullPointerException e) {
+            logger.log(Level.INFO, "Tried to send a message through a null channel");
+        } finally {
+            channelLock.unlock();
+        }
     }
 
     private void sendRemoteMessage(final String message) {
         channelLock.lock();
 
         try {
-            if (encryptionManager != null) {
-                channel.writeAndFlush(encryptionManager.encrypt(message) + MessageBusServer.EOL_DELIMITER).sync();
-            } else {
-                channel.writeAndFlush(message + MessageBusServer.EOL_DELIMITER).sync();
-            }
+            channel.writeAndFlush(message + MessageBusServer.EOL_DELIMITER).sync();
         } catch (final InterruptedException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
         } catch (final NullPointerException e) {
@@ -294,26 +437,55 @@ class MessageBusClient {
      * @param message Message to process and send
      */
     private void processRemoteMessage(final Message message) {
+        refreshRemoteMessage(message, new HashSet<>());
+
+        logger.fine("fire remote message");
+        MessageBus.getInstance(name).fireEvent(message);
+    }
+
+    /**
+     * Forces remote updates of the objects referenced by a remote message and flags the message as remote.
+     * <p>
+     * Objects are refreshed in place, so the message keeps its references.  An object that was added by the remote
+     * engine has just been read from the database when the message was decoded and is not read again, and an object
+     * is only refreshed once per batch of messages.
+     * <p>
+     * Messages carry uuids rather than object state.  The client's objects are managed by an {@code EntityManager}
+     * that is flushed by every local commit, so state copied into them from a message would be written back to the
+     * database, and elements added to their collections would be inserted a second time.  Resolving the uuids only
+     * reads objects that are new to the client, and the refreshes below do not cascade, so each reloads a single row
+     * and its collection membership.
+     *
+     * @param message   Message to process
+     * @param refreshed objects already refreshed for the current batch
+     */
+    private void refreshRemoteMessage(final Message message, final Set<StoredObject> refreshed) {
         logger.fine("processing a remote message");
 
         final Engine engine = EngineFactory.getEngine(name);
         Objects.requireNonNull(engine);
 
+        final Consumer<StoredObject> refresh = object -> {
+            if (refreshed.add(object)) {
+                engine.refresh(object);
+            }
+        };
+
         if (message.getChannel() == MessageChannel.ACCOUNT) {
             final Account account = message.getObject(MessageProperty.ACCOUNT);
             switch (message.getEvent()) {
                 case ACCOUNT_ADD:
+                    refresh.accept(account.getParent());
+                    break;
                 case ACCOUNT_REMOVE:
-                    engine.refresh(account);
-                    message.setObject(MessageProperty.ACCOUNT, engine.getAccountByUuid(account.getUuid()));
-                    engine.refresh(account.getParent());
+                    refresh.accept(account);
+                    refresh.accept(account.getParent());
                     break;
                 case ACCOUNT_MODIFY:
                 case ACCOUNT_SECURITY_ADD:
                 case ACCOUNT_SECURITY_REMOVE:
                 case ACCOUNT_VISIBILITY_CHANGE:
-                    engine.refresh(account);
-                    message.setObject(MessageProperty.ACCOUNT, engine.getAccountByUuid(account.getUuid()));
+                    refresh.accept(account);
                     break;
                 default:
                     break;
@@ -321,14 +493,11 @@ class MessageBusClient {
         }
 
         if (message.getChannel() == MessageChannel.BUDGET) {
-            final Budget budget = message.getObject(MessageProperty.BUDGET);
             switch (message.getEvent()) {
-                case BUDGET_ADD:
                 case BUDGET_UPDATE:
                 case BUDGET_REMOVE:
                 case BUDGET_GOAL_UPDATE:
-                    engine.refresh(budget);
-                    message.setObject(MessageProperty.BUDGET, engine.getBudgetByUuid(budget.getUuid()));
+                    refresh.accept(message.getObject(MessageProperty.BUDGET));
                     break;
                 default:
                     break;
@@ -337,25 +506,15 @@ class MessageBusClient {
 
         if (message.getChannel() == MessageChannel.COMMODITY) {
             switch (message.getEvent()) {
-                case CURRENCY_ADD:
                 case CURRENCY_MODIFY:
-                    final CommodityNode currency = message.getObject(MessageProperty.COMMODITY);
-                    engine.refresh(currency);
-                    message.setObject(MessageProperty.COMMODITY, engine.getCurrencyNodeByUuid(currency.getUuid()));
-                    break;
-                case SECURITY_ADD:
                 case SECURITY_MODIFY:
                 case SECURITY_HISTORY_ADD:
                 case SECURITY_HISTORY_REMOVE:
-                    final CommodityNode node = message.getObject(MessageProperty.COMMODITY);
-                    engine.refresh(node);
-                    message.setObject(MessageProperty.COMMODITY, engine.getSecurityNodeByUuid(node.getUuid()));
+                    refresh.accept(message.getObject(MessageProperty.COMMODITY));
                     break;
-                case EXCHANGE_RATE_ADD:
+                case EXCHANGE_RATE_ADD:     // a rate may gain history rather than be new
                 case EXCHANGE_RATE_REMOVE:
-                    final ExchangeRate rate = message.getObject(MessageProperty.EXCHANGE_RATE);
-                    engine.refresh(rate);
-                    message.setObject(MessageProperty.EXCHANGE_RATE, engine.getExchangeRateByUuid(rate.getUuid()));
+                    refresh.accept(message.getObject(MessageProperty.EXCHANGE_RATE));
                     break;
                 default:
                     break;
@@ -363,36 +522,21 @@ class MessageBusClient {
         }
 
         if (message.getChannel() == MessageChannel.CONFIG && message.getEvent() == ChannelEvent.CONFIG_MODIFY) {
-            final Config config = message.getObject(MessageProperty.CONFIG);
-            engine.refresh(config);
-            message.setObject(MessageProperty.CONFIG, engine.getStoredObjectByUuid(Config.class, config.getUuid()));
+            refresh.accept(message.getObject(MessageProperty.CONFIG));
         }
 
-        if (message.getChannel() == MessageChannel.REMINDER) {
-            switch (message.getEvent()) {
-                case REMINDER_ADD:
-                case REMINDER_REMOVE:
-                    final Reminder reminder = message.getObject(MessageProperty.REMINDER);
-                    engine.refresh(reminder);
-                    message.setObject(MessageProperty.REMINDER, engine.getReminderByUuid(reminder.getUuid()));
-                    break;
-                default:
-                    break;
-
-            }
+        if (message.getChannel() == MessageChannel.REMINDER && message.getEvent() == ChannelEvent.REMINDER_REMOVE) {
+            refresh.accept(message.getObject(MessageProperty.REMINDER));
         }
 
         if (message.getChannel() == MessageChannel.TRANSACTION) {
             switch (message.getEvent()) {
-                case TRANSACTION_ADD:
                 case TRANSACTION_REMOVE:
-                    final Transaction transaction = message.getObject(MessageProperty.TRANSACTION);
-                    engine.refresh(transaction);
-                    message.setObject(MessageProperty.TRANSACTION, engine.getTransactionByUuid(transaction.getUuid()));
-
-                    final Account account = message.getObject(MessageProperty.ACCOUNT);
-                    engine.refresh(account);
-                    message.setObject(MessageProperty.ACCOUNT, engine.getAccountByUuid(account.getUuid()));
+                    refresh.accept(message.getObject(MessageProperty.TRANSACTION));
+                    refresh.accept(message.getObject(MessageProperty.ACCOUNT));
+                    break;
+                case TRANSACTION_ADD:
+                    refresh.accept(message.getObject(MessageProperty.ACCOUNT));
                     break;
                 default:
                     break;
@@ -401,8 +545,5 @@ class MessageBusClient {
 
         /* Flag the message as remote */
         message.setRemote();
-
-        logger.fine("fire remote message");
-        MessageBus.getInstance(name).fireEvent(message);
     }
 }
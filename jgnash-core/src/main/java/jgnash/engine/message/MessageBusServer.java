@@ -18,6 +18,9 @@
 package jgnash.engine.message;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
@@ -25,13 +28,14 @@ import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.DefaultChannelGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.DelimiterBasedFrameDecoder;
 import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.string.StringDecoder;
 import io.netty.handler.codec.string.StringEncoder;
 import io.netty.util.CharsetUtil;
@@ -40,18 +44,34 @@ import io.netty.util.concurrent.GlobalEventExecutor;
 
 import java.util.HashSet;
 import java.util.Set;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import jgnash.engine.DataStoreType;
+import jgnash.net.EncryptionHandler;
+import jgnash.net.NettyTransport;
+import jgnash.net.ServerMetrics;
 import jgnash.util.EncryptionManager;
 
 /**
  * Message bus server for remote connections.
+ * <p>
+ * Connections start with a line based text protocol.  The server advertises the binary protocol at connect time and
+ * a client that replies with the binary protocol is switched to length prefixed frames encoded by
+ * {@link MessageCodec}.  A client may instead select the compressed binary protocol, which adds a
+ * {@link CompressionCodec} to its connection.
+ * <p>
+ * Legacy clients that stay with the text protocol are refused.  The server has no engine to resolve message
+ * properties with, so it cannot transcode between the protocols, and a text client would otherwise silently miss
+ * every message posted by a binary client.  A connection that posts a text message, or that has not selected a
+ * binary protocol within {@link #NEGOTIATION_TIMEOUT_SECONDS}, is closed.
+ * <p>
+ * When a password is set, each connection is encrypted as a whole by an {@link EncryptionHandler}.
  *
  * @author Craig Cavanaugh
  */
@@ -63,25 +83,47 @@ public class MessageBusServer {
 
     static final String DATA_STORE_TYPE_PREFIX = "<TYPE>";
 
+    static final String PROTOCOL_PREFIX = "<PROTOCOL>";
+
     static final String EOL_DELIMITER = "\r\n";
 
+    static final int TEXT_PROTOCOL = 0;
+
+    static final int BINARY_PROTOCOL = 1;
+
+    static final int COMPRESSED_PROTOCOL = 2;
+
+    static final int MAX_FRAME_LENGTH = 1024 * 1024;
+
+    static final int LENGTH_FIELD_LENGTH = 4;
+
+    static final int NEGOTIATION_TIMEOUT_SECONDS = 30;
+
     private final int port;
 
     private String dataBasePath = "";
 
     private String dataStoreType = "";
 
-    private NioEventLoopGroup eventLoopGroup;
+    private EventLoopGroup eventLoopGroup;
+
+    private EventLoopGroup workerGroup;
 
     private final ReadWriteLock rwl = new ReentrantReadWriteLock(true);
 
     private final Set<LocalServerListener> listeners = new HashSet<>();
 
+    // connections that have not selected a binary protocol yet
     private final ChannelGroup channelGroup = new DefaultChannelGroup("all-connected", GlobalEventExecutor.INSTANCE);
 
+    private final ChannelGroup binaryChannelGroup = new DefaultChannelGroup("binary-connected",
+            GlobalEventExecutor.INSTANCE);
+
     private EncryptionManager encryptionManager;
 
-    private final ExecutorService executorService = Executors.newSingleThreadExecutor();
+    // a single thread keeps messages in order, the queue is exposed for metrics
+    private final ThreadPoolExecutor executorService = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
 
     static {
         logger.setLevel(Level.INFO);
@@ -104,13 +146,14 @@ public class MessageBusServer {
             encryptionManager = new EncryptionManager(password);
         }
 
-        eventLoopGroup = new NioEventLoopGroup();
+        eventLoopGroup = NettyTransport.newEventLoopGroup("message-bus");
+        workerGroup = NettyTransport.newWorkerGroup("message-bus");
 
         final ServerBootstrap bootstrap = new ServerBootstrap();
 
         try {
-            bootstrap.group(eventLoopGroup)
-                    .channel(NioServerSocketChannel.class)
+            bootstrap.group(eventLoopGroup, workerGroup)
+                    .channel(NettyTransport.getServerChannelClass())
                     .childHandler(new MessageBusRemoteInitializer())
                     .childOption(ChannelOption.SO_KEEPALIVE, true);
 
@@ -120,6 +163,10 @@ public class MessageBusServer {
             if (future.isDone() && future.isSuccess()) {
                 logger.info("Message Bus Server started successfully");
                 result = true;
+
+                ServerMetrics.getInstance().registerServer("message-bus",
+                        () -> channelGroup.size() + binaryChannelGroup.size(),
+                        () -> executorService.getQueue().size());
             } else {
                 logger.info("Failed to start the Message Bus Server");
             }
@@ -136,14 +183,19 @@ public class MessageBusServer {
 
         try {
             channelGroup.close().sync();
+            binaryChannelGroup.close().sync();
 
             executorService.shutdown();
             eventLoopGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
 
             eventLoopGroup = null;
+            workerGroup = null;
 
             listeners.clear();
 
+            ServerMetrics.getInstance().unregisterServer("message-bus");
+
             logger.info("MessageBusServer Stopped");
         } catch (final InterruptedException e) {
             logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
@@ -172,38 +224,18 @@ public class MessageBusServer {
         }
     }
 
-    /**
-     * Utility method to encrypt a message.
-     *
-     * @param message message to encrypt
-     * @return encrypted message
-     */
-    private String encrypt(final String message) {
-        if (encryptionManager != null) {
-            return encryptionManager.encrypt(message);
-        }
-        return message;
-    }
-
-    private String decrypt(final String message) {
-        String plainMessage;
-
-        if (encryptionManager != null) {
-            plainMessage = encryptionManager.decrypt(message);
-        } else {
-            plainMessage = message;
-        }
-
-        return plainMessage;
-    }
-
     private class MessageBusRemoteInitializer extends ChannelInitializer<SocketChannel> {
 
         @Override
         public void initChannel(final SocketChannel ch) {
             ChannelPipeline pipeline = ch.pipeline();
 
-            // Add the text line codec combination first,
+            // Encryption applies to the whole stream, so it must be first
+            if (encryptionManager != null) {
+                pipeline.addLast("encryption", new EncryptionHandler(encryptionManager, false));
+            }
+
+            // Add the text line codec combination next,
             pipeline.addLast("framer", new DelimiterBasedFrameDecoder(8192, true, Delimiters.lineDelimiter()));
 
             // the encoder and decoder are static as these are sharable
@@ -225,38 +257,122 @@ public class MessageBusServer {
             logger.log(Level.INFO, "Remote connection from: {0}", ctx.channel().remoteAddress().toString());
 
             // Inform the client what they are talking with so they can establish a correct database url
-            ctx.writeAndFlush(encrypt(PATH_PREFIX + dataBasePath) + EOL_DELIMITER);
-            ctx.writeAndFlush(encrypt(DATA_STORE_TYPE_PREFIX + dataStoreType) + EOL_DELIMITER);
+            ctx.writeAndFlush(PATH_PREFIX + dataBasePath + EOL_DELIMITER);
+            ctx.writeAndFlush(DATA_STORE_TYPE_PREFIX + dataStoreType + EOL_DELIMITER);
+
+            // Advertise the highest protocol, the client may reply to switch
+            ctx.writeAndFlush(PROTOCOL_PREFIX + COMPRESSED_PROTOCOL + EOL_DELIMITER);
+
+            ctx.executor().schedule(() -> {
+                if (channelGroup.contains(ctx.channel())) {
+                    refuseTextClient(ctx);
+                }
+            }, NEGOTIATION_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         }
 
         @Override
         public void channelInactive(final ChannelHandlerContext ctx) throws Exception {
             channelGroup.remove(ctx.channel());
+            binaryChannelGroup.remove(ctx.channel());
             super.channelInactive(ctx);
         }
 
         @Override
         public void channelRead(final ChannelHandlerContext ctx, final Object msg) {
-            executorService.submit(() -> {
-                processMessage(msg.toString());
-
+            try {
+                if (msg instanceof ByteBuf) {
+                    final byte[] frame = ByteBufUtil.getBytes((ByteBuf) msg);
+
+                    submit(() -> processFrame(frame));
+                } else {
+                    final String plainMessage = msg.toString();
+
+                    if (plainMessage.startsWith(PROTOCOL_PREFIX)) {
+                        negotiateProtocol(ctx, plainMessage);
+                    } else if (plainMessage.startsWith("<Message")) {
+                        refuseTextClient(ctx);
+                    } else {
+                        submit(() -> processMessage(plainMessage));
+                    }
+                }
+            } finally {
                 ReferenceCountUtil.release(msg);
-            });
+            }
+        }
+
+        private void refuseTextClient(final ChannelHandlerContext ctx) {
+            logger.log(Level.WARNING, "Refusing a text protocol client, it must be upgraded: {0}",
+                    ctx.channel().remoteAddress());
+
+            channelGroup.remove(ctx.channel());
+            ctx.close();
+        }
+
+        private void submit(final Runnable runnable) {
+            final ServerMetrics metrics = ServerMetrics.getInstance();
+
+            if (metrics.isEnabled()) {
+                metrics.recordQueueDepth(executorService.getQueue().size());
+            }
+
+            executorService.execute(runnable);
         }
 
-        private void processMessage(final String message) {
-            final String plainMessage = decrypt(message);
+        /**
+         * Switches the connection to the binary or compressed binary protocol if requested.  This runs within the event loop, so the
+         * acknowledgement is written as text before the pipeline is changed.
+         *
+         * @param ctx          channel context
+         * @param plainMessage protocol request
+         */
+        private void negotiateProtocol(final ChannelHandlerContext ctx, final String plainMessage) {
+            int protocol;
+
+            try {
+                protocol = Integer.parseInt(plainMessage.substring(PROTOCOL_PREFIX.length()).trim());
+            } catch (final NumberFormatException e) {
+                protocol = TEXT_PROTOCOL;
+            }
+
+            if (protocol == BINARY_PROTOCOL || protocol == COMPRESSED_PROTOCOL) {
+                ctx.writeAndFlush(PROTOCOL_PREFIX + protocol + EOL_DELIMITER);
+
+                final ChannelPipeline pipeline = ctx.pipeline();
+
+                pipeline.replace("encoder", "encoder", new LengthFieldPrepender(LENGTH_FIELD_LENGTH));
+                pipeline.remove("decoder");
+
+                if (protocol == COMPRESSED_PROTOCOL) {
+                    pipeline.addBefore("handler", "compression", new CompressionCodec());
+                }
+
+                // any bytes already received are passed to the replacement
+                pipeline.replace("framer", "framer", new LengthFieldBasedFrameDecoder(MAX_FRAME_LENGTH, 0,
+                        LENGTH_FIELD_LENGTH, 0, LENGTH_FIELD_LENGTH));
 
+                channelGroup.remove(ctx.channel());
+                binaryChannelGroup.add(ctx.channel());
+
+                logger.log(Level.INFO, "{0} protocol selected by: {1}", new Object[]{
+                        protocol == COMPRESSED_PROTOCOL ? "Compressed binary" : "Binary", ctx.channel().remoteAddress()});
+            }
+        }
+
+        private void processMessage(final String plainMessage) {
             rwl.readLock().lock();
 
             try {
-                channelGroup.writeAndFlush(encrypt(plainMessage) + EOL_DELIMITER).sync();
+                broadcastControl(plainMessage);
 
                 // Local listeners do not receive encrypted messages
                 for (LocalServerListener listener : listeners) {
                     listener.messagePosted(plainMessage);
                 }
 
+                if (ServerMetrics.getInstance().isEnabled()) {
+                    ServerMetrics.getInstance().recordMessages(1);
+                }
+
                 logger.log(Level.FINE, "Broadcast: {0}", plainMessage);
             } catch (InterruptedException e) {
                 logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
@@ -265,6 +381,55 @@ public class MessageBusServer {
             }
         }
 
+        private void processFrame(final byte[] frame) {
+            if (frame.length == 0) {
+                logger.log(Level.SEVERE, "Received an empty message");
+                return;
+            }
+
+            rwl.readLock().lock();
+
+            try {
+                final String event;
+
+                if (frame[0] == MessageCodec.CONTROL_FRAME) {
+                    event = MessageCodec.decodeControl(frame);
+                    broadcastControl(event);
+                } else {
+                    // relayed as received, there is no need to decode and encode again.  Text clients are
+                    // refused, so every client that should receive the message is in the binary group
+                    binaryChannelGroup.writeAndFlush(Unpooled.wrappedBuffer(frame)).await();
+                    event = MessageCodec.describeMessage(frame);
+                }
+
+                // Local listeners do not receive encrypted messages
+                for (LocalServerListener listener : listeners) {
+                    listener.messagePosted(event);
+                }
+
+                if (ServerMetrics.getInstance().isEnabled()) {
+                    ServerMetrics.getInstance().recordMessages(MessageCodec.getMessageCount(frame));
+                }
+
+                logger.log(Level.FINE, "Broadcast: {0}", event);
+            } catch (InterruptedException e) {
+                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            } finally {
+                rwl.readLock().unlock();
+            }
+        }
+
+        /**
+         * Control messages are understood by all clients and are sent in both protocols.
+         *
+         * @param plainMessage control message
+         * @throws InterruptedException if interrupted while writing
+         */
+        private void broadcastControl(final String plainMessage) throws InterruptedException {
+            channelGroup.writeAndFlush(plainMessage + EOL_DELIMITER).await();
+            binaryChannelGroup.writeAndFlush(Unpooled.wrappedBuffer(MessageCodec.encodeControl(plainMessage))).await();
+        }
+
         @Override
         public void exceptionCaught(final ChannelHandlerContext ctx, final Throwable cause) {
             logger.log(Level.WARNING, "Unexpected exception from downstream.", cause);
@@ -0,0 +1,343 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.message;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import jgnash.engine.Account;
+import jgnash.engine.Config;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.Engine;
+import jgnash.engine.ExchangeRate;
+import jgnash.engine.InvestmentTransaction;
+import jgnash.engine.RootAccount;
+import jgnash.engine.SecurityNode;
+import jgnash.engine.StoredObject;
+import jgnash.engine.Tag;
+import jgnash.engine.Transaction;
+import jgnash.engine.budget.Budget;
+import jgnash.engine.recurring.DailyReminder;
+import jgnash.engine.recurring.MonthlyReminder;
+import jgnash.engine.recurring.OneTimeReminder;
+import jgnash.engine.recurring.WeeklyReminder;
+import jgnash.engine.recurring.YearlyReminder;
+import jgnash.util.NotNull;
+
+/**
+ * Compact binary encoding of the message bus wire format.
+ * <p>
+ * Every frame starts with a type byte.  A control frame carries a UTF-8 string, a batch frame carries an int count
+ * followed by length prefixed message frames, and a message frame carries:
+ * <pre>
+ *     version           byte
+ *     channel           byte, ordinal of {@code MessageChannel}
+ *     event             short, ordinal of {@code ChannelEvent}
+ *     source            16 bytes, engine uuid
+ *     property count    byte
+ *     per property      byte property ordinal, byte class id, 16 bytes uuid
+ * </pre>
+ * Common classes are identified by a single byte; any other class is written by name.  Ordinals are only stable
+ * within a release, which the connection handshake already requires of the client and server.
+ *
+ * @author Craig Cavanaugh
+ */
+final class MessageCodec {
+
+    static final byte CONTROL_FRAME = 1;
+
+    static final byte MESSAGE_FRAME = 2;
+
+    static final byte BATCH_FRAME = 3;
+
+    private static final byte VERSION = 1;
+
+    private static final byte CLASS_BY_NAME = 0;
+
+    private static final int UUID_BYTES = 16;
+
+    /**
+     * Classes with a compact id.  The id is the index plus one, so new classes must only be appended.
+     */
+    private static final List<Class<? extends StoredObject>> CLASSES = Arrays.asList(Account.class,
+            RootAccount.class, Transaction.class, InvestmentTransaction.class, CurrencyNode.class, SecurityNode.class,
+            ExchangeRate.class, Budget.class, Config.class, Tag.class, DailyReminder.class, MonthlyReminder.class,
+            OneTimeReminder.class, WeeklyReminder.class, YearlyReminder.class);
+
+    private static final MessageChannel[] CHANNELS = MessageChannel.values();
+
+    private static final ChannelEvent[] EVENTS = ChannelEvent.values();
+
+    private static final MessageProperty[] PROPERTIES = MessageProperty.values();
+
+    private MessageCodec() {
+        // utility class
+    }
+
+    /**
+     * Encodes a control string as a frame.
+     *
+     * @param control control string
+     * @return encoded frame
+     */
+    static byte[] encodeControl(@NotNull final String control) {
+        final byte[] bytes = control.getBytes(StandardCharsets.UTF_8);
+        final byte[] frame = new byte[bytes.length + 1];
+
+        frame[0] = CONTROL_FRAME;
+        System.arraycopy(bytes, 0, frame, 1, bytes.length);
+
+        return frame;
+    }
+
+    /**
+     * Decodes the control string of a control frame.
+     *
+     * @param frame encoded frame
+     * @return control string
+     */
+    static String decodeControl(@NotNull final byte[] frame) {
+        return new String(frame, 1, frame.length - 1, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Encodes a message as a frame.
+     *
+     * @param message message to encode
+     * @return encoded frame
+     */
+    static byte[] encodeMessage(@NotNull final Message message) {
+        final Map<MessageProperty, StoredObject> properties = new EnumMap<>(MessageProperty.class);
+
+        for (final MessageProperty property : PROPERTIES) {
+            final StoredObject object = message.getObject(property);
+
+            if (object != null) {
+                properties.put(property, object);
+            }
+        }
+
+        int size = 2 + 1 + 2 + UUID_BYTES + 1;
+
+        for (final StoredObject object : properties.values()) {
+            size += 2 + UUID_BYTES;
+
+            if (!CLASSES.contains(object.getClass())) {
+                size += 2 + object.getClass().getName().getBytes(StandardCharsets.UTF_8).length;
+            }
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        buffer.put(MESSAGE_FRAME);
+        buffer.put(VERSION);
+        buffer.put((byte) message.getChannel().ordinal());
+        buffer.putShort((short) message.getEvent().ordinal());
+        putUuid(buffer, UUID.fromString(message.getSource()));
+        buffer.put((byte) properties.size());
+
+        properties.forEach((property, object) -> {
+            buffer.put((byte) property.ordinal());
+
+            final int index = CLASSES.indexOf(object.getClass());
+
+            if (index >= 0) {
+                buffer.put((byte) (index + 1));
+            } else {
+                final byte[] name = object.getClass().getName().getBytes(StandardCharsets.UTF_8);
+
+                buffer.put(CLASS_BY_NAME);
+                buffer.putShort((short) name.length);
+                buffer.put(name);
+            }
+
+            putUuid(buffer, object.getUuid());
+        });
+
+        return buffer.array();
+    }
+
+    /**
+     * Encodes a batch of messages as a single frame.
+     *
+     * @param messages messages to encode
+     * @return encoded frame
+     */
+    static byte[] encodeBatch(@NotNull final List<Message> messages) {
+        final List<byte[]> frames = new ArrayList<>(messages.size());
+        int size = 1 + Integer.BYTES;
+
+        for (final Message message : messages) {
+            final byte[] frame = encodeMessage(message);
+
+            frames.add(frame);
+            size += Integer.BYTES + frame.length;
+        }
+
+        final ByteBuffer buffer = ByteBuffer.allocate(size);
+
+        buffer.put(BATCH_FRAME);
+        buffer.putInt(frames.size());
+
+        for (final byte[] frame : frames) {
+            buffer.putInt(frame.length);
+            buffer.put(frame);
+        }
+
+        return buffer.array();
+    }
+
+    /**
+     * Splits a batch frame into its message frames.
+     *
+     * @param frame encoded batch frame
+     * @return message frames in order
+     * @throws IllegalArgumentException if the frame is corrupt
+     */
+    static List<byte[]> splitBatch(@NotNull final byte[] frame) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(frame, 1, frame.length - 1);
+            final int count = buffer.getInt();
+            final List<byte[]> frames = new ArrayList<>(Math.min(count, frame.length));
+
+            for (int i = 0; i < count; i++) {
+                final int length = buffer.getInt();
+
+                if (length < 0 || length > buffer.remaining()) {
+                    throw new IllegalArgumentException("Invalid message length: " + length);
+                }
+
+                final byte[] messageFrame = new byte[length];
+
+                buffer.get(messageFrame);
+                frames.add(messageFrame);
+            }
+
+            return frames;
+        } catch (final BufferUnderflowException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Corrupt batch frame", e);
+        }
+    }
+
+    /**
+     * Returns the number of messages carried by a frame.
+     *
+     * @param frame encoded frame
+     * @return message count of a batch, 1 otherwise
+     */
+    static int getMessageCount(@NotNull final byte[] frame) {
+        return frame[0] == BATCH_FRAME ? ByteBuffer.wrap(frame).getInt(1) : 1;
+    }
+
+    /**
+     * Describes a message or batch frame without resolving its properties.
+     *
+     * @param frame encoded frame
+     * @return description of the channel and event
+     */
+    static String describeMessage(@NotNull final byte[] frame) {
+        if (frame[0] == BATCH_FRAME) {
+            return "Batch [messages=" + ByteBuffer.wrap(frame).getInt(1) + "]";
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+        return "Message [event=" + EVENTS[buffer.getShort(3)] + ", channel=" + CHANNELS[buffer.get(2)] + "]";
+    }
+
+    /**
+     * Returns the source of a message frame without resolving its properties.
+     *
+     * @param frame encoded frame
+     * @return uuid of the engine that posted the message
+     */
+    static String decodeSource(@NotNull final byte[] frame) {
+        return getUuid(ByteBuffer.wrap(frame, 5, UUID_BYTES)).toString();
+    }
+
+    /**
+     * Decodes a message frame.  Message properties are resolved with the supplied engine.
+     *
+     * @param frame  encoded frame
+     * @param engine engine to resolve properties with
+     * @return decoded message
+     * @throws IllegalArgumentException if the frame is corrupt or of an unknown version
+     */
+    static Message decodeMessage(@NotNull final byte[] frame, @NotNull final Engine engine) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(frame);
+
+            if (buffer.get() != MESSAGE_FRAME || buffer.get() != VERSION) {
+                throw new IllegalArgumentException("Unknown message frame");
+            }
+
+            final MessageChannel channel = CHANNELS[buffer.get()];
+            final ChannelEvent event = EVENTS[buffer.getShort()];
+            final String source = getUuid(buffer).toString();
+
+            final Message message = new Message(channel, event, source);
+
+            final int count = buffer.get();
+
+            for (int i = 0; i < count; i++) {
+                final MessageProperty property = PROPERTIES[buffer.get()];
+                final int classId = buffer.get();
+
+                final Class<? extends StoredObject> clazz;
+
+                if (classId == CLASS_BY_NAME) {
+                    final byte[] name = new byte[buffer.getShort()];
+                    buffer.get(name);
+
+                    // the class is not initialized until it is known to be a StoredObject
+                    clazz = Class.forName(new String(name, StandardCharsets.UTF_8), false,
+                            MessageCodec.class.getClassLoader()).asSubclass(StoredObject.class);
+                } else {
+                    clazz = CLASSES.get(classId - 1);
+                }
+
+                final StoredObject object = engine.getStoredObjectByUuid(clazz, getUuid(buffer));
+
+                if (object != null) {
+                    message.setObject(property, object);
+                }
+            }
+
+            return message;
+        } catch (final BufferUnderflowException | IndexOutOfBoundsException | ClassNotFoundException
+                | ClassCastException e) {
+            throw new IllegalArgumentException("Corrupt message frame", e);
+        }
+    }
+
+    private static void putUuid(final ByteBuffer buffer, final UUID uuid) {
+        buffer.putLong(uuid.getMostSignificantBits());
+        buffer.putLong(uuid.getLeastSignificantBits());
+    }
+
+    private static UUID getUuid(final ByteBuffer buffer) {
+        return new UUID(buffer.getLong(), buffer.getLong());
+    }
+}
@@ -17,6 +17,8 @@
  */
 package jgnash.engine.message;
 
+import java.util.List;
+
 /**
  * Classes must implement this interface to register and lister the message events.
  *
@@ -24,4 +26,16 @@ package jgnash.engine.message;
  */
 public interface MessageListener {
     void messagePosted(Message message);
+
+    /**
+     * Called with a run of coalesced messages for a single channel, in the order they were posted.  Listeners that
+     * can process changes in bulk should override this to refresh once per batch.
+     *
+     * @param messages messages to process
+     */
+    default void messagesPosted(final List<Message> messages) {
+        for (final Message message : messages) {
+            messagePosted(message);
+        }
+    }
 }
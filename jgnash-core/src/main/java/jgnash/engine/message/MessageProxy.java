@@ -121,4 +121,35 @@ public class MessageProxy {
             lock.unlock();
         }
     }
+
+    /**
+     * Forwards a batch of messages to listeners.
+     *
+     * @param messages messages to forward
+     */
+    public final void forwardMessages(final List<Message> messages) {
+
+        lock.lock();
+
+        try {
+
+            THREAD_POOL.submit(() -> {
+                Iterator<WeakReference<MessageListener>> iterator = messageListeners.iterator();
+
+                while (iterator.hasNext()) {
+                    WeakReference<MessageListener> reference = iterator.next();
+
+                    final MessageListener actionListener = reference.get();
+
+                    if (actionListener != null) {
+                        THREAD_POOL.submit(() -> actionListener.messagesPosted(messages));
+                    } else {
+                        iterator.remove();
+                    }
+                }
+            });
+        } finally {
+            lock.unlock();
+        }
+    }
 }
@@ -22,6 +22,7 @@ import java.math.BigDecimal;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -86,6 +87,11 @@ import com.thoughtworks.xstream.security.WildcardTypePermission;
 abstract class AbstractXStreamContainer {
 	
     private static final String DESCRIPTION = "description";
+
+    /**
+     * Larger read buffer to reduce the number of system calls when loading large files.
+     */
+    static final int READ_BUFFER_SIZE = 64 * 1024;
     
 	final List<StoredObject> objects = new ArrayList<>();
     final ReadWriteLock readWriteLock = new ReentrantReadWriteLock(true);
@@ -99,6 +105,9 @@ abstract class AbstractXStreamContainer {
 
     /**
      * Creates a backup file if it exists.
+     * <p>
+     * The file is about to be completely rewritten, so it is renamed rather than copied to avoid reading and writing
+     * the entire file.  A copy is only made if the rename fails.
      *
      * @param origFile file to check and backup
      */
@@ -107,16 +116,14 @@ abstract class AbstractXStreamContainer {
 
             final Path backup = Paths.get(origFile.toString() + ".backup");
 
-            if (Files.exists(backup)) {
-                try {
-                    Files.delete(backup);
-                } catch (IOException e) {
-                    Logger.getLogger(AbstractXStreamContainer.class.getName())
-                            .log(Level.WARNING, "Was not able to delete the old backup file: {0}", backup);
-                }
-            }
+            try {
+                Files.move(origFile, backup, StandardCopyOption.REPLACE_EXISTING);
+            } catch (final IOException e) {
+                Logger.getLogger(AbstractXStreamContainer.class.getName())
+                        .log(Level.INFO, "Was not able to rename the file, a copy will be made: {0}", origFile);
 
-            FileUtils.copyFile(origFile, backup);
+                FileUtils.copyFile(origFile, backup);
+            }
         }
     }
 
@@ -223,6 +230,8 @@ abstract class AbstractXStreamContainer {
         xstream.omitField(SecurityHistoryNode.class, "id");
         xstream.omitField(SecurityHistoryEvent.class, "id");
 
+        xstream.registerConverter(new SecurityHistorySeriesConverter());
+
         // Filters out the hibernate
         xstream.registerConverter(new HibernateProxyConverter());
         xstream.registerConverter(new HibernatePersistentCollectionConverter(xstream.getMapper()));
@@ -336,6 +345,9 @@ abstract class AbstractXStreamContainer {
 
         XStreamOut(final ReflectionProvider reflectionProvider, final HierarchicalStreamDriver hierarchicalStreamDriver) {
             super(reflectionProvider, hierarchicalStreamDriver);
+
+            // security history is written as a columnar series, older files with history nodes are still readable
+            omitField(SecurityNode.class, "historyNodes");
         }
 
         @Override
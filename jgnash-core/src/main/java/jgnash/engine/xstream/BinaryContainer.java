@@ -44,6 +44,7 @@ import jgnash.engine.Tag;
 import jgnash.engine.budget.Budget;
 import jgnash.engine.recurring.Reminder;
 import jgnash.util.NotNull;
+import jgnash.util.ProgressInputStream;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
@@ -149,9 +150,19 @@ class BinaryContainer extends AbstractXStreamContainer {
     }
 
     void readBinary() {
+        readBinary(ignored -> { });
+    }
+
+    /**
+     * Reads the binary file while reporting progress based on the number of bytes consumed.
+     *
+     * @param percentCompleteConsumer progress consumer
+     */
+    void readBinary(@NotNull final DoubleConsumer percentCompleteConsumer) {
 
         // A file lock will be held on Windows OS when reading
-        try (final InputStream fis = new BufferedInputStream(Files.newInputStream(path, StandardOpenOption.READ))) {
+        try (final InputStream fis = new BufferedInputStream(new ProgressInputStream(Files.newInputStream(path,
+                StandardOpenOption.READ), Files.size(path), percentCompleteConsumer), READ_BUFFER_SIZE)) {
             readWriteLock.writeLock().lock();
 
             final XStream xstream = configureXStream(new XStreamJVM9(new StoredObjectReflectionProvider(objects),
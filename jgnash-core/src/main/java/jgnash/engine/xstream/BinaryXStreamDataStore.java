@@ -29,6 +29,7 @@ import jgnash.engine.Config;
 import jgnash.engine.DataStore;
 import jgnash.engine.DataStoreType;
 import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
 import jgnash.engine.StoredObject;
 import jgnash.engine.attachment.LocalAttachmentManager;
 import jgnash.engine.concurrent.LocalLockManager;
@@ -44,6 +45,11 @@ public class BinaryXStreamDataStore implements DataStore {
 
     private static final Logger logger = Logger.getLogger(BinaryXStreamDataStore.class.getName());
 
+    /**
+     * Fraction of the load progress attributed to reading the file.
+     */
+    private static final double READ_FRACTION = 0.9;
+
     public static final String FILE_EXT = ".bxds";
 
     private BinaryContainer container;
@@ -68,17 +74,33 @@ public class BinaryXStreamDataStore implements DataStore {
      */
     @Override
     public Engine getLocalEngine(final String fileName, final String engineName, final char[] password) {
+        return getLocalEngine(fileName, engineName, password, ignored -> { });
+    }
+
+    /**
+     * Create an engine instance that uses a local Binary file and reports the load progress.
+     * <p>
+     * Reading the file accounts for the majority of the load time and is reported as the first 90% of progress.
+     *
+     * @see DataStore#getLocalEngine(String, String, char[], DoubleConsumer)
+     */
+    @Override
+    public Engine getLocalEngine(final String fileName, final String engineName, final char[] password,
+                                 final DoubleConsumer percentComplete) {
 
-        Path path = Paths.get(fileName);
+        final Path path = Paths.get(fileName);
 
         container = new BinaryContainer(path);
 
         if (Files.exists(path)) {
-            container.readBinary();
+            container.readBinary(value -> percentComplete.accept(value * READ_FRACTION));
         }
 
+        // a lazy load seeds the account balances from the account summary instead
         Engine engine = new Engine(new XStreamEngineDAO(container), new LocalLockManager(),
-                new LocalAttachmentManager(), engineName);
+                new LocalAttachmentManager(), engineName, !EngineFactory.isLazyLoading());
+
+        percentComplete.accept(1);
 
         logger.info("Created local Binary container and engine");
 
@@ -125,11 +147,12 @@ public class BinaryXStreamDataStore implements DataStore {
     /**
      * XMLDataStore will throw an exception if called.
      *
-     * @see jgnash.engine.DataStore#getClientEngine(String, int, char[], String)
+     * @see jgnash.engine.DataStore#getClientEngine(String, int, char[], String, String)
      * @throws UnsupportedOperationException thrown if an attempt is made to use as a remote data store
      */
     @Override
-    public Engine getClientEngine(final String host, final int port, final char[] password, final String engineName) {
+    public Engine getClientEngine(final String host, final int port, final char[] password, final String dataBasePath,
+                                  final String engineName) {
         throw new UnsupportedOperationException("Client / Server operation not supported for this type.");
     }
 
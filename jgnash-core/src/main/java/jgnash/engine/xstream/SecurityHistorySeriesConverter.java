@@ -0,0 +1,67 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.xstream;
+
+import java.io.IOException;
+import java.util.Base64;
+
+import jgnash.engine.SecurityHistorySeries;
+
+import com.thoughtworks.xstream.converters.ConversionException;
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.MarshallingContext;
+import com.thoughtworks.xstream.converters.UnmarshallingContext;
+import com.thoughtworks.xstream.io.HierarchicalStreamReader;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+
+/**
+ * Writes a {@code SecurityHistorySeries} as a single base64 encoded compressed block instead of an element per
+ * day of history.
+ * <p>
+ * Release 3.6 and older only read the per day elements and silently ignore the block, so a file written with the
+ * block opens in those releases without any security price history.  The file format minor version was raised for
+ * this change.
+ *
+ * @author Craig Cavanaugh
+ */
+final class SecurityHistorySeriesConverter implements Converter {
+
+    private static final String SIZE = "size";
+
+    @Override
+    public boolean canConvert(final Class type) {
+        return type == SecurityHistorySeries.class;
+    }
+
+    @Override
+    public void marshal(final Object source, final HierarchicalStreamWriter writer, final MarshallingContext context) {
+        final SecurityHistorySeries series = (SecurityHistorySeries) source;
+
+        writer.addAttribute(SIZE, Integer.toString(series.size()));
+        writer.setValue(Base64.getEncoder().encodeToString(series.toCompressedBlock()));
+    }
+
+    @Override
+    public Object unmarshal(final HierarchicalStreamReader reader, final UnmarshallingContext context) {
+        try {
+            return SecurityHistorySeries.fromCompressedBlock(Base64.getDecoder().decode(reader.getValue().trim()));
+        } catch (final IOException | IllegalArgumentException e) {
+            throw new ConversionException(e);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.xstream;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import jgnash.engine.StoredObject;
+
+import com.thoughtworks.xstream.converters.Converter;
+import com.thoughtworks.xstream.converters.ConverterLookup;
+import com.thoughtworks.xstream.core.ReferenceByIdMarshaller;
+import com.thoughtworks.xstream.core.ReferenceByIdMarshallingStrategy;
+import com.thoughtworks.xstream.core.TreeMarshaller;
+import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
+import com.thoughtworks.xstream.io.path.Path;
+import com.thoughtworks.xstream.mapper.Mapper;
+
+/**
+ * ID reference marshalling strategy that writes ids which do not depend on the rest of the file.
+ * <p>
+ * The default strategy numbers objects in the order they are written, so adding a single transaction renumbers every
+ * object that follows it.  A {@code StoredObject} is identified by its uuid instead, and any other object is
+ * numbered within the {@code StoredObject} that contains it.  Unchanged objects are then written identically between
+ * saves.  The ids remain opaque strings, so files are read with the default strategy.
+ *
+ * @author Craig Cavanaugh
+ */
+class StableReferenceMarshallingStrategy extends ReferenceByIdMarshallingStrategy {
+
+    @Override
+    protected TreeMarshaller createMarshallingContext(final HierarchicalStreamWriter writer,
+                                                      final ConverterLookup converterLookup, final Mapper mapper) {
+        return new StableReferenceMarshaller(writer, converterLookup, mapper);
+    }
+
+    private static class StableReferenceMarshaller extends ReferenceByIdMarshaller {
+
+        private final Deque<Owner> owners = new ArrayDeque<>();
+
+        StableReferenceMarshaller(final HierarchicalStreamWriter writer, final ConverterLookup converterLookup,
+                                  final Mapper mapper) {
+            super(writer, converterLookup, mapper);
+        }
+
+        @Override
+        public void convert(final Object item, final Converter converter) {
+            if (item instanceof StoredObject) {
+                owners.push(new Owner(((StoredObject) item).getUuid().toString()));
+
+                try {
+                    super.convert(item, converter);
+                } finally {
+                    owners.pop();
+                }
+            } else {
+                super.convert(item, converter);
+            }
+        }
+
+        @Override
+        protected Object createReferenceKey(final Path currentPath, final Object item) {
+            final Owner owner = owners.peek();
+
+            if (owner == null) {
+                return super.createReferenceKey(currentPath, item);
+            }
+
+            if (item instanceof StoredObject) {
+                return owner.uuid;
+            }
+
+            return owner.uuid + "." + ++owner.count;
+        }
+    }
+
+    private static class Owner {
+
+        final String uuid;
+
+        int count;
+
+        Owner(final String uuid) {
+            this.uuid = uuid;
+        }
+    }
+}
@@ -17,20 +17,28 @@
  */
 package jgnash.engine.xstream;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.function.DoubleConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
 
 import jgnash.engine.CommodityNode;
 import jgnash.engine.Config;
@@ -47,7 +55,10 @@ import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
 import com.thoughtworks.xstream.converters.reflection.PureJavaReflectionProvider;
 import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
+import jgnash.util.FileMagic;
 import jgnash.util.NotNull;
+import jgnash.util.ParallelGZIPOutputStream;
+import jgnash.util.ProgressInputStream;
 
 /**
  * Simple object container for StoredObjects that reads and writes an XML file.
@@ -56,6 +67,11 @@ import jgnash.util.NotNull;
  */
 class XMLContainer extends AbstractXStreamContainer {
 
+    /**
+     * File extension for gzip compressed XML files.
+     */
+    static final String GZIP_EXT = ".gz";
+
     XMLContainer(final Path path) {
         super(path);
     }
@@ -86,7 +102,71 @@ class XMLContainer extends AbstractXStreamContainer {
 
         createBackup(path);
 
-        List<StoredObject> list = new ArrayList<>();
+        final List<StoredObject> list = getSortedList(objects);
+
+        percentCompleteConsumer.accept(0.5);
+
+        logger.info("Writing XML file");
+
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(newOutputStream(path),
+                StandardCharsets.UTF_8))) {
+            try {
+                writeXML(list, writer, false);
+            } catch (final Exception e) {
+                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+            }
+        } catch (final IOException e) {
+            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+        }
+
+        logger.info("Writing XML file complete");
+
+        percentCompleteConsumer.accept(1);
+    }
+
+    /**
+     * Writes XML to a stream given a collection of StoredObjects.  TrashObjects and objects marked for removal are
+     * not written.  The stream is closed when complete.
+     * <p>
+     * Ids are written by a {@link StableReferenceMarshallingStrategy} so unchanged objects are written identically
+     * between incremental backups.
+     *
+     * @param objects      Collection of StoredObjects to write
+     * @param outputStream stream to write
+     * @throws IOException if an I/O error occurs
+     */
+    static void writeXML(@NotNull final Collection<StoredObject> objects, @NotNull final OutputStream outputStream)
+            throws IOException {
+        try (final Writer writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8))) {
+            writeXML(getSortedList(objects), writer, true);
+        }
+    }
+
+    private static void writeXML(final List<StoredObject> list, final Writer writer, final boolean stableReferences)
+            throws IOException {
+        writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        writer.write("<?fileFormat " + Engine.CURRENT_MAJOR_VERSION + "." + Engine.CURRENT_MINOR_VERSION + "?>\n");
+
+        final XStream xstream = configureXStream(new XStreamOut(new PureJavaReflectionProvider(), new StaxDriver()));
+
+        if (stableReferences) {
+            xstream.setMarshallingStrategy(new StableReferenceMarshallingStrategy());
+        }
+
+        try (final ObjectOutputStream out = xstream.createObjectOutputStream(new PrettyPrintWriter(writer))) {
+            out.writeObject(list);
+            out.flush();     // forcibly flush before letting go of the resources to help older windows systems write correctly
+        }
+    }
+
+    /**
+     * Returns the top level objects to write in a stable order.
+     *
+     * @param objects Collection of StoredObjects
+     * @return sorted list of the objects to write
+     */
+    private static List<StoredObject> getSortedList(final Collection<StoredObject> objects) {
+        final List<StoredObject> list = new ArrayList<>();
 
         list.addAll(query(objects, Budget.class));
         list.addAll(query(objects, Config.class));
@@ -96,37 +176,28 @@ class XMLContainer extends AbstractXStreamContainer {
         list.addAll(query(objects, Reminder.class));
         list.addAll(query(objects, Tag.class));
 
-        percentCompleteConsumer.accept(0.25);
-
         // remove any objects marked for removal
         list.removeIf(StoredObject::isMarkedForRemoval);
 
         // sort the list
         list.sort(new StoredObjectComparator());
 
-        percentCompleteConsumer.accept(0.5);
-
-        logger.info("Writing XML file");
-
-        try (final Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
-            writer.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
-            writer.write("<?fileFormat " + Engine.CURRENT_MAJOR_VERSION + "." + Engine.CURRENT_MINOR_VERSION + "?>\n");
-
-            final XStream xstream = configureXStream(new XStreamOut(new PureJavaReflectionProvider(), new StaxDriver()));
+        return list;
+    }
 
-            try (final ObjectOutputStream out = xstream.createObjectOutputStream(new PrettyPrintWriter(writer))) {
-                out.writeObject(list);
-                out.flush();     // forcibly flush before letting go of the resources to help older windows systems write correctly
-            } catch (final Exception e) {
-                logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
-            }
-        } catch (final IOException e) {
-            logger.log(Level.SEVERE, e.getLocalizedMessage(), e);
+    /**
+     * Opens an {@code OutputStream} for the file.  The output will be gzip compressed using all available cores
+     * if the file name ends with {@value #GZIP_EXT}.
+     *
+     * @param path file to write
+     * @return a new {@code OutputStream}
+     * @throws IOException if an I/O error occurs
+     */
+    private static OutputStream newOutputStream(final Path path) throws IOException {
+        if (path.toString().endsWith(GZIP_EXT)) {
+            return new ParallelGZIPOutputStream(Files.newOutputStream(path));
         }
-
-        logger.info("Writing XML file complete");
-
-        percentCompleteConsumer.accept(1);
+        return Files.newOutputStream(path);
     }
 
     @Override
@@ -149,9 +220,19 @@ class XMLContainer extends AbstractXStreamContainer {
     }
 
     void readXML() {
+        readXML(ignored -> { });
+    }
+
+    /**
+     * Reads the XML file while reporting progress based on the number of bytes consumed.
+     *
+     * @param percentCompleteConsumer progress consumer
+     */
+    void readXML(@NotNull final DoubleConsumer percentCompleteConsumer) {
 
         // A file lock will be held on Windows OS when reading
-        try (final Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+        try (final Reader reader = new BufferedReader(new InputStreamReader(newInputStream(percentCompleteConsumer),
+                StandardCharsets.UTF_8), READ_BUFFER_SIZE)) {
             readWriteLock.writeLock().lock();
 
             final XStream xstream = configureXStream(new XStreamJVM9(new StoredObjectReflectionProvider(objects),
@@ -170,4 +251,22 @@ class XMLContainer extends AbstractXStreamContainer {
             readWriteLock.writeLock().unlock();
         }
     }
+
+    /**
+     * Opens an {@code InputStream} for the file that transparently decompresses gzip content.  Progress is reported
+     * against the size of the file on disk.
+     *
+     * @param percentCompleteConsumer progress consumer
+     * @return a new {@code InputStream}
+     * @throws IOException if an I/O error occurs
+     */
+    private InputStream newInputStream(final DoubleConsumer percentCompleteConsumer) throws IOException {
+        final InputStream inputStream = new ProgressInputStream(Files.newInputStream(path, StandardOpenOption.READ),
+                Files.size(path), percentCompleteConsumer);
+
+        if (FileMagic.isGzipFile(path)) {
+            return new GZIPInputStream(inputStream, READ_BUFFER_SIZE);
+        }
+        return inputStream;
+    }
 }
@@ -17,6 +17,8 @@
  */
 package jgnash.engine.xstream;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -29,6 +31,7 @@ import jgnash.engine.Config;
 import jgnash.engine.DataStore;
 import jgnash.engine.DataStoreType;
 import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
 import jgnash.engine.StoredObject;
 import jgnash.engine.attachment.LocalAttachmentManager;
 import jgnash.engine.concurrent.LocalLockManager;
@@ -44,8 +47,18 @@ public class XMLDataStore implements DataStore {
 
     private static final Logger logger = Logger.getLogger(XMLDataStore.class.getName());
 
+    /**
+     * Fraction of the load progress attributed to reading the file.
+     */
+    private static final double READ_FRACTION = 0.9;
+
     public static final String FILE_EXT = ".xml";
 
+    /**
+     * File extension for gzip compressed XML files.
+     */
+    public static final String COMPRESSED_FILE_EXT = FILE_EXT + XMLContainer.GZIP_EXT;
+
     private XMLContainer container;
 
     /**
@@ -68,17 +81,33 @@ public class XMLDataStore implements DataStore {
      */
     @Override
     public Engine getLocalEngine(final String fileName, final String engineName, final char[] password) {
+        return getLocalEngine(fileName, engineName, password, ignored -> { });
+    }
+
+    /**
+     * Create an engine instance that uses a local XML file and reports the load progress.
+     * <p>
+     * Reading the file accounts for the majority of the load time and is reported as the first 90% of progress.
+     *
+     * @see DataStore#getLocalEngine(String, String, char[], DoubleConsumer)
+     */
+    @Override
+    public Engine getLocalEngine(final String fileName, final String engineName, final char[] password,
+                                 final DoubleConsumer percentComplete) {
 
         final Path path = Paths.get(fileName);
 
         container = new XMLContainer(path);
 
         if (Files.exists(path)) {
-            container.readXML();
+            container.readXML(value -> percentComplete.accept(value * READ_FRACTION));
         }
 
+        // a lazy load seeds the account balances from the account summary instead
         Engine engine = new Engine(new XStreamEngineDAO(container), new LocalLockManager(),
-                new LocalAttachmentManager(), engineName);
+                new LocalAttachmentManager(), engineName, !EngineFactory.isLazyLoading());
+
+        percentComplete.accept(1);
 
         logger.info("Created local XML container and engine");
 
@@ -125,11 +154,12 @@ public class XMLDataStore implements DataStore {
     /**
      * XMLDataStore will throw an exception if called.
      *
-     * @see DataStore#getClientEngine(java.lang.String, int, char[], java.lang.String)
+     * @see DataStore#getClientEngine(java.lang.String, int, char[], java.lang.String, java.lang.String)
      * @throws UnsupportedOperationException thrown if an attempt is made to use as a remote data store
      */
     @Override
-    public Engine getClientEngine(final String host, final int port, final char[] password, final String engineName) {
+    public Engine getClientEngine(final String host, final int port, final char[] password, final String dataBasePath,
+                                  final String engineName) {
         throw new UnsupportedOperationException("Client / Server operation not supported for this type.");
     }
 
@@ -149,6 +179,17 @@ public class XMLDataStore implements DataStore {
         XMLContainer.writeXML(objects, path, percentComplete);
     }
 
+    /**
+     * Writes the objects as XML to a stream for an incremental backup.  The stream is closed when complete.
+     *
+     * @param outputStream stream to write
+     * @param objects      Collection of StoredObjects to write
+     * @throws IOException if an I/O error occurs
+     */
+    public void saveAs(final OutputStream outputStream, final Collection<StoredObject> objects) throws IOException {
+        XMLContainer.writeXML(objects, outputStream);
+    }
+
     /**
      * Opens the file in readonly mode and reads the version of the file format.
      *
@@ -17,10 +17,14 @@
  */
 package jgnash.engine.xstream;
 
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.UUID;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import jgnash.engine.Account;
 import jgnash.engine.Transaction;
 import jgnash.engine.dao.TransactionDAO;
 
@@ -40,6 +44,18 @@ class XStreamTransactionDAO extends AbstractXStreamDAO implements TransactionDAO
         return stripMarkedForRemoval(container.query(Transaction.class));
     }
 
+    @Override
+    public List<Transaction> getTransactions(final Account account, final LocalDate startDate,
+                                             final LocalDate endDate) {
+        return account.getTransactions(startDate, endDate);
+    }
+
+    @Override
+    public void forEachTransaction(final Account account, final LocalDate startDate, final LocalDate endDate,
+                                   final Consumer<Transaction> consumer) {
+        account.getTransactions(startDate, endDate).forEach(consumer);  // already held in memory
+    }
+
     @Override
     public boolean addTransaction(final Transaction transaction) {
         container.set(transaction);
@@ -48,6 +64,14 @@ class XStreamTransactionDAO extends AbstractXStreamDAO implements TransactionDAO
         return true;
     }
 
+    @Override
+    public boolean addTransactions(final Collection<Transaction> transactions) {
+        transactions.forEach(container::set);
+        commit();
+
+        return true;
+    }
+
     @Override
     public Transaction getTransactionByUuid(final UUID uuid) {
         return getObjectByUuid(Transaction.class, uuid);
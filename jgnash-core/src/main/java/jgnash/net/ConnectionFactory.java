@@ -36,6 +36,8 @@ public class ConnectionFactory {
 
     private static final String TIMEOUT = "timeout";
 
+    private static final String COMPRESSION = "compression";
+
     private static final int DEFAULT_TIMEOUT = 30;
 
     public static final int MAX_TIMEOUT = 30;
@@ -72,6 +74,26 @@ public class ConnectionFactory {
         return pref.getInt(TIMEOUT, DEFAULT_TIMEOUT);
     }
 
+    /**
+     * Sets if messages exchanged with a jGnash server should be compressed.
+     *
+     * @param enabled {@code true} to request compression when connecting
+     */
+    public synchronized static void setCompressionEnabled(final boolean enabled) {
+        Preferences pref = Preferences.userNodeForPackage(ConnectionFactory.class);
+        pref.putBoolean(COMPRESSION, enabled);
+    }
+
+    /**
+     * Returns {@code true} if messages exchanged with a jGnash server should be compressed.
+     *
+     * @return {@code true} if compression is requested when connecting
+     */
+    public synchronized static boolean isCompressionEnabled() {
+        Preferences pref = Preferences.userNodeForPackage(ConnectionFactory.class);
+        return pref.getBoolean(COMPRESSION, true);
+    }
+
     @Nullable
     public synchronized static URLConnection openConnection(final String url) {
         try {
@@ -0,0 +1,278 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Objects;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+
+import jgnash.util.EncryptionManager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.CoalescingBufferQueue;
+import io.netty.channel.CombinedChannelDuplexHandler;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * Encrypts all traffic of a connection with AES-GCM.
+ * <p>
+ * Each side starts its stream with a random nonce, sent in the clear as soon as the connection is active.  The key of
+ * each direction is derived from the password, both nonces and the role of the sender, so writes are held until the
+ * nonce of the peer has arrived, and a stream recorded from one connection fails to decrypt on any other.  Data is
+ * sent as length prefixed records.  Records are numbered and the number is the GCM initialization vector, so a record
+ * that is altered, replayed, reordered or dropped fails to decrypt.  Writes are coalesced into one record per flush, up to the maximum record length, and
+ * the cipher of each direction is created once for the connection.
+ * <p>
+ * The handler must be first in the pipeline, so the handlers behind it only see plain bytes.  Only byte buffers can
+ * be written, file regions are rejected.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class EncryptionHandler extends CombinedChannelDuplexHandler<EncryptionHandler.RecordDecoder,
+        EncryptionHandler.RecordEncoder> {
+
+    /**
+     * Maximum length of the plain content of a record.
+     */
+    static final int MAX_RECORD_LENGTH = 64 * 1024;
+
+    private static final int LENGTH_FIELD_LENGTH = 4;
+
+    private static final String CLIENT = "client";
+
+    private static final String SERVER = "server";
+
+    /**
+     * Creates a handler for one connection.
+     *
+     * @param encryptionManager holds the key derived from the password
+     * @param client            {@code true} for the client side of the connection
+     */
+    public EncryptionHandler(final EncryptionManager encryptionManager, final boolean client) {
+        Objects.requireNonNull(encryptionManager);
+
+        final RecordEncoder encoder = new RecordEncoder();
+
+        init(new RecordDecoder(encryptionManager, client, encoder), encoder);
+    }
+
+    private static GCMParameterSpec getParameterSpec(final byte[] iv, final long sequence) {
+        for (int i = 0; i < Long.BYTES; i++) {
+            iv[iv.length - 1 - i] = (byte) (sequence >>> (i * Byte.SIZE));
+        }
+
+        return new GCMParameterSpec(EncryptionManager.TAG_LENGTH * Byte.SIZE, iv);
+    }
+
+    static final class RecordDecoder extends ByteToMessageDecoder {
+
+        private final EncryptionManager encryptionManager;
+
+        private final boolean client;
+
+        private final RecordEncoder encoder;
+
+        private final byte[] nonce = new byte[EncryptionManager.NONCE_LENGTH];
+
+        private final byte[] iv = new byte[EncryptionManager.IV_LENGTH];
+
+        private Key key;
+
+        private Cipher cipher;
+
+        private long sequence;
+
+        RecordDecoder(final EncryptionManager encryptionManager, final boolean client, final RecordEncoder encoder) {
+            this.encryptionManager = encryptionManager;
+            this.client = client;
+            this.encoder = encoder;
+
+            new SecureRandom().nextBytes(nonce);
+        }
+
+        @Override
+        public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+            // written from the inbound side, so it bypasses the encoder and precedes any record
+            ctx.writeAndFlush(Unpooled.wrappedBuffer(nonce));
+
+            super.channelActive(ctx);
+        }
+
+        @Override
+        protected void decode(final ChannelHandlerContext ctx, final ByteBuf in, final List<Object> out)
+                throws GeneralSecurityException {
+
+            if (key == null) {
+                if (in.readableBytes() < EncryptionManager.NONCE_LENGTH) {
+                    return;
+                }
+
+                final byte[] peerNonce = new byte[EncryptionManager.NONCE_LENGTH];
+                in.readBytes(peerNonce);
+
+                final byte[] clientNonce = client ? nonce : peerNonce;
+                final byte[] serverNonce = client ? peerNonce : nonce;
+
+                key = encryptionManager.deriveStreamKey(clientNonce, serverNonce, client ? SERVER : CLIENT);
+                cipher = EncryptionManager.createCipher();
+
+                encoder.start(encryptionManager.deriveStreamKey(clientNonce, serverNonce, client ? CLIENT : SERVER));
+            }
+
+            if (in.readableBytes() < LENGTH_FIELD_LENGTH) {
+                return;
+            }
+
+            final int length = in.getInt(in.readerIndex());
+
+            if (length < EncryptionManager.TAG_LENGTH || length > MAX_RECORD_LENGTH + EncryptionManager.TAG_LENGTH) {
+                throw new CorruptedFrameException("Invalid record length: " + length);
+            }
+
+            if (in.readableBytes() < LENGTH_FIELD_LENGTH + length) {
+                return;
+            }
+
+            in.skipBytes(LENGTH_FIELD_LENGTH);
+
+            final int plainLength = length - EncryptionManager.TAG_LENGTH;
+            final ByteBuf plain = ctx.alloc().heapBuffer(plainLength);
+
+            try {
+                cipher.init(Cipher.DECRYPT_MODE, key, getParameterSpec(iv, sequence++));
+                cipher.doFinal(in.nioBuffer(in.readerIndex(), length), plain.nioBuffer(0, plainLength));
+            } catch (final GeneralSecurityException e) {
+                plain.release();
+                throw new DecoderException("Unable to decrypt, the password may not be valid", e);
+            }
+
+            in.skipBytes(length);
+            out.add(plain.writerIndex(plainLength));
+        }
+    }
+
+    static final class RecordEncoder extends ChannelOutboundHandlerAdapter {
+
+        private final byte[] iv = new byte[EncryptionManager.IV_LENGTH];
+
+        private ChannelHandlerContext ctx;
+
+        private Key key;
+
+        private Cipher cipher;
+
+        private long sequence;
+
+        private CoalescingBufferQueue pending;
+
+        @Override
+        public void handlerAdded(final ChannelHandlerContext ctx) {
+            this.ctx = ctx;
+            pending = new CoalescingBufferQueue(ctx.channel());
+        }
+
+        /**
+         * Starts encrypting once the nonce of the peer has been received.  Writes held until now are sent.
+         *
+         * @param key key for this direction
+         * @throws GeneralSecurityException if the cipher is not available
+         */
+        void start(final Key key) throws GeneralSecurityException {
+            this.key = key;
+            cipher = EncryptionManager.createCipher();
+
+            if (!pending.isEmpty()) {
+                flush(ctx);
+            }
+        }
+
+        @Override
+        public void handlerRemoved(final ChannelHandlerContext ctx) {
+            pending.releaseAndFailAll(new IllegalStateException("The encryption handler was removed"));
+        }
+
+        @Override
+        public void write(final ChannelHandlerContext ctx, final Object msg, final ChannelPromise promise) {
+            if (msg instanceof ByteBuf) {
+                pending.add((ByteBuf) msg, promise);
+            } else {
+                ReferenceCountUtil.release(msg);
+                promise.setFailure(new UnsupportedOperationException("Unable to encrypt "
+                        + msg.getClass().getName()));
+            }
+        }
+
+        @Override
+        public void flush(final ChannelHandlerContext ctx) {
+            if (key == null) {  // held until the peer nonce arrives
+                return;
+            }
+
+            while (!pending.isEmpty()) {
+                final ChannelPromise promise = ctx.newPromise();
+                final ByteBuf plain = pending.remove(MAX_RECORD_LENGTH, promise);
+
+                try {
+                    ctx.write(seal(ctx, plain), promise);
+                } catch (final GeneralSecurityException e) {
+                    promise.setFailure(e);
+                } finally {
+                    plain.release();
+                }
+            }
+
+            ctx.flush();
+        }
+
+        @Override
+        public void close(final ChannelHandlerContext ctx, final ChannelPromise promise) {
+            pending.releaseAndFailAll(new IllegalStateException("The channel was closed"));
+            ctx.close(promise);
+        }
+
+        private ByteBuf seal(final ChannelHandlerContext ctx, final ByteBuf plain) throws GeneralSecurityException {
+            final int length = plain.readableBytes() + EncryptionManager.TAG_LENGTH;
+            final ByteBuf record = ctx.alloc().heapBuffer(LENGTH_FIELD_LENGTH + length);
+
+            try {
+                cipher.init(Cipher.ENCRYPT_MODE, key, getParameterSpec(iv, sequence++));
+
+                final ByteBuffer output = record.nioBuffer(LENGTH_FIELD_LENGTH, length);
+                cipher.doFinal(plain.nioBuffer(), output);
+            } catch (final GeneralSecurityException e) {
+                record.release();
+                throw e;
+            }
+
+            return record.writeInt(length).writerIndex(LENGTH_FIELD_LENGTH + length);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+/**
+ * Selects the Netty transport for the network servers and their clients.
+ * <p>
+ * The native epoll transport is used on Linux when it is available, it avoids the selector overhead of NIO and
+ * supports zero-copy file transfers.  NIO is used everywhere else, or when the {@code jgnash.nio} system property is
+ * {@code true}.
+ * <p>
+ * Servers accept connections on an event loop group of their own and serve the connections on a group of worker
+ * threads.  The thread counts are shared by all servers and must be set before the servers are started.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class NettyTransport {
+
+    private static final Logger logger = Logger.getLogger(NettyTransport.class.getName());
+
+    private static final boolean NATIVE = useNative(Boolean.getBoolean("jgnash.nio"), Epoll::isAvailable);
+
+    /**
+     * Threads accepting connections for each server.
+     */
+    private static volatile int eventLoopThreads = 1;
+
+    /**
+     * Threads serving connections for each server, zero for the Netty default of twice the number of processors.
+     */
+    private static volatile int workerThreads = 0;
+
+    static {
+        if (NATIVE) {
+            logger.info("Using the native epoll transport");
+        } else if (System.getProperty("os.name").startsWith("Linux")) {
+            logger.info("Using the NIO transport, epoll is not available: " + Epoll.unavailabilityCause());
+        }
+    }
+
+    private NettyTransport() {
+        // utility class
+    }
+
+    /**
+     * Determines if the native epoll transport is used.
+     *
+     * @param nioRequested   {@code true} if NIO has been requested
+     * @param epollAvailable checks for epoll, not called when NIO has been requested
+     * @return {@code true} for the native transport
+     */
+    static boolean useNative(final boolean nioRequested, final BooleanSupplier epollAvailable) {
+        return !nioRequested && epollAvailable.getAsBoolean();
+    }
+
+    /**
+     * Sets the number of threads each server uses to accept connections.
+     *
+     * @param threads number of threads, must be at least 1
+     */
+    public static void setEventLoopThreads(final int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("At least one event loop thread is required");
+        }
+
+        eventLoopThreads = threads;
+    }
+
+    /**
+     * Sets the number of threads each server uses to serve connections.
+     *
+     * @param threads number of threads, zero for the Netty default
+     */
+    public static void setWorkerThreads(final int threads) {
+        if (threads < 0) {
+            throw new IllegalArgumentException("The number of worker threads may not be negative");
+        }
+
+        workerThreads = threads;
+    }
+
+    /**
+     * Returns {@code true} if the native epoll transport is used.
+     *
+     * @return {@code true} for the native transport
+     */
+    public static boolean isNative() {
+        return NATIVE;
+    }
+
+    /**
+     * Creates the group accepting connections for a server.
+     *
+     * @param name server name used to name the threads
+     * @return a new event loop group
+     */
+    public static EventLoopGroup newEventLoopGroup(final String name) {
+        return newGroup(NATIVE, eventLoopThreads, name + "-accept");
+    }
+
+    /**
+     * Creates the group serving the connections of a server.
+     *
+     * @param name server name used to name the threads
+     * @return a new event loop group
+     */
+    public static EventLoopGroup newWorkerGroup(final String name) {
+        return newGroup(NATIVE, workerThreads, name + "-worker");
+    }
+
+    /**
+     * Creates the group for a client.  A client has a single connection, so it needs a single thread.
+     *
+     * @param name client name used to name the thread
+     * @return a new event loop group
+     */
+    public static EventLoopGroup newClientGroup(final String name) {
+        return newGroup(NATIVE, 1, name);
+    }
+
+    public static Class<? extends ServerSocketChannel> getServerChannelClass() {
+        return getServerChannelClass(NATIVE);
+    }
+
+    public static Class<? extends SocketChannel> getChannelClass() {
+        return getChannelClass(NATIVE);
+    }
+
+    static Class<? extends ServerSocketChannel> getServerChannelClass(final boolean nativeTransport) {
+        return nativeTransport ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+
+    static Class<? extends SocketChannel> getChannelClass(final boolean nativeTransport) {
+        return nativeTransport ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    static EventLoopGroup newGroup(final boolean nativeTransport, final int threads, final String name) {
+        final DefaultThreadFactory threadFactory = new DefaultThreadFactory(name);
+
+        return nativeTransport ? new EpollEventLoopGroup(threads, threadFactory)
+                : new NioEventLoopGroup(threads, threadFactory);
+    }
+}
@@ -0,0 +1,270 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+import jgnash.util.AbstractMetrics;
+import jgnash.util.LatencyHistogram;
+
+/**
+ * Opt-in metrics for the network servers.
+ * <p>
+ * Reports the connected clients and executor queue depth of each server, the rate of relayed messages, the wait for
+ * and hold time of each distributed lock, the attachment bytes transferred and the duration of XML backups.  The
+ * metrics are published through JMX as {@value #OBJECT_NAME}, logged periodically, and available as a text report.
+ * The message rate is sampled every second while enabled.
+ * <p>
+ * Servers register their gauges whether enabled or not, they are only read when reported.  Nothing is recorded while
+ * disabled; the instrumented code paths only check a volatile flag.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class ServerMetrics extends AbstractMetrics implements ServerMetricsMXBean {
+
+    static final String OBJECT_NAME = "jgnash:type=ServerMetrics";
+
+    private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+    private final Map<String, IntSupplier> connections = new ConcurrentHashMap<>();
+
+    private final Map<String, IntSupplier> executorQueues = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> lockWaits = new ConcurrentHashMap<>();
+
+    private final Map<String, LatencyHistogram> lockHolds = new ConcurrentHashMap<>();
+
+    private final LatencyHistogram backupDuration = new LatencyHistogram();
+
+    private final LongAccumulator maxQueueDepth = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Messages relayed since the last sample.
+     */
+    private final LongAdder messages = new LongAdder();
+
+    private final LongAdder messageCount = new LongAdder();
+
+    private final LongAccumulator maxMessagesPerSecond = new LongAccumulator(Math::max, 0);
+
+    private final LongAdder attachmentBytesIn = new LongAdder();
+
+    private final LongAdder attachmentBytesOut = new LongAdder();
+
+    private volatile long messagesPerSecond;
+
+    private ServerMetrics() {
+        super(OBJECT_NAME, "Server Metrics Executor");
+    }
+
+    public static ServerMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    protected void schedule(final ScheduledExecutorService executor) {
+        executor.scheduleAtFixedRate(this::sampleMessageRate, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Registers the gauges of a server.
+     *
+     * @param server        server name
+     * @param connections   supplies the number of connected clients
+     * @param executorQueue supplies the depth of the executor queue, may be {@code null}
+     */
+    public void registerServer(final String server, final IntSupplier connections, final IntSupplier executorQueue) {
+        this.connections.put(server, connections);
+
+        if (executorQueue != null) {
+            executorQueues.put(server, executorQueue);
+        }
+    }
+
+    /**
+     * Removes the gauges of a stopped server.
+     *
+     * @param server server name
+     */
+    public void unregisterServer(final String server) {
+        connections.remove(server);
+        executorQueues.remove(server);
+    }
+
+    /**
+     * Records relayed messages.
+     *
+     * @param count number of messages, a batch counts each message
+     */
+    public void recordMessages(final int count) {
+        messages.add(count);
+    }
+
+    public void recordQueueDepth(final int depth) {
+        maxQueueDepth.accumulate(depth);
+    }
+
+    public void recordLockWait(final String lockId, final long nanos) {
+        lockWaits.computeIfAbsent(lockId, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    public void recordLockHold(final String lockId, final long nanos) {
+        lockHolds.computeIfAbsent(lockId, k -> new LatencyHistogram()).record(nanos);
+    }
+
+    public void recordAttachmentBytesIn(final long bytes) {
+        attachmentBytesIn.add(bytes);
+    }
+
+    public void recordAttachmentBytesOut(final long bytes) {
+        attachmentBytesOut.add(bytes);
+    }
+
+    public void recordBackupDuration(final long nanos) {
+        backupDuration.record(nanos);
+    }
+
+    void sampleMessageRate() {
+        final long count = messages.sumThenReset();
+
+        messagesPerSecond = count;
+        messageCount.add(count);
+        maxMessagesPerSecond.accumulate(count);
+    }
+
+    @Override
+    public Map<String, Integer> getConnectedClients() {
+        return sample(connections);
+    }
+
+    @Override
+    public Map<String, Integer> getExecutorQueueDepths() {
+        return sample(executorQueues);
+    }
+
+    @Override
+    public int getMaxExecutorQueueDepth() {
+        return (int) maxQueueDepth.get();
+    }
+
+    @Override
+    public long getMessageCount() {
+        return messageCount.sum();
+    }
+
+    @Override
+    public long getMessagesPerSecond() {
+        return messagesPerSecond;
+    }
+
+    @Override
+    public long getMaxMessagesPerSecond() {
+        return maxMessagesPerSecond.get();
+    }
+
+    @Override
+    public Map<String, Long> getLockWaits() {
+        return means(lockWaits);
+    }
+
+    @Override
+    public Map<String, Long> getLockHolds() {
+        return means(lockHolds);
+    }
+
+    @Override
+    public long getAttachmentBytesIn() {
+        return attachmentBytesIn.sum();
+    }
+
+    @Override
+    public long getAttachmentBytesOut() {
+        return attachmentBytesOut.sum();
+    }
+
+    @Override
+    public long getMeanBackupDuration() {
+        return backupDuration.getMeanMicros();
+    }
+
+    @Override
+    public long getMaxBackupDuration() {
+        return backupDuration.getMaxMicros();
+    }
+
+    @Override
+    public synchronized void reset() {
+        lockWaits.clear();
+        lockHolds.clear();
+        backupDuration.reset();
+        maxQueueDepth.reset();
+        messages.reset();
+        messageCount.reset();
+        maxMessagesPerSecond.reset();
+        attachmentBytesIn.reset();
+        attachmentBytesOut.reset();
+
+        messagesPerSecond = 0;
+    }
+
+    @Override
+    public String getReport() {
+        final String lineSeparator = System.lineSeparator();
+        final StringBuilder builder = new StringBuilder("Server metrics").append(lineSeparator);
+
+        builder.append("  connected clients ").append(getConnectedClients()).append(lineSeparator);
+        builder.append("  executor queue depth ").append(getExecutorQueueDepths()).append(", max ")
+                .append(getMaxExecutorQueueDepth()).append(lineSeparator);
+        builder.append("  messages ").append(getMessageCount()).append(", ").append(getMessagesPerSecond())
+                .append("/s, max ").append(getMaxMessagesPerSecond()).append("/s").append(lineSeparator);
+        builder.append("  attachment bytes in ").append(getAttachmentBytesIn()).append(", out ")
+                .append(getAttachmentBytesOut()).append(lineSeparator);
+        builder.append("  xml backup: ").append(backupDuration).append(lineSeparator);
+
+        new TreeMap<>(lockWaits).forEach((lockId, histogram) ->
+                builder.append("  lock wait ").append(lockId).append(": ").append(histogram).append(lineSeparator));
+
+        new TreeMap<>(lockHolds).forEach((lockId, histogram) ->
+                builder.append("  lock hold ").append(lockId).append(": ").append(histogram).append(lineSeparator));
+
+        return builder.toString();
+    }
+
+    private static Map<String, Integer> sample(final Map<String, IntSupplier> gauges) {
+        final Map<String, Integer> map = new TreeMap<>();
+
+        gauges.forEach((server, gauge) -> map.put(server, gauge.getAsInt()));
+
+        return map;
+    }
+
+    private static Map<String, Long> means(final Map<String, LatencyHistogram> histograms) {
+        final Map<String, Long> map = new TreeMap<>();
+
+        histograms.forEach((lockId, histogram) -> map.put(lockId, histogram.getMeanMicros()));
+
+        return map;
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.util.Map;
+
+/**
+ * JMX interface for the server metrics.  All times are in microseconds.
+ *
+ * @author Craig Cavanaugh
+ */
+public interface ServerMetricsMXBean {
+
+    boolean isEnabled();
+
+    /**
+     * Returns the number of connected clients of each server.
+     *
+     * @return map of server name to connected clients
+     */
+    Map<String, Integer> getConnectedClients();
+
+    /**
+     * Returns the depth of the executor queue of each server.
+     *
+     * @return map of server name to queued tasks
+     */
+    Map<String, Integer> getExecutorQueueDepths();
+
+    int getMaxExecutorQueueDepth();
+
+    long getMessageCount();
+
+    long getMessagesPerSecond();
+
+    long getMaxMessagesPerSecond();
+
+    /**
+     * Returns the mean wait for each lock.
+     *
+     * @return map of lock id to mean wait
+     */
+    Map<String, Long> getLockWaits();
+
+    /**
+     * Returns the mean hold time of each lock.
+     *
+     * @return map of lock id to mean hold time
+     */
+    Map<String, Long> getLockHolds();
+
+    long getAttachmentBytesIn();
+
+    long getAttachmentBytesOut();
+
+    long getMeanBackupDuration();
+
+    long getMaxBackupDuration();
+
+    /**
+     * Returns the complete report as text.
+     *
+     * @return metrics report
+     */
+    String getReport();
+
+    void reset();
+}
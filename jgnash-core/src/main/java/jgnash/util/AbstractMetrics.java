@@ -0,0 +1,160 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Base class for opt-in metrics published through JMX.
+ * <p>
+ * While enabled, the metrics are registered with the platform MBean server under their object name and the report
+ * is logged every {@value #LOG_PERIOD_MINUTES} minutes.  Subclasses only check {@link #isEnabled()} before recording,
+ * so nothing is recorded while disabled.
+ *
+ * @author Craig Cavanaugh
+ */
+public abstract class AbstractMetrics {
+
+    protected static final long LOG_PERIOD_MINUTES = 5;
+
+    private final String objectName;
+
+    private final String threadName;
+
+    private final Logger logger = Logger.getLogger(getClass().getName());
+
+    private volatile boolean enabled;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates the metrics.
+     *
+     * @param objectName JMX object name
+     * @param threadName name of the thread that logs the report
+     */
+    protected AbstractMetrics(final String objectName, final String threadName) {
+        this.objectName = objectName;
+        this.threadName = threadName;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables collection.  When enabled, the metrics are registered with the platform MBean server
+     * and logged periodically.
+     *
+     * @param enabled {@code true} to collect metrics
+     */
+    public synchronized void setEnabled(final boolean enabled) {
+        if (this.enabled == enabled) {
+            return;
+        }
+
+        this.enabled = enabled;
+
+        if (enabled) {
+            registerMBean();
+
+            executor = Executors.newSingleThreadScheduledExecutor(new DefaultDaemonThreadFactory(threadName));
+
+            schedule(executor);
+
+            executor.scheduleWithFixedDelay(() -> logger.info(getReport()), LOG_PERIOD_MINUTES,
+                    LOG_PERIOD_MINUTES, TimeUnit.MINUTES);
+        } else {
+            unregisterMBean();
+
+            executor.shutdownNow();
+            executor = null;
+        }
+
+        enabledChanged(enabled);
+    }
+
+    /**
+     * Called when the metrics are enabled to schedule any additional sampling.
+     *
+     * @param executor executor that also logs the report
+     */
+    protected void schedule(final ScheduledExecutorService executor) {
+        // nothing to sample by default
+    }
+
+    /**
+     * Called after the metrics have been enabled or disabled.
+     *
+     * @param enabled {@code true} if the metrics were enabled
+     */
+    protected void enabledChanged(final boolean enabled) {
+        // nothing to change by default
+    }
+
+    /**
+     * Returns the metrics as text.
+     *
+     * @return metrics report
+     */
+    public abstract String getReport();
+
+    /**
+     * Returns the JMX object name.
+     *
+     * @return object name
+     */
+    public String getObjectName() {
+        return objectName;
+    }
+
+    private void registerMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(objectName);
+
+            if (!server.isRegistered(name)) {
+                server.registerMBean(this, name);
+            }
+        } catch (final JMException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+    }
+
+    private void unregisterMBean() {
+        try {
+            final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            final ObjectName name = new ObjectName(objectName);
+
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (final JMException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+    }
+}
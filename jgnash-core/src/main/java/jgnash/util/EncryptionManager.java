@@ -15,26 +15,29 @@
  *  You should have received a copy of the GNU General Public License
  *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
-
 package jgnash.util;
 
 import java.nio.charset.StandardCharsets;
-import java.security.InvalidKeyException;
+import java.security.GeneralSecurityException;
 import java.security.Key;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.Base64;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.crypto.BadPaddingException;
 import javax.crypto.Cipher;
-import javax.crypto.IllegalBlockSizeException;
-import javax.crypto.NoSuchPaddingException;
+import javax.crypto.Mac;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
  * A Simple encryption class based on a supplied user and password.
+ * <p>
+ * The key is derived from the password with PBKDF2.  Messages are encrypted with AES-GCM, which authenticates the
+ * content, using a random initialization vector for each message.  Connections derive a key for each direction with
+ * {@link #deriveStreamKey(byte[], byte[], String)}.
  *
  * @author Craig Cavanaugh
  */
@@ -46,27 +49,64 @@ public class EncryptionManager {
 
     private static final String ENCRYPTION_ALGORITHM = "AES";
 
+    private static final String CIPHER_ALGORITHM = "AES/GCM/NoPadding";
+
+    private static final String KEY_ALGORITHM = "PBKDF2WithHmacSHA256";
+
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+
+    /**
+     * The password is the secret, the salt only has to be specific to jGnash as both sides must derive the same key.
+     */
+    private static final byte[] KEY_SALT = "jGnash encryption key".getBytes(StandardCharsets.UTF_8);
+
+    private static final int KEY_ITERATIONS = 65536;
+
+    private static final int KEY_LENGTH = 256;
+
+    /**
+     * Length of the GCM initialization vector.
+     */
+    public static final int IV_LENGTH = 12;
+
+    /**
+     * Length of the GCM authentication tag appended to encrypted content.
+     */
+    public static final int TAG_LENGTH = 16;
+
+    /**
+     * Length of the random nonce each side of a connection contributes to the stream keys.
+     */
+    public static final int NONCE_LENGTH = 16;
+
     public static final String DECRYPTION_ERROR_TAG = "<DecryptError>";
 
     private static final Logger logger = Logger.getLogger(EncryptionManager.class.getName());
 
-    public EncryptionManager(final char[] password) {
-        byte[] encryptionKey = "fake".getBytes(StandardCharsets.UTF_8);
+    private final SecureRandom random = new SecureRandom();
 
+    /**
+     * Cipher instances are reused as creating them is expensive.
+     */
+    private final ThreadLocal<Cipher> cipher = ThreadLocal.withInitial(() -> {
         try {
-            final MessageDigest md = MessageDigest.getInstance("SHA-256");
-
-            final StringBuilder builder = new StringBuilder(new String(password));
+            return createCipher();
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    });
 
-            // generate the encryption key
-            encryptionKey = md.digest(builder.toString().getBytes(StandardCharsets.UTF_8));
+    public EncryptionManager(final char[] password) {
+        final PBEKeySpec keySpec = new PBEKeySpec(password, KEY_SALT, KEY_ITERATIONS, KEY_LENGTH);
 
-            builder.delete(0, builder.length() - 1);
-        } catch (final NoSuchAlgorithmException e) {
-            LogUtil.logSevere(EncryptionManager.class, e);
+        try {
+            key = new SecretKeySpec(SecretKeyFactory.getInstance(KEY_ALGORITHM).generateSecret(keySpec).getEncoded(),
+                    ENCRYPTION_ALGORITHM);
+        } catch (final GeneralSecurityException e) {
+            throw new IllegalStateException(e);     // available on every supported Java platform
+        } finally {
+            keySpec.clearPassword();
         }
-
-        key = new SecretKeySpec(encryptionKey, ENCRYPTION_ALGORITHM);
     }
 
     /**
@@ -76,16 +116,54 @@ public class EncryptionManager {
      * @return the encrypted string
      */
     public String encrypt(final String plain) {
+        final byte[] encrypted = encrypt(plain.getBytes(StandardCharsets.UTF_8));
+
+        return encrypted != null ? Base64.getEncoder().encodeToString(encrypted) : null;
+    }
+
+    /**
+     * Decrypts the supplied string.
+     *
+     * @param encrypted String to decrypt
+     * @return The decrypted string of {@code DECRYPTION_ERROR_TAG} if decryption fails
+     * @see #DECRYPTION_ERROR_TAG
+     */
+    public String decrypt(final String encrypted) {
+        try {
+            final byte[] plain = decrypt(Base64.getDecoder().decode(encrypted));
+
+            if (plain != null) {
+                return new String(plain, StandardCharsets.UTF_8);
+            }
+        } catch (final IllegalArgumentException e) {
+            logger.log(Level.SEVERE, "Invalid password");
+        }
+
+        return DECRYPTION_ERROR_TAG;
+    }
+
+    /**
+     * Encrypts the supplied bytes.  The initialization vector is prepended to the encrypted bytes.
+     *
+     * @param plain bytes to encrypt
+     * @return the encrypted bytes or {@code null} if encryption fails
+     */
+    public byte[] encrypt(final byte[] plain) {
+        final byte[] iv = new byte[IV_LENGTH];
+        random.nextBytes(iv);
 
         try {
-            final Cipher cipher = Cipher.getInstance(ENCRYPTION_ALGORITHM);
+            final Cipher cipher = this.cipher.get();
 
-            cipher.init(Cipher.ENCRYPT_MODE, key);
+            cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * Byte.SIZE, iv));
 
-            return Base64.getEncoder().encodeToString(cipher.doFinal(plain.getBytes(StandardCharsets.UTF_8)));
+            final byte[] encrypted = new byte[IV_LENGTH + cipher.getOutputSize(plain.length)];
 
-        } catch (final InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException
-                | IllegalBlockSizeException e) {
+            System.arraycopy(iv, 0, encrypted, 0, IV_LENGTH);
+            cipher.doFinal(plain, 0, plain.length, encrypted, IV_LENGTH);
+
+            return encrypted;
+        } catch (final GeneralSecurityException e) {
             LogUtil.logSevere(EncryptionManager.class, e);
         }
 
@@ -93,24 +171,69 @@ public class EncryptionManager {
     }
 
     /**
-     * Decrypts the supplied string.
+     * Decrypts the supplied bytes.
      *
-     * @param encrypted String to decrypt
-     * @return The decrypted string of {@code DECRYPTION_ERROR_TAG} if decryption fails
-     * @see #DECRYPTION_ERROR_TAG
+     * @param encrypted bytes to decrypt
+     * @return the decrypted bytes or {@code null} if decryption fails
      */
-    public String decrypt(final String encrypted) {
+    public byte[] decrypt(final byte[] encrypted) {
+        if (encrypted.length < IV_LENGTH + TAG_LENGTH) {
+            logger.log(Level.SEVERE, "Invalid password");
+            return null;
+        }
 
         try {
-            final Cipher cipher = Cipher.getInstance(ENCRYPTION_ALGORITHM);
+            final Cipher cipher = this.cipher.get();
 
-            cipher.init(Cipher.DECRYPT_MODE, key);
+            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_LENGTH * Byte.SIZE, encrypted, 0,
+                    IV_LENGTH));
 
-            return new String(cipher.doFinal(Base64.getDecoder().decode(encrypted)), StandardCharsets.UTF_8);
-        } catch (final InvalidKeyException | NoSuchAlgorithmException | NoSuchPaddingException | BadPaddingException
-                | IllegalBlockSizeException e) {
+            return cipher.doFinal(encrypted, IV_LENGTH, encrypted.length - IV_LENGTH);
+        } catch (final GeneralSecurityException e) {
             logger.log(Level.SEVERE, "Invalid password");
-            return DECRYPTION_ERROR_TAG;
+            return null;
         }
     }
+
+    /**
+     * Derives the key for one direction of a connection using HKDF with SHA-256.  Both sides pick a random nonce for
+     * each connection and the key depends on both, so a key is never used for more than one connection and traffic
+     * recorded from one connection can not be replayed on another.  The label keeps the two directions apart.
+     *
+     * @param clientNonce random nonce of {@link #NONCE_LENGTH} bytes chosen by the client
+     * @param serverNonce random nonce of {@link #NONCE_LENGTH} bytes chosen by the server
+     * @param label       name of the sending side
+     * @return the stream key
+     * @throws GeneralSecurityException if the algorithm is not available
+     */
+    public Key deriveStreamKey(final byte[] clientNonce, final byte[] serverNonce, final String label)
+            throws GeneralSecurityException {
+
+        final byte[] salt = new byte[clientNonce.length + serverNonce.length];
+
+        System.arraycopy(clientNonce, 0, salt, 0, clientNonce.length);
+        System.arraycopy(serverNonce, 0, salt, clientNonce.length, serverNonce.length);
+
+        final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+
+        mac.init(new SecretKeySpec(salt, MAC_ALGORITHM));
+        final byte[] pseudoRandomKey = mac.doFinal(key.getEncoded());
+
+        mac.init(new SecretKeySpec(pseudoRandomKey, MAC_ALGORITHM));
+        mac.update(label.getBytes(StandardCharsets.UTF_8));
+        mac.update((byte) 1);
+
+        return new SecretKeySpec(mac.doFinal(), ENCRYPTION_ALGORITHM);
+    }
+
+    /**
+     * Creates an AES-GCM cipher.  A cipher may be initialized again for each message, but an initialization vector
+     * must never be used twice with the same key.
+     *
+     * @return uninitialized cipher
+     * @throws GeneralSecurityException if the cipher is not available
+     */
+    public static Cipher createCipher() throws GeneralSecurityException {
+        return Cipher.getInstance(CIPHER_ALGORITHM);
+    }
 }
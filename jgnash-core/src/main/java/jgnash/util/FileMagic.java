@@ -37,6 +37,7 @@ import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamConstants;
@@ -72,6 +73,8 @@ public class FileMagic {
 
     private static final byte[] HSQL_HEADER = "SET DATABASE UNIQUE NAME HSQLDB".getBytes(StandardCharsets.UTF_8);
 
+    private static final byte[] GZIP_HEADER = new byte[]{0x1f, (byte) 0x8b};
+
     private static final byte[] XML_HEADER = "<?xml version=\"1.0\"".getBytes(StandardCharsets.UTF_8);
 
     private static final String USASCII = "USASCII";
@@ -288,6 +291,43 @@ public class FileMagic {
         return isFile(path, HSQL_HEADER);
     }
 
+    /**
+     * Determines if the file is gzip compressed.
+     *
+     * @param path path to check
+     * @return {@code true} if the file starts with the gzip magic number
+     */
+    public static boolean isGzipFile(final Path path) {
+        return isFile(path, GZIP_HEADER);
+    }
+
+    /**
+     * Opens an {@code InputStream} to the file that transparently decompresses gzip content.
+     *
+     * @param path path to open
+     * @return a new {@code InputStream}
+     * @throws IOException if an I/O error occurs
+     */
+    private static InputStream newInputStream(final Path path) throws IOException {
+        if (isGzipFile(path)) {
+            return new GZIPInputStream(Files.newInputStream(path));
+        }
+        return Files.newInputStream(path);
+    }
+
+    private static boolean isXmlFile(final Path path) {
+        if (isGzipFile(path)) {
+            try (final InputStream input = newInputStream(path)) {
+                return Arrays.equals(input.readNBytes(XML_HEADER.length), XML_HEADER);
+            } catch (final IOException ex) {
+                Logger.getLogger(FileMagic.class.getName()).log(Level.SEVERE, null, ex);
+                return false;
+            }
+        }
+
+        return isFile(path, XML_HEADER);
+    }
+
     private static boolean isFile(final Path path, final byte[] header) {
         boolean result = false;
 
@@ -324,7 +364,7 @@ public class FileMagic {
 
         boolean result = false;
 
-        if (isFile(path, XML_HEADER)) {
+        if (isXmlFile(path)) {
             try {
                 result = (int) Math.floor(Float.parseFloat(getXMLVersion(path))) <= Engine.CURRENT_MAJOR_VERSION;
             } catch (final NumberFormatException nfe) {
@@ -344,7 +384,7 @@ public class FileMagic {
     private static String getXMLVersion(final Path path) {
         String version = "";
 
-        try (final InputStream input = Files.newInputStream(path)) {
+        try (final InputStream input = newInputStream(path)) {
             XMLInputFactory inputFactory = XMLInputFactory.newInstance();
 
             // Protect against external entity attacks
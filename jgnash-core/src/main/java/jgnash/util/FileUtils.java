@@ -17,11 +17,7 @@
  */
 package jgnash.util;
 
-import java.io.BufferedInputStream;
-import java.io.BufferedOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.OutputStream;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
 import java.nio.channels.OverlappingFileLockException;
@@ -50,9 +46,6 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
-import java.util.zip.Deflater;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 import jgnash.engine.jpa.JpaH2DataStore;
 import jgnash.engine.jpa.JpaH2MvDataStore;
@@ -313,47 +306,6 @@ public final class FileUtils {
         return result;
     }
 
-    public static void compressFile(@NotNull final Path source, @NotNull final Path destination) {
-
-        // Create the destination directory if needed
-        if (!Files.isDirectory(destination.getParent())) {
-            try {
-                Files.createDirectories(destination.getParent());
-                Logger.getLogger(FileUtils.class.getName()).info("Created directories");
-            } catch (final IOException e) {
-                logSevere(FileUtils.class, e);
-            }
-        }
-
-        // Try to open the zip file for output
-        try (final OutputStream fos = new BufferedOutputStream(Files.newOutputStream(destination));
-             final ZipOutputStream zipOut = new ZipOutputStream(fos)) {
-
-            // Try to open the input stream
-            try (final InputStream in = new BufferedInputStream(Files.newInputStream(source, StandardOpenOption.READ))) {
-                zipOut.setLevel(Deflater.BEST_COMPRESSION);
-
-                // strip the path when creating the zip entry
-                zipOut.putNextEntry(new ZipEntry(source.getFileName().toString()));
-
-                // Transfer bytes from the file to the ZIP file
-                int length;
-
-
-                byte[] ioBuffer = new byte[DEFAULT_BUFFER_SIZE];
-
-                while ((length = in.read(ioBuffer)) > 0) {
-                    zipOut.write(ioBuffer, 0, length);
-                }
-
-                // finish the zip entry, but let the try-with-resources handle the close
-                zipOut.finish();
-            }
-        } catch (final IOException e) {
-            logSevere(FileUtils.class, e);
-        }
-    }
-
     /**
      * Returns a sorted list of files in a specified directory that match a regex search pattern.
      *
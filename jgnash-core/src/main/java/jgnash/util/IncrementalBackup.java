@@ -0,0 +1,409 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Incremental, deduplicated file backups.
+ * <p>
+ * A file is split into variable sized chunks using content-defined boundaries, and each chunk is stored once,
+ * compressed, under its SHA-256 hash.  Every backup is described by a small manifest listing the chunks in order.
+ * An insertion or removal only changes the chunks around the edit, so the I/O of a new backup scales with what
+ * has changed rather than with the size of the file.
+ * <p>
+ * Layout of a backup store directory:
+ * <pre>
+ *     chunks/ab/ab12...   compressed chunk named by its hash
+ *     name.manifest       ordered list of chunk hashes for one backup
+ * </pre>
+ *
+ * @author Craig Cavanaugh
+ */
+public final class IncrementalBackup {
+
+    public static final String MANIFEST_EXT = ".manifest";
+
+    private static final String MANIFEST_HEADER = "jGnash incremental backup 1";
+
+    private static final String SOURCE = "source=";
+
+    private static final String SIZE = "size=";
+
+    private static final String DIGEST = "sha256=";
+
+    private static final String CHUNKS = "chunks";
+
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    private static final int MIN_CHUNK = 2 * 1024;
+
+    private static final int MAX_CHUNK = 64 * 1024;
+
+    /**
+     * Produces an average chunk size of roughly 8 KB.
+     */
+    private static final long BOUNDARY_MASK = (1L << 13) - 1;
+
+    /**
+     * Random values for the gear rolling hash.  A fixed seed is required so chunk boundaries are stable between runs.
+     */
+    private static final long[] GEAR = new Random(0x6a476e617368L).longs(256).toArray();
+
+    private static final Logger logger = Logger.getLogger(IncrementalBackup.class.getName());
+
+    private IncrementalBackup() {
+        // utility class
+    }
+
+    /**
+     * Creates an incremental backup of a file.  Only chunks not already held by the store are written.
+     *
+     * @param source         file to backup
+     * @param storeDirectory backup store directory, created if needed
+     * @param backupName     name of the backup, the manifest extension will be appended
+     * @return path to the manifest of the new backup
+     * @throws IOException if an I/O error occurs
+     */
+    public static Path backup(@NotNull final Path source, @NotNull final Path storeDirectory,
+                              @NotNull final String backupName) throws IOException {
+        return backup(out -> Files.copy(source, out), source.getFileName().toString(), storeDirectory, backupName);
+    }
+
+    /**
+     * Creates an incremental backup of generated content.  The content is chunked as it is written, so the full
+     * content is never held in memory or written to an intermediate file.  Only chunks not already held by the store
+     * are written.
+     *
+     * @param source         writes the content to back up
+     * @param sourceName     file name the content will be restored as
+     * @param storeDirectory backup store directory, created if needed
+     * @param backupName     name of the backup, the manifest extension will be appended
+     * @return path to the manifest of the new backup
+     * @throws IOException if an I/O error occurs
+     */
+    public static Path backup(@NotNull final Source source, @NotNull final String sourceName,
+                              @NotNull final Path storeDirectory, @NotNull final String backupName)
+            throws IOException {
+
+        Files.createDirectories(storeDirectory.resolve(CHUNKS));
+
+        final ChunkOutputStream chunkOutputStream = new ChunkOutputStream(storeDirectory);
+
+        try (final OutputStream out = chunkOutputStream) {
+            source.writeTo(out);
+        }
+
+        final Path manifestPath = storeDirectory.resolve(backupName + MANIFEST_EXT);
+
+        try (final BufferedWriter writer = Files.newBufferedWriter(manifestPath, StandardCharsets.UTF_8)) {
+            writer.write(MANIFEST_HEADER);
+            writer.newLine();
+            writer.write(SOURCE + sourceName);
+            writer.newLine();
+            writer.write(SIZE + chunkOutputStream.size);
+            writer.newLine();
+            writer.write(DIGEST + toHex(chunkOutputStream.fileDigest.digest()));
+            writer.newLine();
+
+            for (final String line : chunkOutputStream.manifest) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+
+        logger.log(Level.INFO, "Incremental backup of {0} bytes wrote {1} new bytes in {2} chunks",
+                new Object[]{chunkOutputStream.size, chunkOutputStream.written, chunkOutputStream.manifest.size()});
+
+        return manifestPath;
+    }
+
+    /**
+     * Restores a backup.
+     *
+     * @param manifest    manifest of the backup to restore
+     * @param destination file to restore to, it will be replaced if it exists
+     * @throws IOException if an I/O error occurs or the restored file fails verification
+     */
+    public static void restore(@NotNull final Path manifest, @NotNull final Path destination) throws IOException {
+        final Path storeDirectory = manifest.toAbsolutePath().getParent();
+
+        final List<String> lines = Files.readAllLines(manifest, StandardCharsets.UTF_8);
+
+        if (lines.size() < 4 || !MANIFEST_HEADER.equals(lines.get(0))) {
+            throw new IOException("Not a valid backup manifest: " + manifest);
+        }
+
+        final long size = Long.parseLong(lines.get(2).substring(SIZE.length()));
+        final String digest = lines.get(3).substring(DIGEST.length());
+
+        final MessageDigest fileDigest = newDigest();
+        final Path tempFile = Files.createTempFile(destination.toAbsolutePath().getParent(), "restore", null);
+
+        long restored = 0;
+
+        try {
+            try (final OutputStream out = Files.newOutputStream(tempFile)) {
+                for (final String line : lines.subList(4, lines.size())) {
+                    final String hash = line.substring(0, line.indexOf(' '));
+                    final byte[] chunk = readChunk(getChunkPath(storeDirectory, hash));
+
+                    if (!hash.equals(toHex(newDigest().digest(chunk)))) {
+                        throw new IOException("Backup chunk is corrupt: " + hash);
+                    }
+
+                    fileDigest.update(chunk);
+                    out.write(chunk);
+                    restored += chunk.length;
+                }
+            }
+
+            if (restored != size || !digest.equals(toHex(fileDigest.digest()))) {
+                throw new IOException("Restored file failed verification: " + manifest);
+            }
+
+            Files.move(tempFile, destination, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+
+        logger.log(Level.INFO, "Restored {0} bytes to {1}", new Object[]{restored, destination});
+    }
+
+    /**
+     * Applies a retention policy to a backup store.  The oldest backups beyond the limit are removed along with any
+     * chunks that are no longer referenced.  Backups are ordered by name.
+     *
+     * @param storeDirectory backup store directory
+     * @param limit          number of backups to retain
+     */
+    public static void removeOldBackups(@NotNull final Path storeDirectory, final int limit) {
+        final List<Path> manifests = FileUtils.getDirectoryListing(storeDirectory, ".*\\" + MANIFEST_EXT);
+
+        try {
+            for (int i = 0; i < manifests.size() - limit; i++) {
+                Files.delete(manifests.get(i));
+            }
+
+            final Set<String> referenced = new HashSet<>();
+
+            for (final Path manifest : FileUtils.getDirectoryListing(storeDirectory, ".*\\" + MANIFEST_EXT)) {
+                try (final BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+                    referenced.addAll(reader.lines().skip(4).map(line -> line.substring(0, line.indexOf(' ')))
+                            .collect(Collectors.toList()));
+                }
+            }
+
+            final List<Path> unreferenced;
+
+            try (final Stream<Path> stream = Files.walk(storeDirectory.resolve(CHUNKS))) {
+                unreferenced = stream.filter(Files::isRegularFile)
+                        .filter(path -> !referenced.contains(path.getFileName().toString()))
+                        .collect(Collectors.toList());
+            }
+
+            for (final Path chunk : unreferenced) {
+                Files.delete(chunk);
+            }
+
+            logger.log(Level.INFO, "Removed {0} unreferenced backup chunks", unreferenced.size());
+        } catch (final IOException e) {
+            logger.log(Level.WARNING, e.getLocalizedMessage(), e);
+        }
+    }
+
+    private static void writeChunk(final Path chunkPath, final byte[] chunk, final int length) throws IOException {
+        Files.createDirectories(chunkPath.getParent());
+
+        final Path tempFile = Files.createTempFile(chunkPath.getParent(), "chunk", null);
+
+        final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+        try {
+            try (final OutputStream out = new DeflaterOutputStream(Files.newOutputStream(tempFile), deflater)) {
+                out.write(chunk, 0, length);
+            }
+
+            Files.move(tempFile, chunkPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            deflater.end();
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private static byte[] readChunk(final Path chunkPath) throws IOException {
+        try (final InputStream in = new InflaterInputStream(Files.newInputStream(chunkPath))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static Path getChunkPath(final Path storeDirectory, final String hash) {
+        return storeDirectory.resolve(CHUNKS).resolve(hash.substring(0, 2)).resolve(hash);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);  // SHA-256 is required of every Java platform
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder builder = new StringBuilder(bytes.length * 2);
+
+        for (final byte b : bytes) {
+            builder.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Content to be backed up.
+     */
+    @FunctionalInterface
+    public interface Source {
+
+        /**
+         * Writes the content.  The stream will be closed by the caller.
+         *
+         * @param out stream to write to
+         * @throws IOException if an I/O error occurs
+         */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Splits the written content into content-defined chunks using a gear rolling hash and stores any new chunks.
+     */
+    private static class ChunkOutputStream extends OutputStream {
+
+        private final Path storeDirectory;
+
+        private final byte[] chunk = new byte[MAX_CHUNK];
+
+        private final MessageDigest chunkDigest = newDigest();
+
+        final MessageDigest fileDigest = newDigest();
+
+        final List<String> manifest = new ArrayList<>();
+
+        private int length;
+
+        private long hash;
+
+        long size;
+
+        long written;
+
+        ChunkOutputStream(final Path storeDirectory) {
+            this.storeDirectory = storeDirectory;
+        }
+
+        @Override
+        public void write(final int b) throws IOException {
+            chunk[length++] = (byte) b;
+            hash = (hash << 1) + GEAR[b & 0xff];
+
+            if (length == MAX_CHUNK || (length >= MIN_CHUNK && (hash & BOUNDARY_MASK) == 0)) {
+                storeChunk();
+            }
+        }
+
+        @Override
+        public void write(final byte[] bytes, final int offset, final int count) throws IOException {
+            final int end = offset + count;
+            int start = offset;
+
+            while (start < end) {
+
+                // scan to the next boundary, then copy the span in one step
+                final int limit = Math.min(end, start + MAX_CHUNK - length);
+                int i = start;
+                int chunkLength = length;
+                long chunkHash = hash;
+                boolean boundary = false;
+
+                while (i < limit && !boundary) {
+                    chunkHash = (chunkHash << 1) + GEAR[bytes[i++] & 0xff];
+                    chunkLength++;
+                    boundary = chunkLength >= MIN_CHUNK && (chunkHash & BOUNDARY_MASK) == 0;
+                }
+
+                System.arraycopy(bytes, start, chunk, length, i - start);
+
+                length = chunkLength;
+                hash = chunkHash;
+                start = i;
+
+                if (boundary || length == MAX_CHUNK) {
+                    storeChunk();
+                }
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (length > 0) {
+                storeChunk();
+            }
+        }
+
+        private void storeChunk() throws IOException {
+            fileDigest.update(chunk, 0, length);
+            chunkDigest.update(chunk, 0, length);
+
+            final String chunkHash = toHex(chunkDigest.digest());
+            final Path chunkPath = getChunkPath(storeDirectory, chunkHash);
+
+            if (!Files.exists(chunkPath)) {
+                writeChunk(chunkPath, chunk, length);
+                written += length;
+            }
+
+            manifest.add(chunkHash + " " + length);
+            size += length;
+
+            length = 0;
+            hash = 0;
+        }
+    }
+}
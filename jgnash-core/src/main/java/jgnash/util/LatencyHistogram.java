@@ -0,0 +1,108 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with power of two microsecond buckets.
+ * <p>
+ * Bucket {@code i} counts samples of less than {@code 2^i} microseconds, so percentiles are reported as an upper
+ * bound with a resolution of a factor of two.  That is plenty to tell a microsecond cache hit from a millisecond
+ * query or a stalled lock.
+ *
+ * @author Craig Cavanaugh
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 32;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalMicros = new LongAdder();
+
+    private final LongAccumulator maxMicros = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a sample.
+     *
+     * @param nanos elapsed time in nanoseconds
+     */
+    public void record(final long nanos) {
+        final long micros = Math.max(0, nanos / 1000);
+
+        buckets.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros)));
+        count.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getMeanMicros() {
+        final long samples = count.sum();
+
+        return samples == 0 ? 0 : totalMicros.sum() / samples;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    /**
+     * Returns an upper bound for a percentile.
+     *
+     * @param percentile percentile between 0 and 100
+     * @return upper bound in microseconds
+     */
+    public long getPercentileMicros(final double percentile) {
+        long remaining = (long) Math.ceil(count.sum() * percentile / 100.0);
+
+        for (int i = 0; i < BUCKETS; i++) {
+            remaining -= buckets.get(i);
+
+            if (remaining <= 0) {
+                return Math.min(1L << i, getMaxMicros());
+            }
+        }
+
+        return getMaxMicros();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+
+        count.reset();
+        totalMicros.reset();
+        maxMicros.reset();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("count %d, mean %d us, p50 %d us, p99 %d us, max %d us", getCount(),
+                getMeanMicros(), getPercentileMicros(50), getPercentileMicros(99), getMaxMicros());
+    }
+}
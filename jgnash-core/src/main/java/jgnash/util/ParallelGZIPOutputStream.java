@@ -0,0 +1,249 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Multi-threaded gzip {@code OutputStream}.
+ * <p>
+ * Data is split into fixed size blocks that are compressed concurrently, each as a complete gzip member.  The
+ * members are written in order, and the concatenated result is a valid gzip stream that may be read by any
+ * standard gzip decompressor including {@code java.util.zip.GZIPInputStream}.
+ * <p>
+ * The number of blocks in flight is bounded to limit memory use.
+ *
+ * @author Craig Cavanaugh
+ */
+public class ParallelGZIPOutputStream extends FilterOutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final ExecutorService executorService = Executors.newFixedThreadPool(THREADS,
+            new DefaultDaemonThreadFactory("Parallel GZIP Executor"));
+
+    /**
+     * Fixed gzip member header: magic, deflate method, no flags, no time stamp, no extra flags and unknown OS.
+     */
+    private static final byte[] HEADER = new byte[]{0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+    private final int level;
+
+    private final int maxPending;
+
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int count;
+
+    private boolean memberWritten;
+
+    private boolean closed;
+
+    public ParallelGZIPOutputStream(final OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * Creates a new parallel gzip stream.
+     *
+     * @param out       underlying {@code OutputStream}
+     * @param blockSize size of the blocks that will be compressed independently
+     * @param level     compression level
+     */
+    public ParallelGZIPOutputStream(final OutputStream out, final int blockSize, final int level) {
+        super(out);
+
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be greater than zero");
+        }
+
+        this.level = level;
+        this.block = new byte[blockSize];
+        this.maxPending = THREADS * 2;
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        ensureOpen();
+
+        block[count++] = (byte) b;
+
+        if (count == block.length) {
+            submitBlock();
+        }
+    }
+
+    @Override
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        ensureOpen();
+
+        int offset = off;
+        int remaining = len;
+
+        while (remaining > 0) {
+            final int length = Math.min(remaining, block.length - count);
+
+            System.arraycopy(b, offset, block, count, length);
+
+            count += length;
+            offset += length;
+            remaining -= length;
+
+            if (count == block.length) {
+                submitBlock();
+            }
+        }
+    }
+
+    /**
+     * Compresses any buffered data as a gzip member and waits for all pending members to be written.
+     *
+     * @throws IOException if an I/O error occurs
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+
+        if (count > 0) {
+            submitBlock();
+        }
+
+        while (!pending.isEmpty()) {
+            writeNextMember();
+        }
+
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            try {
+                // an empty stream must still contain one member to be valid
+                if (count > 0 || !memberWritten && pending.isEmpty()) {
+                    submitBlock();
+                }
+
+                while (!pending.isEmpty()) {
+                    writeNextMember();
+                }
+            } finally {
+                closed = true;
+                block = null;
+                out.close();
+            }
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void submitBlock() throws IOException {
+        final byte[] data = block;
+        final int length = count;
+
+        pending.add(executorService.submit(() -> compressMember(data, length, level)));
+
+        block = new byte[data.length];
+        count = 0;
+
+        while (pending.size() >= maxPending) {
+            writeNextMember();
+        }
+    }
+
+    private void writeNextMember() throws IOException {
+        final Future<byte[]> future = pending.removeFirst();
+
+        try {
+            out.write(future.get());
+            memberWritten = true;
+        } catch (final InterruptedException e) {
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getLocalizedMessage());
+        } catch (final ExecutionException e) {
+            pending.forEach(f -> f.cancel(true));
+            pending.clear();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Compresses a block of data into a complete gzip member.
+     *
+     * @param data   data to compress
+     * @param length number of bytes to compress
+     * @param level  compression level
+     * @return gzip member
+     */
+    static byte[] compressMember(final byte[] data, final int length, final int level) {
+        final Deflater deflater = new Deflater(level, true);
+
+        try {
+            final ByteArrayOutputStream member = new ByteArrayOutputStream(length / 2 + HEADER.length + 8);
+            final byte[] buffer = new byte[8192];
+
+            member.write(HEADER, 0, HEADER.length);
+
+            deflater.setInput(data, 0, length);
+            deflater.finish();
+
+            while (!deflater.finished()) {
+                member.write(buffer, 0, deflater.deflate(buffer));
+            }
+
+            final CRC32 crc = new CRC32();
+            crc.update(data, 0, length);
+
+            writeIntLE(member, (int) crc.getValue());
+            writeIntLE(member, length);
+
+            return member.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void writeIntLE(final ByteArrayOutputStream out, final int value) {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+        out.write((value >> 16) & 0xff);
+        out.write((value >> 24) & 0xff);
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Objects;
+import java.util.function.DoubleConsumer;
+
+/**
+ * {@code InputStream} wrapper that reports the fraction of a known length that has been consumed.
+ * <p>
+ * Updates are only pushed to the consumer when progress has advanced by at least one percent to keep the
+ * overhead of UI updates low.
+ *
+ * @author Craig Cavanaugh
+ */
+public class ProgressInputStream extends FilterInputStream {
+
+    private static final double STEP = 0.01;
+
+    private final long length;
+
+    private final DoubleConsumer percentCompleteConsumer;
+
+    private long position;
+
+    private long mark;
+
+    private double lastReported;
+
+    /**
+     * Creates a progress reporting stream.
+     *
+     * @param in                      {@code InputStream} to wrap
+     * @param length                  expected number of bytes that will be read
+     * @param percentCompleteConsumer consumer for progress in the range of 0 to 1
+     */
+    public ProgressInputStream(@NotNull final InputStream in, final long length,
+                               @NotNull final DoubleConsumer percentCompleteConsumer) {
+        super(in);
+
+        this.length = length;
+        this.percentCompleteConsumer = Objects.requireNonNull(percentCompleteConsumer);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = super.read();
+
+        if (b != -1) {
+            advance(1);
+        }
+
+        return b;
+    }
+
+    @Override
+    public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+        final int count = super.read(b, off, len);
+
+        if (count > 0) {
+            advance(count);
+        }
+
+        return count;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        final long count = super.skip(n);
+
+        advance(count);
+
+        return count;
+    }
+
+    @Override
+    public synchronized void mark(final int readLimit) {
+        super.mark(readLimit);
+        mark = position;
+    }
+
+    @Override
+    public synchronized void reset() throws IOException {
+        super.reset();
+        position = mark;
+    }
+
+    /**
+     * Returns the number of bytes consumed so far.
+     *
+     * @return bytes read
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    private void advance(final long count) {
+        position += count;
+
+        if (length > 0) {
+            final double progress = Math.min(1d, (double) position / length);
+
+            if (progress - lastReported >= STEP || progress >= 1d && lastReported < 1d) {
+                lastReported = progress;
+                percentCompleteConsumer.accept(progress);
+            }
+        }
+    }
+}
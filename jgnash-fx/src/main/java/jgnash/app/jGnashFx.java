@@ -34,7 +34,10 @@ import javafx.stage.Stage;
 import jgnash.engine.Engine;
 import jgnash.engine.EngineFactory;
 import jgnash.engine.jpa.JpaNetworkServer;
+import jgnash.engine.jpa.PersistenceMetrics;
 import jgnash.engine.message.MessageBus;
+import jgnash.net.NettyTransport;
+import jgnash.net.ServerMetrics;
 import jgnash.resource.util.OS;
 import jgnash.resource.util.ResourceUtils;
 import jgnash.resource.util.Version;
@@ -133,6 +136,16 @@ public class jGnashFx extends Application {
                 System.exit(0);
             }
 
+            if (options.restoreBackup != null) {
+                System.out.println(EngineFactory.restoreIncrementalBackup(options.restoreBackup.toPath()));
+                System.exit(0);
+            }
+
+            if (options.metrics) {
+                PersistenceMetrics.getInstance().setEnabled(true);
+                ServerMetrics.getInstance().setEnabled(true);
+            }
+
             if (options.verbose) {
                 System.setProperty("javafx.verbose", "true");
             }
@@ -153,6 +166,10 @@ public class jGnashFx extends Application {
 
             if (options.serverFile != null && options.serverFile.exists()) {
                 jGnashFx.serverFile = options.serverFile;
+
+                NettyTransport.setEventLoopThreads(options.eventLoopThreads);
+                NettyTransport.setWorkerThreads(options.workerThreads);
+
                 startServer();
             } else {
                 setupNetworking();
@@ -245,6 +262,10 @@ public class jGnashFx extends Application {
         private static final String SERVER_OPTION = "--server";
         private static final String SHUTDOWN_OPTION = "--shutdown";
         private static final String BYPASS_BOOTLOADER = "--bypassBootloader";
+        private static final String RESTORE_BACKUP_OPTION = "--restoreBackup";
+        private static final String METRICS_OPTION = "--metrics";
+        private static final String EVENT_LOOP_THREADS_OPTION = "--eventLoopThreads";
+        private static final String WORKER_THREADS_OPTION = "--workerThreads";
         //private static final String SSL_OPTION = "--ssl";
 
         @CommandLine.Parameters(index = "0", arity = "0")
@@ -277,6 +298,18 @@ public class jGnashFx extends Application {
         @Option(names = {SHUTDOWN_OPTION}, description = "Issues a shutdown request to a server")
         private boolean shutdown = false;
 
+        @Option(names = {RESTORE_BACKUP_OPTION}, paramLabel = "<File>", description = "Restores an incremental backup manifest to an XML file")
+        private File restoreBackup = null;
+
+        @Option(names = {METRICS_OPTION}, description = "Collect persistence and server metrics, published through JMX and the log")
+        private boolean metrics = false;
+
+        @Option(names = {EVENT_LOOP_THREADS_OPTION}, paramLabel = "<Count>", description = "Threads each server uses to accept connections (default: 1)")
+        private int eventLoopThreads = 1;
+
+        @Option(names = {WORKER_THREADS_OPTION}, paramLabel = "<Count>", description = "Threads each server uses to serve connections, 0 for twice the processors (default: 0)")
+        private int workerThreads = 0;
+
         @Option(names = {UNINSTALL_OPTION_SHORT, UNINSTALL_OPTION_LONG}, description = "Remove registry settings (uninstall)")
         private boolean uninstall = false;
 
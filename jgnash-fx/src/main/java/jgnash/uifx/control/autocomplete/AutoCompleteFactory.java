@@ -19,9 +19,11 @@ package jgnash.uifx.control.autocomplete;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.logging.Level;
@@ -130,6 +132,19 @@ public class AutoCompleteFactory {
             }
         }
 
+        @Override
+        public void messagesPosted(final List<Message> events) {
+            final Set<Transaction> added = new HashSet<>();
+
+            // a transaction is posted once for each of its accounts, only load it once
+            for (final Message event : events) {
+                if (event.getEvent() != ChannelEvent.TRANSACTION_ADD
+                        || added.add(event.getObject(MessageProperty.TRANSACTION))) {
+                    messagePosted(event);
+                }
+            }
+        }
+
         void load() {
             load = true;
 
@@ -228,6 +243,14 @@ public class AutoCompleteFactory {
                 default:
             }
         }
+
+        @Override
+        public void messagesPosted(final List<Message> events) {
+            // messages are already filtered by account, so each transaction is only loaded once
+            for (final Message event : events) {
+                messagePosted(event);
+            }
+        }
     }
 
     /**
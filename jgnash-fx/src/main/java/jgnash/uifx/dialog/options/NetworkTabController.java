@@ -56,6 +56,9 @@ public class NetworkTabController {
     @FXML
     private Spinner<Integer> timeoutSpinner;
 
+    @FXML
+    private CheckBox compressionCheckBox;
+
     @FXML
     private void initialize() {
 
@@ -77,6 +80,8 @@ public class NetworkTabController {
         userNameTextField.setText(NetworkAuthenticator.getName());
         passwordField.setText(NetworkAuthenticator.getPassword());
 
+        compressionCheckBox.setSelected(ConnectionFactory.isCompressionEnabled());
+
         useProxyCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
                 -> NetworkAuthenticator.setUseProxy(newValue));
 
@@ -97,5 +102,8 @@ public class NetworkTabController {
 
         timeoutSpinner.getValueFactory().valueProperty().addListener((observable, oldValue, newValue)
                 -> ConnectionFactory.setConnectionTimeout(newValue));
+
+        compressionCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
+                -> ConnectionFactory.setCompressionEnabled(newValue));
     }
 }
@@ -38,6 +38,9 @@ public class StartupShutdownTabController {
     @FXML
     private CheckBox createBackupsCheckBox;
 
+    @FXML
+    private CheckBox incrementalBackupsCheckBox;
+
     @FXML
     private CheckBox removeOldBackupsCheckBox;
 
@@ -56,6 +59,9 @@ public class StartupShutdownTabController {
     @FXML
     private CheckBox checkForUpdatesCheckBox;
 
+    @FXML
+    private CheckBox lazyLoadingCheckBox;
+
     @FXML
     private void initialize() {
         final Engine engine = EngineFactory.getEngine(EngineFactory.DEFAULT);
@@ -66,6 +72,7 @@ public class StartupShutdownTabController {
             backupCountSpinner.getValueFactory().setValue(engine.getRetainedBackupLimit());
             createBackupsCheckBox.setSelected(engine.createBackups());
             removeOldBackupsCheckBox.setSelected(engine.removeOldBackups());
+            incrementalBackupsCheckBox.setSelected(engine.incrementalBackups());
 
             backupCountSpinner.valueProperty().addListener((observable, oldValue, newValue)
                     -> engine.setRetainedBackupLimit(newValue));
@@ -75,10 +82,14 @@ public class StartupShutdownTabController {
 
             removeOldBackupsCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
                     -> engine.setRemoveOldBackups(newValue));
+
+            incrementalBackupsCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
+                    -> engine.setIncrementalBackups(newValue));
         } else {
             backupCountSpinner.setDisable(true);
             createBackupsCheckBox.setDisable(true);
             removeOldBackupsCheckBox.setDisable(true);
+            incrementalBackupsCheckBox.setDisable(true);
             updateCurrencies.setDisable(true);
             updateSecurities.setDisable(true);
         }
@@ -96,5 +107,10 @@ public class StartupShutdownTabController {
         openLastCheckBox.selectedProperty().bindBidirectional(Options.openLastProperty());
 
         checkForUpdatesCheckBox.selectedProperty().bindBidirectional(Options.checkForUpdatesProperty());
+
+        lazyLoadingCheckBox.setSelected(EngineFactory.isLazyLoading());
+
+        lazyLoadingCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
+                -> EngineFactory.setLazyLoading(newValue));
     }
 }
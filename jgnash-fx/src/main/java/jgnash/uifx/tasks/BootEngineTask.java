@@ -109,7 +109,8 @@ public class BootEngineTask extends Task<String> {
                     JavaFXUtils.runLater(UIRunnable);
                 }
             } else  {
-                EngineFactory.bootLocalEngine(localFile, EngineFactory.DEFAULT, password);
+                EngineFactory.bootLocalEngine(localFile, EngineFactory.DEFAULT, password,
+                        value -> updateProgress(value, 1));
                 updateMessage(resources.getString("Message.FileLoadComplete"));
                 Thread.sleep(FORCED_DELAY); // force delay for better visual feedback
             }
@@ -36,6 +36,8 @@ import javafx.event.ActionEvent;
 import javafx.event.EventHandler;
 import javafx.fxml.FXML;
 import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
 import javafx.scene.control.ProgressBar;
 import javafx.scene.control.TextArea;
 import javafx.scene.input.Clipboard;
@@ -48,6 +50,10 @@ import javafx.stage.WindowEvent;
 import javafx.util.Duration;
 
 import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.jpa.PersistenceMetrics;
+import jgnash.engine.message.MessageBus;
+import jgnash.net.ServerMetrics;
 import jgnash.uifx.util.FXMLUtils;
 import jgnash.uifx.util.InjectFXML;
 import jgnash.uifx.util.JavaFXUtils;
@@ -76,6 +82,12 @@ public class ConsoleDialogController {
     @FXML
     private TextArea consoleArea;
 
+    @FXML
+    private CheckBox metricsCheckBox;
+
+    @FXML
+    private Button showMetricsButton;
+
     private PrintStream oldOutStream;
 
     private PrintStream oldErrStream;
@@ -126,6 +138,12 @@ public class ConsoleDialogController {
             Logger.getLogger(ConsoleDialogController.class.getName()).log(Level.SEVERE, null, ex);
         }
 
+        metricsCheckBox.setSelected(PersistenceMetrics.getInstance().isEnabled());
+        showMetricsButton.disableProperty().bind(metricsCheckBox.selectedProperty().not());
+
+        metricsCheckBox.selectedProperty().addListener((observable, oldValue, newValue)
+                -> EngineFactory.setPersistenceMetrics(newValue));
+
         // Plug in the new streams
         System.setOut(outStream);
         System.setErr(errStream);
@@ -179,6 +197,17 @@ public class ConsoleDialogController {
         System.gc();
     }
 
+    @FXML
+    private void handleShowMetrics() {
+        consoleArea.appendText(PersistenceMetrics.getInstance().getReport());
+        consoleArea.appendText(MessageBus.getInstance().getListenerReport());
+
+        // a server running within this instance
+        if (ServerMetrics.getInstance().isEnabled()) {
+            consoleArea.appendText(ServerMetrics.getInstance().getReport());
+        }
+    }
+
     @FXML
     private void handleCopyToClipboard() {
         final ClipboardContent content = new ClipboardContent();
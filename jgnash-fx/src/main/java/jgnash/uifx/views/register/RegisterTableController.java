@@ -736,5 +736,69 @@ abstract class RegisterTableController {
 
             }
         }
+
+        @Override
+        public void messagesPosted(final List<Message> events) {
+            final Account acc = RegisterTableController.this.account.getValue();
+
+            if (acc == null) {
+                return;
+            }
+
+            final List<Transaction> removedTransactions = new ArrayList<>();
+            final List<Transaction> addedTransactions = new ArrayList<>();
+
+            for (final Message event : events) {
+                if (event.getObject(MessageProperty.ACCOUNT).equals(acc)) {
+                    final Transaction transaction = event.getObject(MessageProperty.TRANSACTION);
+
+                    switch (event.getEvent()) {
+                        case TRANSACTION_REMOVE:
+                            if (!addedTransactions.remove(transaction)) {
+                                removedTransactions.add(transaction);
+                            }
+                            break;
+                        case TRANSACTION_ADD:
+                            if (!removedTransactions.remove(transaction)) {
+                                addedTransactions.add(transaction);
+                            }
+                            break;
+                        default:
+                    }
+                }
+            }
+
+            if (removedTransactions.isEmpty() && addedTransactions.isEmpty()) {
+                return;
+            }
+
+            // clear the selection if a removed transaction is currently selected
+            if (tableView.getSelectionModel().getSelectedItems().stream().anyMatch(removedTransactions::contains)) {
+                JavaFXUtils.runLater(RegisterTableController.this::clearTableSelection);
+            }
+
+            // the whole batch is applied with a single pass on the application thread and one table refresh
+            JavaFXUtils.runLater(() -> {
+                observableTransactions.removeAll(removedTransactions);
+
+                for (final Transaction addedTransaction : addedTransactions) {
+                    final int index = Collections.binarySearch(observableTransactions, addedTransaction,
+                            tableView.getComparator());
+
+                    if (index < 0) {
+                        observableTransactions.add(-index - 1, addedTransaction);
+                    }
+                }
+
+                if (!addedTransactions.isEmpty()) {
+                    final Transaction lastTransaction = addedTransactions.get(addedTransactions.size() - 1);
+
+                    JavaFXUtils.runLater(() -> scrollToTransaction(lastTransaction));
+                }
+
+                // this will force the running balance to recalculate
+                refreshTable();
+            });
+        }
     }
 }
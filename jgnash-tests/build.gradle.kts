@@ -2,6 +2,7 @@ description = "jGnash Core Test Classes"
 
 var moduleName = "jgnash.tests"
 
+val caffeineVersion: String by project
 val nettyVersion: String by project
 val pdfBoxVersion: String by project
 val xstreamVersion: String by project
@@ -29,6 +30,7 @@ dependencies {
     testImplementation(project(":jgnash-report-core"))
 
     testImplementation("io.netty:netty-codec:$nettyVersion")
+    testImplementation("com.github.ben-manes.caffeine:jcache:$caffeineVersion")
     testImplementation("com.thoughtworks.xstream:xstream:$xstreamVersion")
 
     testImplementation("org.apache.commons:commons-collections4:$commonsCollectionsVersion")
@@ -38,7 +40,9 @@ dependencies {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("loadtest")     // run by the loadTest task
+    }
 
     // we want display the following test events
     testLogging {
@@ -47,6 +51,28 @@ tasks.test {
     }
 }
 
+tasks.register<Test>("loadTest") {
+    description = "Runs the load tests and benchmarks"
+    group = "verification"
+
+    testClassesDirs = tasks.test.get().testClassesDirs
+    classpath = tasks.test.get().classpath
+
+    useJUnitPlatform {
+        includeTags("loadtest")
+    }
+
+    testLogging {
+        events("PASSED", "STARTED", "FAILED", "SKIPPED")
+        showStandardStreams = true
+    }
+
+    // pass the load test configuration through, e.g. -Dloadtest.clients=20
+    System.getProperties().filterKeys { (it as String).startsWith("loadtest.") }.forEach { (key, value) ->
+        systemProperty(key as String, value)
+    }
+}
+
 tasks.jar {
     manifest.attributes["Automatic-Module-Name"] = moduleName
 }
\ No newline at end of file
@@ -0,0 +1,162 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.logging.Logger;
+
+import jgnash.engine.concurrent.DistributedLockManager;
+import jgnash.engine.concurrent.DistributedLockServer;
+import jgnash.util.LatencyHistogram;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test of the distributed lock server with many clients.
+ * <p>
+ * Each client is a separate lock manager with its own connection.  The clients run a mix of mostly shared and some
+ * exclusive locks against a small set of lock ids, check that exclusion holds across clients, and report throughput
+ * and latency percentiles.
+ * <p>
+ * Tagged as a load test, so it only runs with the {@code loadTest} task.
+ *
+ * @author Craig Cavanaugh
+ */
+@Tag("loadtest")
+class DistributedLockLoadTest {
+
+    private static final int PORT = 5003;
+
+    private static final int CLIENTS = 50;
+
+    private static final long DURATION_MILLIS = 5000;
+
+    private static final int WRITE_PERCENT = 10;
+
+    private static final String[] LOCK_IDS = {"account", "transaction", "budget", "reminder"};
+
+    private static final Logger logger = Logger.getLogger(DistributedLockLoadTest.class.getName());
+
+    private DistributedLockServer server;
+
+    private final List<DistributedLockManager> managers = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        server = new DistributedLockServer(PORT);
+        assertTrue(server.startServer(EngineFactory.EMPTY_PASSWORD));
+
+        for (int i = 0; i < CLIENTS; i++) {
+            final DistributedLockManager manager = new DistributedLockManager(EngineFactory.LOCALHOST, PORT);
+            assertTrue(manager.connectToServer(EngineFactory.EMPTY_PASSWORD));
+
+            managers.add(manager);
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        managers.forEach(DistributedLockManager::disconnectFromServer);
+        managers.clear();
+
+        server.stopServer();
+    }
+
+    @Test
+    void manyClients() throws InterruptedException {
+        final LatencyHistogram readLatency = new LatencyHistogram();
+        final LatencyHistogram writeLatency = new LatencyHistogram();
+
+        // holders of each lock id across all clients, positive for readers and -1 for a writer
+        final AtomicInteger[] holders = new AtomicInteger[LOCK_IDS.length];
+        final AtomicInteger violations = new AtomicInteger();
+
+        for (int i = 0; i < holders.length; i++) {
+            holders[i] = new AtomicInteger();
+        }
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(CLIENTS);
+        final long end = System.currentTimeMillis() + DURATION_MILLIS;
+
+        for (final DistributedLockManager manager : managers) {
+            executorService.submit(() -> {
+                final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                while (System.currentTimeMillis() < end) {
+                    final int index = random.nextInt(LOCK_IDS.length);
+                    final ReadWriteLock lock = manager.getLock(LOCK_IDS[index]);
+                    final long start = System.nanoTime();
+
+                    if (random.nextInt(100) < WRITE_PERCENT) {
+                        lock.writeLock().lock();
+
+                        try {
+                            if (!holders[index].compareAndSet(0, -1)) {
+                                violations.incrementAndGet();
+                            }
+                            holders[index].set(0);
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+
+                        writeLatency.record(System.nanoTime() - start);
+                    } else {
+                        lock.readLock().lock();
+
+                        try {
+                            if (holders[index].incrementAndGet() < 1) {
+                                violations.incrementAndGet();
+                            }
+                            holders[index].decrementAndGet();
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+
+                        readLatency.record(System.nanoTime() - start);
+                    }
+                }
+            });
+        }
+
+        executorService.shutdown();
+        assertTrue(executorService.awaitTermination(DURATION_MILLIS * 10, TimeUnit.MILLISECONDS));
+
+        final long operations = readLatency.getCount() + writeLatency.getCount();
+
+        logger.info(String.format("%d clients, %d operations, %d per second", CLIENTS, operations,
+                operations * 1000 / DURATION_MILLIS));
+        logger.info("read: " + readLatency);
+        logger.info("write: " + writeLatency);
+
+        assertEquals(0, violations.get());
+        assertTrue(operations > 0);
+    }
+}
@@ -30,6 +30,10 @@ import org.junit.jupiter.api.Test;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -37,6 +41,7 @@ import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -53,6 +58,8 @@ public class DistributedLockTest {
 
     DistributedLockManager manager;
 
+    char[] password = EngineFactory.EMPTY_PASSWORD;
+
     private static final Logger logger = Logger.getLogger(DistributedLockTest.class.getName());
 
     private final Random random = new Random();
@@ -68,10 +75,10 @@ public class DistributedLockTest {
     public void setUp() {
 
         server = new DistributedLockServer(PORT);
-        assertTrue(server.startServer(EngineFactory.EMPTY_PASSWORD));
+        assertTrue(server.startServer(password));
 
         manager = new DistributedLockManager(EngineFactory.LOCALHOST, PORT);
-        manager.connectToServer(EngineFactory.EMPTY_PASSWORD);
+        manager.connectToServer(password);
     }
 
     @AfterEach
@@ -264,6 +271,97 @@ public class DistributedLockTest {
         assertEquals(4, count);
     }
 
+    @Test
+    void leaseRevokedByWriter() throws InterruptedException {
+        final DistributedLockManager otherManager = new DistributedLockManager(EngineFactory.LOCALHOST, PORT);
+        assertTrue(otherManager.connectToServer(password));
+
+        try {
+            final ReadWriteLock lock = manager.getLock("lease");
+
+            // the read lease is kept after the unlock
+            lock.readLock().lock();
+            lock.readLock().unlock();
+
+            final Thread writer = new Thread(() -> {
+                final ReadWriteLock otherLock = otherManager.getLock("lease");
+
+                otherLock.writeLock().lock();
+                otherLock.writeLock().unlock();
+            });
+
+            writer.start();
+            writer.join(10000);
+
+            assertFalse(writer.isAlive());
+
+            // the lease is acquired again once the writer is done
+            lock.readLock().lock();
+            lock.readLock().unlock();
+        } finally {
+            otherManager.disconnectFromServer();
+        }
+    }
+
+    @Test
+    void writersWithQueuedReaders() throws Exception {
+        final int ITERATIONS = 100;
+
+        final DistributedLockManager otherManager = new DistributedLockManager(EngineFactory.LOCALHOST, PORT);
+        assertTrue(otherManager.connectToServer(password));
+
+        final AtomicInteger writers = new AtomicInteger();
+        final AtomicInteger readers = new AtomicInteger();
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(4);
+        final List<Future<?>> futures = new ArrayList<>();
+
+        try {
+            // each client has a writer waiting on the server with a reader queued behind it locally
+            for (final DistributedLockManager lockManager : new DistributedLockManager[]{manager, otherManager}) {
+                final ReadWriteLock lock = lockManager.getLock("queued");
+
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        lock.writeLock().lock();
+
+                        try {
+                            assertEquals(1, writers.incrementAndGet());
+                            assertEquals(0, readers.get());
+                            Thread.sleep(1);
+                            writers.decrementAndGet();
+                        } finally {
+                            lock.writeLock().unlock();
+                        }
+                    }
+                    return null;
+                }));
+
+                futures.add(executorService.submit(() -> {
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        lock.readLock().lock();
+
+                        try {
+                            readers.incrementAndGet();
+                            assertEquals(0, writers.get());
+                            readers.decrementAndGet();
+                        } finally {
+                            lock.readLock().unlock();
+                        }
+                    }
+                    return null;
+                }));
+            }
+
+            for (final Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);   // a distributed deadlock times out
+            }
+        } finally {
+            executorService.shutdownNow();
+            otherManager.disconnectFromServer();
+        }
+    }
+
     @Test
     void reentrantReadTest() {
         int count = 0;
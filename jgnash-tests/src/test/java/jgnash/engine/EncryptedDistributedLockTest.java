@@ -33,7 +33,7 @@ public class EncryptedDistributedLockTest extends DistributedLockTest {
     @BeforeEach
     @Override
     public void setUp() {
-        final char[] password = new char[]{'P', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+        password = new char[]{'P', 'a', 's', 's', 'w', 'o', 'r', 'd'};
 
         //System.setProperty(EncryptionManager.ENCRYPTION_FLAG, "true");
         //System.setProperty("ssl", "true");
@@ -1123,6 +1123,70 @@ public abstract class EngineTest {
         assertEquals(1, e.getTransactionsWithAttachments().size());
     }
 
+    @Test
+    void testAddTransactions() {
+        Account a = new Account(AccountType.BANK, e.getDefaultCurrency());
+        a.setName("testAccount");
+
+        Account b = new Account(AccountType.EXPENSE, e.getDefaultCurrency());
+        b.setName("testExpense");
+
+        e.addAccount(e.getRootAccount(), a);
+        e.addAccount(e.getRootAccount(), b);
+
+        final List<Transaction> transactions = new ArrayList<>();
+
+        for (int i = 0; i < 250; i++) {
+            transactions.add(TransactionFactory.generateDoubleEntryTransaction(b, a, BigDecimal.ONE,
+                    LocalDate.now().minusDays(i), "memo" + i, "payee", Integer.toString(i)));
+        }
+
+        assertTrue(e.addTransactions(transactions));
+
+        assertEquals(250, a.getTransactionCount());
+        assertEquals(250, b.getTransactionCount());
+        assertEquals(0, new BigDecimal("-250").compareTo(a.getBalance()));
+
+        // same date transactions that are only ordered by number, amount and uuid
+        final String[] numbers = new String[]{null, "", "10", "9", "A"};
+
+        for (int i = 0; i < 20; i++) {
+            assertTrue(e.addTransaction(TransactionFactory.generateDoubleEntryTransaction(b, a,
+                    BigDecimal.valueOf(i % 3 + 1), LocalDate.now().minusDays(3), "same date" + i, "payee",
+                    numbers[i % numbers.length])));
+        }
+
+        // close and reopen to force check for persistence
+        closeEngine();
+        e = EngineFactory.bootLocalEngine(testFile, EngineFactory.DEFAULT, EngineFactory.EMPTY_PASSWORD);
+
+        assertEquals(270, e.getTransactions().size());
+        assertEquals(270, e.getAccountByName("testAccount").getTransactionCount());
+
+        // inclusive date range query
+        final List<Transaction> range = e.getTransactions(e.getAccountByName("testAccount"),
+                LocalDate.now().minusDays(9), LocalDate.now());
+
+        assertEquals(30, range.size());
+        assertTrue(range.get(0).getLocalDate().isBefore(range.get(29).getLocalDate()));
+
+        // streamed results must match the list in content and order
+        final List<Transaction> streamed = new ArrayList<>();
+        e.forEachTransaction(e.getAccountByName("testAccount"), LocalDate.now().minusDays(9), LocalDate.now(),
+                streamed::add);
+
+        assertEquals(range, streamed);
+
+        // a balance carried forward over the stream must match the account balance of each transaction
+        final Account account = e.getAccountByName("testAccount");
+        BigDecimal balance = account.getBalanceAt(streamed.get(0));
+
+        for (int i = 1; i < streamed.size(); i++) {
+            balance = balance.add(streamed.get(i).getAmount(account));
+            assertEquals(0, balance.compareTo(account.getBalanceAt(streamed.get(i))));
+        }
+    }
+
     @Test
     void testGetUuid() {
         assertNotNull(e.getUuid());
@@ -0,0 +1,196 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+
+import jgnash.engine.jpa.JpaH2DataStore;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Columnar security history test.
+ *
+ * @author Craig Cavanaugh
+ */
+class SecurityHistorySeriesTest {
+
+    @Test
+    void testSortedInsertAndSearch() {
+        final SecurityHistorySeries series = new SecurityHistorySeries();
+
+        assertTrue(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 3), new BigDecimal("10.5"), 100, null, null)));
+        assertTrue(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 1), new BigDecimal("10"), 200, null, null)));
+        assertFalse(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 1), BigDecimal.ONE, 0, null, null)));
+
+        assertEquals(2, series.size());
+        assertEquals(LocalDate.of(2020, 1, 1), series.getLocalDate(0));
+
+        assertEquals(-1, series.floorIndexOf(LocalDate.of(2019, 12, 31)));
+        assertEquals(0, series.floorIndexOf(LocalDate.of(2020, 1, 2)));
+        assertEquals(1, series.floorIndexOf(LocalDate.of(2020, 2, 1)));
+
+        assertTrue(series.remove(LocalDate.of(2020, 1, 1)));
+        assertFalse(series.remove(LocalDate.of(2020, 1, 1)));
+        assertEquals(0, new BigDecimal("10.5").compareTo(series.getPrice(0)));
+    }
+
+    @Test
+    void testCompressedBlock() throws IOException {
+        final SecurityHistorySeries series = new SecurityHistorySeries();
+
+        LocalDate date = LocalDate.of(1965, 6, 1);
+        BigDecimal price = new BigDecimal("42.17");
+
+        for (int i = 0; i < 5000; i++) {
+            date = date.plusDays(1 + i % 3);
+            price = price.add(new BigDecimal(i % 7 - 3).movePointLeft(2));
+
+            series.add(new SecurityHistoryNode(date, price, i * 10L, price.add(BigDecimal.ONE),
+                    price.subtract(BigDecimal.ONE)));
+        }
+
+        // each value keeps its own scale
+        series.add(new SecurityHistoryNode(LocalDate.of(1960, 1, 1), new BigDecimal("0.123456789012"), 1, null, null));
+
+        final SecurityHistorySeries decoded = SecurityHistorySeries.fromCompressedBlock(series.toCompressedBlock());
+
+        final List<SecurityHistoryNode> expected = series.getNodes();
+        final List<SecurityHistoryNode> actual = decoded.getNodes();
+
+        assertEquals(expected.size(), actual.size());
+
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getLocalDate(), actual.get(i).getLocalDate());
+            assertEquals(expected.get(i).getPrice(), actual.get(i).getPrice());
+            assertEquals(expected.get(i).getHigh(), actual.get(i).getHigh());
+            assertEquals(expected.get(i).getLow(), actual.get(i).getLow());
+            assertEquals(expected.get(i).getVolume(), actual.get(i).getVolume());
+        }
+
+        assertEquals(new BigDecimal("0.123456789012"), decoded.getPrice(0));
+    }
+
+    @Test
+    void testExactValues() throws IOException {
+        final SecurityHistorySeries series = new SecurityHistorySeries();
+
+        assertTrue(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 1), new BigDecimal("502.00"), 0, null,
+                null)));
+        assertEquals(new BigDecimal("502.00"), series.getPrice(0));
+
+        // trailing zeros are given up only if needed to fit
+        assertTrue(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 2),
+                new BigDecimal("12.3400000000000000000000"), 0, null, null)));
+        assertEquals(new BigDecimal("12.34"), series.getPrice(1));
+
+        // too many digits for the columns, the node is kept instead
+        final SecurityHistoryNode wide = new SecurityHistoryNode(LocalDate.of(2020, 1, 3),
+                new BigDecimal("1.2345678901234567891"), 7, null, null);
+
+        assertTrue(series.add(wide));
+        assertEquals(3, series.size());
+        assertSame(wide, series.getNode(2));
+
+        final SecurityHistorySeries decoded = SecurityHistorySeries.fromCompressedBlock(series.toCompressedBlock());
+
+        assertEquals(new BigDecimal("502.00"), decoded.getPrice(0));
+        assertEquals(new BigDecimal("1.2345678901234567891"), decoded.getPrice(2));
+        assertEquals(7, decoded.getNode(2).getVolume());
+    }
+
+    @Test
+    void testRetainedNodes() throws IOException {
+        final SecurityHistorySeries series = new SecurityHistorySeries(true);
+        final SecurityHistoryNode node = new SecurityHistoryNode(LocalDate.of(2020, 1, 2), new BigDecimal("3.25"), 10,
+                null, null);
+
+        assertTrue(series.add(node));
+        assertTrue(series.add(new SecurityHistoryNode(LocalDate.of(2020, 1, 1), BigDecimal.ONE, 0, null, null)));
+
+        // the series indexes the nodes rather than copying them
+        assertSame(node, series.getNode(1));
+        assertTrue(series.remove(LocalDate.of(2020, 1, 1)));
+        assertSame(node, series.getNode(0));
+
+        final SecurityHistorySeries decoded = SecurityHistorySeries.fromCompressedBlock(series.toCompressedBlock());
+
+        assertEquals(1, decoded.size());
+        assertEquals(new BigDecimal("3.25"), decoded.getPrice(0));
+        assertEquals(10, decoded.getNode(0).getVolume());
+    }
+
+    @Test
+    void testSaveAsRelational(@TempDir final Path tempDir) throws IOException {
+        final String xmlFile = tempDir.resolve("history.xml").toString();
+        final String h2File = tempDir.resolve("history" + JpaH2DataStore.H2_FILE_EXT).toString();
+
+        Engine engine = EngineFactory.bootLocalEngine(xmlFile, EngineFactory.DEFAULT, EngineFactory.EMPTY_PASSWORD,
+                DataStoreType.XML);
+        assertNotNull(engine);
+
+        engine.setCreateBackups(false);
+
+        final CurrencyNode currency = DefaultCurrencies.buildCustomNode("USD");
+        engine.addCurrency(currency);
+        engine.setDefaultCurrency(currency);
+
+        final SecurityNode security = new SecurityNode(currency);
+        security.setSymbol("ACME");
+        assertTrue(engine.addSecurity(security));
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(engine.addSecurityHistory(security, new SecurityHistoryNode(LocalDate.of(2020, 1, 1).plusDays(i),
+                    new BigDecimal("10.25").add(BigDecimal.valueOf(i, 2)), i, null, null)));
+        }
+
+        EngineFactory.closeEngine(EngineFactory.DEFAULT);
+
+        // the history is only held by the series once read from the file
+        EngineFactory.saveAs(xmlFile, h2File, EngineFactory.EMPTY_PASSWORD, value -> { });
+
+        engine = EngineFactory.bootLocalEngine(h2File, EngineFactory.DEFAULT, EngineFactory.EMPTY_PASSWORD);
+        assertNotNull(engine);
+
+        try {
+            final List<SecurityHistoryNode> nodes = engine.getSecurity("ACME").getHistoryNodes();
+
+            assertEquals(100, nodes.size());
+
+            for (int i = 0; i < nodes.size(); i++) {
+                assertEquals(LocalDate.of(2020, 1, 1).plusDays(i), nodes.get(i).getLocalDate());
+                assertEquals(0, new BigDecimal("10.25").add(BigDecimal.valueOf(i, 2))
+                        .compareTo(nodes.get(i).getPrice()));
+                assertEquals(i, nodes.get(i).getVolume());
+            }
+        } finally {
+            EngineFactory.closeEngine(EngineFactory.DEFAULT);
+        }
+    }
+}
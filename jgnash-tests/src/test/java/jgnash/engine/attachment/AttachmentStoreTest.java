@@ -0,0 +1,152 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.attachment;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * Attachment store tests.
+ *
+ * @author Craig Cavanaugh
+ */
+class AttachmentStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path sourceDirectory;
+
+    private Path storeDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        sourceDirectory = Files.createDirectory(tempDir.resolve("source"));
+        storeDirectory = Files.createDirectory(tempDir.resolve("store"));
+    }
+
+    @Test
+    void leastRecentlyUsedEviction() throws IOException {
+        final AttachmentStore store = new AttachmentStore(storeDirectory, 3000);
+
+        for (final String name : new String[]{"a.png", "b.png", "c.png"}) {
+            final Path source = createFile(name, name.charAt(0));
+            store.copy(source, AttachmentStore.hash(source));
+        }
+
+        assertNotNull(store.getValidPath("a.png"));     // a becomes the most recently used
+
+        final Path source = createFile("d.png", 'd');
+        store.copy(source, AttachmentStore.hash(source));
+
+        assertNull(store.getValidPath("b.png"));
+        assertFalse(Files.exists(storeDirectory.resolve("b.png")));
+
+        // the access order survives a new session
+        final AttachmentStore reopened = new AttachmentStore(storeDirectory, 3000);
+
+        assertNotNull(reopened.getValidPath("a.png"));
+        assertNotNull(reopened.getValidPath("c.png"));
+        assertNotNull(reopened.getValidPath("d.png"));
+    }
+
+    @Test
+    void cacheHitDoesNotWriteIndex() throws IOException {
+        final AttachmentStore store = new AttachmentStore(storeDirectory);
+
+        for (final String name : new String[]{"a.png", "b.png"}) {
+            final Path source = createFile(name, name.charAt(0));
+            store.copy(source, AttachmentStore.hash(source));
+        }
+
+        final Path index = storeDirectory.resolve(AttachmentStore.INDEX_FILE);
+        final List<String> lines = Files.readAllLines(index);
+
+        assertNotNull(store.getValidPath("a.png"));
+        assertEquals(lines, Files.readAllLines(index));
+
+        // the new access order is written when flushed
+        store.flush();
+
+        assertEquals(lines.get(0), Files.readAllLines(index).get(1));
+    }
+
+    @Test
+    void invalidContentDiscarded() throws IOException {
+        final Path source = createFile("receipt.png", 'r');
+        final String hash = AttachmentStore.hash(source);
+
+        final Path path = new AttachmentStore(storeDirectory).copy(source, hash);
+
+        // damage the content without changing the size or modification time
+        final FileTime modified = Files.getLastModifiedTime(path);
+        final byte[] content = Files.readAllBytes(path);
+        content[0] = 0;
+
+        Files.write(path, content);
+        Files.setLastModifiedTime(path, modified);
+
+        final AttachmentStore reopened = new AttachmentStore(storeDirectory);
+
+        assertNull(reopened.getValidPath("receipt.png"));
+        assertNull(reopened.find(hash));
+    }
+
+    @Test
+    void duplicateContentLinked() throws IOException {
+        final AttachmentStore store = new AttachmentStore(storeDirectory);
+
+        final Path first = createFile("first.png", 'x');
+        final Path second = sourceDirectory.resolve("second.png");
+        Files.copy(first, second);
+
+        final String hash = AttachmentStore.hash(first);
+
+        store.copy(first, hash);
+        store.copy(second, hash);
+
+        assertEquals(hash, store.getHash("second.png"));
+        assertArrayEquals(Files.readAllBytes(first), Files.readAllBytes(storeDirectory.resolve("second.png")));
+
+        // removing one name keeps the content of the other
+        store.delete("first.png");
+
+        assertEquals(storeDirectory.resolve("second.png"), store.find(hash));
+    }
+
+    private Path createFile(final String name, final char fill) throws IOException {
+        final byte[] content = new byte[1000];
+        Arrays.fill(content, (byte) fill);
+
+        return Files.write(sourceDirectory.resolve(name), content);
+    }
+}
@@ -0,0 +1,234 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.attachment;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import jgnash.engine.EngineFactory;
+import jgnash.engine.jpa.JpaNetworkServer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Attachment transfer tests, including resume of an interrupted transfer, deduplication of content and a loopback
+ * throughput benchmark.  The benchmark is tagged as a load test, so it only runs with the {@code loadTest} task.
+ *
+ * @author Craig Cavanaugh
+ */
+class AttachmentTransferTest {
+
+    private static final int PORT = JpaNetworkServer.DEFAULT_PORT + 130;
+
+    private static final int BENCHMARK_SIZE = 64 * 1024 * 1024;
+
+    private static final char[] PASSWORD = new char[]{'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    private static final Logger logger = Logger.getLogger(AttachmentTransferTest.class.getName());
+
+    private Path serverDirectory;
+
+    private Path clientDirectory;
+
+    private Path sourceDirectory;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        serverDirectory = Files.createTempDirectory("jgnash-server-");
+        clientDirectory = Files.createTempDirectory("jgnash-client-");
+        sourceDirectory = Files.createTempDirectory("jgnash-source-");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        for (final Path directory : new Path[]{serverDirectory, clientDirectory, sourceDirectory}) {
+            try (final DirectoryStream<Path> ds = Files.newDirectoryStream(directory)) {
+                for (final Path p : ds) {
+                    Files.delete(p);
+                }
+            }
+
+            Files.delete(directory);
+        }
+    }
+
+    @Test
+    void resumeUpload() throws Exception {
+        resumeUpload(PORT, EngineFactory.EMPTY_PASSWORD);
+    }
+
+    @Test
+    void resumeEncryptedUpload() throws Exception {
+        resumeUpload(PORT + 1, PASSWORD);
+    }
+
+    @Test
+    void resumeDownload() throws Exception {
+        final byte[] content = createContent(1024 * 1024 + 17);
+        Files.write(serverDirectory.resolve("receipt.png"), content);
+
+        // leave a partial file behind as an interrupted transfer would
+        Files.write(clientDirectory.resolve("receipt.png.part"), Arrays.copyOf(content, content.length / 3));
+
+        final AttachmentTransferServer server = new AttachmentTransferServer(PORT + 2, serverDirectory);
+        assertTrue(server.startServer(PASSWORD));
+
+        final AttachmentTransferClient client = new AttachmentTransferClient(new AttachmentStore(clientDirectory));
+
+        try {
+            assertTrue(client.connectToServer(EngineFactory.LOCALHOST, PORT + 2, PASSWORD));
+
+            final Path path = client.requestFile(serverDirectory.resolve("receipt.png")).get(30, TimeUnit.SECONDS);
+
+            assertNotNull(path);
+            assertArrayEquals(content, Files.readAllBytes(path));
+        } finally {
+            client.disconnectFromServer();
+            server.stopServer();
+        }
+    }
+
+    @Test
+    void deduplicatedTransfer() throws Exception {
+        final byte[] content = createContent(256 * 1024);
+        final Path source = sourceDirectory.resolve("receipt.png");
+        Files.write(source, content);
+
+        final AttachmentTransferServer server = new AttachmentTransferServer(PORT + 5, serverDirectory);
+        assertTrue(server.startServer(EngineFactory.EMPTY_PASSWORD));
+
+        final AttachmentStore clientStore = new AttachmentStore(clientDirectory);
+        final AttachmentTransferClient client = new AttachmentTransferClient(clientStore);
+
+        try {
+            assertTrue(client.connectToServer(EngineFactory.LOCALHOST, PORT + 5, EngineFactory.EMPTY_PASSWORD));
+
+            final String hash = AttachmentStore.hash(source);
+            client.sendFile(source, hash).get(30, TimeUnit.SECONDS);
+
+            // the same content under another name is linked by the server, not transferred
+            final Path copy = sourceDirectory.resolve("receipt-copy.png");
+            Files.write(copy, content);
+            client.sendFile(copy, hash).get(30, TimeUnit.SECONDS);
+
+            assertTrue(Files.isSameFile(serverDirectory.resolve("receipt.png"),
+                    serverDirectory.resolve("receipt-copy.png")));
+
+            // the client already holds the content of the second name once the first is received
+            final Path first = client.requestFile(Paths.get("receipt.png")).get(30, TimeUnit.SECONDS);
+            final Path second = client.requestFile(Paths.get("receipt-copy.png")).get(30, TimeUnit.SECONDS);
+
+            assertArrayEquals(content, Files.readAllBytes(second));
+            assertTrue(Files.isSameFile(first, second));
+            assertEquals(second, clientStore.getValidPath("receipt-copy.png"));
+        } finally {
+            client.disconnectFromServer();
+            server.stopServer();
+        }
+    }
+
+    @Test
+    @Tag("loadtest")
+    void benchmark() throws Exception {
+        final Path source = sourceDirectory.resolve("benchmark.bin");
+        Files.write(source, createContent(BENCHMARK_SIZE));
+
+        int port = PORT + 3;
+
+        for (final char[] password : new char[][]{EngineFactory.EMPTY_PASSWORD, PASSWORD}) {
+            final AttachmentTransferServer server = new AttachmentTransferServer(port, serverDirectory);
+            assertTrue(server.startServer(password));
+
+            final AttachmentTransferClient client = new AttachmentTransferClient(new AttachmentStore(clientDirectory));
+
+            try {
+                assertTrue(client.connectToServer(EngineFactory.LOCALHOST, port++, password));
+
+                final String mode = password.length > 0 ? "encrypted" : "plain";
+
+                long start = System.nanoTime();
+                client.sendFile(source, AttachmentStore.hash(source)).get(2, TimeUnit.MINUTES);
+                logThroughput(mode + " upload", start);
+
+                start = System.nanoTime();
+                assertNotNull(client.requestFile(source).get(2, TimeUnit.MINUTES));
+                logThroughput(mode + " download", start);
+
+                Files.delete(serverDirectory.resolve("benchmark.bin"));
+                Files.delete(clientDirectory.resolve("benchmark.bin"));
+            } finally {
+                client.disconnectFromServer();
+                server.stopServer();
+            }
+        }
+    }
+
+    private void resumeUpload(final int port, final char[] password) throws Exception {
+        final byte[] content = createContent(1024 * 1024 + 31);
+        final Path source = sourceDirectory.resolve("statement.pdf");
+        Files.write(source, content);
+
+        // leave a partial file behind as an interrupted transfer would
+        Files.write(serverDirectory.resolve("statement.pdf.part"), Arrays.copyOf(content, content.length / 2));
+
+        final AttachmentTransferServer server = new AttachmentTransferServer(port, serverDirectory);
+        assertTrue(server.startServer(password));
+
+        final AttachmentTransferClient client = new AttachmentTransferClient(new AttachmentStore(clientDirectory));
+
+        try {
+            assertTrue(client.connectToServer(EngineFactory.LOCALHOST, port, password));
+
+            client.sendFile(source, AttachmentStore.hash(source)).get(30, TimeUnit.SECONDS);
+
+            assertArrayEquals(content, Files.readAllBytes(serverDirectory.resolve("statement.pdf")));
+        } finally {
+            client.disconnectFromServer();
+            server.stopServer();
+        }
+    }
+
+    private static byte[] createContent(final int size) {
+        final byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+
+        return content;
+    }
+
+    private static void logThroughput(final String description, final long start) {
+        final long nanos = System.nanoTime() - start;
+
+        logger.info(String.format("%s: %d MB in %d ms, %.1f MB/s", description, BENCHMARK_SIZE / (1024 * 1024),
+                TimeUnit.NANOSECONDS.toMillis(nanos), BENCHMARK_SIZE / 1048576.0 / (nanos / 1e9)));
+    }
+}
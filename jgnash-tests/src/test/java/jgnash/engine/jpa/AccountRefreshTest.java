@@ -0,0 +1,92 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDate;
+
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.DefaultCurrencies;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.Transaction;
+import jgnash.engine.TransactionFactory;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Remote clients refresh an account to learn which transactions and children it holds.  The refresh must not
+ * cascade, otherwise refreshing the parent of a new top level account reloads the entire database.
+ *
+ * @author Craig Cavanaugh
+ */
+class AccountRefreshTest {
+
+    @Test
+    void refreshDoesNotCascade(@TempDir final Path tempDir) {
+        final String database = tempDir.resolve("refresh" + JpaH2MvDataStore.MV_FILE_EXT).toString();
+
+        final Engine engine = EngineFactory.bootLocalEngine(database, EngineFactory.DEFAULT,
+                EngineFactory.EMPTY_PASSWORD, DataStoreType.H2MV_DATABASE);
+        assertNotNull(engine);
+
+        try {
+            final CurrencyNode currency = DefaultCurrencies.buildCustomNode("USD");
+            engine.addCurrency(currency);
+            engine.setDefaultCurrency(currency);
+
+            final Account parent = new Account(AccountType.BANK, currency);
+            parent.setName("Parent");
+            assertTrue(engine.addAccount(engine.getRootAccount(), parent));
+
+            final Account child = new Account(AccountType.BANK, currency);
+            child.setName("Child");
+            assertTrue(engine.addAccount(parent, child));
+
+            final Transaction transaction = TransactionFactory.generateSingleEntryTransaction(child, BigDecimal.TEN,
+                    LocalDate.now(), "memo", "payee", "");
+            assertTrue(engine.addTransaction(transaction));
+
+            // unsaved edits show whether a refresh reached the object
+            child.setName("Edited");
+            transaction.setPayee("edited");
+
+            engine.refresh(parent);
+            assertEquals("Edited", child.getName());
+
+            engine.refresh(child);
+            assertEquals("Child", child.getName());
+            assertEquals("edited", transaction.getPayee());
+
+            // the account still holds its transaction and the balance is calculated again
+            assertEquals(1, child.getTransactionCount());
+            assertEquals(0, BigDecimal.TEN.compareTo(child.getBalance()));
+        } finally {
+            EngineFactory.closeEngine(EngineFactory.DEFAULT);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package jgnash.engine.jpa;
+
+import java.time.LocalTime;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Database maintenance budget and scheduling tests.
+ *
+ * @author Craig Cavanaugh
+ */
+class DatabaseMaintenanceTest {
+
+    @Test
+    void budgetAccumulatesToLimit() {
+        final DatabaseMaintenance.Budget budget = new DatabaseMaintenance.Budget(10, 25);
+
+        assertEquals(10, budget.earn());
+        assertEquals(20, budget.earn());
+        assertEquals(25, budget.earn());
+
+        assertTrue(budget.covers(25));
+        assertFalse(budget.covers(26));
+    }
+
+    @Test
+    void budgetIsChargedWithBytesWritten() {
+        final DatabaseMaintenance.Budget budget = new DatabaseMaintenance.Budget(10, 100);
+
+        budget.earn();
+        budget.earn();
+        budget.earn();
+
+        // a small compaction leaves the rest of the budget for the next run
+        budget.spend(4);
+        assertEquals(26, budget.getAvailable());
+
+        budget.spend(0);
+        budget.spend(-1);
+        assertEquals(26, budget.getAvailable());
+
+        budget.spend(50);
+        assertEquals(0, budget.getAvailable());
+
+        assertEquals(10, budget.earn());
+    }
+
+    @Test
+    void defragmentOnlyInQuietHours() {
+        assertFalse(DatabaseMaintenance.isDefragTime(LocalTime.of(0, 59)));
+        assertTrue(DatabaseMaintenance.isDefragTime(LocalTime.of(1, 0)));
+        assertTrue(DatabaseMaintenance.isDefragTime(LocalTime.of(4, 59)));
+        assertFalse(DatabaseMaintenance.isDefragTime(LocalTime.of(5, 0)));
+        assertFalse(DatabaseMaintenance.isDefragTime(LocalTime.NOON));
+    }
+}
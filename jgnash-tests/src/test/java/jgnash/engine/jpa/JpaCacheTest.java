@@ -0,0 +1,184 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.OptionalLong;
+import java.util.Properties;
+
+import javax.cache.Cache;
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import javax.cache.configuration.MutableConfiguration;
+import javax.cache.spi.CachingProvider;
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.message.MessageChannel;
+
+import com.github.benmanes.caffeine.jcache.configuration.CaffeineConfiguration;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Second level cache tests.
+ *
+ * @author Craig Cavanaugh
+ */
+class JpaCacheTest {
+
+    @Test
+    void closeOneOfTwoFactories(@TempDir final Path tempDir) {
+        final EntityManagerFactory first = createFactory(tempDir.resolve("first" + JpaH2MvDataStore.MV_FILE_EXT));
+        final EntityManagerFactory second = createFactory(tempDir.resolve("second" + JpaH2MvDataStore.MV_FILE_EXT));
+
+        try {
+            final CurrencyNode node = new CurrencyNode();
+            node.setSymbol("USD");
+            node.setPrefix("$");
+            node.setDescription("US Dollar");
+
+            persist(first, node);
+
+            // closing the first factory must not close the cache of the second
+            JpaConfiguration.closeEntityManagerFactory(first);
+
+            persist(second, node);
+
+            final EntityManager em = second.createEntityManager();
+
+            try {
+                assertNotNull(em.find(CurrencyNode.class, node.getUuid()));
+            } finally {
+                em.close();
+            }
+
+            assertTrue(second.getCache().contains(CurrencyNode.class, node.getUuid()));
+        } finally {
+            if (first.isOpen()) {
+                JpaConfiguration.closeEntityManagerFactory(first);
+            }
+            JpaConfiguration.closeEntityManagerFactory(second);
+        }
+    }
+
+    @Test
+    void remoteChangeEvictsCaches(@TempDir final Path tempDir) {
+        final Properties properties = new Properties();
+        properties.putAll(JpaConfiguration.getLocalProperties(DataStoreType.H2MV_DATABASE,
+                tempDir.resolve("cache" + JpaH2MvDataStore.MV_FILE_EXT).toString(), EngineFactory.EMPTY_PASSWORD,
+                false));
+        properties.setProperty("hibernate.generate_statistics", "true");
+
+        final EntityManagerFactory factory = JpaConfiguration.createEntityManagerFactory(properties);
+
+        try {
+            final Statistics statistics = factory.unwrap(SessionFactory.class).getStatistics();
+
+            final CurrencyNode node = new CurrencyNode();
+            node.setSymbol("USD");
+            node.setPrefix("$");
+            node.setDescription("US Dollar");
+
+            persist(factory, node);
+
+            assertEquals(1, queryCurrencies(factory));
+            assertEquals(1, queryCurrencies(factory));
+            assertEquals(1, statistics.getQueryCacheHitCount());
+            assertTrue(factory.getCache().contains(CurrencyNode.class, node.getUuid()));
+
+            final JpaCacheInvalidator invalidator = new JpaCacheInvalidator(factory, "cacheTest");
+
+            // another channel leaves the entity cached, but not the query results
+            invalidator.evict(MessageChannel.TAG);
+            assertTrue(factory.getCache().contains(CurrencyNode.class, node.getUuid()));
+
+            assertEquals(1, queryCurrencies(factory));
+            assertEquals(1, statistics.getQueryCacheHitCount());
+
+            invalidator.evict(MessageChannel.COMMODITY);
+            assertFalse(factory.getCache().contains(CurrencyNode.class, node.getUuid()));
+
+            assertEquals(1, queryCurrencies(factory));
+            assertEquals(1, statistics.getQueryCacheHitCount());
+            assertEquals(3, statistics.getQueryCacheMissCount());
+        } finally {
+            JpaConfiguration.closeEntityManagerFactory(factory);
+        }
+    }
+
+    @Test
+    void createdRegionsAreBounded() {
+        final CachingProvider cachingProvider = Caching.getCachingProvider(
+                "com.github.benmanes.caffeine.jcache.spi.CaffeineCachingProvider");
+        final CacheManager cacheManager = cachingProvider.getCacheManager(URI.create("jgnash:cache-test"),
+                cachingProvider.getDefaultClassLoader());
+
+        try {
+            final Cache<Object, Object> cache = cacheManager.createCache("region", new MutableConfiguration<>());
+
+            final OptionalLong maximumSize = cache.getConfiguration(CaffeineConfiguration.class).getMaximumSize();
+
+            assertTrue(maximumSize.isPresent());
+        } finally {
+            cacheManager.close();
+        }
+    }
+
+    private static int queryCurrencies(final EntityManagerFactory factory) {
+        final EntityManager em = factory.createEntityManager();
+
+        try {
+            return em.createQuery("SELECT c FROM CurrencyNode c", CurrencyNode.class)
+                    .setHint(QueryHints.HINT_CACHEABLE, true)
+                    .getResultList().size();
+        } finally {
+            em.close();
+        }
+    }
+
+    private static EntityManagerFactory createFactory(final Path path) {
+        return JpaConfiguration.createEntityManagerFactory(JpaConfiguration.getLocalProperties(
+                DataStoreType.H2MV_DATABASE, path.toString(), EngineFactory.EMPTY_PASSWORD, false));
+    }
+
+    private static void persist(final EntityManagerFactory factory, final CurrencyNode node) {
+        final EntityManager em = factory.createEntityManager();
+
+        try {
+            em.getTransaction().begin();
+            em.merge(node);
+            em.getTransaction().commit();
+        } finally {
+            em.close();
+        }
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.jpa;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.Transaction;
+import jgnash.engine.TransactionFactory;
+import jgnash.net.ServerMetrics;
+import jgnash.util.LatencyHistogram;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Load test of the network server with many clients.
+ * <p>
+ * A server is started on an H2 file and each client is a separate client engine with its own connections to the
+ * database, message bus, lock server and attachment server.  The clients run a mix of transaction adds, edits, reads
+ * and report queries and the throughput and latency percentiles of each operation are reported.
+ * <p>
+ * Tagged as a load test, so it only runs with the {@code loadTest} task, e.g.
+ * {@code gradlew :jgnash-tests:loadTest -Dloadtest.clients=20}.  The load is configured with system properties:
+ * <ul>
+ *     <li>{@code loadtest.clients} number of clients, 8 by default</li>
+ *     <li>{@code loadtest.duration} duration in seconds, 20 by default</li>
+ *     <li>{@code loadtest.mix} relative weight of each operation, {@code add=30,edit=20,read=35,report=15} by
+ *     default</li>
+ * </ul>
+ * All clients share the JVM, and with it the second level cache, so cached reads are faster than they would be with
+ * separate client processes.
+ *
+ * @author Craig Cavanaugh
+ */
+@Tag("loadtest")
+class JpaNetworkServerLoadTest {
+
+    private static final int PORT = JpaNetworkServer.DEFAULT_PORT + 150;
+
+    private static final int CLIENTS = Integer.getInteger("loadtest.clients", 8);
+
+    private static final long DURATION_MILLIS = TimeUnit.SECONDS.toMillis(Integer.getInteger("loadtest.duration", 20));
+
+    private static final String MIX = System.getProperty("loadtest.mix", "add=30,edit=20,read=35,report=15");
+
+    private static final int SEED_TRANSACTIONS = 2000;
+
+    private static final String CHECKING = "Checking";
+
+    private static final String GROCERIES = "Groceries";
+
+    private static final String SALARY = "Salary";
+
+    private static final Logger logger = Logger.getLogger(JpaNetworkServerLoadTest.class.getName());
+
+    private enum Operation {
+        ADD, EDIT, READ, REPORT
+    }
+
+    @Test
+    void manyClients() throws Exception {
+        final Map<Operation, Integer> weights = parseMix(MIX);
+        final int totalWeight = weights.values().stream().mapToInt(Integer::intValue).sum();
+
+        final String serverFile = createServerFile();
+
+        final AtomicBoolean running = new AtomicBoolean();
+
+        final Thread serverThread = new Thread(() -> new JpaNetworkServer().startServer(serverFile, PORT,
+                EngineFactory.EMPTY_PASSWORD, () -> running.set(true)), "Load Test Server");
+
+        serverThread.setDaemon(true);
+        serverThread.start();
+
+        await().atMost(30, TimeUnit.SECONDS).untilTrue(running);
+
+        final List<String> engineNames = new ArrayList<>();
+
+        for (int i = 0; i < CLIENTS; i++) {
+            final String engineName = "load-test-" + i;
+
+            assertNotNull(EngineFactory.bootClientEngine(EngineFactory.LOCALHOST, PORT, EngineFactory.EMPTY_PASSWORD,
+                    engineName));
+
+            engineNames.add(engineName);
+        }
+
+        final Map<Operation, LatencyHistogram> latencies = new EnumMap<>(Operation.class);
+
+        for (final Operation operation : Operation.values()) {
+            latencies.put(operation, new LatencyHistogram());
+        }
+
+        final AtomicInteger failures = new AtomicInteger();
+
+        final List<Future<Void>> futures = new ArrayList<>();
+
+        // the server runs within this JVM, so its metrics show which component limits the throughput
+        ServerMetrics.getInstance().setEnabled(true);
+
+        final ExecutorService executorService = Executors.newFixedThreadPool(CLIENTS);
+        final long end = System.currentTimeMillis() + DURATION_MILLIS;
+
+        try {
+            for (final String engineName : engineNames) {
+                futures.add(executorService.submit(() -> {
+                    final Engine engine = EngineFactory.getEngine(engineName);
+                    assertNotNull(engine);
+
+                    final Account checking = engine.getAccountByName(CHECKING);
+                    final Account groceries = engine.getAccountByName(GROCERIES);
+                    final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+                    // only transactions added by this client are edited, so clients do not remove each others
+                    final List<Transaction> added = new ArrayList<>();
+
+                    while (System.currentTimeMillis() < end) {
+                        final Operation operation = pick(weights, random.nextInt(totalWeight));
+                        final long start = System.nanoTime();
+
+                        boolean result = true;
+
+                        switch (operation) {
+                            case ADD:
+                                final Transaction transaction = newTransaction(checking, groceries, engineName);
+
+                                result = engine.addTransaction(transaction);
+                                added.add(transaction);
+                                break;
+                            case EDIT:
+                                if (added.isEmpty()) {
+                                    continue;
+                                }
+
+                                final int index = random.nextInt(added.size());
+                                final Transaction modified = (Transaction) added.get(index).clone();
+                                modified.setMemo("Edited by " + engineName);
+
+                                result = engine.removeTransaction(added.get(index))
+                                        && engine.addTransaction(modified);
+                                added.set(index, modified);
+                                break;
+                            case READ:
+                                result = engine.getTransactions(checking, LocalDate.now().minusDays(30),
+                                        LocalDate.now()) != null;
+                                break;
+                            case REPORT:
+                                final LocalDate yearStart = LocalDate.now().withDayOfYear(1);
+
+                                for (final Account account : engine.getExpenseAccountList()) {
+                                    result &= account.getBalance(yearStart, LocalDate.now()) != null;
+                                }
+
+                                result &= checking.getBalance(LocalDate.now()) != null;
+                                break;
+                            default:
+                                break;
+                        }
+
+                        latencies.get(operation).record(System.nanoTime() - start);
+
+                        if (!result) {
+                            failures.incrementAndGet();
+                        }
+                    }
+
+                    return null;
+                }));
+            }
+
+            executorService.shutdown();
+            assertTrue(executorService.awaitTermination(DURATION_MILLIS * 10, TimeUnit.MILLISECONDS));
+
+            for (final Future<Void> future : futures) {
+                future.get();   // rethrows a failed client
+            }
+        } finally {
+            logger.info(ServerMetrics.getInstance().getReport());
+            ServerMetrics.getInstance().setEnabled(false);
+
+            engineNames.forEach(EngineFactory::closeEngine);
+        }
+
+        final long operations = latencies.values().stream().mapToLong(LatencyHistogram::getCount).sum();
+
+        logger.info(String.format("%d clients, %d operations, %d per second, %d failures", CLIENTS, operations,
+                operations * 1000 / DURATION_MILLIS, failures.get()));
+
+        latencies.forEach((operation, histogram) -> logger.info(operation.name().toLowerCase() + ": " + histogram));
+
+        assertEquals(0, failures.get());
+        assertTrue(operations > 0);
+    }
+
+    /**
+     * Creates a populated database for the server.
+     *
+     * @return file name of the database
+     * @throws IOException if the file could not be created
+     */
+    private static String createServerFile() throws IOException {
+        final Path temp = Files.createTempFile("jpa-load-test", JpaH2DataStore.H2_FILE_EXT);
+        Files.delete(temp);
+
+        temp.toFile().deleteOnExit();
+
+        final String fileName = temp.toString();
+
+        final Engine engine = EngineFactory.bootLocalEngine(fileName, EngineFactory.DEFAULT,
+                EngineFactory.EMPTY_PASSWORD, DataStoreType.H2_DATABASE);
+        assertNotNull(engine);
+
+        engine.setCreateBackups(false);
+
+        final Account checking = addAccount(engine, AccountType.BANK, CHECKING);
+        final Account groceries = addAccount(engine, AccountType.EXPENSE, GROCERIES);
+        final Account salary = addAccount(engine, AccountType.INCOME, SALARY);
+
+        final List<Transaction> transactions = new ArrayList<>();
+
+        for (int i = 0; i < SEED_TRANSACTIONS; i++) {
+            transactions.add(i % 10 == 0 ? newTransaction(checking, salary, "seed")
+                    : newTransaction(checking, groceries, "seed"));
+        }
+
+        assertTrue(engine.addTransactions(transactions));
+
+        EngineFactory.closeEngine(EngineFactory.DEFAULT);
+
+        return fileName;
+    }
+
+    private static Account addAccount(final Engine engine, final AccountType type, final String name) {
+        final Account account = new Account(type, engine.getDefaultCurrency());
+        account.setName(name);
+
+        assertTrue(engine.addAccount(engine.getRootAccount(), account));
+
+        return account;
+    }
+
+    private static Transaction newTransaction(final Account checking, final Account other, final String memo) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        return TransactionFactory.generateDoubleEntryTransaction(other, checking,
+                BigDecimal.valueOf(random.nextInt(1, 20000), 2), LocalDate.now().minusDays(random.nextInt(365)),
+                memo, "Payee " + random.nextInt(50), "");
+    }
+
+    private static Map<Operation, Integer> parseMix(final String mix) {
+        final Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+
+        for (final String entry : mix.split(",")) {
+            final String[] pair = entry.split("=");
+
+            weights.put(Operation.valueOf(pair[0].trim().toUpperCase()), Integer.parseInt(pair[1].trim()));
+        }
+
+        return weights;
+    }
+
+    private static Operation pick(final Map<Operation, Integer> weights, final int value) {
+        int remaining = value;
+
+        for (final Map.Entry<Operation, Integer> entry : weights.entrySet()) {
+            remaining -= entry.getValue();
+
+            if (remaining < 0) {
+                return entry.getKey();
+            }
+        }
+
+        throw new IllegalStateException();
+    }
+}
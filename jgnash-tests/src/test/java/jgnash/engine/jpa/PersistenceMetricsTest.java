@@ -0,0 +1,134 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package jgnash.engine.jpa;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Path;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.persistence.EntityManagerFactory;
+
+import jgnash.engine.DataStoreType;
+import jgnash.engine.EngineFactory;
+
+import org.hibernate.SessionFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Persistence metrics test.
+ *
+ * @author Craig Cavanaugh
+ */
+class PersistenceMetricsTest {
+
+    private final PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+
+    @AfterEach
+    void tearDown() {
+        metrics.setEnabled(false);
+        metrics.setEntityManagerFactory(null);
+        metrics.reset();
+    }
+
+    @Test
+    void registersWithJmxWhileEnabled() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(PersistenceMetrics.OBJECT_NAME);
+
+        metrics.setEnabled(true);
+
+        assertTrue(metrics.isEnabled());
+        assertTrue(server.isRegistered(name));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+
+        metrics.setEnabled(false);
+
+        assertFalse(metrics.isEnabled());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void latenciesAndWaits() {
+        metrics.recordLatency("getAccountList", 1_000_000);
+        metrics.recordLatency("getAccountList", 3_000_000);
+        metrics.recordLatency("addAccount", 5_000_000);
+
+        assertEquals(2000, metrics.getMethodLatencies().get("getAccountList"));
+        assertEquals(5000, metrics.getMethodLatencies().get("addAccount"));
+
+        metrics.recordExecutorWait(2_000_000);
+        metrics.recordExecutorWait(6_000_000);
+        assertEquals(4000, metrics.getMeanExecutorWait());
+        assertEquals(6000, metrics.getMaxExecutorWait());
+
+        metrics.recordLockWait(1_000_000);
+        metrics.recordLockHold(8_000_000);
+        assertEquals(1000, metrics.getMeanLockWait());
+        assertEquals(8000, metrics.getMeanLockHold());
+        assertEquals(8000, metrics.getMaxLockHold());
+
+        metrics.recordQueueDepth(4);
+        metrics.recordQueueDepth(1);
+        assertEquals(4, metrics.getMaxExecutorQueueDepth());
+
+        final String report = metrics.getReport();
+
+        assertTrue(report.contains("max 4"));
+        assertTrue(report.contains("getAccountList: "));
+
+        metrics.reset();
+
+        assertTrue(metrics.getMethodLatencies().isEmpty());
+        assertEquals(0, metrics.getMeanExecutorWait());
+        assertEquals(0, metrics.getMaxLockHold());
+        assertEquals(0, metrics.getMaxExecutorQueueDepth());
+    }
+
+    @Test
+    void hibernateStatisticsFollowEnabled(@TempDir final Path tempDir) {
+        final EntityManagerFactory factory = JpaConfiguration.createEntityManagerFactory(
+                JpaConfiguration.getLocalProperties(DataStoreType.H2MV_DATABASE,
+                        tempDir.resolve("metrics" + JpaH2MvDataStore.MV_FILE_EXT).toString(),
+                        EngineFactory.EMPTY_PASSWORD, false));
+
+        try {
+            metrics.setEntityManagerFactory(factory);
+
+            assertFalse(factory.unwrap(SessionFactory.class).getStatistics().isStatisticsEnabled());
+            assertFalse(metrics.getReport().contains("hibernate:"));
+
+            metrics.setEnabled(true);
+
+            assertTrue(factory.unwrap(SessionFactory.class).getStatistics().isStatisticsEnabled());
+            assertTrue(metrics.getReport().contains("hibernate:"));
+
+            metrics.setEnabled(false);
+
+            assertFalse(factory.unwrap(SessionFactory.class).getStatistics().isStatisticsEnabled());
+        } finally {
+            metrics.setEntityManagerFactory(null);
+            JpaConfiguration.closeEntityManagerFactory(factory);
+        }
+    }
+}
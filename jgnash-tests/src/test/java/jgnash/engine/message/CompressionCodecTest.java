@@ -0,0 +1,74 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.message;
+
+import java.nio.charset.StandardCharsets;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Message frame compression test.
+ *
+ * @author Craig Cavanaugh
+ */
+class CompressionCodecTest {
+
+    @Test
+    void roundTrip() {
+        final EmbeddedChannel sender = new EmbeddedChannel(new CompressionCodec());
+        final EmbeddedChannel receiver = new EmbeddedChannel(new CompressionCodec());
+
+        long plainLength = 0;
+        long compressedLength = 0;
+
+        // a small frame is sent raw, the repeated content of a bulk import compresses well
+        for (int i = 0; i < 500; i++) {
+            final String message = i % 10 == 0 ? "<STOP>" : ("<Message channel=\"TRANSACTION\" event=\"TRANSACTION_ADD\""
+                    + " memo=\"Imported payment " + i + "\"/>").repeat(8);
+
+            plainLength += message.length();
+
+            sender.writeOutbound(Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+
+            final ByteBuf frame = sender.readOutbound();
+            compressedLength += frame.readableBytes();
+
+            if (message.length() < CompressionCodec.THRESHOLD) {
+                assertEquals(message.length() + 1, frame.readableBytes());
+            }
+
+            receiver.writeInbound(frame);
+
+            final ByteBuf plain = receiver.readInbound();
+            assertEquals(message, plain.toString(StandardCharsets.UTF_8));
+            plain.release();
+        }
+
+        assertTrue(compressedLength * 5 < plainLength);
+
+        sender.finishAndReleaseAll();
+        receiver.finishAndReleaseAll();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.message;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Message bus delivery order tests.
+ *
+ * @author Craig Cavanaugh
+ */
+class MessageBusTest {
+
+    private static final String SOURCE = "MessageBusTest";
+
+    @Test
+    void orderWithinChannel() throws Exception {
+        final MessageBus messageBus = MessageBus.getInstance("orderWithinChannel");
+        final List<Message> received = Collections.synchronizedList(new ArrayList<>());
+        final MessageListener listener = received::add;
+
+        messageBus.registerListener(listener, MessageChannel.TRANSACTION);
+
+        try {
+            final List<Message> fired = new ArrayList<>();
+
+            for (int i = 0; i < 1000; i++) {
+                final Message message = new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_ADD, SOURCE);
+
+                fired.add(message);
+                messageBus.fireEvent(message);
+            }
+
+            messageBus.fireEvent(new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_ADD, SOURCE))
+                    .get(10, TimeUnit.SECONDS);
+
+            assertEquals(fired, received.subList(0, fired.size()));
+        } finally {
+            messageBus.unregisterListener(listener, MessageChannel.TRANSACTION);
+        }
+    }
+
+    @Test
+    void blockingEventIsBarrier() {
+        final MessageBus messageBus = MessageBus.getInstance("blockingEventIsBarrier");
+        final List<ChannelEvent> received = Collections.synchronizedList(new ArrayList<>());
+
+        // a slow listener on another channel must still be delivered before the blocking event
+        final MessageListener slowListener = message -> {
+            try {
+                Thread.sleep(20);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            received.add(message.getEvent());
+        };
+
+        final MessageListener systemListener = message -> received.add(message.getEvent());
+
+        messageBus.registerListener(slowListener, MessageChannel.ACCOUNT, MessageChannel.TRANSACTION);
+        messageBus.registerListener(systemListener, MessageChannel.SYSTEM);
+
+        try {
+            for (int i = 0; i < 5; i++) {
+                messageBus.fireEvent(new Message(MessageChannel.ACCOUNT, ChannelEvent.ACCOUNT_ADD, SOURCE));
+                messageBus.fireEvent(new Message(MessageChannel.TRANSACTION, ChannelEvent.TRANSACTION_ADD, SOURCE));
+            }
+
+            messageBus.fireBlockingEvent(new Message(MessageChannel.SYSTEM, ChannelEvent.FILE_CLOSING, SOURCE));
+
+            assertEquals(11, received.size());
+            assertEquals(ChannelEvent.FILE_CLOSING, received.get(10));
+        } finally {
+            messageBus.unregisterListener(slowListener, MessageChannel.ACCOUNT, MessageChannel.TRANSACTION);
+            messageBus.unregisterListener(systemListener, MessageChannel.SYSTEM);
+        }
+    }
+}
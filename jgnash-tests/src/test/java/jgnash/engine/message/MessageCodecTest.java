@@ -0,0 +1,141 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.engine.message;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import jgnash.engine.AbstractEngineTest;
+import jgnash.engine.Account;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Binary message encoding test.
+ *
+ * @author Craig Cavanaugh
+ */
+class MessageCodecTest extends AbstractEngineTest {
+
+    @Override
+    protected Engine createEngine() throws IOException {
+        database = testFolder.createFile("codec-test.bxds").getAbsolutePath();
+        EngineFactory.deleteDatabase(database);
+
+        return EngineFactory.bootLocalEngine(database, EngineFactory.DEFAULT, EngineFactory.EMPTY_PASSWORD,
+                DataStoreType.BINARY_XSTREAM);
+    }
+
+    @Test
+    void testMessageRoundTrip() {
+        final Message message = new Message(MessageChannel.ACCOUNT, ChannelEvent.ACCOUNT_MODIFY, e);
+        message.setObject(MessageProperty.ACCOUNT, usdBankAccount);
+        message.setObject(MessageProperty.COMMODITY, e.getDefaultCurrency());
+
+        final byte[] frame = MessageCodec.encodeMessage(message);
+
+        assertEquals(MessageCodec.MESSAGE_FRAME, frame[0]);
+        assertEquals(e.getUuid(), MessageCodec.decodeSource(frame));
+
+        final Message decoded = MessageCodec.decodeMessage(frame, e);
+
+        assertEquals(MessageChannel.ACCOUNT, decoded.getChannel());
+        assertEquals(ChannelEvent.ACCOUNT_MODIFY, decoded.getEvent());
+        assertEquals(e.getUuid(), decoded.getSource());
+        assertSame(usdBankAccount, decoded.getObject(MessageProperty.ACCOUNT));
+        assertSame(e.getDefaultCurrency(), decoded.getObject(MessageProperty.COMMODITY));
+        assertSame(e.getRootAccount(), MessageCodec.decodeMessage(MessageCodec.encodeMessage(
+                newMessage(e.getRootAccount())), e).getObject(MessageProperty.ACCOUNT));
+    }
+
+    @Test
+    void testBatchRoundTrip() {
+        final List<Message> messages = Arrays.asList(newMessage(usdBankAccount), newMessage(checkingAccount),
+                newMessage(e.getRootAccount()));
+
+        final byte[] frame = MessageCodec.encodeBatch(messages);
+
+        assertEquals(MessageCodec.BATCH_FRAME, frame[0]);
+
+        final List<byte[]> frames = MessageCodec.splitBatch(frame);
+
+        assertEquals(messages.size(), frames.size());
+
+        for (int i = 0; i < messages.size(); i++) {
+            assertSame(messages.get(i).getObject(MessageProperty.ACCOUNT),
+                    MessageCodec.decodeMessage(frames.get(i), e).getObject(MessageProperty.ACCOUNT));
+        }
+    }
+
+    @Test
+    void testCorruptBatch() {
+        final byte[] frame = MessageCodec.encodeBatch(Arrays.asList(newMessage(usdBankAccount),
+                newMessage(checkingAccount)));
+
+        // claim a message far larger than the frame
+        ByteBuffer.wrap(frame).putInt(1 + Integer.BYTES, Integer.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.splitBatch(frame));
+
+        ByteBuffer.wrap(frame).putInt(1 + Integer.BYTES, -1);
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.splitBatch(frame));
+    }
+
+    @Test
+    void testClassByNameMustBeStoredObject() {
+        final byte[] name = String.class.getName().getBytes(StandardCharsets.UTF_8);
+        final ByteBuffer buffer = ByteBuffer.allocate(2 + 1 + 2 + 16 + 1 + 2 + 2 + name.length + 16);
+        final byte[] source = MessageCodec.encodeMessage(new Message(MessageChannel.SYSTEM,
+                ChannelEvent.FILE_CLOSING, e));
+
+        // copy the header and source, then add a single property naming a class that is not a StoredObject
+        buffer.put(source, 0, 2 + 1 + 2 + 16);
+        buffer.put((byte) 1);
+        buffer.put((byte) MessageProperty.ACCOUNT.ordinal());
+        buffer.put((byte) 0);
+        buffer.putShort((short) name.length);
+        buffer.put(name);
+        buffer.putLong(0).putLong(0);
+
+        assertThrows(IllegalArgumentException.class, () -> MessageCodec.decodeMessage(buffer.array(), e));
+    }
+
+    @Test
+    void testControlRoundTrip() {
+        final byte[] frame = MessageCodec.encodeControl("<STOP_SERVER>");
+
+        assertEquals(MessageCodec.CONTROL_FRAME, frame[0]);
+        assertEquals("<STOP_SERVER>", MessageCodec.decodeControl(frame));
+    }
+
+    private Message newMessage(final Account account) {
+        final Message message = new Message(MessageChannel.ACCOUNT, ChannelEvent.ACCOUNT_ADD, e);
+        message.setObject(MessageProperty.ACCOUNT, account);
+
+        return message;
+    }
+}
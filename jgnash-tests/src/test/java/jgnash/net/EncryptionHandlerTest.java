@@ -0,0 +1,207 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.logging.Logger;
+
+import jgnash.engine.EngineFactory;
+import jgnash.engine.concurrent.DistributedLockManager;
+import jgnash.engine.concurrent.DistributedLockServer;
+import jgnash.engine.jpa.JpaNetworkServer;
+import jgnash.util.EncryptionManager;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.DecoderException;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Connection encryption tests and a lock server round trip benchmark with encryption on and off.  The benchmark is
+ * tagged as a load test, so it only runs with the {@code loadTest} task.
+ *
+ * @author Craig Cavanaugh
+ */
+class EncryptionHandlerTest {
+
+    private static final int PORT = JpaNetworkServer.DEFAULT_PORT + 140;
+
+    private static final long DURATION_MILLIS = 3000;
+
+    private static final char[] PASSWORD = new char[]{'p', 'a', 's', 's', 'w', 'o', 'r', 'd'};
+
+    private static final EncryptionManager encryptionManager = new EncryptionManager(PASSWORD);
+
+    private static final Logger logger = Logger.getLogger(EncryptionHandlerTest.class.getName());
+
+    @Test
+    void roundTrip() {
+        final EmbeddedChannel client = new EmbeddedChannel(new EncryptionHandler(encryptionManager, true));
+        final EmbeddedChannel server = new EmbeddedChannel(new EncryptionHandler(encryptionManager, false));
+
+        // larger than a record, so the writes are split
+        final StringBuilder builder = new StringBuilder();
+
+        while (builder.length() <= EncryptionHandler.MAX_RECORD_LENGTH) {
+            builder.append("<Message channel=\"ACCOUNT\" event=\"ACCOUNT_MODIFY\"/>\n");
+        }
+
+        final String message = builder.toString();
+
+        // held until the server nonce arrives
+        client.writeOutbound(Unpooled.copiedBuffer(message, StandardCharsets.UTF_8));
+        assertEquals("", transfer(server, client));
+
+        assertEquals(message, transfer(client, server));
+
+        server.writeOutbound(Unpooled.copiedBuffer("ok", StandardCharsets.UTF_8));
+        assertEquals("ok", transfer(server, client));
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    void wrongPassword() {
+        final EmbeddedChannel client = new EmbeddedChannel(new EncryptionHandler(encryptionManager, true));
+        final EmbeddedChannel server = new EmbeddedChannel(new EncryptionHandler(
+                new EncryptionManager("wrong".toCharArray()), false));
+
+        client.writeOutbound(Unpooled.copiedBuffer("secret", StandardCharsets.UTF_8));
+        transfer(server, client);
+
+        assertThrows(DecoderException.class, () -> transfer(client, server));
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    void reflectedRecord() {
+        final EmbeddedChannel client = new EmbeddedChannel(new EncryptionHandler(encryptionManager, true));
+        final EmbeddedChannel server = new EmbeddedChannel(new EncryptionHandler(encryptionManager, false));
+
+        transfer(server, client);
+        transfer(client, server);
+
+        // a client must not accept its own traffic sent back as if it came from the server
+        client.writeOutbound(Unpooled.copiedBuffer("secret", StandardCharsets.UTF_8));
+
+        assertThrows(DecoderException.class, () -> transfer(client, client));
+        assertNull(client.readInbound());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+    }
+
+    @Test
+    void replayedConnection() {
+        final EmbeddedChannel client = new EmbeddedChannel(new EncryptionHandler(encryptionManager, true));
+        final EmbeddedChannel server = new EmbeddedChannel(new EncryptionHandler(encryptionManager, false));
+
+        client.writeOutbound(Unpooled.copiedBuffer("secret", StandardCharsets.UTF_8));
+        transfer(server, client);
+
+        // record everything the client sent, nonce included
+        final List<ByteBuf> recorded = new ArrayList<>();
+
+        for (ByteBuf buffer = client.readOutbound(); buffer != null; buffer = client.readOutbound()) {
+            recorded.add(buffer.copy());
+            server.writeInbound(buffer);
+        }
+
+        final ByteBuf plain = server.readInbound();
+        assertEquals("secret", plain.toString(StandardCharsets.UTF_8));
+        plain.release();
+
+        // the new server contributes a new nonce, so the recorded stream must not decrypt
+        final EmbeddedChannel otherServer = new EmbeddedChannel(new EncryptionHandler(encryptionManager, false));
+
+        assertThrows(DecoderException.class, () -> {
+            for (final ByteBuf buffer : recorded) {
+                otherServer.writeInbound(buffer);
+            }
+        });
+        assertNull(otherServer.readInbound());
+
+        client.finishAndReleaseAll();
+        server.finishAndReleaseAll();
+        otherServer.finishAndReleaseAll();
+    }
+
+    @Test
+    @Tag("loadtest")
+    void lockRoundTripBenchmark() {
+        int port = PORT;
+
+        for (final char[] password : new char[][]{EngineFactory.EMPTY_PASSWORD, PASSWORD}) {
+            final DistributedLockServer server = new DistributedLockServer(port);
+            assertTrue(server.startServer(password));
+
+            final DistributedLockManager manager = new DistributedLockManager(EngineFactory.LOCALHOST, port++);
+
+            try {
+                assertTrue(manager.connectToServer(password));
+
+                final ReadWriteLock lock = manager.getLock("benchmark");
+                final long end = System.currentTimeMillis() + DURATION_MILLIS;
+                long roundTrips = 0;
+
+                // each exclusive lock and unlock waits for a response from the lock server
+                while (System.currentTimeMillis() < end) {
+                    lock.writeLock().lock();
+                    lock.writeLock().unlock();
+                    roundTrips += 2;
+                }
+
+                logger.info(String.format("%s: %d lock server round trips per second",
+                        password.length > 0 ? "encrypted" : "plain", roundTrips * 1000 / DURATION_MILLIS));
+            } finally {
+                manager.disconnectFromServer();
+                server.stopServer();
+            }
+        }
+    }
+
+    private static String transfer(final EmbeddedChannel from, final EmbeddedChannel to) {
+        for (ByteBuf record = from.readOutbound(); record != null; record = from.readOutbound()) {
+            to.writeInbound(record);
+        }
+
+        final StringBuilder builder = new StringBuilder();
+
+        for (ByteBuf plain = to.readInbound(); plain != null; plain = to.readInbound()) {
+            builder.append(plain.toString(StandardCharsets.UTF_8));
+            plain.release();
+        }
+
+        return builder.toString();
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+package jgnash.net;
+
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Netty transport selection test.
+ *
+ * @author Craig Cavanaugh
+ */
+class NettyTransportTest {
+
+    @Test
+    void selection() {
+        assertFalse(NettyTransport.useNative(true, () -> fail("epoll must not be checked when NIO is requested")));
+        assertFalse(NettyTransport.useNative(false, () -> false));
+        assertTrue(NettyTransport.useNative(false, () -> true));
+    }
+
+    @Test
+    void nioFallback() throws InterruptedException {
+        assertEquals(NioServerSocketChannel.class, NettyTransport.getServerChannelClass(false));
+        assertEquals(NioSocketChannel.class, NettyTransport.getChannelClass(false));
+
+        final EventLoopGroup group = NettyTransport.newGroup(false, 1, "nio-test");
+
+        try {
+            assertTrue(group instanceof NioEventLoopGroup);
+        } finally {
+            group.shutdownGracefully().sync();
+        }
+
+        assertConnects(false);
+    }
+
+    @Test
+    void selectedTransportConnects() throws InterruptedException {
+        assertConnects(NettyTransport.isNative());
+    }
+
+    private static void assertConnects(final boolean nativeTransport) throws InterruptedException {
+        final EventLoopGroup acceptGroup = NettyTransport.newGroup(nativeTransport, 1, "test-accept");
+        final EventLoopGroup workerGroup = NettyTransport.newGroup(nativeTransport, 1, "test-worker");
+        final EventLoopGroup clientGroup = NettyTransport.newGroup(nativeTransport, 1, "test-client");
+
+        final CountDownLatch accepted = new CountDownLatch(1);
+
+        try {
+            final Channel server = new ServerBootstrap().group(acceptGroup, workerGroup)
+                    .channel(NettyTransport.getServerChannelClass(nativeTransport))
+                    .childHandler(new ChannelInboundHandlerAdapter() {
+                        @Override
+                        public void channelActive(final ChannelHandlerContext ctx) {
+                            accepted.countDown();
+                        }
+                    })
+                    .bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+
+            final Channel client = new Bootstrap().group(clientGroup)
+                    .channel(NettyTransport.getChannelClass(nativeTransport))
+                    .handler(new ChannelInboundHandlerAdapter())
+                    .connect(server.localAddress()).sync().channel();
+
+            assertTrue(client.isActive());
+            assertTrue(accepted.await(10, TimeUnit.SECONDS));
+
+            client.close().sync();
+            server.close().sync();
+        } finally {
+            clientGroup.shutdownGracefully();
+            workerGroup.shutdownGracefully();
+            acceptGroup.shutdownGracefully();
+        }
+    }
+}
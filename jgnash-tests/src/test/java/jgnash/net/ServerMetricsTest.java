@@ -0,0 +1,118 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.net;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Server metrics test.
+ *
+ * @author Craig Cavanaugh
+ */
+class ServerMetricsTest {
+
+    private final ServerMetrics metrics = ServerMetrics.getInstance();
+
+    @AfterEach
+    void tearDown() {
+        metrics.setEnabled(false);
+        metrics.unregisterServer("test");
+        metrics.reset();
+    }
+
+    @Test
+    void registersWithJmxWhileEnabled() throws Exception {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(ServerMetrics.OBJECT_NAME);
+
+        metrics.setEnabled(true);
+        metrics.setEnabled(true);     // no effect when already enabled
+
+        assertTrue(metrics.isEnabled());
+        assertTrue(server.isRegistered(name));
+        assertEquals(Boolean.TRUE, server.getAttribute(name, "Enabled"));
+
+        metrics.setEnabled(false);
+
+        assertFalse(metrics.isEnabled());
+        assertFalse(server.isRegistered(name));
+    }
+
+    @Test
+    void gaugesAndCounters() {
+        final AtomicInteger connections = new AtomicInteger(3);
+
+        metrics.registerServer("test", connections::get, () -> 7);
+
+        assertEquals(3, metrics.getConnectedClients().get("test"));
+        assertEquals(7, metrics.getExecutorQueueDepths().get("test"));
+
+        connections.set(4);
+        assertEquals(4, metrics.getConnectedClients().get("test"));
+
+        metrics.recordMessages(5);
+        metrics.recordMessages(1);
+        metrics.sampleMessageRate();
+
+        assertEquals(6, metrics.getMessageCount());
+        assertEquals(6, metrics.getMessagesPerSecond());
+
+        metrics.recordMessages(2);
+        metrics.sampleMessageRate();
+
+        assertEquals(8, metrics.getMessageCount());
+        assertEquals(2, metrics.getMessagesPerSecond());
+        assertEquals(6, metrics.getMaxMessagesPerSecond());
+
+        metrics.recordQueueDepth(9);
+        metrics.recordQueueDepth(2);
+        assertEquals(9, metrics.getMaxExecutorQueueDepth());
+
+        metrics.recordLockWait("lock", 2_000_000);
+        metrics.recordLockHold("lock", 4_000_000);
+        assertEquals(2000, metrics.getLockWaits().get("lock"));
+        assertEquals(4000, metrics.getLockHolds().get("lock"));
+
+        metrics.recordAttachmentBytesIn(100);
+        metrics.recordAttachmentBytesOut(200);
+        assertEquals(100, metrics.getAttachmentBytesIn());
+        assertEquals(200, metrics.getAttachmentBytesOut());
+
+        assertTrue(metrics.getReport().contains("messages 8"));
+
+        metrics.reset();
+
+        assertEquals(0, metrics.getMessageCount());
+        assertEquals(0, metrics.getMaxExecutorQueueDepth());
+        assertTrue(metrics.getLockWaits().isEmpty());
+
+        metrics.unregisterServer("test");
+        assertFalse(metrics.getConnectedClients().containsKey("test"));
+    }
+}
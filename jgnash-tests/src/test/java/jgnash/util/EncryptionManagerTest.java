@@ -17,9 +17,12 @@
  */
 package jgnash.util;
 
+import java.nio.charset.StandardCharsets;
+
 import org.apache.commons.text.RandomStringGenerator;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 /**
@@ -47,4 +50,15 @@ class EncryptionManagerTest {
             assertEquals(testString, decrypted);
         }
     }
+
+    @Test
+    void testBytes() {
+        final EncryptionManager encryptionManager = new EncryptionManager(PASSWORD.toCharArray());
+
+        for (int i = 1; i < 8192; i += 31) {
+            final byte[] bytes = generator.generate(i).getBytes(StandardCharsets.UTF_8);
+
+            assertArrayEquals(bytes, encryptionManager.decrypt(encryptionManager.encrypt(bytes)));
+        }
+    }
 }
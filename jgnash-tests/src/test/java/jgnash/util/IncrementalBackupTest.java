@@ -0,0 +1,189 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import jgnash.engine.Account;
+import jgnash.engine.AccountType;
+import jgnash.engine.CurrencyNode;
+import jgnash.engine.DataStoreType;
+import jgnash.engine.DefaultCurrencies;
+import jgnash.engine.Engine;
+import jgnash.engine.EngineFactory;
+import jgnash.engine.TransactionFactory;
+import jgnash.engine.xstream.XMLDataStore;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Incremental backup test.
+ *
+ * @author Craig Cavanaugh
+ */
+class IncrementalBackupTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static long directorySize(final Path directory) throws IOException {
+        try (final Stream<Path> stream = Files.walk(directory)) {
+            return stream.filter(Files::isRegularFile).mapToLong(path -> path.toFile().length()).sum();
+        }
+    }
+
+    @Test
+    void testBackupRestoreAndRetention() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        final Random random = new Random(7);
+
+        for (int i = 0; i < 50000; i++) {
+            builder.append("<Transaction uuid=\"").append(random.nextLong()).append("\"/>\n");
+        }
+
+        final Path file = tempDir.resolve("test.xml");
+        final Path store = tempDir.resolve("test-backups");
+
+        Files.writeString(file, builder);
+
+        final Path first = IncrementalBackup.backup(file, store, "test-1");
+        final long firstSize = directorySize(store);
+
+        // a small edit should only add a few chunks
+        builder.insert(builder.length() / 2, "<Transaction uuid=\"0\"/>\n");
+        Files.writeString(file, builder);
+
+        final Path second = IncrementalBackup.backup(file, store, "test-2");
+        assertTrue(directorySize(store) - firstSize < firstSize / 4);
+
+        final Path restored = tempDir.resolve("restored.xml");
+
+        IncrementalBackup.restore(second, restored);
+        assertEquals(builder.toString(), Files.readString(restored));
+
+        IncrementalBackup.restore(first, restored);
+        assertEquals(builder.length() - "<Transaction uuid=\"0\"/>\n".length(), Files.readString(restored).length());
+
+        // keep only the newest backup, it must still restore after unreferenced chunks are removed
+        IncrementalBackup.removeOldBackups(store, 1);
+
+        assertFalse(Files.exists(first));
+
+        IncrementalBackup.restore(second, restored);
+        assertEquals(builder.toString(), Files.readString(restored));
+    }
+
+    @Test
+    void testChunkingIgnoresWriteSize() throws IOException {
+        final byte[] content = new byte[1024 * 1024];
+        new Random(11).nextBytes(content);
+
+        final Path store = tempDir.resolve("write-size-backups");
+
+        final Path bulk = IncrementalBackup.backup(out -> out.write(content), "content", store, "bulk");
+
+        final Path single = IncrementalBackup.backup(out -> {
+            for (final byte b : content) {
+                out.write(b);
+            }
+        }, "content", store, "single");
+
+        final Path uneven = IncrementalBackup.backup(out -> {
+            for (int i = 0; i < content.length; i += 1000) {
+                out.write(content, i, Math.min(1000, content.length - i));
+            }
+        }, "content", store, "uneven");
+
+        // the same boundaries must be found however the content is written
+        assertEquals(Files.readAllLines(bulk), Files.readAllLines(single));
+        assertEquals(Files.readAllLines(bulk), Files.readAllLines(uneven));
+    }
+
+    @Test
+    void testEngineExports() throws IOException {
+        final String fileName = tempDir.resolve("engine.xml").toString();
+        final Path store = tempDir.resolve("engine-backups");
+
+        Engine engine = EngineFactory.bootLocalEngine(fileName, EngineFactory.DEFAULT, EngineFactory.EMPTY_PASSWORD,
+                DataStoreType.XML);
+        assertNotNull(engine);
+
+        engine.setCreateBackups(false);
+
+        try {
+            final CurrencyNode currency = DefaultCurrencies.buildCustomNode("USD");
+            engine.addCurrency(currency);
+            engine.setDefaultCurrency(currency);
+
+            final Account account = new Account(AccountType.BANK, currency);
+            account.setName("Checking");
+            engine.addAccount(engine.getRootAccount(), account);
+
+            for (int i = 0; i < 1000; i++) {
+                assertTrue(engine.addTransaction(TransactionFactory.generateSingleEntryTransaction(account,
+                        BigDecimal.valueOf(i, 2), LocalDate.of(2020, 1, 1).plusDays(i), "memo " + i, "payee " + i,
+                        Integer.toString(i))));
+            }
+
+            final Engine source = engine;
+
+            IncrementalBackup.backup(out -> new XMLDataStore().saveAs(out,
+                    source.getStoredObjects()), "engine.xml", store, "engine-1");
+            final long firstSize = directorySize(store);
+
+            // one more transaction in the middle of the file
+            assertTrue(engine.addTransaction(TransactionFactory.generateSingleEntryTransaction(account,
+                    BigDecimal.TEN, LocalDate.of(2020, 6, 1), "inserted", "payee", "")));
+
+            final Path second = IncrementalBackup.backup(out -> new XMLDataStore().saveAs(out,
+                    source.getStoredObjects()), "engine.xml", store, "engine-2");
+
+            // references must not shift, so only the chunks around the new transaction are stored
+            assertTrue(directorySize(store) - firstSize - Files.size(second) < firstSize / 10);
+        } finally {
+            EngineFactory.closeEngine(EngineFactory.DEFAULT);
+        }
+
+        // the export must still read back
+        final Path restored = tempDir.resolve("restored.xml");
+
+        IncrementalBackup.restore(store.resolve("engine-2" + IncrementalBackup.MANIFEST_EXT), restored);
+
+        engine = EngineFactory.bootLocalEngine(restored.toString(), EngineFactory.DEFAULT,
+                EngineFactory.EMPTY_PASSWORD);
+        assertNotNull(engine);
+
+        try {
+            assertEquals(1001, engine.getTransactions().size());
+        } finally {
+            EngineFactory.closeEngine(EngineFactory.DEFAULT);
+        }
+    }
+}
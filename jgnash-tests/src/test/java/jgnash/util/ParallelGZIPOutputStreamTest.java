@@ -0,0 +1,91 @@
+/*
+ * jGnash, a personal finance application
+ * Copyright (C) 2001-2020 Craig Cavanaugh
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *  GNU General Public License for more details.
+ *
+ *  You should have received a copy of the GNU General Public License
+ *  along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package jgnash.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Parallel GZIP output stream test.
+ *
+ * @author Craig Cavanaugh
+ */
+class ParallelGZIPOutputStreamTest {
+
+    private static byte[] decompress(final byte[] compressed) throws IOException {
+        try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            return in.readAllBytes();
+        }
+    }
+
+    @Test
+    void testMultipleMembers() throws IOException {
+        final byte[] data = new byte[ParallelGZIPOutputStream.DEFAULT_BLOCK_SIZE * 10 + 1234];
+
+        // compressible, but not trivial content
+        final Random random = new Random(42);
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(8));
+        }
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (final ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(bytes)) {
+            out.write(data, 0, 1000);
+            out.write(data[1000]);
+            out.write(data, 1001, data.length - 1001);
+        }
+
+        assertArrayEquals(data, decompress(bytes.toByteArray()));
+    }
+
+    @Test
+    void testSmallBlocksAndFlush() throws IOException {
+        final byte[] data = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>".getBytes(StandardCharsets.UTF_8);
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        try (final ParallelGZIPOutputStream out = new ParallelGZIPOutputStream(bytes, 7, Deflater.BEST_SPEED)) {
+            out.write(data, 0, 10);
+            out.flush();
+            out.write(data, 10, data.length - 10);
+        }
+
+        assertArrayEquals(data, decompress(bytes.toByteArray()));
+    }
+
+    @Test
+    void testEmptyStream() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        new ParallelGZIPOutputStream(bytes).close();
+
+        assertEquals(0, decompress(bytes.toByteArray()).length);
+    }
+}